@@ -0,0 +1,30 @@
+/**
+ * Runs the crawler benchmarks with JMH's GC profiler always on, so every result is reported as
+ * ops/sec alongside gc.alloc.rate.norm, the bytes allocated per operation.
+ * Takes the usual JMH command line, e.g. "ExtractBenchmark -p page=Science_fiction".
+ * Braden Zingler
+ */
+package com.java;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+                .parent(cmd)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Benchmarks a partitioned crawl with 1, 2 and 4 worker processes against a local HTTP server.
+ * A Corpus.GraphServer stands in for a large site: /wiki/Page_N is a corpus page led by links to ten
+ * pseudo-random other pages of a GRAPH_SIZE page graph, which are the ten links the crawler
+ * follows, answered after latencyMillis to stand in for the network.
+ * Each operation is a fresh crawl from Page_0 that stops at maxPages, timed from starting the
+ * worker JVMs to the last one exiting. The pages counter is the pages actually crawled, since
+ * workers finish the pages they have in flight when they are stopped.
+ * With 20 ms the crawl is bound by extraction, so it scales with cores; with 1000 ms each
+ * worker's 16 fetch threads are the limit, so it scales with workers until the cores run out.
+ * The per-host limit is raised to the fetch thread count so one host does not cap a worker.
+ * Near-duplicate suppression is off since the graph reuses the corpus text.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ClusterBenchmark {
+    private static final int GRAPH_SIZE = 1000000;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"20", "1000"})
+    public int latencyMillis;
+
+    @Param({"4000"})
+    public int maxPages;
+
+    private Path dir;
+    private Corpus.GraphServer server;
+    private int run;
+
+
+    /**
+     * Pages crawled per operation, reported alongside the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Progress {
+        public long pages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.pages = 0;
+        }
+    }
+
+
+    @Setup
+    public void setup() {
+        this.server = new Corpus.GraphServer(GRAPH_SIZE, true, this.latencyMillis);
+        this.dir = Corpus.tempDir();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.server.stop();
+        Corpus.delete(this.dir);
+    }
+
+
+    @Benchmark
+    public long crawl(Progress progress) {
+        Path runDir = this.dir.resolve("run" + this.run++);
+        CrawlerConfig config = Corpus.config(runDir)
+                .set("crawler.lemmas.snapshot", this.dir.resolve("lemmas.bin"))
+                .set("crawler.archive.dir", runDir.resolve("archive"))
+                .set("crawler.urls.schemes", "http")
+                .set("crawler.urls.hosts", this.server.host())
+                .set("crawler.urls.excluded", "")
+                .set("crawler.fetch.perHost", 16)
+                .set("crawler.robots.enabled", false)
+                .set("crawler.dedup.enabled", false)
+                .set("crawler.log.summaryMillis", 0)
+                .set("crawler.cluster.workers", this.workers)
+                .set("crawler.cluster.maxPages", this.maxPages)
+                .set("crawler.cluster.statusMillis", 100);
+
+        long pages = new Coordinator(config).crawl(List.of(this.server.url(0)));
+        progress.pages += pages;
+        return pages;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Benchmarks Crawler.crawlConcurrently as the fetch concurrency grows, against a local HTTP server.
+ * Each operation is a full crawl of a GRAPH_SIZE page graph served on one host by
+ * Corpus.GraphServer: /wiki/Page_N is a corpus page led by links to ten pseudo-random other pages
+ * of the graph, answered after latencyMillis to stand in for the network. The threads param is
+ * crawler.fetch.threads and perHost is crawler.fetch.perHost; with a single host the crawl has
+ * min(threads, perHost) requests in flight, so the rows with perHost 4 show the per-host limit
+ * capping the fetch pool.
+ * Every crawl must reach the whole graph, so pages per second is GRAPH_SIZE over the time per
+ * operation. Twenty single crawls over two forks keep the intervals narrow.
+ * Near-duplicate suppression is off since the graph reuses the corpus text.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(2)
+public class ConcurrentCrawlBenchmark {
+    private static final int GRAPH_SIZE = 100;
+
+    @Param({"1", "4", "16", "64"})
+    public int threads;
+
+    @Param({"4", "64"})
+    public int perHost;
+
+    @Param({"100"})
+    public int latencyMillis;
+
+    private Path dir;
+    private Corpus.GraphServer server;
+    private int run;
+
+
+    @Setup
+    public void setup() {
+        this.server = new Corpus.GraphServer(GRAPH_SIZE, true, this.latencyMillis);
+        this.dir = Corpus.tempDir();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.server.stop();
+        Corpus.delete(this.dir);
+    }
+
+
+    @Benchmark
+    public long crawl() {
+        Path runDir = this.dir.resolve("run" + this.run++);
+        CrawlerConfig config = Corpus.config(runDir)
+                .set("crawler.urls.schemes", "http")
+                .set("crawler.urls.hosts", this.server.host())
+                .set("crawler.urls.excluded", "")
+                .set("crawler.robots.enabled", false)
+                .set("crawler.dedup.enabled", false)
+                .set("crawler.log.summaryMillis", 0)
+                .set("crawler.fetch.threads", this.threads)
+                .set("crawler.fetch.perHost", this.perHost);
+
+        long pagesBefore = CrawlMetrics.get().getPages();
+        new Crawler(this.server.url(0), config).crawlConcurrently();
+        long pages = CrawlMetrics.get().getPages() - pagesBefore;
+        if (pages != GRAPH_SIZE) {
+            throw new IllegalStateException("Crawled " + pages + " of " + GRAPH_SIZE + " pages");
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ * The synthetic pages the benchmarks run against, written by CorpusGenerator. They have the markup
+ * of Wikipedia articles and are named after real ones, but their text is generated.
+ * corpus/pages.txt on the classpath lists the page names, and each page is stored as corpus/<name>.html
+ * with the url it would have on Wikipedia. corpus/lemmas.csv is a lemma list covering the corpus text,
+ * used unless -Dcrawler.lemmas.csv points at the full lemmatization_list.csv.
+ * GraphServer serves a synthetic site of linked pages for the benchmarks that crawl.
+ * Braden Zingler
+ */
+package com.java;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+
+public class Corpus {
+    public static final String BASE_URL = "https://en.wikipedia.org/wiki/";
+
+
+    /**
+     * @return the names of the pages in the corpus.
+     */
+    public static List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (String line : new String(read("pages.txt"), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isBlank()) names.add(line.strip());
+        }
+        return names;
+    }
+
+
+    /**
+     * @param name a page name from pages.txt.
+     * @return the HTML of the page.
+     */
+    public static byte[] page(String name) {
+        return read(name + ".html");
+    }
+
+
+    /**
+     * @param name a page name from pages.txt.
+     * @return the url the page stands in for.
+     */
+    public static String url(String name) {
+        return BASE_URL + name;
+    }
+
+
+    /**
+     * Makes up a keyword of lowercase letters, as long as a typical one and different for every index.
+     * @param index the keyword's index.
+     * @return the keyword.
+     */
+    public static String keyword(int index) {
+        StringBuilder word = new StringBuilder(10);
+        int prefix = (index * 0x9E3779B1) >>> 8;
+        for (int i = 0; i < 3; i++) {
+            word.append((char) ('a' + prefix % 26));
+            prefix /= 26;
+        }
+        // The prefix has a fixed length, so the index in base 26 after it keeps every keyword distinct
+        for (int n = index; ; n /= 26) {
+            word.append((char) ('a' + n % 26));
+            if (n < 26) break;
+        }
+        return word.toString();
+    }
+
+
+    /**
+     * Loads the lemmatizer the benchmarks use.
+     * @return a lemmatizer over -Dcrawler.lemmas.csv if it exists, otherwise over corpus/lemmas.csv.
+     */
+    public static Lemmatizer lemmatizer() {
+        try {
+            String csv = System.getProperty("crawler.lemmas.csv");
+            if (csv != null && new File(csv).isFile()) {
+                return new Lemmatizer(Lemmatizer.readLemmaList(csv));
+            }
+
+            Map<String, String> lemmas = new HashMap<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(open("lemmas.csv"), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    if (parts.length < 2) continue;
+                    lemmas.put(parts[1].strip(), parts[0].strip());
+                }
+            }
+            return new Lemmatizer(LemmaTable.build(lemmas));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Creates crawler settings that keep the database and frontier inside a scratch directory.
+     * @param dir the scratch directory.
+     * @return the settings.
+     */
+    public static CrawlerConfig config(Path dir) {
+        return CrawlerConfig.load()
+                .set("crawler.db.path", dir.resolve("bench.db"))
+                .set("crawler.frontier.dir", dir.resolve("frontier"))
+                .set("crawler.lemmas.snapshot", "");
+    }
+
+
+    /**
+     * @return a new scratch directory.
+     */
+    public static Path tempDir() {
+        try {
+            return Files.createTempDirectory("crawler-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Deletes a scratch directory and everything in it.
+     * @param dir the directory.
+     */
+    public static void delete(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            System.out.println("Failed to delete " + dir + ": " + e);
+        }
+    }
+
+
+    private static byte[] read(String file) {
+        try (InputStream in = open(file)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    private static InputStream open(String file) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + file);
+        if (in == null) {
+            throw new IOException("Missing corpus file: " + file);
+        }
+        return in;
+    }
+
+
+    /**
+     * A local HTTP server for a synthetic site of size pages on one host. /wiki/Page_N links to
+     * LINKS_PER_PAGE pseudo-random other pages, the same ones on every run, followed either by the
+     * markup of a corpus page or by a line of text. Any other path is a 404.
+     * Each request goes through a Behavior first, which says how long to wait before answering,
+     * so a benchmark can stand in for network latency or for a struggling server.
+     */
+    public static class GraphServer {
+        public static final int LINKS_PER_PAGE = 10;
+
+        private int size;
+        private List<String> corpus;
+        private Behavior behavior;
+        private HttpServer server;
+        private ExecutorService threads;
+        private AtomicInteger active;
+
+
+        /**
+         * Decides how one request is answered.
+         */
+        public interface Behavior {
+            /**
+             * @param exchange the request.
+             * @param inFlight the requests being answered, this one included.
+             * @return the milliseconds to wait before sending the page, or -1 if the behavior
+             * answered the request itself.
+             */
+            long delay(HttpExchange exchange, int inFlight) throws IOException;
+        }
+
+
+        /**
+         * Starts a server that answers every page after the same delay.
+         * @param size the number of pages.
+         * @param corpusText whether pages carry corpus markup after their links.
+         * @param latencyMillis the delay before each page is sent.
+         */
+        public GraphServer(int size, boolean corpusText, long latencyMillis) {
+            this(size, corpusText, (exchange, inFlight) -> latencyMillis);
+        }
+
+
+        /**
+         * Starts a server.
+         * @param size the number of pages.
+         * @param corpusText whether pages carry corpus markup after their links.
+         * @param behavior decides how each request is answered.
+         */
+        public GraphServer(int size, boolean corpusText, Behavior behavior) {
+            this.size = size;
+            this.behavior = behavior;
+            this.active = new AtomicInteger();
+            if (corpusText) {
+                this.corpus = new ArrayList<>();
+                for (String name : names()) {
+                    this.corpus.add(new String(page(name), StandardCharsets.UTF_8));
+                }
+            }
+
+            try {
+                this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.server.createContext("/wiki/", this::handle);
+            this.threads = Executors.newFixedThreadPool(64);
+            this.server.setExecutor(this.threads);
+            this.server.start();
+        }
+
+
+        private void handle(HttpExchange exchange) throws IOException {
+            int inFlight = this.active.incrementAndGet();
+            try {
+                String path = exchange.getRequestURI().getPath();
+                int page = -1;
+                if (path.startsWith("/wiki/Page_")) {
+                    try {
+                        page = Integer.parseInt(path.substring("/wiki/Page_".length()));
+                    } catch (NumberFormatException e) {
+                        // not a page of the graph
+                    }
+                }
+                if (page < 0 || page >= this.size) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                long delay = this.behavior.delay(exchange, inFlight);
+                if (delay < 0) return;
+                Thread.sleep(delay);
+
+                byte[] body = body(page);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+                this.active.decrementAndGet();
+            }
+        }
+
+
+        /**
+         * Builds one page of the graph: its outgoing links, then corpus markup or a line of text.
+         */
+        private byte[] body(int page) {
+            StringBuilder html = new StringBuilder();
+            if (this.corpus == null) {
+                html.append("<html><head><title>Page ").append(page).append("</title></head><body>");
+            }
+            html.append("<div>");
+            Random random = new Random(page);
+            for (int i = 0; i < LINKS_PER_PAGE; i++) {
+                html.append("<a href=\"/wiki/Page_").append(random.nextInt(this.size)).append("\">link</a>");
+            }
+            html.append("</div>");
+            if (this.corpus == null) {
+                html.append("<p>Page ").append(page).append(" of a synthetic graph served to test fetch control.</p></body></html>");
+            } else {
+                html.append(this.corpus.get(page % this.corpus.size()));
+            }
+            return html.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+
+        /**
+         * @return the host and port of the server, as crawler.urls.hosts takes them.
+         */
+        public String host() {
+            return "127.0.0.1:" + this.server.getAddress().getPort();
+        }
+
+
+        /**
+         * @param page a page number below size.
+         * @return the url of the page.
+         */
+        public String url(int page) {
+            return "http://" + host() + "/wiki/Page_" + page;
+        }
+
+
+        public void stop() {
+            this.server.stop(0);
+            this.threads.shutdown();
+        }
+    }
+}
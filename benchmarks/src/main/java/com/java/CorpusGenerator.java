@@ -0,0 +1,490 @@
+/**
+ * Writes the synthetic corpus the tests and benchmarks run over: pages.txt, one page per name in
+ * it with the markup of a Wikipedia article, and lemmas.csv.
+ * The pages are not real articles. Their text is drawn from a vocabulary shaped like English
+ * prose: a few dozen function words make up the top ranks, then about two hundred real topic
+ * words, then tens of thousands of made-up words, and words are picked with Zipf's law over
+ * those ranks. Each page also has its own topic words, drawn more often than their rank says.
+ * Some words are inflected with -s, -ed or -ing, and lemmas.csv maps every inflected form in the
+ * pages back to its stem. A long page therefore has thousands of distinct terms, most of them
+ * appearing once, as a real article does.
+ * The output depends only on the page names, so running this again rewrites the same files.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar com.java.CorpusGenerator [dir]
+ *
+ * dir defaults to crawler/src/test/resources/corpus.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+public class CorpusGenerator {
+    private static final int MADE_UP_WORDS = 60000;
+    private static final int TOPIC_WORDS = 400;
+    private static final double TOPIC_SHARE = 0.12;
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    /** The most common English words, most frequent first. Many are stopwords. */
+    private static final String[] FUNCTION_WORDS = {
+        "the", "of", "and", "in", "to", "a", "is", "was", "as", "for", "by", "with", "on", "that", "from",
+        "his", "it", "at", "an", "were", "are", "which", "this", "be", "also", "has", "or", "had", "its",
+        "their", "not", "but", "first", "after", "one", "he", "new", "been", "who", "they", "other", "more",
+        "all", "into", "two", "can", "most", "such", "than", "many", "some", "these", "her", "would", "during",
+        "only", "later", "between", "over", "both", "while", "where", "there", "through", "about", "when",
+        "three", "under", "several", "however", "well", "them", "then", "each", "early", "known", "made",
+        "used", "since", "often", "may", "being", "could", "including", "because", "without", "against"
+    };
+
+    /** Topic words of the original corpus, the most common words after the function words. */
+    private static final String[] TOPIC_SEED = (
+        "science fiction robot space future computer alien technology time world human story novel writer "
+        + "film series genre intelligence machine learning planet earth star galaxy universe ship war weapon "
+        + "society culture history century year decade period author reader audience magazine publisher "
+        + "award prize theme idea concept setting plot character hero villain empire nation government "
+        + "country city village king queen emperor soldier captain explorer engineer scientist inventor "
+        + "research study theory method model system network neural data algorithm program software hardware "
+        + "processor chip memory language speech translation vision perception recognition reasoning logic "
+        + "inference knowledge representation search planning optimization probability statistical symbolic "
+        + "formal proof theorem problem solution decision game agent user customer company industry market "
+        + "product service application benchmark testing training performance failure success risk safety "
+        + "ethics law regulation policy debate claim argument evidence experiment laboratory university "
+        + "journal conference paper review critic influence tradition movement style classic modern popular "
+        + "early late golden new commercial design engineering mathematics physics chemistry biology medicine "
+        + "disease virus genetic evolution life people myth legend religion philosophy literature romance "
+        + "adventure fantasy horror mystery dystopia utopia apocalypse cyberpunk steampunk speculative "
+        + "artificial automaton colony survival travel moon mars ocean climate energy wave cloud peace "
+        + "television field discipline complexity computation narrative symbol example").split(" ");
+
+    private static final String[] ONSETS = {"b", "c", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p", "r", "s", "t",
+            "v", "w", "z", "br", "ch", "cl", "cr", "dr", "fl", "fr", "gl", "gr", "pl", "pr", "sc", "sh", "sl", "sp",
+            "st", "str", "th", "tr", "qu", ""};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "a", "e", "i", "o", "ai", "ea", "ou", "io", "y"};
+    private static final String[] CODAS = {"", "", "", "n", "r", "s", "l", "t", "m", "nd", "nt", "st", "ck", "ng", "rt", "x"};
+
+    private static final String[] MONTHS = {"January", "February", "March", "April", "May", "June", "July",
+            "August", "September", "October", "November", "December"};
+
+    private String[] vocabulary;
+    private boolean[] inflectable;
+    private double[] cumulative;
+    private Map<String, String> lemmas;
+
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "crawler/src/test/resources/corpus");
+        new CorpusGenerator().write(dir);
+    }
+
+
+    public CorpusGenerator() {
+        this.lemmas = new TreeMap<>();
+        buildVocabulary(new Random(42));
+    }
+
+
+    /**
+     * Writes every page listed in dir/pages.txt, or the default three pages if there is no list,
+     * and the lemma list covering them.
+     * @param dir the corpus directory.
+     */
+    public void write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path list = dir.resolve("pages.txt");
+        if (!Files.exists(list)) {
+            Files.writeString(list, "Ray_gun\nScience_fiction\nArtificial_intelligence\n");
+        }
+
+        for (String name : Files.readAllLines(list, StandardCharsets.UTF_8)) {
+            if (name.isBlank()) continue;
+            String html = page(name.strip());
+            Files.writeString(dir.resolve(name.strip() + ".html"), html, StandardCharsets.UTF_8);
+            System.out.printf("%s.html: %,d bytes%n", name.strip(), html.length());
+        }
+
+        // lemma,form lines, the layout of lemmatization_list.csv
+        Set<String> lines = new TreeSet<>();
+        for (Map.Entry<String, String> entry : this.lemmas.entrySet()) {
+            lines.add(entry.getValue() + "," + entry.getKey());
+        }
+        StringBuilder csv = new StringBuilder();
+        for (String line : lines) {
+            csv.append(line).append('\n');
+        }
+        Files.writeString(dir.resolve("lemmas.csv"), csv, StandardCharsets.UTF_8);
+        System.out.printf("lemmas.csv: %,d forms%n", this.lemmas.size());
+    }
+
+
+    /**
+     * Ranks the vocabulary and precomputes the Zipf distribution over it.
+     */
+    private void buildVocabulary(Random random) {
+        Set<String> words = new HashSet<>();
+        List<String> ranked = new ArrayList<>();
+        for (String word : FUNCTION_WORDS) {
+            if (words.add(word)) ranked.add(word);
+        }
+        int firstTopic = ranked.size();
+        for (String word : TOPIC_SEED) {
+            if (words.add(word)) ranked.add(word);
+        }
+        while (ranked.size() < firstTopic + TOPIC_SEED.length + MADE_UP_WORDS) {
+            String word = madeUpWord(random);
+            if (word.length() > 3 && words.add(word)) ranked.add(word);
+        }
+
+        this.vocabulary = ranked.toArray(new String[0]);
+        this.inflectable = new boolean[this.vocabulary.length];
+        Arrays.fill(this.inflectable, firstTopic, this.inflectable.length, true);
+
+        this.cumulative = new double[this.vocabulary.length];
+        double sum = 0;
+        for (int rank = 0; rank < this.vocabulary.length; rank++) {
+            sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+            this.cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < this.cumulative.length; rank++) {
+            this.cumulative[rank] /= sum;
+        }
+    }
+
+
+    private static String madeUpWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            word.append(ONSETS[random.nextInt(ONSETS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+        }
+        return word.append(CODAS[random.nextInt(CODAS.length)]).toString();
+    }
+
+
+    /**
+     * Builds one page. Pages are sized like the articles they are named after.
+     */
+    private String page(String name) {
+        Page page = new Page(name, new Random(name.hashCode()));
+        int targetBytes = switch (name) {
+            case "Ray_gun" -> 63000;
+            case "Science_fiction" -> 343000;
+            case "Artificial_intelligence" -> 943000;
+            default -> 200000;
+        };
+        return page.build(targetBytes);
+    }
+
+
+    /**
+     * Picks a word rank from the Zipf distribution.
+     */
+    private int zipfRank(Random random) {
+        int index = Arrays.binarySearch(this.cumulative, random.nextDouble());
+        return index >= 0 ? index : Math.min(-index - 1, this.cumulative.length - 1);
+    }
+
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+
+    /**
+     * Adds an -s, -ed or -ing ending to some words and records the form's lemma.
+     */
+    private String inflect(String stem, Random random) {
+        double r = random.nextDouble();
+        if (r < 0.70) return stem;
+
+        String form;
+        if (stem.endsWith("y") && stem.length() > 2 && "aeiou".indexOf(stem.charAt(stem.length() - 2)) == -1) {
+            String root = stem.substring(0, stem.length() - 1);
+            form = r < 0.82 ? root + "ies" : r < 0.91 ? root + "ied" : stem + "ing";
+        } else if (stem.endsWith("e")) {
+            form = r < 0.82 ? stem + "s" : r < 0.91 ? stem + "d" : stem.substring(0, stem.length() - 1) + "ing";
+        } else {
+            form = r < 0.82 ? stem + "s" : r < 0.91 ? stem + "ed" : stem + "ing";
+        }
+        this.lemmas.putIfAbsent(form, stem);
+        return form;
+    }
+
+
+    /**
+     * One page being written.
+     */
+    private class Page {
+        private String name;
+        private String title;
+        private Random random;
+        private int[] topic;
+        private StringBuilder html;
+        private int citations;
+
+
+        Page(String name, Random random) {
+            this.name = name;
+            this.title = name.replace('_', ' ');
+            this.random = random;
+            this.html = new StringBuilder();
+
+            // The page's own topic words come from the middle of the vocabulary
+            this.topic = new int[TOPIC_WORDS];
+            int first = FUNCTION_WORDS.length + TOPIC_SEED.length / 2;
+            for (int i = 0; i < this.topic.length; i++) {
+                this.topic[i] = first + random.nextInt(vocabulary.length / 4);
+            }
+        }
+
+
+        String build(int targetBytes) {
+            header();
+            infobox();
+            for (int i = 0; i < 3; i++) {
+                paragraph();
+            }
+
+            // Each citation adds about 330 bytes to the reference list
+            int section = 0;
+            while (this.html.length() + this.citations * 330 < targetBytes - 6000) {
+                section(++section);
+            }
+            references();
+            navbox();
+            footer();
+            return this.html.toString();
+        }
+
+
+        private String word() {
+            int rank = this.random.nextDouble() < TOPIC_SHARE
+                    ? this.topic[Math.min(zipfRank(this.random) % TOPIC_WORDS, TOPIC_WORDS - 1)]
+                    : zipfRank(this.random);
+            String stem = vocabulary[rank];
+            return inflectable[rank] ? inflect(stem, this.random) : stem;
+        }
+
+
+        private String contentWord() {
+            int rank = FUNCTION_WORDS.length + zipfRank(this.random) % (vocabulary.length - FUNCTION_WORDS.length);
+            return vocabulary[rank];
+        }
+
+
+        private String words(int count) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                if (i > 0) text.append(' ');
+                text.append(word());
+            }
+            return text.toString();
+        }
+
+
+        private void link(String text) {
+            StringBuilder target = new StringBuilder(capitalize(text));
+            int extra = this.random.nextInt(3);
+            for (int i = 0; i < extra; i++) {
+                target.append('_').append(contentWord());
+            }
+            String href = target.toString();
+            String linkTitle = href.replace('_', ' ');
+            this.html.append("<a href=\"/wiki/").append(href).append("\" title=\"").append(linkTitle).append("\">")
+                    .append(text).append("</a>");
+        }
+
+
+        private void citation() {
+            this.citations++;
+            this.html.append("<sup id=\"cite_ref-").append(this.citations).append("\" class=\"reference\"><a href=\"#cite_note-")
+                    .append(this.citations).append("\">&#91;").append(this.citations).append("&#93;</a></sup>");
+        }
+
+
+        /**
+         * Writes a sentence of prose: capitalized, with links, italics, commas, years and citations.
+         */
+        private void sentence() {
+            int length = 8 + this.random.nextInt(22);
+            for (int i = 0; i < length; i++) {
+                String word = word();
+                if (i == 0) word = capitalize(word);
+                else this.html.append(this.random.nextDouble() < 0.06 ? ", " : " ");
+
+                double r = this.random.nextDouble();
+                if (r < 0.08) {
+                    link(word);
+                } else if (r < 0.10) {
+                    this.html.append("<i>").append(word).append("</i>");
+                } else if (r < 0.11) {
+                    this.html.append(1900 + this.random.nextInt(125));
+                } else if (r < 0.115) {
+                    this.html.append('(').append(word).append(' ').append(word()).append(')');
+                } else {
+                    this.html.append(word);
+                }
+            }
+            this.html.append(this.random.nextDouble() < 0.1 ? ";" : ".");
+            if (this.random.nextDouble() < 0.3) citation();
+        }
+
+
+        private void paragraph() {
+            this.html.append("<p>");
+            int sentences = 2 + this.random.nextInt(6);
+            for (int i = 0; i < sentences; i++) {
+                if (i > 0) this.html.append(' ');
+                sentence();
+            }
+            this.html.append("</p>\n");
+        }
+
+
+        private void list() {
+            this.html.append("<ul>");
+            int items = 3 + this.random.nextInt(4);
+            for (int i = 0; i < items; i++) {
+                this.html.append("<li>");
+                sentence();
+                this.html.append("</li>");
+            }
+            this.html.append("</ul>\n");
+        }
+
+
+        private void section(int number) {
+            String heading = capitalize(words(1 + this.random.nextInt(3)));
+            String id = heading.replace(' ', '_');
+            this.html.append("<h2><span class=\"mw-headline\" id=\"").append(id).append("\">").append(heading)
+                    .append("</span><span class=\"mw-editsection\"><span class=\"mw-editsection-bracket\">[</span><a href=\"/w/index.php?title=")
+                    .append(this.name).append("&amp;action=edit&amp;section=").append(number).append("\" title=\"Edit section: ")
+                    .append(heading).append("\"><span>edit</span></a><span class=\"mw-editsection-bracket\">]</span></span></h2>\n");
+
+            int subsections = this.random.nextInt(3);
+            for (int s = 0; s <= subsections; s++) {
+                if (s > 0) {
+                    this.html.append("<h3><span class=\"mw-headline\" id=\"s").append(number).append('_').append(s).append("\">")
+                            .append(capitalize(contentWord())).append("</span></h3>\n");
+                }
+                int paragraphs = 2 + this.random.nextInt(3);
+                for (int p = 0; p < paragraphs; p++) {
+                    paragraph();
+                }
+                if (this.random.nextDouble() < 0.35) list();
+            }
+        }
+
+
+        private void header() {
+            String description = switch (this.name) {
+                case "Ray_gun" -> "Fictional directed-energy weapon";
+                case "Science_fiction" -> "Genre of speculative fiction";
+                case "Artificial_intelligence" -> "Intelligence of machines";
+                default -> capitalize(words(3));
+            };
+            this.html.append("<!DOCTYPE html>\n<html class=\"client-nojs vector-feature-language-in-header-enabled\" lang=\"en\" dir=\"ltr\">\n<head>\n")
+                    .append("<meta charset=\"UTF-8\">\n<title>").append(this.title).append(" - Wikipedia</title>\n")
+                    .append("<script>document.documentElement.className=\"client-js\";RLCONF={\"wgPageName\":\"").append(this.name)
+                    .append("\",\"wgTitle\":\"").append(this.title).append("\",\"wgIsArticle\":true,\"wgAction\":\"view\"};")
+                    .append("RLPAGEMODULES=[\"ext.cite.ux-enhancements\",\"site\",\"mediawiki.page.ready\"];</script>\n")
+                    .append("<link rel=\"stylesheet\" href=\"/w/load.php?lang=en&amp;modules=ext.cite.styles%7Cskins.vector.styles&amp;only=styles&amp;skin=vector-2022\">\n")
+                    .append("<style>.mw-parser-output .hatnote{font-style:italic}.mw-parser-output .infobox{float:right}</style>\n")
+                    .append("<meta name=\"viewport\" content=\"width=1000\">\n")
+                    .append("<link rel=\"canonical\" href=\"https://en.wikipedia.org/wiki/").append(this.name).append("\">\n</head>\n")
+                    .append("<body class=\"skin-vector skin-vector-search-vue mediawiki ltr sitedir-ltr ns-0 ns-subject page-").append(this.name)
+                    .append(" rootpage-").append(this.name).append("\">\n")
+                    .append("<a class=\"mw-jump-link\" href=\"#bodyContent\">Jump to content</a>\n")
+                    .append("<div class=\"vector-header-container\"><header class=\"vector-header mw-header\">\n")
+                    .append("<nav class=\"vector-main-menu\" role=\"navigation\"><ul>");
+            String[][] menu = {{"n-main_page", "Main_Page", "Main Page"}, {"n-wikipedia:contents", "Wikipedia:Contents", "Contents"},
+                    {"n-portal:current_events", "Portal:Current_events", "Current events"}, {"n-special:random", "Special:Random", "Random"},
+                    {"n-wikipedia:about", "Wikipedia:About", "About"}, {"n-help:contents", "Help:Contents", "Contents"},
+                    {"n-special:recentchanges", "Special:RecentChanges", "RecentChanges"}};
+            for (String[] item : menu) {
+                this.html.append("<li id=\"").append(item[0]).append("\"><a href=\"/wiki/").append(item[1]).append("\"><span>")
+                        .append(item[2]).append("</span></a></li>");
+            }
+            this.html.append("</ul></nav>\n")
+                    .append("<a href=\"/wiki/Main_Page\" class=\"mw-logo\"><img class=\"mw-logo-icon\" src=\"/static/images/icons/wikipedia.png\" alt=\"\" aria-hidden=\"true\" height=\"50\" width=\"50\"></a>\n")
+                    .append("<form action=\"/w/index.php\" id=\"searchform\"><input type=\"search\" name=\"search\" placeholder=\"Search Wikipedia\" aria-label=\"Search Wikipedia\" accesskey=\"f\" id=\"searchInput\"></form>\n")
+                    .append("</header></div>\n")
+                    .append("<div class=\"mw-page-container\"><div class=\"mw-content-container\"><main id=\"content\" class=\"mw-body\" role=\"main\">\n")
+                    .append("<h1 id=\"firstHeading\" class=\"firstHeading mw-first-heading\"><span class=\"mw-page-title-main\">").append(this.title).append("</span></h1>\n")
+                    .append("<div id=\"bodyContent\" class=\"vector-body\"><div id=\"siteSub\" class=\"noprint\">From Wikipedia, the free encyclopedia</div>\n")
+                    .append("<div id=\"mw-content-text\" class=\"mw-body-content\"><div class=\"mw-content-ltr mw-parser-output\" lang=\"en\" dir=\"ltr\">")
+                    .append("<div class=\"shortdescription nomobile noexcerpt noprint searchaux\" style=\"display:none\">").append(description).append("</div>\n")
+                    .append("<div role=\"note\" class=\"hatnote navigation-not-searchable\">For other uses, see <a href=\"/wiki/").append(this.name)
+                    .append("_(disambiguation)\" class=\"mw-disambig\" title=\"").append(this.title).append(" (disambiguation)\">")
+                    .append(this.title).append(" (disambiguation)</a>.</div>\n");
+        }
+
+
+        private void infobox() {
+            this.html.append("<table class=\"infobox\"><tbody><tr><th colspan=\"2\" class=\"infobox-above\">").append(this.title).append("</th></tr>");
+            for (int i = 0; i < 8; i++) {
+                this.html.append("<tr><th scope=\"row\" class=\"infobox-label\">").append(capitalize(contentWord()))
+                        .append("</th><td class=\"infobox-data\">");
+                sentence();
+                this.html.append("</td></tr>");
+            }
+            this.html.append("</tbody></table>\n");
+        }
+
+
+        private void references() {
+            this.html.append("<h2><span class=\"mw-headline\" id=\"References\">References</span></h2>\n<div class=\"reflist\"><ol class=\"references\">\n");
+            for (int i = 1; i <= this.citations; i++) {
+                this.html.append("<li id=\"cite_note-").append(i).append("\"><span class=\"mw-cite-backlink\"><b><a href=\"#cite_ref-").append(i)
+                        .append("\">^</a></b></span> <span class=\"reference-text\"><cite class=\"citation web cs1\">").append(capitalize(contentWord()))
+                        .append(" <a rel=\"nofollow\" class=\"external text\" href=\"https://www.example.org/").append(contentWord()).append('/').append(i)
+                        .append("\">&quot;").append(capitalize(words(4 + this.random.nextInt(6)))).append("&quot;</a>. <i>")
+                        .append(capitalize(contentWord())).append("</i>. Retrieved ").append(1 + this.random.nextInt(28)).append(' ')
+                        .append(MONTHS[this.random.nextInt(12)]).append(' ').append(2000 + this.random.nextInt(24)).append(".</cite></span></li>\n");
+            }
+            this.html.append("</ol></div>\n");
+        }
+
+
+        private void navbox() {
+            this.html.append("<div role=\"navigation\" class=\"navbox\"><table class=\"nowraplinks\"><tbody>");
+            for (int group = 0; group < 6; group++) {
+                this.html.append("<tr><th scope=\"row\" class=\"navbox-group\">").append(capitalize(contentWord()))
+                        .append("</th><td class=\"navbox-list\"><ul>");
+                for (int i = 0; i < 12; i++) {
+                    String word = contentWord();
+                    this.html.append("<li><a href=\"/wiki/").append(capitalize(word)).append("\">").append(word).append("</a></li>");
+                }
+                this.html.append("</ul></td></tr>");
+            }
+            this.html.append("</tbody></table></div>\n<!-- \nNewPP limit report\nParsed by mw-api-int\nCPU time usage: 1.234 seconds\n-->\n</div></div>\n");
+        }
+
+
+        private void footer() {
+            this.html.append("<div id=\"catlinks\" class=\"catlinks\"><div id=\"mw-normal-catlinks\"><a href=\"/wiki/Help:Category\">Categories</a>: <ul>");
+            for (int i = 0; i < 8; i++) {
+                String word = contentWord();
+                this.html.append("<li><a href=\"/wiki/Category:").append(capitalize(word)).append("\">").append(word).append("</a></li>");
+            }
+            this.html.append("</ul></div></div>\n</div></main></div></div>\n")
+                    .append("<footer id=\"footer\" class=\"mw-footer\" role=\"contentinfo\"><ul id=\"footer-info\"><li id=\"footer-info-lastmod\"> This page was last edited on 2 May 2024, at 10:11<span class=\"anonymous-show\">&#160;(UTC)</span>.</li>")
+                    .append("<li id=\"footer-info-copyright\">Text is available under the <a rel=\"license\" href=\"//en.wikipedia.org/wiki/Wikipedia:Text_of_the_Creative_Commons_Attribution-ShareAlike_4.0_International_License\">Creative Commons Attribution-ShareAlike License 4.0</a>.</li></ul></footer>\n")
+                    .append("<script>(RLQ=window.RLQ||[]).push(function(){mw.config.set({\"wgBackendResponseTime\":132});});</script>\n")
+                    .append("</body>\n</html>\n");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Benchmarks the crawl loop end to end against a local HTTP server that serves the corpus.
+ * One operation visits one page the way Crawler.crawl does: mark it seen, download it over HTTP,
+ * queue its unseen links, extract its keywords and hand it to the database writer.
+ * Pages keep their Wikipedia urls; only the download goes to the local server, since the default
+ * url rules only admit en.wikipedia.org urls.
+ * Braden Zingler
+ */
+package com.java;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CrawlBenchmark {
+    private Path dir;
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String localUrl;
+    private List<String> pages;
+    private Frontier frontier;
+    private SeenSet seen;
+    private Lemmatizer lem;
+    private Database db;
+    private CrawlerConfig config;
+    private UrlFilter filter;
+    private Fetcher fetcher;
+    private long next;
+
+
+    @Setup
+    public void setup() throws IOException {
+        this.pages = Corpus.names();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/wiki/", exchange -> {
+            String name = exchange.getRequestURI().getPath().substring("/wiki/".length());
+            byte[] body = Corpus.page(name);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        this.serverThreads = Executors.newFixedThreadPool(2);
+        this.server.setExecutor(this.serverThreads);
+        this.server.start();
+        this.localUrl = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/wiki/";
+
+        this.dir = Corpus.tempDir();
+        this.config = Corpus.config(this.dir);
+        this.frontier = new Frontier(this.config);
+        this.seen = SeenSet.create(this.config);
+        this.filter = new UrlFilter(this.config);
+        this.lem = Corpus.lemmatizer();
+        this.db = new Database(this.config);
+        this.fetcher = new HttpFetcher(this.config);
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.db.closeConnection();
+        this.frontier.close();
+        this.server.stop(0);
+        this.serverThreads.shutdown();
+        Corpus.delete(this.dir);
+    }
+
+
+    @Benchmark
+    public Site crawlPage() throws Exception {
+        String name = this.pages.get((int) (this.next % this.pages.size()));
+        Site site = new Site(Corpus.url(name) + "_" + this.next++);
+
+        if (site.isValid(this.filter) && this.seen.add(site.getNormalizedUrl())) {
+            Document doc;
+            try (FetchResponse res = this.fetcher.fetch(this.localUrl + name)) {
+                res.requirePage();
+                doc = Jsoup.parse(res.getBody(), res.getCharset(), site.getUrl());
+            }
+            doc.outputSettings().charset("UTF-8");
+
+            for (Site link : site.extractLinks(doc, this.filter)) {
+                if (!this.seen.contains(link.getNormalizedUrl())) {
+                    this.frontier.add(link);
+                }
+            }
+            site.extractData(doc, this.lem);
+            this.db.submit(site);
+        }
+        return site;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Benchmarks Database.sendToDatabase, one page written and committed per operation, against a
+ * SQLite file in a scratch directory. Every operation stores a new url with the keywords of a
+ * corpus page, so the keyword table quickly holds every term and only the url and url_keywords
+ * rows are new, as in a long crawl. Runs once per crawler.db.mode: in bulk mode the keyword rows
+ * go to the staging table, and the merge into url_keywords happens at teardown, outside the timing.
+ * The preloadedKeywords param fills the keywords table of both files with that many made-up
+ * keywords before anything is timed, so the writes run against the dictionary and the keyword
+ * index of a crawl that has already seen a million distinct terms.
+ *
+ * sendWithKeywordSelects is the baseline from before the in-memory KeywordDictionary: the same
+ * page written to its own file with the same pragmas and tables, but every keyword id resolved
+ * with an INSERT OR IGNORE into keywords followed by a SELECT of its id. It does not keep the
+ * document counts sendToDatabase adds at commit, so it does slightly less work per page.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+    @Param({"Ray_gun", "Science_fiction", "Artificial_intelligence"})
+    public String page;
+
+    @Param({"bulk", "online"})
+    public String mode;
+
+    @Param({"0", "1000000"})
+    public int preloadedKeywords;
+
+    private Path dir;
+    private Database db;
+    private TermCounts keywords;
+    private String title;
+    private String description;
+    private long next;
+
+    private Connection baseline;
+    private PreparedStatement baselineUrlStmt;
+    private PreparedStatement baselineKeywordStmt;
+    private PreparedStatement baselineKeywordIdStmt;
+    private PreparedStatement baselineUrlKeywordsStmt;
+
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        Site site = new Site(Corpus.url(this.page));
+        site.extractData(Jsoup.parse(new ByteArrayInputStream(Corpus.page(this.page)), "UTF-8", site.getUrl()), Corpus.lemmatizer());
+        this.keywords = site.getTerms();
+        this.title = site.getTitle();
+        this.description = site.getDescription();
+
+        this.dir = Corpus.tempDir();
+        CrawlerConfig config = Corpus.config(this.dir).set("crawler.db.mode", this.mode);
+        new Database(config).closeConnection();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + config.getDatabasePath())) {
+            preloadKeywords(conn);
+        }
+        // Reopened so the dictionary loads the preloaded keywords
+        this.db = new Database(config);
+        openBaseline();
+    }
+
+
+    /**
+     * Creates the baseline's file with Database, then opens it again over plain JDBC.
+     */
+    private void openBaseline() throws SQLException {
+        CrawlerConfig config = Corpus.config(this.dir)
+                .set("crawler.db.mode", this.mode)
+                .set("crawler.db.path", this.dir.resolve("baseline.db"));
+        new Database(config).closeConnection();
+
+        boolean bulk = this.mode.equals("bulk");
+        this.baseline = DriverManager.getConnection("jdbc:sqlite:" + config.getDatabasePath());
+        try (Statement stmt = this.baseline.createStatement()) {
+            stmt.execute(Statements.SET_WAL_JOURNAL);
+            stmt.execute(Statements.SET_SYNCHRONOUS + (bulk ? "OFF" : "NORMAL"));
+            stmt.execute(Statements.SET_CACHE_KIB + (config.getDatabaseCacheMB() * 1024L));
+            stmt.execute(Statements.SET_TEMP_STORE_MEMORY);
+            stmt.execute(Statements.CREATE_URL_KEYWORDS_STAGING_TABLE);
+        }
+        preloadKeywords(this.baseline);
+        this.baseline.setAutoCommit(false);
+        this.baselineUrlStmt = this.baseline.prepareStatement(Statements.INSERT_URL, Statement.RETURN_GENERATED_KEYS);
+        this.baselineKeywordStmt = this.baseline.prepareStatement(Statements.INSERT_KEYWORDS);
+        this.baselineKeywordIdStmt = this.baseline.prepareStatement(Statements.GET_KEYWORD_ID);
+        this.baselineUrlKeywordsStmt = this.baseline.prepareStatement(bulk
+                ? Statements.INSERT_VALUES_URL_KEYWORDS_STAGING : Statements.INSERT_VALUES_URL_KEYWORDS);
+    }
+
+
+    /**
+     * Inserts preloadedKeywords made-up keywords into a database's keywords table in one transaction.
+     */
+    private void preloadKeywords(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement stmt = conn.prepareStatement(Statements.INSERT_KEYWORDS)) {
+            for (int i = 0; i < this.preloadedKeywords; i++) {
+                stmt.setString(1, Corpus.keyword(i));
+                stmt.addBatch();
+                if (i % 10000 == 9999) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.db.closeConnection();
+        this.baseline.close();
+        Corpus.delete(this.dir);
+    }
+
+
+    @Benchmark
+    public void sendToDatabase() {
+        this.db.sendToDatabase(new Site(Corpus.url(this.page) + "_" + this.next++, this.keywords, this.title, this.description));
+    }
+
+
+    @Benchmark
+    public void sendWithKeywordSelects() throws SQLException {
+        this.baselineUrlStmt.setString(1, Corpus.url(this.page) + "_" + this.next++);
+        this.baselineUrlStmt.setInt(2, this.keywords.size());
+        this.baselineUrlStmt.setString(3, this.description);
+        this.baselineUrlStmt.setString(4, this.title);
+        this.baselineUrlStmt.setNull(5, Types.VARCHAR);
+        this.baselineUrlStmt.setNull(6, Types.VARCHAR);
+        this.baselineUrlStmt.setNull(7, Types.INTEGER);
+        this.baselineUrlStmt.setNull(8, Types.INTEGER);
+        this.baselineUrlStmt.setNull(9, Types.INTEGER);
+        this.baselineUrlStmt.executeUpdate();
+        int urlId;
+        try (ResultSet keys = this.baselineUrlStmt.getGeneratedKeys()) {
+            keys.next();
+            urlId = keys.getInt(1);
+        }
+
+        for (int i = 0; i < this.keywords.size(); i++) {
+            String term = this.keywords.getTerm(i);
+            this.baselineKeywordStmt.setString(1, term);
+            this.baselineKeywordStmt.executeUpdate();
+            int keywordId;
+            this.baselineKeywordIdStmt.setString(1, term);
+            try (ResultSet rs = this.baselineKeywordIdStmt.executeQuery()) {
+                keywordId = rs.getInt(1);
+            }
+
+            this.baselineUrlKeywordsStmt.setInt(1, keywordId);
+            this.baselineUrlKeywordsStmt.setInt(2, urlId);
+            this.baselineUrlKeywordsStmt.setDouble(3, (double) this.keywords.getCount(i) / this.keywords.size());
+            this.baselineUrlKeywordsStmt.addBatch();
+        }
+        this.baselineUrlKeywordsStmt.executeBatch();
+        this.baseline.commit();
+    }
+}
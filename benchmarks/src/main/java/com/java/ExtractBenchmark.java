@@ -0,0 +1,99 @@
+/**
+ * Benchmarks page extraction on the corpus pages: building the Jsoup Document, extractLinks and
+ * extractData on an already parsed Document, the whole DOM path the crawler runs per page, and
+ * the single-pass streaming path.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractBenchmark {
+    @Param({"Ray_gun", "Science_fiction", "Artificial_intelligence"})
+    public String page;
+
+    private byte[] body;
+    private String url;
+    private Document doc;
+    private Lemmatizer lem;
+    private UrlFilter filter;
+
+
+    @Setup
+    public void setup() throws IOException {
+        this.body = Corpus.page(this.page);
+        this.url = Corpus.url(this.page);
+        this.doc = parseDocument();
+        this.lem = Corpus.lemmatizer();
+        this.filter = new UrlFilter(CrawlerConfig.load());
+    }
+
+
+    @Benchmark
+    public Document parse() throws IOException {
+        return parseDocument();
+    }
+
+
+    @Benchmark
+    public Set<Site> extractLinks() {
+        return new Site(this.url).extractLinks(this.doc, this.filter);
+    }
+
+
+    @Benchmark
+    public Site extractData() {
+        Site site = new Site(this.url);
+        site.extractData(this.doc, this.lem);
+        return site;
+    }
+
+
+    /**
+     * Everything Crawler does with a downloaded page when crawler.extract.streaming is off.
+     */
+    @Benchmark
+    public Set<Site> domPipeline() throws IOException {
+        Document doc = parseDocument();
+        Site site = new Site(this.url);
+        Set<Site> links = site.extractLinks(doc, this.filter);
+        site.extractData(doc, this.lem);
+        return links;
+    }
+
+
+    @Benchmark
+    public Set<Site> streaming() throws IOException {
+        return new Site(this.url).extractStreaming(new ByteArrayInputStream(this.body), "UTF-8", this.lem, this.filter);
+    }
+
+
+    private Document parseDocument() throws IOException {
+        Document doc = Jsoup.parse(new ByteArrayInputStream(this.body), "UTF-8", this.url);
+        doc.outputSettings().charset("UTF-8");
+        return doc;
+    }
+}
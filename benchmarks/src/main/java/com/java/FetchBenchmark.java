@@ -0,0 +1,176 @@
+/**
+ * Compares fetching a page with a fresh Jsoup.connect against the shared HttpFetcher, over a
+ * local HTTP server that serves the corpus gzip-compressed when the request asks for it.
+ * One operation downloads one page and parses it into a Document. Results are the average time
+ * per page, plus the wireBytes and fetches counters: wireBytes / fetches is the bytes on the
+ * wire per page. Add "-p latencyMillis=20" to simulate a remote server, where connection reuse
+ * matters more.
+ * Braden Zingler
+ */
+package com.java;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FetchBenchmark {
+    @Param({"0"})
+    public int latencyMillis;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String localUrl;
+    private List<String> pages;
+    private Map<String, byte[]> gzipped;
+    private AtomicLong sent;
+    private CrawlerConfig config;
+    private Fetcher fetcher;
+    private long next;
+
+
+    /**
+     * Bytes on the wire and pages fetched, reported alongside the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Transfer {
+        public long wireBytes;
+        public long fetches;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.wireBytes = 0;
+            this.fetches = 0;
+        }
+    }
+
+
+    @Setup
+    public void setup() throws IOException {
+        this.pages = Corpus.names();
+        this.gzipped = new HashMap<>();
+        for (String name : this.pages) {
+            this.gzipped.put(name, gzip(Corpus.page(name)));
+        }
+        this.sent = new AtomicLong();
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/wiki/", exchange -> {
+            String name = exchange.getRequestURI().getPath().substring("/wiki/".length());
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean compress = accept != null && accept.contains("gzip");
+            byte[] body = compress ? this.gzipped.get(name) : Corpus.page(name);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            if (compress) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            if (this.latencyMillis > 0) {
+                try {
+                    Thread.sleep(this.latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            this.sent.addAndGet(body.length);
+        });
+        this.serverThreads = Executors.newFixedThreadPool(2);
+        this.server.setExecutor(this.serverThreads);
+        this.server.start();
+        this.localUrl = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/wiki/";
+
+        this.config = CrawlerConfig.load();
+        this.fetcher = new HttpFetcher(this.config);
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.server.stop(0);
+        this.serverThreads.shutdown();
+    }
+
+
+    @Benchmark
+    public Document jsoupConnect(Transfer transfer) throws IOException {
+        String name = nextPage();
+        Connection.Response res = Jsoup.connect(this.localUrl + name).timeout(this.config.getFetchTimeoutMillis()).execute();
+        Document doc = Jsoup.parse(res.bodyStream(), res.charset(), Corpus.url(name));
+        count(transfer);
+        return doc;
+    }
+
+
+    @Benchmark
+    public Document sharedFetcher(Transfer transfer) throws IOException {
+        String name = nextPage();
+        Document doc;
+        try (FetchResponse res = this.fetcher.fetch(this.localUrl + name)) {
+            res.requirePage();
+            doc = Jsoup.parse(res.getBody(), res.getCharset(), Corpus.url(name));
+        }
+        count(transfer);
+        return doc;
+    }
+
+
+    private String nextPage() {
+        return this.pages.get((int) (this.next++ % this.pages.size()));
+    }
+
+
+    private void count(Transfer transfer) {
+        transfer.wireBytes += this.sent.getAndSet(0);
+        transfer.fetches++;
+    }
+
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Benchmarks per-host fetch control against a local server that misbehaves on purpose.
+ * Each operation is a full concurrent crawl of a GRAPH_SIZE page graph served on one host by
+ * Corpus.GraphServer: every /wiki/Page_N is a short page linking to ten pseudo-random other
+ * pages. The origin param says how the server behaves:
+ *   "healthy"     answers every request after latencyMillis, however many are in flight.
+ *   "overloaded"  serves CAPACITY requests at a time at latencyMillis, slows down in proportion
+ *                 past that, and answers 503 with Retry-After: 1 past one and a half times that.
+ *   "flaky"       answers like healthy, but one request in ten gets a 503 with no Retry-After.
+ * The control param is either "fixed", perHost slots and no retries, or "adaptive", starting
+ * at perHost slots and adjusting between 1 and 16, with retries.
+ * The pages counter is the pages crawled per operation, which falls short of the graph when
+ * pages are lost to errors along with the pages only they link to, and busy is the 503s sent.
+ * Braden Zingler
+ */
+package com.java;
+
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FetchControlBenchmark {
+    private static final int GRAPH_SIZE = 1000;
+    private static final int CAPACITY = 8;
+
+    @Param({"healthy", "overloaded", "flaky"})
+    public String origin;
+
+    @Param({"fixed", "adaptive"})
+    public String control;
+
+    @Param({"4", "16"})
+    public int perHost;
+
+    @Param({"100"})
+    public int latencyMillis;
+
+    private Path dir;
+    private Corpus.GraphServer server;
+    private AtomicLong busy;
+    private int run;
+
+
+    /**
+     * Pages crawled and 503s sent per operation, reported alongside the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long pages;
+        public long busy;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.pages = 0;
+            this.busy = 0;
+        }
+    }
+
+
+    @Setup
+    public void setup() {
+        this.busy = new AtomicLong();
+        this.server = new Corpus.GraphServer(GRAPH_SIZE, false, this::respond);
+        this.dir = Corpus.tempDir();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.server.stop();
+        Corpus.delete(this.dir);
+    }
+
+
+    /**
+     * Answers a request the way the origin param says, or returns how long to wait before the page.
+     */
+    private long respond(HttpExchange exchange, int inFlight) throws IOException {
+        long latency = this.latencyMillis;
+        if (this.origin.equals("overloaded")) {
+            if (inFlight > CAPACITY * 3 / 2) {
+                return busy(exchange, "1");
+            }
+            latency = latency * Math.max(inFlight, CAPACITY) / CAPACITY;
+        } else if (this.origin.equals("flaky") && ThreadLocalRandom.current().nextInt(10) == 0) {
+            return busy(exchange, null);
+        }
+        return latency;
+    }
+
+
+    private long busy(HttpExchange exchange, String retryAfter) throws IOException {
+        if (retryAfter != null) {
+            exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        }
+        exchange.sendResponseHeaders(503, -1);
+        this.busy.incrementAndGet();
+        return -1;
+    }
+
+
+    @Benchmark
+    public void crawl(Outcome outcome) {
+        Path runDir = this.dir.resolve("run" + this.run++);
+        boolean adaptive = this.control.equals("adaptive");
+        CrawlerConfig config = Corpus.config(runDir)
+                .set("crawler.urls.schemes", "http")
+                .set("crawler.urls.hosts", this.server.host())
+                .set("crawler.urls.excluded", "")
+                .set("crawler.robots.enabled", false)
+                .set("crawler.dedup.enabled", false)
+                .set("crawler.log.summaryMillis", 0)
+                .set("crawler.fetch.perHost", this.perHost)
+                .set("crawler.fetch.adaptive", adaptive)
+                .set("crawler.fetch.retries", adaptive ? 3 : 0)
+                .set("crawler.fetch.retryBaseMillis", 250);
+
+        long pagesBefore = CrawlMetrics.get().getPages();
+        this.busy.set(0);
+        new Crawler(this.server.url(0), config).crawlConcurrently();
+        outcome.pages += CrawlMetrics.get().getPages() - pagesBefore;
+        outcome.busy += this.busy.get();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Measures how much heap the crawler holds per url and per page, as AuxCounters next to the times.
+ *   queueSites    creates a Site for each of SITES urls, as the crawler does for every link it
+ *                 finds and every url it takes from the frontier. bytesPerSite is what the Sites
+ *                 keep alive, not counting the url Strings, which exist either way.
+ *   extractPages  runs the streaming extraction over the corpus pages ROUNDS times and keeps
+ *                 every Site. bytesPerPage is what one extracted page keeps alive until it is
+ *                 written: its keyword counts, title and description.
+ *   keywordDictionary  assigns ids to KEYWORDS made-up keywords in a KeywordDictionary, as the
+ *                 database writer does for every new keyword. bytesPerKeyword is the heap the
+ *                 dictionary keeps, and memoryBytesPerKeyword is what its memoryBytes reports.
+ *   keywordMap    puts the same keywords in a HashMap<String, Integer>, the usual alternative.
+ *                 bytesPerKeyword counts the map's Strings and Integers, which only it keeps.
+ * All of them read the used heap after a full collection before and after, so run them with one
+ * thread and nothing else in the JVM.
+ * JMH adds EVENTS counters up over the measurement iterations, so each counter reads five times
+ * the figure for one operation.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class FootprintBenchmark {
+    private static final int SITES = 1000000;
+    private static final int ROUNDS = 200;
+    private static final int KEYWORDS = 1000000;
+
+    private String[] urls;
+    private List<String> names;
+    private List<byte[]> bodies;
+    private Lemmatizer lem;
+    private UrlFilter filter;
+
+
+    /**
+     * Heap kept alive per object created, reported alongside the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long bytesPerSite;
+        public long bytesPerPage;
+        public long bytesPerKeyword;
+        public long memoryBytesPerKeyword;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.bytesPerSite = 0;
+            this.bytesPerPage = 0;
+            this.bytesPerKeyword = 0;
+            this.memoryBytesPerKeyword = 0;
+        }
+    }
+
+
+    @Setup
+    public void setup() throws IOException {
+        this.urls = new String[SITES];
+        for (int i = 0; i < SITES; i++) {
+            this.urls[i] = Corpus.BASE_URL + "Page_" + i;
+        }
+        this.names = Corpus.names();
+        this.bodies = new ArrayList<>();
+        for (String name : this.names) {
+            this.bodies.add(Corpus.page(name));
+        }
+        this.lem = Corpus.lemmatizer();
+        this.filter = new UrlFilter(CrawlerConfig.load());
+    }
+
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    @Benchmark
+    public Site[] queueSites(Footprint footprint) {
+        long before = usedHeap();
+        Site[] sites = new Site[SITES];
+        for (int i = 0; i < SITES; i++) {
+            sites[i] = new Site(this.urls[i]);
+        }
+        // the array holding them is not part of a Site
+        footprint.bytesPerSite = (usedHeap() - before - 16 - 4L * SITES) / SITES;
+        return sites;
+    }
+
+
+    @Benchmark
+    public List<Site> extractPages(Footprint footprint) throws IOException {
+        List<Site> sites = new ArrayList<>(ROUNDS * this.bodies.size());
+        long before = usedHeap();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < this.bodies.size(); i++) {
+                Site site = new Site(Corpus.url(this.names.get(i)));
+                site.extractStreaming(new ByteArrayInputStream(this.bodies.get(i)), "UTF-8", this.lem, this.filter);
+                sites.add(site);
+            }
+        }
+        footprint.bytesPerPage = (usedHeap() - before) / sites.size();
+        return sites;
+    }
+
+
+    @Benchmark
+    public KeywordDictionary keywordDictionary(Footprint footprint) {
+        long before = usedHeap();
+        KeywordDictionary dictionary = new KeywordDictionary();
+        for (int i = 0; i < KEYWORDS; i++) {
+            dictionary.assign(Corpus.keyword(i));
+        }
+        dictionary.commit();
+        footprint.bytesPerKeyword = (usedHeap() - before) / KEYWORDS;
+        footprint.memoryBytesPerKeyword = dictionary.memoryBytes() / KEYWORDS;
+        return dictionary;
+    }
+
+
+    @Benchmark
+    public Map<String, Integer> keywordMap(Footprint footprint) {
+        long before = usedHeap();
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < KEYWORDS; i++) {
+            map.put(Corpus.keyword(i), i + 1);
+        }
+        footprint.bytesPerKeyword = (usedHeap() - before) / KEYWORDS;
+        return map;
+    }
+}
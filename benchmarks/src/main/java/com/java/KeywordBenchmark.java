@@ -0,0 +1,83 @@
+/**
+ * Benchmarks keyword filtering on the text of the corpus pages: the Tokenizer pass that
+ * Site.filterKeywords runs over a whole page, and the per-word Keyword.isStopword and isWord checks.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeywordBenchmark {
+    @Param({"Ray_gun", "Science_fiction", "Artificial_intelligence"})
+    public String page;
+
+    private String text;
+    private Keyword[] words;
+    private int next;
+    private Tokenizer tokenizer;
+    private Lemmatizer lem;
+
+
+    @Setup
+    public void setup() throws IOException {
+        this.text = Jsoup.parse(new ByteArrayInputStream(Corpus.page(this.page)), "UTF-8", Corpus.url(this.page))
+                .select("p, h1, h2, h3, h4, h5, h6, title").text();
+
+        String[] split = this.text.split("\\s+");
+        this.words = new Keyword[split.length];
+        for (int i = 0; i < split.length; i++) {
+            this.words[i] = new Keyword(split[i].toLowerCase().strip());
+        }
+        this.tokenizer = new Tokenizer();
+        this.lem = Corpus.lemmatizer();
+    }
+
+
+    /**
+     * The whole page through the tokenizer, as Site.filterKeywords does.
+     */
+    @Benchmark
+    public TermCounts filterKeywords() {
+        return this.tokenizer.countKeywords(this.text, this.lem);
+    }
+
+
+    @Benchmark
+    public boolean isStopword() {
+        return nextWord().isStopword();
+    }
+
+
+    @Benchmark
+    public boolean isWord() {
+        return nextWord().isWord();
+    }
+
+
+    private Keyword nextWord() {
+        Keyword word = this.words[this.next];
+        this.next = this.next + 1 == this.words.length ? 0 : this.next + 1;
+        return word;
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Benchmarks Lemmatizer.lemmatizeWord over the words of the corpus, in page order,
+ * so the mix of hits and misses is the one a crawl sees.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LemmatizerBenchmark {
+    private String[] words;
+    private int next;
+    private Lemmatizer lem;
+
+
+    @Setup
+    public void setup() {
+        List<String> words = new ArrayList<>();
+        for (String name : Corpus.names()) {
+            String text = Jsoup.parse(new String(Corpus.page(name), StandardCharsets.UTF_8), Corpus.url(name))
+                    .select("p, h1, h2, h3, h4, h5, h6, title").text();
+            for (String word : text.split("\\s+")) {
+                Keyword keyword = new Keyword(word.toLowerCase().strip());
+                if (!keyword.isStopword() && keyword.isWord() && word.length() > 1) {
+                    words.add(keyword.getWord());
+                }
+            }
+        }
+        this.words = words.toArray(new String[0]);
+        this.lem = Corpus.lemmatizer();
+    }
+
+
+    @Benchmark
+    public String lemmatizeWord() {
+        String word = this.words[this.next];
+        this.next = this.next + 1 == this.words.length ? 0 : this.next + 1;
+        return this.lem.lemmatizeWord(word);
+    }
+}
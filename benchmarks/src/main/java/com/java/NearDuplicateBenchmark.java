@@ -0,0 +1,89 @@
+/**
+ * Benchmarks the near-duplicate check. The lookup benchmark fills a NearDuplicateIndex with
+ * numPages random signatures and times contains() for a mix of unseen signatures and ones a bit
+ * away from a stored signature, in sample mode so the results include p50 and p99 latencies.
+ * The simHash benchmark times computing the signature of a corpus page's extracted keywords.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class NearDuplicateBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"1000000", "4000000"})
+    public int numPages;
+
+    @Param({"3"})
+    public int maxDistance;
+
+    private NearDuplicateIndex index;
+    private long[] queries;
+    private TermCounts keywords;
+    private int next;
+
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        long[] stored = new long[this.numPages];
+        this.index = new NearDuplicateIndex(this.maxDistance, 0);
+        for (int i = 0; i < stored.length; i++) {
+            stored[i] = random.nextLong();
+            this.index.add(stored[i]);
+        }
+
+        // half unseen, half one to maxDistance bits from a stored page
+        this.queries = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long query = random.nextLong();
+            if ((i & 1) == 1) {
+                query = stored[random.nextInt(stored.length)];
+                for (int flips = 1 + random.nextInt(Math.max(1, this.maxDistance)); flips > 0; flips--) {
+                    query ^= 1L << random.nextInt(64);
+                }
+            }
+            this.queries[i] = query;
+        }
+        System.out.printf("%n%d signatures in %d MB%n", this.index.size(), this.index.memoryBytes() >> 20);
+
+        Site site = new Site(Corpus.url("Science_fiction"));
+        site.extractData(Jsoup.parse(new ByteArrayInputStream(Corpus.page("Science_fiction")), "UTF-8", site.getUrl()), Corpus.lemmatizer());
+        this.keywords = site.getTerms();
+    }
+
+
+    @Benchmark
+    public boolean lookup() {
+        return this.index.contains(this.queries[this.next++ & (QUERIES - 1)]);
+    }
+
+
+    @Benchmark
+    public long simHash() {
+        return NearDuplicateIndex.simHash(this.keywords);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Benchmarks lookups on the url_keywords table after a crawl has been written in each
+ * crawler.db.mode. Setup loads numPages generated pages of 50 to 300 keywords through the
+ * database's background writer, closes it so a bulk load is merged, and prints how long the
+ * load took. The keyword query reads one keyword's best ten urls, as a search does; the url
+ * query reads every keyword of one page. Both go straight through JDBC, so only SQLite is timed.
+ * Runs in sample mode, so the results include the p50, p99 and p99.9 latencies.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+    private static final String TOP_URLS = "SELECT url_id FROM url_keywords WHERE keyword_id = ? ORDER BY term_frequency DESC LIMIT 10";
+    private static final String PAGE_KEYWORDS = "SELECT keyword_id, term_frequency FROM url_keywords WHERE url_id = ?";
+
+    @Param({"bulk", "online"})
+    public String mode;
+
+    @Param({"20000"})
+    public int numPages;
+
+    @Param({"50000"})
+    public int vocabulary;
+
+    private Path dir;
+    private Connection conn;
+    private PreparedStatement topUrls;
+    private PreparedStatement pageKeywords;
+    private Random random;
+
+
+    @Setup
+    public void setup() throws SQLException, InterruptedException {
+        this.dir = Corpus.tempDir();
+        CrawlerConfig config = Corpus.config(this.dir).set("crawler.db.mode", this.mode);
+        this.random = new Random(42);
+
+        long start = System.nanoTime();
+        Database db = new Database(config);
+        for (int page = 0; page < this.numPages; page++) {
+            TermCounts keywords = new TermCounts(300);
+            for (int terms = 50 + this.random.nextInt(251); keywords.size() < terms; ) {
+                keywords.add(word(zipf()), 1);
+            }
+            db.submit(new Site(Corpus.BASE_URL + "Page_" + page, keywords, "Page " + page, ""));
+        }
+        db.closeConnection();
+        System.out.printf("%nLoaded %d pages in %s mode in %.1f s%n", this.numPages, this.mode, (System.nanoTime() - start) / 1e9);
+
+        this.conn = DriverManager.getConnection("jdbc:sqlite:" + config.getDatabasePath());
+        this.topUrls = this.conn.prepareStatement(TOP_URLS);
+        this.pageKeywords = this.conn.prepareStatement(PAGE_KEYWORDS);
+    }
+
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        this.conn.close();
+        Corpus.delete(this.dir);
+    }
+
+
+    @Benchmark
+    public int keywordQuery() throws SQLException {
+        this.topUrls.setInt(1, zipf());
+        return count(this.topUrls);
+    }
+
+
+    @Benchmark
+    public int urlQuery() throws SQLException {
+        this.pageKeywords.setInt(1, 1 + this.random.nextInt(this.numPages));
+        return count(this.pageKeywords);
+    }
+
+
+    private static int count(PreparedStatement stmt) throws SQLException {
+        int rows = 0;
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) rows++;
+        }
+        return rows;
+    }
+
+
+    /**
+     * Picks a keyword id so that id r is roughly 1/r as likely as id 1. Keywords are numbered in
+     * the order they are first seen, so common keywords also get small ids.
+     */
+    private int zipf() {
+        double x = Math.pow(this.vocabulary, this.random.nextDouble());
+        return Math.min(this.vocabulary, (int) x);
+    }
+
+
+    /**
+     * Spells a number in letters, since keywords are words.
+     */
+    private static String word(int id) {
+        StringBuilder word = new StringBuilder("q");
+        for (int n = id; n > 0; n /= 26) {
+            word.append((char) ('a' + n % 26));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Benchmarks one Recrawler pass over every corpus page, against a local HTTP server.
+ * Setup stores the pages' urls in a scratch database and runs a first pass, so the database
+ * holds each page's keywords, validators and content hash. Each operation is then a full
+ * refresh pass, with the server behaving as the server param says:
+ * "etag" sends an ETag and answers 304 when it comes back, "plain" sends no validators so
+ * every page is downloaded and hashed, and "changing" alters every page on every pass, so
+ * every page is extracted and its keyword rows rewritten, as a full re-crawl would.
+ * The wireBytes counter is the body bytes the server sent per pass.
+ * Braden Zingler
+ */
+package com.java;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RecrawlBenchmark {
+    @Param({"etag", "plain", "changing"})
+    public String server;
+
+    private Path dir;
+    private HttpServer http;
+    private ExecutorService serverThreads;
+    private AtomicLong sent;
+    private AtomicInteger pass;
+    private CrawlerConfig config;
+
+
+    /**
+     * Body bytes sent by the server, reported alongside the timings.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Transfer {
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.wireBytes = 0;
+        }
+    }
+
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        this.sent = new AtomicLong();
+        this.pass = new AtomicInteger();
+        this.http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.http.createContext("/wiki/", exchange -> {
+            String name = exchange.getRequestURI().getPath().substring("/wiki/".length());
+            byte[] body = Corpus.page(name);
+            if (this.server.equals("changing")) {
+                body = (new String(body, StandardCharsets.UTF_8) + "<p>revision" + (char) ('a' + this.pass.get() % 26) + "</p>")
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            if (this.server.equals("etag")) {
+                String etag = "\"" + name + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            this.sent.addAndGet(body.length);
+        });
+        this.serverThreads = Executors.newFixedThreadPool(4);
+        this.http.setExecutor(this.serverThreads);
+        this.http.start();
+        String localUrl = "http://127.0.0.1:" + this.http.getAddress().getPort() + "/wiki/";
+
+        this.dir = Corpus.tempDir();
+        this.config = Corpus.config(this.dir)
+                .set("crawler.robots.enabled", false)
+                .set("crawler.log.summaryMillis", 0)
+                .set("crawler.recrawl.minAgeMillis", -60000);
+
+        Database db = new Database(this.config);
+        for (String name : Corpus.names()) {
+            db.submit(new Site(localUrl + name, new TermCounts(0), name, ""));
+        }
+        db.closeConnection();
+        new Recrawler(this.config).recrawl();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        this.http.stop(0);
+        this.serverThreads.shutdown();
+        Corpus.delete(this.dir);
+    }
+
+
+    @Benchmark
+    public void refreshPass(Transfer transfer) {
+        this.pass.incrementAndGet();
+        this.sent.set(0);
+        new Recrawler(this.config).recrawl();
+        transfer.wireBytes += this.sent.get();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Benchmarks query latency on the in-memory SearchIndex over a generated index.
+ * The index has numDocs pages of 10 to 40 keywords each, about 5 million postings at the default
+ * size, with keywords drawn from a Zipf-like distribution over vocabulary words so a few are very
+ * common and most are rare, as in the crawled pages. Each operation answers one query of one to
+ * three words through the full path: tokenizing, lemmatizing, lookup and top-10 ranking.
+ * Runs in sample mode, so the results include the p50, p99 and p99.9 latencies.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+    private static final int QUERIES = 4096;
+
+    @Param({"200000"})
+    public int numDocs;
+
+    @Param({"100000"})
+    public int vocabulary;
+
+    private SearchIndex index;
+    private Lemmatizer lem;
+    private String[] queries;
+    private int next;
+
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        SearchIndex.Builder builder = new SearchIndex.Builder();
+        for (int id = 1; id <= this.vocabulary; id++) {
+            builder.addKeyword(id, word(id));
+        }
+
+        boolean[] onPage = new boolean[this.vocabulary + 1];
+        int[] pageTerms = new int[40];
+        for (int doc = 1; doc <= this.numDocs; doc++) {
+            builder.addDocument(doc, Corpus.BASE_URL + "Page_" + doc, "Page " + doc);
+
+            int terms = 10 + random.nextInt(31);
+            int n = 0;
+            for (int i = 0; i < terms; i++) {
+                int id = zipf(random);
+                if (onPage[id]) continue;
+                onPage[id] = true;
+                pageTerms[n++] = id;
+                builder.addPosting(id, doc, (1 + random.nextInt(5)) / (float) terms);
+            }
+            for (int i = 0; i < n; i++) {
+                onPage[pageTerms[i]] = false;
+            }
+        }
+        this.index = builder.build();
+        this.lem = new Lemmatizer(LemmaTable.build(new HashMap<>()));
+
+        this.queries = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            StringBuilder query = new StringBuilder(word(zipf(random)));
+            for (int extra = random.nextInt(3); extra > 0; extra--) {
+                query.append(' ').append(word(zipf(random)));
+            }
+            this.queries[q] = query.toString();
+        }
+        System.out.printf("%n%d pages, %d postings, %d MB of posting lists%n", this.index.getNumDocs(),
+                this.index.getNumPostings(), this.index.postingBytes() >> 20);
+    }
+
+
+    @Benchmark
+    public List<SearchIndex.Result> search() {
+        return this.index.search(this.queries[this.next++ & (QUERIES - 1)], 10, this.lem);
+    }
+
+
+    /**
+     * Picks a keyword id so that id r is roughly 1/r as likely as id 1.
+     */
+    private int zipf(Random random) {
+        double x = Math.pow(this.vocabulary, random.nextDouble());
+        return Math.min(this.vocabulary, (int) x);
+    }
+
+
+    /**
+     * Spells a keyword id in letters, since the tokenizer drops words with digits.
+     */
+    private static String word(int id) {
+        StringBuilder word = new StringBuilder("q");
+        for (int n = id; n > 0; n /= 26) {
+            word.append((char) ('a' + n % 26));
+        }
+        return word.toString();
+    }
+}
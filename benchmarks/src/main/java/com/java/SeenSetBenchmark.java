@@ -0,0 +1,109 @@
+/**
+ * Compares the exact FingerprintSeenSet with the BloomSeenSet at 1 and 10 million urls,
+ * each sized for the url count through crawler.seen.expected.
+ *   fill      adds every url to an empty set, timing the whole fill.
+ *   contains  looks up urls in a full set, alternating ones it holds and ones it does not,
+ *             as the crawler does for every link it finds.
+ * The setup fills one set and prints its memory per url, both its own memoryBytes and the heap
+ * it keeps alive after a full collection, and how many of a million urls that were never added
+ * it claims to hold.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SeenSetBenchmark {
+    private static final int ABSENT = 1000000;
+
+    @Param({"exact", "bloom"})
+    public String type;
+
+    @Param({"1000000", "10000000"})
+    public int urls;
+
+    private CrawlerConfig config;
+    private String[] present;
+    private String[] absent;
+    private SeenSet full;
+    private int next;
+
+
+    @Setup
+    public void setup() {
+        this.config = CrawlerConfig.load()
+                .set("crawler.seen.type", this.type)
+                .set("crawler.seen.expected", this.urls);
+        this.present = new String[this.urls];
+        for (int i = 0; i < this.urls; i++) {
+            this.present[i] = Corpus.BASE_URL + "Page_" + i;
+        }
+        this.absent = new String[ABSENT];
+        for (int i = 0; i < ABSENT; i++) {
+            this.absent[i] = Corpus.BASE_URL + "Missing_" + i;
+        }
+
+        long before = usedHeap();
+        this.full = SeenSet.create(this.config);
+        for (String url : this.present) {
+            this.full.add(url);
+        }
+        long heap = usedHeap() - before;
+        int falsePositives = 0;
+        for (String url : this.absent) {
+            if (this.full.contains(url)) falsePositives++;
+        }
+        System.out.printf("%n%s set of %,d urls: %.1f bytes per url (%.1f on the heap), %,d of %,d unseen urls reported as seen%n",
+                this.type, this.urls, (double) this.full.memoryBytes() / this.urls, (double) heap / this.urls, falsePositives, ABSENT);
+    }
+
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public SeenSet fill() {
+        SeenSet set = SeenSet.create(this.config);
+        for (String url : this.present) {
+            set.add(url);
+        }
+        return set;
+    }
+
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public boolean contains() {
+        int i = this.next++;
+        String url = (i & 1) == 0 ? this.present[(i >>> 1) % this.urls] : this.absent[(i >>> 1) % ABSENT];
+        if (this.next == Integer.MAX_VALUE) this.next = 0;
+        return this.full.contains(url);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Benchmarks writing a crawl to 1, 2 and 4 database shards, and merging the shards afterwards.
+ *   ingest  opens a fresh store with crawler.db.shards shards, submits PAGES pages carrying the
+ *           keywords of the corpus pages, and closes it, which waits for every writer and, in
+ *           bulk mode, merges each shard's staged rows. The time is the whole ingestion, so
+ *           pages per second is PAGES over it. With one shard a single writer thread does all of
+ *           it; with more, each shard's writer works through its share alongside the others.
+ *   merge   combines a set of shards written once in setup into a fresh database, as Main's
+ *           "merge" argument does.
+ * The pages are generated once, spread over 5000 extra made-up terms so the keyword table grows
+ * as it would over a long crawl instead of holding only the corpus terms.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ShardBenchmark {
+    private static final int PAGES = 2000;
+    private static final int EXTRA_TERMS = 5000;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private Path dir;
+    private Site[] pages;
+    private List<String> mergeSources;
+    private int run;
+
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        Lemmatizer lem = Corpus.lemmatizer();
+        List<String> names = Corpus.names();
+        Site[] corpus = new Site[names.size()];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = new Site(Corpus.url(names.get(i)));
+            corpus[i].extractData(Jsoup.parse(new ByteArrayInputStream(Corpus.page(names.get(i))), "UTF-8", corpus[i].getUrl()), lem);
+        }
+
+        Random random = new Random(42);
+        this.pages = new Site[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            Site page = corpus[i % corpus.length];
+            TermCounts terms = new TermCounts(page.getTerms().size() + 20);
+            for (int t = 0; t < page.getTerms().size(); t++) {
+                terms.add(page.getTerms().getTerm(t), page.getTerms().getCount(t));
+            }
+            for (int t = 0; t < 20; t++) {
+                terms.add("x" + random.nextInt(EXTRA_TERMS), 1);
+            }
+            this.pages[i] = new Site(page.getUrl() + "_" + i, terms, page.getTitle(), page.getDescription());
+        }
+
+        this.dir = Corpus.tempDir();
+        CrawlerConfig source = config(this.dir.resolve("source.db"));
+        write(source);
+        this.mergeSources = this.shards > 1 ? ShardedDatabase.shardPaths(source) : List.of(source.getDatabasePath());
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        Corpus.delete(this.dir);
+    }
+
+
+    private CrawlerConfig config(Path db) {
+        return Corpus.config(this.dir)
+                .set("crawler.db.path", db)
+                .set("crawler.db.shards", this.shards)
+                .set("crawler.dedup.enabled", false);
+    }
+
+
+    private void write(CrawlerConfig config) throws InterruptedException {
+        PageStore store = PageStore.open(config);
+        for (Site page : this.pages) {
+            store.submit(page);
+        }
+        store.closeConnection();
+    }
+
+
+    @Benchmark
+    public void ingest() throws InterruptedException {
+        write(config(this.dir.resolve("ingest" + this.run++ + ".db")));
+    }
+
+
+    @Benchmark
+    public void merge() {
+        Database db = new Database(config(this.dir.resolve("merged" + this.run++ + ".db")));
+        db.mergeShards(this.mergeSources);
+        db.closeConnection();
+    }
+}
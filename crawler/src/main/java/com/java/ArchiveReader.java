@@ -0,0 +1,225 @@
+/**
+ * Reads back the pages written by PageArchive, segment by segment in the order they were written,
+ * or newest first so that the first record read for a url is its latest fetch.
+ * Reading only copies each record's compressed bytes out of its segment; decode does the
+ * decompression and parsing, so it can be spread across threads while one thread reads.
+ * Index entries that run past the end of their segment (a crash mid-write) are skipped.
+ * Not thread safe.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+
+public class ArchiveReader implements Closeable {
+    private File dir;
+    private int[] segments;
+    private boolean newestFirst;
+    private int next;
+    private FileChannel data;
+    private List<String> index;
+    private int line;
+
+
+    /**
+     * Opens an archive directory for reading in the order the records were written.
+     * @param dir the directory PageArchive wrote to.
+     */
+    public ArchiveReader(File dir) {
+        this(dir, false);
+    }
+
+
+    /**
+     * Opens an archive directory for reading.
+     * @param dir the directory PageArchive wrote to.
+     * @param newestFirst whether to read the last segment first and each segment from its end.
+     */
+    public ArchiveReader(File dir, boolean newestFirst) {
+        this.dir = dir;
+        this.segments = PageArchive.segments(dir);
+        this.newestFirst = newestFirst;
+    }
+
+
+    /**
+     * Reads the next record.
+     * @return the record, or null once every segment has been read.
+     */
+    public Record next() throws IOException {
+        while (true) {
+            if (this.index == null) {
+                if (this.next == this.segments.length) return null;
+                int segment = this.newestFirst ? this.segments[this.segments.length - 1 - this.next] : this.segments[this.next];
+                this.next++;
+                openSegment(segment);
+            }
+
+            if (this.line == this.index.size()) {
+                closeSegment();
+                continue;
+            }
+            String line = this.index.get(this.line++);
+
+            String[] fields = line.split(" ", 3);
+            if (fields.length < 3) continue;
+            long offset = Long.parseLong(fields[0]);
+            int length = Integer.parseInt(fields[1]);
+            if (offset + length > this.data.size()) continue;
+
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining()) {
+                if (this.data.read(buf, offset + buf.position()) < 0) throw new EOFException();
+            }
+            return new Record(fields[2], buf.array());
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        this.next = this.segments.length;
+    }
+
+
+    private void openSegment(int segment) throws IOException {
+        this.data = FileChannel.open(PageArchive.segmentFile(this.dir, segment).toPath(), StandardOpenOption.READ);
+        // An index holds one short line per record, so it is read whole to be walked either way
+        this.index = Files.readAllLines(PageArchive.indexFile(this.dir, segment).toPath(), StandardCharsets.UTF_8);
+        if (this.newestFirst) {
+            Collections.reverse(this.index);
+        }
+        this.line = 0;
+    }
+
+
+    private void closeSegment() throws IOException {
+        if (this.index != null) {
+            this.data.close();
+            this.index = null;
+            this.data = null;
+        }
+    }
+
+
+    /**
+     * Decompresses a record and splits it into the HTTP status, headers and body.
+     * @param record a record returned by next.
+     * @return the archived page.
+     */
+    public static Page decode(Record record) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(record.compressed), 64 * 1024)) {
+            byte[] bytes = in.readAllBytes();
+
+            // WARC headers, then the HTTP status line and headers, each block ending in a blank line
+            int warcEnd = headerEnd(bytes, 0);
+            int httpEnd = headerEnd(bytes, warcEnd);
+            String[] http = new String(bytes, warcEnd, httpEnd - warcEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+
+            String[] statusLine = http[0].split(" ", 3);
+            int status = Integer.parseInt(statusLine[1]);
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (int i = 1; i < http.length; i++) {
+                int colon = http[i].indexOf(':');
+                if (colon > 0) {
+                    headers.put(http[i].substring(0, colon), http[i].substring(colon + 1).strip());
+                }
+            }
+
+            int length = Integer.parseInt(headers.getOrDefault("Content-Length", "0"));
+            byte[] body = new byte[Math.min(length, bytes.length - httpEnd)];
+            System.arraycopy(bytes, httpEnd, body, 0, body.length);
+            return new Page(record.url, status, headers, body);
+        }
+    }
+
+
+    /**
+     * @return the index just past the next "\r\n\r\n" at or after from.
+     */
+    private static int headerEnd(byte[] bytes, int from) throws IOException {
+        for (int i = from; i + 3 < bytes.length; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        throw new IOException("Malformed archive record");
+    }
+
+
+    /**
+     * A record as stored: its url and the compressed WARC record.
+     */
+    public static class Record {
+        final String url;
+        final byte[] compressed;
+
+        Record(String url, byte[] compressed) {
+            this.url = url;
+            this.compressed = compressed;
+        }
+
+        public String getUrl() {
+            return this.url;
+        }
+    }
+
+
+    /**
+     * A decoded archived response.
+     */
+    public static class Page {
+        final String url;
+        final int status;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Page(String url, int status, Map<String, String> headers, byte[] body) {
+            this.url = url;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return this.url;
+        }
+
+        public int getStatus() {
+            return this.status;
+        }
+
+        public byte[] getBody() {
+            return this.body;
+        }
+
+        /**
+         * @return the charset named in the Content-Type header, or null if there is none.
+         */
+        public String getCharset() {
+            for (Map.Entry<String, String> header : this.headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase("Content-Type")) {
+                    return FetchResponse.charsetOf(header.getValue());
+                }
+            }
+            return null;
+        }
+    }
+}
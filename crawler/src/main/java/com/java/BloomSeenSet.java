@@ -0,0 +1,162 @@
+/**
+ * A scalable Bloom filter seen set. It never forgets a url, but may wrongly report an unseen url
+ * as seen with roughly the configured false positive rate, in exchange for ~1.5-2 bytes per url
+ * at a 0.1% rate. When a filter fills up, a larger one with a tighter rate is added so the
+ * combined rate stays under the target however many urls arrive.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class BloomSeenSet implements SeenSet {
+    private static final int SEGMENT_BITS = 4;
+
+    private Segment[] segments;
+
+
+    /**
+     * Creates a new BloomSeenSet.
+     * @param expectedUrls the number of urls the first filters are sized for.
+     * @param falsePositiveRate the target chance that an unseen url is reported as seen.
+     */
+    public BloomSeenSet(long expectedUrls, double falsePositiveRate) {
+        long perSegment = Math.max(1024, expectedUrls >> SEGMENT_BITS);
+
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment(perSegment, falsePositiveRate);
+        }
+    }
+
+
+    @Override
+    public boolean add(String url) {
+        return addFingerprint(SeenSet.fingerprint(url));
+    }
+
+
+    @Override
+    public boolean addFingerprint(long fp) {
+        return segmentFor(fp).add(fp);
+    }
+
+
+    @Override
+    public boolean contains(String url) {
+        long fp = SeenSet.fingerprint(url);
+        return segmentFor(fp).contains(fp);
+    }
+
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                for (Filter filter : segment.filters) {
+                    size += filter.count;
+                }
+            }
+        }
+        return size;
+    }
+
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                for (Filter filter : segment.filters) {
+                    bytes += 8L * filter.bits.length;
+                }
+            }
+        }
+        return bytes;
+    }
+
+
+    private Segment segmentFor(long fp) {
+        return this.segments[(int) (fp >>> (64 - SEGMENT_BITS))];
+    }
+
+
+    /**
+     * The growing list of filters for one slice of the fingerprint space.
+     */
+    private static class Segment {
+        List<Filter> filters;
+        double falsePositiveRate;
+
+        Segment(long capacity, double falsePositiveRate) {
+            this.filters = new ArrayList<>();
+            this.falsePositiveRate = falsePositiveRate;
+
+            // Each new filter gets half the error budget of the last, so the sum stays under the target
+            this.filters.add(new Filter(capacity, falsePositiveRate / 2));
+        }
+
+        synchronized boolean add(long fp) {
+            if (contains(fp)) return false;
+
+            Filter last = this.filters.get(this.filters.size() - 1);
+            if (last.count >= last.capacity) {
+                double rate = this.falsePositiveRate / (2L << this.filters.size());
+                last = new Filter(last.capacity * 2, rate);
+                this.filters.add(last);
+            }
+            last.add(fp);
+            return true;
+        }
+
+        synchronized boolean contains(long fp) {
+            for (int i = 0; i < this.filters.size(); i++) {
+                if (this.filters.get(i).mightContain(fp)) return true;
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * A fixed-size Bloom filter using double hashing over the two halves of the fingerprint.
+     */
+    private static class Filter {
+        long[] bits;
+        long numBits;
+        int numHashes;
+        long capacity;
+        long count;
+
+        Filter(long capacity, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            this.capacity = capacity;
+            this.numBits = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2)));
+            this.numHashes = Math.max(1, (int) Math.round((double) this.numBits / capacity * ln2));
+            this.bits = new long[(int) ((this.numBits + 63) >>> 6)];
+        }
+
+        void add(long fp) {
+            int h1 = (int) fp;
+            int h2 = (int) (fp >>> 32) | 1;
+            for (int i = 0; i < this.numHashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, this.numBits);
+                this.bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            this.count++;
+        }
+
+        boolean mightContain(long fp) {
+            int h1 = (int) fp;
+            int h2 = (int) (fp >>> 32) | 1;
+            for (int i = 0; i < this.numHashes; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, this.numBits);
+                if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+    }
+}
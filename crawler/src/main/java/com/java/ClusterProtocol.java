@@ -0,0 +1,108 @@
+/**
+ * The messages a partitioned crawl sends over its local sockets, each a type byte then its fields,
+ * written with DataOutputStream:
+ *   HELLO   worker to coordinator: the worker's index and the port it takes links on
+ *   PEERS   coordinator to workers: every worker's link port, by index
+ *   LINKS   worker to worker, or coordinator to worker for seeds: a batch of urls the receiver owns
+ *   STATUS  worker to coordinator: pages crawled, frontier size, whether idle, links sent and received
+ *   STOP    coordinator to workers: finish up and exit
+ * Callers flush; a batch of links goes out as one write.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+
+public final class ClusterProtocol {
+    public static final byte HELLO = 1;
+    public static final byte PEERS = 2;
+    public static final byte LINKS = 3;
+    public static final byte STATUS = 4;
+    public static final byte STOP = 5;
+
+
+    private ClusterProtocol() {
+    }
+
+
+    public static void writeHello(DataOutputStream out, int index, int port) throws IOException {
+        out.writeByte(HELLO);
+        out.writeInt(index);
+        out.writeInt(port);
+    }
+
+
+    public static void writePeers(DataOutputStream out, int[] ports) throws IOException {
+        out.writeByte(PEERS);
+        out.writeInt(ports.length);
+        for (int port : ports) {
+            out.writeInt(port);
+        }
+    }
+
+
+    public static int[] readPeers(DataInputStream in) throws IOException {
+        int[] ports = new int[in.readInt()];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = in.readInt();
+        }
+        return ports;
+    }
+
+
+    public static void writeLinks(DataOutputStream out, List<String> urls) throws IOException {
+        out.writeByte(LINKS);
+        out.writeInt(urls.size());
+        for (String url : urls) {
+            out.writeUTF(url);
+        }
+    }
+
+
+    public static String[] readLinks(DataInputStream in) throws IOException {
+        String[] urls = new String[in.readInt()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = in.readUTF();
+        }
+        return urls;
+    }
+
+
+    public static void writeStatus(DataOutputStream out, Status status) throws IOException {
+        out.writeByte(STATUS);
+        out.writeLong(status.pages);
+        out.writeLong(status.frontier);
+        out.writeBoolean(status.idle);
+        out.writeLong(status.linksSent);
+        out.writeLong(status.linksReceived);
+    }
+
+
+    public static Status readStatus(DataInputStream in) throws IOException {
+        return new Status(in.readLong(), in.readLong(), in.readBoolean(), in.readLong(), in.readLong());
+    }
+
+
+    /**
+     * One worker's progress report.
+     */
+    public static class Status {
+        final long pages;
+        final long frontier;
+        final boolean idle;
+        final long linksSent;
+        final long linksReceived;
+
+        public Status(long pages, long frontier, boolean idle, long linksSent, long linksReceived) {
+            this.pages = pages;
+            this.frontier = frontier;
+            this.idle = idle;
+            this.linksSent = linksSent;
+            this.linksReceived = linksReceived;
+        }
+    }
+}
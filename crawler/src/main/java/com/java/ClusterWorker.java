@@ -0,0 +1,123 @@
+/**
+ * One worker process of a partitioned crawl, started by the Coordinator with the "worker" argument.
+ * The worker crawls only the urls it owns, into its own frontier, visited set and database.
+ * It connects to the coordinator on crawler.cluster.coordinatorPort, says which index it is and
+ * where it takes links, and waits for every worker's link port. Then it crawls until told to stop,
+ * reporting its progress every crawler.cluster.statusMillis. The seeds it owns arrive from the
+ * coordinator, and links found by other workers arrive from them directly. A worker that cannot
+ * send links to another stops, and the coordinator ends the crawl when it loses it.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+
+public class ClusterWorker {
+    private CrawlerConfig config;
+    private int index;
+    private Crawler crawler;
+    private LinkRouter router;
+    private DataOutputStream out;
+
+
+    /**
+     * Creates the worker crawler.cluster.index describes.
+     * @param config the crawler settings, already pointed at this worker's own files.
+     */
+    public ClusterWorker(CrawlerConfig config) {
+        this.config = config;
+        this.index = config.getClusterIndex();
+    }
+
+
+    /**
+     * Joins the crawl and runs until the coordinator stops it or goes away.
+     */
+    public void run() {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), this.config.getClusterCoordinatorPort());
+             LinkRouter router = new LinkRouter(this.config)) {
+            this.router = router;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            this.crawler = new Crawler(this.config, router);
+            synchronized (this.out) {
+                ClusterProtocol.writeHello(this.out, this.index, router.getPort());
+                this.out.flush();
+            }
+            if (in.readByte() != ClusterProtocol.PEERS) {
+                throw new IOException("Expected the peer list from the coordinator");
+            }
+            router.start(ClusterProtocol.readPeers(in), this.crawler::offer, this.crawler::stop);
+
+            Thread listener = new Thread(() -> listen(in), "coordinator-listener");
+            listener.setDaemon(true);
+            listener.start();
+            Thread reporter = new Thread(this::report, "status-reporter");
+            reporter.setDaemon(true);
+            reporter.start();
+
+            this.crawler.crawlConcurrently();
+        } catch (IOException e) {
+            System.out.println("Failed to run worker " + this.index + ": " + e);
+        }
+    }
+
+
+    /**
+     * Takes seeds and the stop message from the coordinator. Losing the coordinator stops the worker too.
+     */
+    private void listen(DataInputStream in) {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == ClusterProtocol.LINKS) {
+                    this.router.deliver(ClusterProtocol.readLinks(in));
+                } else if (type == ClusterProtocol.STOP) {
+                    break;
+                } else {
+                    throw new IOException("Unexpected message type " + type);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Lost the coordinator, stopping worker " + this.index + ": " + e);
+        }
+        this.crawler.stop();
+    }
+
+
+    /**
+     * Sends a status message every crawler.cluster.statusMillis.
+     * Received is read before idle and sent after it. A worker that reports idle has then crawled
+     * every link it counted as received and counted every link those pages sent, so the totals
+     * only match while no link is in flight.
+     */
+    private void report() {
+        CrawlMetrics metrics = CrawlMetrics.get();
+        try {
+            while (true) {
+                Thread.sleep(this.config.getClusterStatusMillis());
+                long received = this.router.getReceived();
+                boolean idle = this.crawler.isIdle();
+                long sent = this.router.getSent();
+                ClusterProtocol.Status status = new ClusterProtocol.Status(metrics.getPages(),
+                        this.crawler.getFrontierSize(), idle, sent, received);
+                synchronized (this.out) {
+                    ClusterProtocol.writeStatus(this.out, status);
+                    this.out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            // worker exiting
+        } catch (IOException e) {
+            System.out.println("Failed to send status for worker " + this.index + ": " + e);
+        }
+    }
+}
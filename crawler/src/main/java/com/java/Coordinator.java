@@ -0,0 +1,329 @@
+/**
+ * Runs a partitioned crawl on one machine: crawler.cluster.workers worker JVMs, each owning the
+ * urls that hash to it and writing to its own frontier, database and archive, suffixed with the
+ * worker's index. The coordinator starts the workers, tells each one every other worker's link
+ * port, hands out the seeds, prints the combined progress and stops every worker when the crawl is
+ * done. Links between workers never pass through the coordinator.
+ * The crawl is done once crawler.cluster.maxPages pages are crawled, or once every worker is idle
+ * and as many links have been received as were sent, unchanged over two status rounds in a row.
+ * Losing a worker stops the rest.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+public class Coordinator {
+    private CrawlerConfig config;
+    private int count;
+    private boolean byHost;
+    private UrlFilter urlFilter;
+    private Process[] processes;
+    private DataOutputStream[] outs;
+    private ClusterProtocol.Status[] statuses;
+    private long[] seedsSent;
+    private volatile boolean failed;
+    private volatile boolean stopping;
+
+
+    /**
+     * Creates a coordinator for crawler.cluster.workers workers.
+     * @param config the crawler settings, passed on to every worker.
+     */
+    public Coordinator(CrawlerConfig config) {
+        this.urlFilter = new UrlFilter(config);
+        this.config = config;
+        this.count = config.getClusterWorkers();
+        this.byHost = config.getClusterPartitionKey().equals("host");
+        this.processes = new Process[this.count];
+        this.outs = new DataOutputStream[this.count];
+        this.statuses = new ClusterProtocol.Status[this.count];
+        this.seedsSent = new long[this.count];
+    }
+
+
+    /**
+     * Runs the crawl from the given seeds until it is done.
+     * @param seeds the urls to start from.
+     * @return the pages crawled by all workers together.
+     */
+    public long crawl(List<String> seeds) {
+        // build the lemma snapshot once, rather than have every worker race to write it
+        new Lemmatizer(this.config);
+
+        long start = System.nanoTime();
+        Thread stopOnExit = new Thread(this::stopWorkers);
+        Runtime.getRuntime().addShutdownHook(stopOnExit);
+        try (ServerSocket server = new ServerSocket(0, this.count, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < this.count; i++) {
+                this.processes[i] = launch(i, server.getLocalPort());
+            }
+            connect(server);
+            seed(seeds);
+            await();
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Failed to run partitioned crawl: " + e);
+        } finally {
+            this.stopping = true;
+            stopWorkers();
+            waitForWorkers();
+            Runtime.getRuntime().removeShutdownHook(stopOnExit);
+        }
+
+        long pages = totalPages();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d workers crawled %d pages in %.1f s (%.1f pages/s)%n",
+                this.count, pages, seconds, pages / seconds);
+        return pages;
+    }
+
+
+    /**
+     * Starts one worker JVM with this JVM's classpath and every crawler.* setting, pointing its
+     * database, frontier and archive at its own files.
+     */
+    private Process launch(int index, int coordinatorPort) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String arg : this.config.getClusterJvmArgs().split("\\s+")) {
+            if (!arg.isEmpty()) command.add(arg);
+        }
+
+        Properties props = this.config.toProperties();
+        props.setProperty("crawler.db.path", suffixed(this.config.getDatabasePath(), index));
+        props.setProperty("crawler.frontier.dir", suffixed(this.config.getFrontierDir(), index));
+        props.setProperty("crawler.archive.dir", suffixed(this.config.getArchiveDir(), index));
+        props.setProperty("crawler.cluster.index", String.valueOf(index));
+        props.setProperty("crawler.cluster.coordinatorPort", String.valueOf(coordinatorPort));
+        props.setProperty("crawler.log.summaryMillis", "0");
+        props.setProperty("crawler.metrics.jmx", "false");
+        if (this.config.getMetricsHttpPort() > 0) {
+            props.setProperty("crawler.metrics.httpPort", String.valueOf(this.config.getMetricsHttpPort() + 1 + index));
+        }
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("crawler.")) {
+                command.add("-D" + key + "=" + props.getProperty(key));
+            }
+        }
+
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("worker");
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+
+    /**
+     * Appends a worker's index to a file name, before its extension: data.db becomes data-2.db.
+     */
+    static String suffixed(String path, int index) {
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf(File.separatorChar)) return path + "-" + index;
+        return path.substring(0, dot) + "-" + index + path.substring(dot);
+    }
+
+
+    /**
+     * Waits for every worker to say hello, then sends them all the peer list and starts
+     * listening for their status.
+     */
+    private void connect(ServerSocket server) throws IOException {
+        int[] ports = new int[this.count];
+        DataInputStream[] ins = new DataInputStream[this.count];
+        long deadline = System.currentTimeMillis() + this.config.getClusterStartTimeoutMillis();
+
+        for (int connected = 0; connected < this.count; connected++) {
+            int timeout = (int) Math.max(1, deadline - System.currentTimeMillis());
+            server.setSoTimeout(timeout);
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Only " + connected + " of " + this.count + " workers started");
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readByte() != ClusterProtocol.HELLO) {
+                throw new IOException("Expected a hello from a worker");
+            }
+            int index = in.readInt();
+            ports[index] = in.readInt();
+            ins[index] = in;
+            this.outs[index] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        for (int i = 0; i < this.count; i++) {
+            ClusterProtocol.writePeers(this.outs[i], ports);
+            this.outs[i].flush();
+            int index = i;
+            Thread listener = new Thread(() -> listen(index, ins[index]), "worker-" + i + "-status");
+            listener.setDaemon(true);
+            listener.start();
+        }
+    }
+
+
+    /**
+     * Sends each seed to the worker that owns it. Seeds count as sent links, so the crawl is not
+     * seen as done before the workers have them.
+     */
+    private void seed(List<String> seeds) throws IOException {
+        List<List<String>> owned = new ArrayList<>();
+        for (int i = 0; i < this.count; i++) {
+            owned.add(new ArrayList<>());
+        }
+        for (String url : seeds) {
+            Site site = new Site(url);
+            if (site.isValid(this.urlFilter)) {
+                owned.get(LinkRouter.ownerOf(site.getNormalizedUrl(), this.count, this.byHost)).add(site.getNormalizedUrl());
+            }
+        }
+
+        for (int i = 0; i < this.count; i++) {
+            if (owned.get(i).isEmpty()) continue;
+            synchronized (this) {
+                this.seedsSent[i] = owned.get(i).size();
+            }
+            synchronized (this.outs[i]) {
+                ClusterProtocol.writeLinks(this.outs[i], owned.get(i));
+                this.outs[i].flush();
+            }
+        }
+    }
+
+
+    /**
+     * Reads one worker's status messages until it disconnects.
+     */
+    private void listen(int index, DataInputStream in) {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type != ClusterProtocol.STATUS) {
+                    throw new IOException("Unexpected message type " + type);
+                }
+                ClusterProtocol.Status status = ClusterProtocol.readStatus(in);
+                synchronized (this) {
+                    this.statuses[index] = status;
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            if (!this.stopping) {
+                System.out.println("Lost worker " + index + ": " + e);
+            }
+            this.failed = true;
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Prints progress every status round and returns once the crawl is done.
+     */
+    private void await() throws InterruptedException {
+        long statusMillis = this.config.getClusterStatusMillis();
+        long maxPages = this.config.getClusterMaxPages();
+        long lastSent = -1;
+        long lastReceived = -1;
+        long lastPages = -1;
+        long nextLog = System.currentTimeMillis() + this.config.getLogSummaryMillis();
+
+        while (!this.failed) {
+            Thread.sleep(statusMillis);
+            long pages = 0;
+            long frontier = 0;
+            long sent = 0;
+            long received = 0;
+            boolean idle = true;
+            synchronized (this) {
+                for (int i = 0; i < this.count; i++) {
+                    ClusterProtocol.Status status = this.statuses[i];
+                    sent += this.seedsSent[i];
+                    if (status == null) {
+                        idle = false;
+                        continue;
+                    }
+                    pages += status.pages;
+                    frontier += status.frontier;
+                    sent += status.linksSent;
+                    received += status.linksReceived;
+                    idle &= status.idle;
+                }
+            }
+
+            if (this.config.getLogSummaryMillis() > 0 && System.currentTimeMillis() >= nextLog) {
+                System.out.printf("cluster: %d pages, %d queued, %d links in flight%n", pages, frontier, sent - received);
+                nextLog += this.config.getLogSummaryMillis();
+            }
+            if (maxPages > 0 && pages >= maxPages) return;
+            if (idle && sent == received && sent == lastSent && received == lastReceived && pages == lastPages) return;
+            lastSent = sent;
+            lastReceived = received;
+            lastPages = pages;
+        }
+    }
+
+
+    private synchronized long totalPages() {
+        long pages = 0;
+        for (ClusterProtocol.Status status : this.statuses) {
+            if (status != null) pages += status.pages;
+        }
+        return pages;
+    }
+
+
+    /**
+     * Tells every connected worker to finish up. Safe to call more than once.
+     */
+    private void stopWorkers() {
+        for (DataOutputStream out : this.outs) {
+            if (out == null) continue;
+            synchronized (out) {
+                try {
+                    out.writeByte(ClusterProtocol.STOP);
+                    out.flush();
+                } catch (IOException e) {
+                    // worker already gone
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Waits for the workers to write out their pages and exit, killing any that take too long
+     * or never connected.
+     */
+    private void waitForWorkers() {
+        for (Process process : this.processes) {
+            if (process == null) continue;
+            try {
+                if (!process.waitFor(2, TimeUnit.MINUTES)) {
+                    System.out.println("Worker did not exit, killing it");
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Counts the bytes read through a stream.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+public class CountingInputStream extends FilterInputStream {
+    private long count;
+
+
+    public CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+
+    /**
+     * @return the number of bytes read so far.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) this.count++;
+        return b;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) this.count += n;
+        return n;
+    }
+
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        this.count += skipped;
+        return skipped;
+    }
+}
@@ -0,0 +1,373 @@
+/**
+ * Counters and per-stage latency histograms for the crawl.
+ * There is one instance per process, shared by the crawler, the tokenizer and the database writer.
+ * Recording only touches striped counters and histogram buckets. Everything else happens when
+ * the numbers are read: through JMX, the optional HTTP endpoint or the periodic console summary.
+ * Per-page and per-failure console lines are off or rate-limited, since printing every page
+ * costs more than crawling it at high rates.
+ * Braden Zingler
+ */
+package com.java;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+public class CrawlMetrics implements CrawlMetricsMXBean {
+    private static final CrawlMetrics INSTANCE = new CrawlMetrics();
+
+    /**
+     * The timed stages of handling one page.
+     */
+    public enum Stage { FETCH, PARSE, EXTRACT_LINKS, EXTRACT_DATA, LEMMATIZE, DB_TRANSACTION }
+
+    private LatencyHistogram[] stages;
+    private LongAdder pages;
+    private LongAdder bytes;
+    private LongAdder wireBytes;
+    private ConcurrentMap<String, LongAdder> failures;
+    private ConcurrentMap<String, LongAdder> skipped;
+    private ConcurrentMap<String, LongAdder> retries;
+    private ConcurrentMap<String, LongAdder> errors;
+    private LongSupplier frontierSize;
+    private LongSupplier visitedSize;
+    private long startNanos;
+
+    private boolean logPages;
+    private long minLogIntervalNanos;
+    private AtomicLong nextLogNanos;
+    private LongAdder suppressedLines;
+    private ScheduledExecutorService reporter;
+    private HttpServer server;
+
+
+    private CrawlMetrics() {
+        this.stages = new LatencyHistogram[Stage.values().length];
+        for (int i = 0; i < this.stages.length; i++) {
+            this.stages[i] = new LatencyHistogram();
+        }
+        this.pages = new LongAdder();
+        this.bytes = new LongAdder();
+        this.wireBytes = new LongAdder();
+        this.failures = new ConcurrentHashMap<>();
+        this.skipped = new ConcurrentHashMap<>();
+        this.retries = new ConcurrentHashMap<>();
+        this.errors = new ConcurrentHashMap<>();
+        this.frontierSize = () -> 0;
+        this.visitedSize = () -> 0;
+        this.startNanos = System.nanoTime();
+        this.minLogIntervalNanos = TimeUnit.SECONDS.toNanos(1) / 10;
+        this.nextLogNanos = new AtomicLong(System.nanoTime());
+        this.suppressedLines = new LongAdder();
+    }
+
+
+    /**
+     * @return the process-wide metrics.
+     */
+    public static CrawlMetrics get() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Starts publishing the metrics for a crawl: registers the JMX bean, opens the HTTP endpoint
+     * if crawler.metrics.httpPort is set, and prints a summary every crawler.log.summaryMillis.
+     * @param config the crawler settings.
+     * @param frontierSize reports the number of queued urls.
+     * @param visitedSize reports the number of visited urls.
+     */
+    public synchronized void start(CrawlerConfig config, LongSupplier frontierSize, LongSupplier visitedSize) {
+        this.frontierSize = frontierSize;
+        this.visitedSize = visitedSize;
+        this.startNanos = System.nanoTime();
+        this.logPages = config.isPageLogging();
+        this.minLogIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.getMaxLogLinesPerSecond());
+
+        if (config.isJmxEnabled()) {
+            registerMBean();
+        }
+        if (config.getMetricsHttpPort() > 0 && this.server == null) {
+            startHttp(config.getMetricsHttpPort());
+        }
+        long summaryMillis = config.getLogSummaryMillis();
+        if (summaryMillis > 0 && this.reporter == null) {
+            this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+            this.reporter.scheduleAtFixedRate(() -> System.out.println(summary()), summaryMillis, summaryMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Stops the reporter and HTTP endpoint and prints a final summary.
+     */
+    public synchronized void stop() {
+        if (this.reporter != null) {
+            this.reporter.shutdownNow();
+            this.reporter = null;
+        }
+        if (this.server != null) {
+            this.server.stop(0);
+            this.server = null;
+        }
+        System.out.println(summary());
+    }
+
+
+    /**
+     * Records how long a stage took.
+     * @param stage the stage.
+     * @param startNanos the System.nanoTime() reading taken when the stage started.
+     */
+    public void record(Stage stage, long startNanos) {
+        this.stages[stage.ordinal()].recordSince(startNanos);
+    }
+
+
+    /**
+     * @return the histogram for a stage.
+     */
+    public LatencyHistogram histogram(Stage stage) {
+        return this.stages[stage.ordinal()];
+    }
+
+
+    /**
+     * Counts a finished page.
+     * @param url the page url.
+     * @param size the number of body bytes downloaded.
+     */
+    public void pageDone(String url, long size) {
+        this.pages.increment();
+        this.bytes.add(size);
+        if (this.logPages) {
+            log(this.pages.sum() + " sites visited: " + url);
+        }
+    }
+
+
+    /**
+     * Counts bytes received from the network, before decompression.
+     * @param count the number of bytes.
+     */
+    public void addWireBytes(long count) {
+        this.wireBytes.add(count);
+    }
+
+
+    /**
+     * Counts a failed page by the type of error that stopped it.
+     * @param url the page url.
+     * @param e what went wrong.
+     */
+    public void failure(String url, Exception e) {
+        this.failures.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        log("Failed on site: " + url + ": " + e);
+    }
+
+
+    /**
+     * Counts a failed fetch that will be tried again, by the type of error.
+     * @param url the page url.
+     * @param e what went wrong.
+     */
+    public void retried(String url, Exception e) {
+        this.retries.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        log("Retrying site: " + url + ": " + e);
+    }
+
+
+    /**
+     * Counts a failure outside of fetching a page, such as a lost link connection between
+     * workers or a page that could not be written, by the type of error.
+     * @param what what was being done, e.g. "read links from a peer".
+     * @param e what went wrong.
+     */
+    public void error(String what, Exception e) {
+        this.errors.computeIfAbsent(e.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        log("Failed to " + what + ": " + e);
+    }
+
+
+    /**
+     * Counts a page that was passed over without being fetched.
+     * @param reason why it was skipped, e.g. "robots".
+     */
+    public void skipped(String reason) {
+        this.skipped.computeIfAbsent(reason, k -> new LongAdder()).increment();
+    }
+
+
+    /**
+     * Prints a line unless another was printed too recently, in which case it is only counted.
+     */
+    private void log(String line) {
+        long now = System.nanoTime();
+        long next = this.nextLogNanos.get();
+        if (now - next < 0 || !this.nextLogNanos.compareAndSet(next, now + this.minLogIntervalNanos)) {
+            this.suppressedLines.increment();
+            return;
+        }
+        long suppressed = this.suppressedLines.sumThenReset();
+        System.out.println(suppressed > 0 ? line + " (" + suppressed + " lines suppressed)" : line);
+    }
+
+
+    @Override
+    public long getPages() {
+        return this.pages.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    @Override
+    public long getWireBytes() {
+        return this.wireBytes.sum();
+    }
+
+    @Override
+    public double getPagesPerSecond() {
+        double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+        return seconds <= 0 ? 0 : this.pages.sum() / seconds;
+    }
+
+    @Override
+    public long getFrontierSize() {
+        return this.frontierSize.getAsLong();
+    }
+
+    @Override
+    public long getVisitedSize() {
+        return this.visitedSize.getAsLong();
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> counts = new TreeMap<>();
+        this.failures.forEach((cause, count) -> counts.put(cause, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getSkipped() {
+        Map<String, Long> counts = new TreeMap<>();
+        this.skipped.forEach((reason, count) -> counts.put(reason, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getRetries() {
+        Map<String, Long> counts = new TreeMap<>();
+        this.retries.forEach((cause, count) -> counts.put(cause, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        this.errors.forEach((cause, count) -> counts.put(cause, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, StageStats> getStages() {
+        Map<String, StageStats> stats = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            stats.put(stage.name().toLowerCase(), new StageStats(histogram(stage)));
+        }
+        return stats;
+    }
+
+
+    /**
+     * @return every metric as readable text, one per line.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("pages ").append(getPages()).append('\n');
+        sb.append("bytes ").append(getBytes()).append('\n');
+        sb.append("wire_bytes ").append(getWireBytes()).append('\n');
+        sb.append(String.format("pages_per_second %.2f%n", getPagesPerSecond()));
+        sb.append("frontier_size ").append(getFrontierSize()).append('\n');
+        sb.append("visited_size ").append(getVisitedSize()).append('\n');
+        getFailures().forEach((cause, count) -> sb.append("failures{cause=").append(cause).append("} ").append(count).append('\n'));
+        getSkipped().forEach((reason, count) -> sb.append("skipped{reason=").append(reason).append("} ").append(count).append('\n'));
+        getRetries().forEach((cause, count) -> sb.append("retries{cause=").append(cause).append("} ").append(count).append('\n'));
+        getErrors().forEach((cause, count) -> sb.append("errors{cause=").append(cause).append("} ").append(count).append('\n'));
+        getStages().forEach((stage, stats) -> sb.append("stage{").append(stage).append("} ").append(stats).append('\n'));
+        return sb.toString();
+    }
+
+
+    /**
+     * @return a one-line progress summary for the console.
+     */
+    public String summary() {
+        long failed = 0;
+        for (LongAdder count : this.failures.values()) failed += count.sum();
+        return String.format("[metrics] %d pages (%.1f/s), %d failed, %d queued, %d visited, fetch p50 %.0fms p99 %.0fms, db p99 %.0fms",
+                getPages(), getPagesPerSecond(), failed, getFrontierSize(), getVisitedSize(),
+                histogram(Stage.FETCH).getPercentileMillis(50), histogram(Stage.FETCH).getPercentileMillis(99),
+                histogram(Stage.DB_TRANSACTION).getPercentileMillis(99));
+    }
+
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.java:type=CrawlMetrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.out.println("Failed to register crawl metrics with JMX: " + e);
+        }
+    }
+
+
+    /**
+     * Serves report() as plain text on localhost at /metrics.
+     */
+    private void startHttp(int port) {
+        try {
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+            this.server.createContext("/metrics", exchange -> {
+                byte[] body = report().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            this.server.start();
+            System.out.println("Serving crawl metrics on http://127.0.0.1:" + port + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Failed to start metrics endpoint: " + e);
+        }
+    }
+}
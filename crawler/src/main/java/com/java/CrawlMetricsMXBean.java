@@ -0,0 +1,32 @@
+/**
+ * The crawl metrics as published over JMX, under com.java:type=CrawlMetrics.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.Map;
+
+
+public interface CrawlMetricsMXBean {
+    long getPages();
+
+    long getBytes();
+
+    long getWireBytes();
+
+    double getPagesPerSecond();
+
+    long getFrontierSize();
+
+    long getVisitedSize();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getSkipped();
+
+    Map<String, Long> getRetries();
+
+    Map<String, Long> getErrors();
+
+    Map<String, StageStats> getStages();
+}
@@ -8,17 +8,46 @@ package com.java;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import java.util.ArrayDeque;
-import java.util.HashSet;
-import java.util.Queue;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.http.HttpTimeoutException;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class Crawler {
-    private Queue<Site> urlsToVisit;
-    private Set<String> visitedUrls;
+    /** Pages every new crawl starts from besides its start url, a selection of the most popular. */
+    public static final String[] DEFAULT_SEEDS = {
+        "https://en.wikipedia.org/wiki/Science_fiction",
+        "https://en.wikipedia.org/wiki/Artificial_intelligence"
+    };
+
+    private Frontier urlsToVisit;
+    private SeenSet visitedUrls;
     public Lemmatizer lem;
-    private Database db;
+    private PageStore db;
+    private CrawlerConfig config;
+    private CrawlMetrics metrics;
+    private Fetcher fetcher;
+    private RobotsCache robots;
+    private PageArchive archive;
+    private NearDuplicateIndex duplicates;
+    private LinkRouter router;
+    private UrlFilter urlFilter;
+    private AtomicInteger inFlight;
+    private DelayQueue<Retry> retries;
+    private volatile boolean stopped;
 
 
     /**
@@ -26,64 +55,510 @@ public class Crawler {
      * @param startUrl the first url to start crawling with.
      */
     public Crawler(String startUrl) {
-        Site firstSite = new Site(startUrl);
-        this.urlsToVisit = new ArrayDeque<>();
+        this(startUrl, CrawlerConfig.load());
+    }
+
+
+    /**
+     * Creates a new Crawler object using the given settings.
+     * @param startUrl the first url to start crawling with.
+     * @param config the crawler settings.
+     */
+    public Crawler(String startUrl, CrawlerConfig config) {
+        this(config, null);
+
+        // unless resuming a previous crawl
+        if (this.urlsToVisit.isEmpty()) {
+            this.urlsToVisit.add(new Site(startUrl));
+            for (String seed : DEFAULT_SEEDS) {
+                this.urlsToVisit.add(new Site(seed));
+            }
+        }
+    }
+
+
+    /**
+     * Creates a Crawler for one worker of a partitioned crawl, which owns only some of the urls.
+     * It starts from whatever its frontier holds; new urls come from offer(), and links this
+     * worker does not own are handed to the router instead of the frontier.
+     * crawlConcurrently keeps waiting for links while idle, until stop() is called.
+     * @param config the crawler settings.
+     * @param router routes links to their owning workers, or null for a standalone crawl.
+     */
+    public Crawler(CrawlerConfig config, LinkRouter router) {
+        this.urlFilter = new UrlFilter(config);
+        this.urlsToVisit = new Frontier(config);
+        this.config = config;
+        this.router = router;
+        this.metrics = CrawlMetrics.get();
+        this.fetcher = new HttpFetcher(config);
+        this.robots = config.isRobotsEnabled() ? new RobotsCache(config, this.fetcher) : null;
+        this.archive = config.isArchiveEnabled() ? new PageArchive(config) : null;
+        this.inFlight = new AtomicInteger();
+        this.retries = new DelayQueue<>();
+
+        this.db = PageStore.open(config);
+        this.duplicates = this.db.getDuplicates();
+        this.visitedUrls = SeenSet.create(config);
+        this.urlsToVisit.restoreSeen(this.visitedUrls);
+        this.db.onStored(this.urlsToVisit::done);
+        lem = new Lemmatizer(config);
+    }
 
-        // random selection from the most popular pages
-        this.urlsToVisit.add(firstSite);
-        this.urlsToVisit.add(new Site("https://en.wikipedia.org/wiki/Science_fiction"));
-        this.urlsToVisit.add(new Site("https://en.wikipedia.org/wiki/Artificial_intelligence"));
 
-        this.db = new Database();
-        this.visitedUrls = new HashSet<>();
-        lem = new Lemmatizer();
+    /**
+     * Queues a url sent by another worker, unless it was already crawled here.
+     * @param url a normalized url this worker owns.
+     */
+    public void offer(String url) {
+        Site site = new Site(url);
+        if (site.isValid(this.urlFilter) && !this.visitedUrls.contains(site.getNormalizedUrl())) {
+            this.urlsToVisit.add(site);
+        }
+    }
+
+
+    /**
+     * @return true if the frontier is empty and no page is being fetched, extracted or waiting to be retried.
+     */
+    public boolean isIdle() {
+        return this.inFlight.get() == 0 && this.urlsToVisit.isEmpty() && this.retries.isEmpty();
+    }
+
+
+    /**
+     * @return the number of urls waiting in the frontier.
+     */
+    public long getFrontierSize() {
+        return this.urlsToVisit.size();
+    }
+
+
+    /**
+     * Makes crawlConcurrently stop taking urls, finish the pages in flight and return.
+     */
+    public void stop() {
+        this.stopped = true;
     }
 
 
     /**
      * Starts crawling websites in the queue. Adds the extracted data to the database.
+     * Pages whose fetch failed for a passing reason are fetched again once their backoff is up,
+     * waiting for them when nothing else is left.
      */
     public void crawl() {
-        int count = 0;
+        this.metrics.start(this.config, this.urlsToVisit::size, this.visitedUrls::size);
+        HostLimiter hosts = new HostLimiter(1);
+
+        try {
+            while (!this.urlsToVisit.isEmpty() || !this.retries.isEmpty()) {
+                Retry retry = this.urlsToVisit.isEmpty() ? this.retries.take() : this.retries.poll();
+                Site currSite = retry != null ? retry.site : this.urlsToVisit.poll();
+                int attempt = retry != null ? retry.attempt : 0;
+
+                if (retry == null && (!currSite.isValid(this.urlFilter)
+                        || !this.visitedUrls.add(currSite.getNormalizedUrl()) || !isAllowedByRobots(currSite))) {
+                    this.urlsToVisit.done(currSite);
+                    continue;
+                }
+
+                FetchedPage page = fetchOrRetry(currSite, attempt, hosts);
+                if (page == null) continue;
+                try {
+                    handle(page);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    this.metrics.failure(currSite.getUrl(), e);
+                    this.urlsToVisit.done(currSite);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeArchive();
+        db.closeConnection();
+        this.urlsToVisit.close();
+        this.metrics.stop();
+    }
+
 
-        while (!this.urlsToVisit.isEmpty()) {
-            Site currSite = this.urlsToVisit.poll();
+    /**
+     * Crawls with separate fetch, extract and persist stages connected by bounded queues.
+     * Fetches run on a pool of crawler.fetch.threads workers with a per-host limit that starts at
+     * crawler.fetch.perHost and adapts to how each host copes, extraction runs on crawler.parse.threads workers, and the
+     * database's background writer commits the results. Returns once the frontier is exhausted,
+     * or, for a partitioned crawl, once stop() is called and the pages in flight are done.
+     */
+    public void crawlConcurrently() {
+        int fetchThreads = this.config.getFetchThreads();
+        int parseThreads = this.config.getParseThreads();
+        BlockingQueue<FetchedPage> parseQueue = new ArrayBlockingQueue<>(this.config.getQueueCapacity());
+        HostLimiter hosts = new HostLimiter(this.config);
+        Semaphore fetchSlots = new Semaphore(fetchThreads);
+        AtomicInteger inFlight = this.inFlight;
+        this.metrics.start(this.config, this.urlsToVisit::size, this.visitedUrls::size);
 
-            if (currSite.isValid()) {
+        ExecutorService fetchPool = Executors.newFixedThreadPool(fetchThreads);
+        ExecutorService parsePool = Executors.newFixedThreadPool(parseThreads);
+        for (int i = 0; i < parseThreads; i++) {
+            parsePool.execute(() -> extract(parseQueue, inFlight));
+        }
 
-                if (!this.visitedUrls.contains(currSite.getUrl())) {
-                    this.visitedUrls.add(currSite.getNormalizedUrl());
+        try {
+            // A page counts as in flight from dispatch until its links are back in the frontier, or
+            // until it is queued for a retry. An empty frontier with nothing in flight or waiting
+            // for a retry means the crawl is finished. Due retries go ahead of the frontier.
+            // A partitioned crawl's worker may be sent more links at any time, so it waits for stop().
+            while (!this.stopped) {
+                Retry retry = this.retries.poll();
+                Site currSite;
+                int attempt = 0;
+                if (retry != null) {
+                    currSite = retry.site;
+                    attempt = retry.attempt;
+                } else {
+                    currSite = this.urlsToVisit.poll(100, TimeUnit.MILLISECONDS);
+                    if (currSite == null) {
+                        if (this.router == null && inFlight.get() == 0 && this.urlsToVisit.isEmpty() && this.retries.isEmpty()) break;
+                        continue;
+                    }
+                    if (!currSite.isValid(this.urlFilter) || !this.visitedUrls.add(currSite.getNormalizedUrl())) {
+                        this.urlsToVisit.done(currSite);
+                        continue;
+                    }
+                }
 
+                inFlight.incrementAndGet();
+                fetchSlots.acquire();
+                int tries = attempt;
+                fetchPool.execute(() -> {
                     try {
-                        Document doc = Jsoup.connect(currSite.getUrl()).timeout(4000).get();
-                        doc.outputSettings().charset("UTF-8");
-                        
-                        // Add discovered sites to the queue
-                        Set<Site> discoveredSites = currSite.extractLinks(doc);
-                        for (Site site : discoveredSites) {
-                            if (!this.visitedUrls.contains(site.getUrl())) {
-                                this.urlsToVisit.add(site);
-                            }
-                        }
-                        
-                        // Get the keywords for this site
-                        currSite.extractData(doc, this.lem);
-                        db.sendToDatabase(currSite);
-
-                        // Mark this site as visited
-                        this.visitedUrls.add(currSite.getUrl());
-
-                        count++;
-                        System.out.println(count + " sites visited: " + currSite.getUrl());
-
-                    } catch (Exception e) {
-                        System.out.println("Failed on site: " + currSite + ": " + e);
+                        fetch(currSite, tries, hosts, parseQueue, inFlight);
+                    } finally {
+                        fetchSlots.release();
                     }
+                });
+            }
 
-                } else {
-                    this.urlsToVisit.remove(currSite);
+            // once stopped, let the pages already dispatched reach the database. Pages waiting
+            // for a retry are still in flight in the frontier, so the next run takes them again.
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+            while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            this.retries.clear();
+            fetchPool.shutdownNow();
+            parsePool.shutdownNow();
+            parsePool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            fetchPool.shutdownNow();
+            parsePool.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            closeArchive();
+            db.closeConnection();
+            this.urlsToVisit.close();
+            this.metrics.stop();
+        }
+    }
+
+
+    /**
+     * Checks a page against its host's robots.txt, unless crawler.robots.enabled is off.
+     * The first check for a host fetches its robots.txt; later checks hit the cache.
+     * @param site the page about to be crawled.
+     * @return true if the page may be fetched.
+     */
+    private boolean isAllowedByRobots(Site site) {
+        if (this.robots == null || this.robots.isAllowed(site.getUrl())) {
+            return true;
+        }
+        this.metrics.skipped("robots");
+        return false;
+    }
+
+
+    private long crawlDelay(Site site) {
+        return this.robots == null ? 0 : this.robots.getCrawlDelayMillis(site.getUrl());
+    }
+
+
+    /**
+     * Downloads a page through the shared fetcher, parsing the body as it arrives.
+     * Normally the page is parsed into a Document for the extract stage.
+     * With crawler.extract.streaming it is extracted as the body streams in instead,
+     * and only the links are kept. With crawler.archive.enabled the body is read in full
+     * and appended to the page archive first.
+     * The fetch stage is timed until the response starts, or until the archived body is read.
+     * A busy status fails with a TransientHttpException.
+     * The body is hashed as it is parsed, and the hash and validators are kept on the site
+     * so a later re-crawl can tell whether the page changed.
+     * @param site the page to fetch.
+     * @return the downloaded page.
+     */
+    private FetchedPage download(Site site) throws IOException {
+        long start = System.nanoTime();
+        try (FetchResponse res = this.fetcher.fetch(site.getUrl())) {
+            long latency = System.nanoTime() - start;
+            res.requirePage();
+            InputStream stream = res.getBody();
+            if (this.archive != null) {
+                byte[] bytes = stream.readAllBytes();
+                archive(site, res, bytes);
+                stream = new ByteArrayInputStream(bytes);
+            }
+            this.metrics.record(CrawlMetrics.Stage.FETCH, start);
+
+            start = System.nanoTime();
+            HashingInputStream hashed = new HashingInputStream(stream);
+            CountingInputStream body = new CountingInputStream(hashed);
+            if (this.config.isStreamingExtraction()) {
+                Set<Site> links = site.extractStreaming(body, res.getCharset(), this.lem, this.urlFilter);
+                this.metrics.record(CrawlMetrics.Stage.PARSE, start);
+                site.setVersion(PageVersion.fetched(res, hashed.getHash()));
+                return new FetchedPage(site, null, links, body.getCount(), latency);
+            }
+
+            Document doc = Jsoup.parse(body, res.getCharset(), site.getUrl());
+            doc.outputSettings().charset("UTF-8");
+            this.metrics.record(CrawlMetrics.Stage.PARSE, start);
+            site.setVersion(PageVersion.fetched(res, hashed.getHash()));
+            return new FetchedPage(site, doc, null, body.getCount(), latency);
+        }
+    }
+
+
+    /**
+     * Appends a fetched page to the archive. A failed write is counted but does not stop the page.
+     */
+    private void archive(Site site, FetchResponse res, byte[] body) {
+        try {
+            this.archive.append(site.getUrl(), res.getStatus(), null, res.getHeaders(), body);
+        } catch (IOException e) {
+            this.metrics.failure(site.getUrl(), e);
+        }
+    }
+
+
+    private void closeArchive() {
+        if (this.archive != null) {
+            this.archive.close();
+        }
+    }
+
+
+    /**
+     * Queues the unseen links of a downloaded page and submits its data to the database,
+     * extracting both from the Document first unless that was done while streaming.
+     * A near-duplicate of a page already stored is dropped instead, links and all.
+     * @param page the downloaded page.
+     */
+    private void handle(FetchedPage page) throws InterruptedException {
+        Set<Site> links = page.links;
+        if (page.doc != null) {
+            long start = System.nanoTime();
+            links = page.site.extractLinks(page.doc, this.urlFilter);
+            this.metrics.record(CrawlMetrics.Stage.EXTRACT_LINKS, start);
+
+            start = System.nanoTime();
+            page.site.extractData(page.doc, this.lem);
+            this.metrics.record(CrawlMetrics.Stage.EXTRACT_DATA, start);
+        }
+
+        if (this.duplicates != null && !this.duplicates.add(page.site)) {
+            this.metrics.skipped("duplicate");
+            this.urlsToVisit.done(page.site);
+            return;
+        }
+
+        for (Site site : links) {
+            if (this.router != null && !this.router.isLocal(site)) {
+                this.router.send(site);
+            } else if (!this.visitedUrls.contains(site.getNormalizedUrl())) {
+                this.urlsToVisit.add(site);
+            }
+        }
+        db.submit(page.site);
+        this.metrics.pageDone(page.site.getUrl(), page.size);
+    }
+
+
+    /**
+     * Downloads a page within its host's limit and tells the limiter how the host coped.
+     * A page that failed for a passing reason is queued to be retried instead of counted as failed.
+     * @param site the page to fetch.
+     * @param attempt how many times the page has been tried before.
+     * @param hosts the per-host limiter.
+     * @return the downloaded page, or null if it failed or will be retried.
+     */
+    private FetchedPage fetchOrRetry(Site site, int attempt, HostLimiter hosts) throws InterruptedException {
+        try {
+            String host = hosts.acquire(site.getUrl(), crawlDelay(site));
+            try {
+                FetchedPage page = download(site);
+                hosts.succeeded(host, page.latency);
+                return page;
+            } catch (TransientHttpException e) {
+                hosts.overloaded(host, e.getRetryAfterMillis());
+                throw e;
+            } catch (HttpTimeoutException e) {
+                hosts.overloaded(host, -1);
+                throw e;
+            } finally {
+                hosts.release(host);
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            if (!retry(site, attempt, e)) {
+                this.metrics.failure(site.getUrl(), e);
+                this.urlsToVisit.done(site);
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Queues a failed page to be fetched again if retryDelayMillis says it is worth it.
+     * @return true if the page will be retried.
+     */
+    private boolean retry(Site site, int attempt, Exception e) {
+        long delay = retryDelayMillis(this.config, attempt, e);
+        if (delay < 0) return false;
+
+        this.retries.add(new Retry(site, attempt + 1, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay)));
+        this.metrics.retried(site.getUrl(), e);
+        return true;
+    }
+
+
+    /**
+     * Decides whether a failed page is fetched again: only if the failure looks temporary and it
+     * has tries left, up to crawler.fetch.retries. The wait starts at crawler.fetch.retryBaseMillis
+     * and doubles with each try, with random jitter so pages that failed together do not all come
+     * back together. It is never shorter than the host's Retry-After, and a page that would have
+     * to wait longer than crawler.fetch.retryMaxMillis is given up on.
+     * @param config the crawler settings.
+     * @param attempt how many times the page has been retried already.
+     * @param e the failure.
+     * @return how long to wait before the next try, or -1 to give up.
+     */
+    static long retryDelayMillis(CrawlerConfig config, int attempt, Exception e) {
+        if (attempt >= config.getFetchRetries() || !isTransient(e)) return -1;
+
+        long maxMillis = config.getRetryMaxMillis();
+        long backoff = Math.min(maxMillis, config.getRetryBaseMillis() << Math.min(attempt, 20));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        if (e instanceof TransientHttpException) {
+            delay = Math.max(delay, ((TransientHttpException) e).getRetryAfterMillis());
+        }
+        return delay > maxMillis ? -1 : delay;
+    }
+
+
+    /**
+     * @return true for failures that may well not happen again: a busy status, a timeout or a refused connection.
+     */
+    private static boolean isTransient(Exception e) {
+        return e instanceof TransientHttpException || e instanceof HttpTimeoutException || e instanceof ConnectException;
+    }
+
+
+    /**
+     * Fetch stage: downloads one page and hands it to the extract stage.
+     */
+    private void fetch(Site site, int attempt, HostLimiter hosts, BlockingQueue<FetchedPage> parseQueue, AtomicInteger inFlight) {
+        try {
+            if (attempt == 0 && !isAllowedByRobots(site)) {
+                this.urlsToVisit.done(site);
+                inFlight.decrementAndGet();
+                return;
+            }
+
+            FetchedPage page = fetchOrRetry(site, attempt, hosts);
+            if (page == null) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            parseQueue.put(page);
+
+        } catch (InterruptedException e) {
+            inFlight.decrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Extract stage: pulls fetched pages, queues their links and extracts their keywords.
+     * Runs until the pool is shut down.
+     */
+    private void extract(BlockingQueue<FetchedPage> parseQueue, AtomicInteger inFlight) {
+        try {
+            while (true) {
+                FetchedPage page = parseQueue.take();
+                try {
+                    handle(page);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    this.metrics.failure(page.site.getUrl(), e);
+                    this.urlsToVisit.done(page.site);
+                } finally {
+                    inFlight.decrementAndGet();
                 }
             }
+        } catch (InterruptedException e) {
+            // pool shut down
+        }
+    }
+
+
+    /**
+     * A downloaded page waiting for extraction, or its links if it was already extracted while streaming.
+     */
+    private static class FetchedPage {
+        final Site site;
+        final Document doc;
+        final Set<Site> links;
+        final long size;
+        final long latency;
+
+        FetchedPage(Site site, Document doc, Set<Site> links, long size, long latency) {
+            this.site = site;
+            this.doc = doc;
+            this.links = links;
+            this.size = size;
+            this.latency = latency;
+        }
+    }
+
+
+    /**
+     * A page waiting out its backoff before it is fetched again.
+     */
+    private static class Retry implements Delayed {
+        final Site site;
+        final int attempt;
+        final long due;
+
+        Retry(Site site, int attempt, long due) {
+            this.site = site;
+            this.attempt = attempt;
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(this.due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(this.due, ((Retry) other).due);
         }
     }
 }
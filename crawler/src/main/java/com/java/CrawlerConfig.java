@@ -0,0 +1,405 @@
+/**
+ * Runtime settings for the crawler.
+ * Values are read from crawler.properties on the classpath, and any -Dcrawler.* system
+ * property overrides the file so a single run can be tuned from the command line.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+
+public class CrawlerConfig {
+    private Properties props;
+
+
+    /**
+     * Creates a config from an explicit set of properties, without reading the classpath.
+     * @param props the settings to use.
+     */
+    public CrawlerConfig(Properties props) {
+        this.props = props;
+    }
+
+
+    /**
+     * Loads crawler.properties from the classpath and applies system property overrides.
+     * @return the loaded config.
+     */
+    public static CrawlerConfig load() {
+        Properties props = new Properties();
+
+        try (InputStream in = CrawlerConfig.class.getResourceAsStream("/crawler.properties")) {
+            if (in != null) {
+                props.load(in);
+            }
+        } catch (Exception e) {
+            System.out.println("Failed to read crawler.properties: " + e);
+        }
+
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("crawler.")) {
+                props.setProperty(key, System.getProperty(key));
+            }
+        }
+        return new CrawlerConfig(props);
+    }
+
+
+    /**
+     * Sets a value, replacing whatever was loaded for that key.
+     * @param key the property name.
+     * @param value the new value.
+     * @return this config.
+     */
+    public CrawlerConfig set(String key, Object value) {
+        this.props.setProperty(key, String.valueOf(value));
+        return this;
+    }
+
+
+    /**
+     * @return a copy of every loaded setting, overrides included.
+     */
+    public Properties toProperties() {
+        Properties copy = new Properties();
+        copy.putAll(this.props);
+        return copy;
+    }
+
+
+    public String get(String key, String defaultValue) {
+        return this.props.getProperty(key, defaultValue).strip();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return Long.parseLong(get(key, String.valueOf(defaultValue)));
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return Double.parseDouble(get(key, String.valueOf(defaultValue)));
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Reads a comma-separated list, dropping blank entries.
+     */
+    public List<String> getList(String key, String defaultValue) {
+        List<String> values = new ArrayList<>();
+        for (String value : get(key, defaultValue).split(",")) {
+            if (!value.isBlank()) values.add(value.strip());
+        }
+        return values;
+    }
+
+
+    /* concurrent crawl pipeline */
+    public boolean isConcurrent() {
+        return getBoolean("crawler.concurrent", false);
+    }
+
+    public int getFetchThreads() {
+        return getInt("crawler.fetch.threads", 16);
+    }
+
+    public int getParseThreads() {
+        return getInt("crawler.parse.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getPerHostConcurrency() {
+        return getInt("crawler.fetch.perHost", 4);
+    }
+
+    public int getQueueCapacity() {
+        return getInt("crawler.queue.capacity", 256);
+    }
+
+    public int getFetchTimeoutMillis() {
+        return getInt("crawler.fetch.timeoutMillis", 4000);
+    }
+
+    public int getConnectTimeoutMillis() {
+        return getInt("crawler.fetch.connectTimeoutMillis", 2000);
+    }
+
+    public long getReadTimeoutMillis() {
+        return getLong("crawler.fetch.readTimeoutMillis", 10000);
+    }
+
+    public long getMaxBodyBytes() {
+        return getLong("crawler.fetch.maxBodyBytes", 2 * 1024 * 1024);
+    }
+
+
+    /* per-host fetch control and retries */
+    public boolean isAdaptiveConcurrency() {
+        return getBoolean("crawler.fetch.adaptive", true);
+    }
+
+    public int getMaxPerHostConcurrency() {
+        return getInt("crawler.fetch.perHostMax", 16);
+    }
+
+    public double getLatencyTolerance() {
+        return getDouble("crawler.fetch.latencyTolerance", 2.0);
+    }
+
+    public int getFetchRetries() {
+        return getInt("crawler.fetch.retries", 3);
+    }
+
+    public long getRetryBaseMillis() {
+        return getLong("crawler.fetch.retryBaseMillis", 1000);
+    }
+
+    public long getRetryMaxMillis() {
+        return getLong("crawler.fetch.retryMaxMillis", 60000);
+    }
+
+
+    /* database writer */
+    public String getDatabasePath() {
+        return get("crawler.db.path", "data_with_map.db");
+    }
+
+    public String getDatabaseMode() {
+        return get("crawler.db.mode", "bulk");
+    }
+
+    public int getDatabaseCacheMB() {
+        return getInt("crawler.db.cacheMB", 256);
+    }
+
+    public int getWriterQueueCapacity() {
+        return getInt("crawler.db.queueCapacity", 1024);
+    }
+
+    public int getGroupCommitRows() {
+        return getInt("crawler.db.groupRows", 20000);
+    }
+
+    public long getGroupCommitMillis() {
+        return getLong("crawler.db.groupMillis", 1000);
+    }
+
+    public int getDatabaseShards() {
+        return getInt("crawler.db.shards", 1);
+    }
+
+
+    /* tf-idf finalize */
+    public int getTfidfBatchSize() {
+        return getInt("crawler.tfidf.batchSize", 5000);
+    }
+
+    public double getTfidfMaxDocDrift() {
+        return getDouble("crawler.tfidf.maxDocDrift", 0.01);
+    }
+
+
+    /* visited url set */
+    public String getSeenType() {
+        return get("crawler.seen.type", "exact");
+    }
+
+    public long getSeenExpectedUrls() {
+        return getLong("crawler.seen.expected", 1000000);
+    }
+
+    public double getSeenFalsePositiveRate() {
+        return getDouble("crawler.seen.fpp", 0.001);
+    }
+
+
+    /* crawl frontier */
+    public String getFrontierDir() {
+        return get("crawler.frontier.dir", "frontier");
+    }
+
+    public int getFrontierHotSize() {
+        return getInt("crawler.frontier.hotSize", 10000);
+    }
+
+    public int getFrontierSegmentBytes() {
+        return getInt("crawler.frontier.segmentBytes", 64 << 20);
+    }
+
+
+    /* lemmatizer */
+    public String getLemmaCsv() {
+        return get("crawler.lemmas.csv", "crawler/src/main/resources/lemmatization_list.csv");
+    }
+
+    public String getLemmaSnapshot() {
+        return get("crawler.lemmas.snapshot", "lemmas.bin");
+    }
+
+
+    /* url admission */
+    public List<String> getUrlSchemes() {
+        return getList("crawler.urls.schemes", "https");
+    }
+
+    public List<String> getUrlHosts() {
+        return getList("crawler.urls.hosts", "en.wikipedia.org");
+    }
+
+    public List<String> getUrlPathPrefixes() {
+        return getList("crawler.urls.pathPrefixes", "/wiki/");
+    }
+
+    public List<String> getUrlExclusions() {
+        return getList("crawler.urls.excluded", "Main_Page,Special:,Help:,File:,Template:,Template_talk:,Category:,"
+                + "Portal:,Wikipedia:,Talk:,User:,User_talk:,1,2");
+    }
+
+    public boolean isStripFragments() {
+        return getBoolean("crawler.urls.stripFragments", false);
+    }
+
+
+    /* extraction */
+    public boolean isStreamingExtraction() {
+        return getBoolean("crawler.extract.streaming", false);
+    }
+
+
+    /* metrics and logging */
+    public boolean isPageLogging() {
+        return getBoolean("crawler.log.pages", false);
+    }
+
+    public int getMaxLogLinesPerSecond() {
+        return getInt("crawler.log.maxLinesPerSecond", 10);
+    }
+
+    public long getLogSummaryMillis() {
+        return getLong("crawler.log.summaryMillis", 10000);
+    }
+
+    public boolean isJmxEnabled() {
+        return getBoolean("crawler.metrics.jmx", true);
+    }
+
+    public int getMetricsHttpPort() {
+        return getInt("crawler.metrics.httpPort", 0);
+    }
+
+
+    /* robots.txt */
+    public boolean isRobotsEnabled() {
+        return getBoolean("crawler.robots.enabled", true);
+    }
+
+    public String getRobotsUserAgent() {
+        return get("crawler.robots.userAgent", "web_crawler");
+    }
+
+    public long getRobotsTtlMillis() {
+        return getLong("crawler.robots.ttlMillis", 24 * 60 * 60 * 1000L);
+    }
+
+    public long getRobotsErrorTtlMillis() {
+        return getLong("crawler.robots.errorTtlMillis", 10 * 60 * 1000L);
+    }
+
+
+    /* search */
+    public int getSearchTopK() {
+        return getInt("crawler.search.topK", 10);
+    }
+
+
+    /* page archive and replay */
+    public boolean isArchiveEnabled() {
+        return getBoolean("crawler.archive.enabled", false);
+    }
+
+    public String getArchiveDir() {
+        return get("crawler.archive.dir", "archive");
+    }
+
+    public long getArchiveSegmentBytes() {
+        return getLong("crawler.archive.segmentBytes", 1L << 30);
+    }
+
+    public int getReplayThreads() {
+        return getInt("crawler.replay.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /* near-duplicate suppression */
+    public boolean isDedupEnabled() {
+        return getBoolean("crawler.dedup.enabled", true);
+    }
+
+    public int getDedupMaxDistance() {
+        return getInt("crawler.dedup.maxDistance", 3);
+    }
+
+    public int getDedupMinKeywords() {
+        return getInt("crawler.dedup.minKeywords", 10);
+    }
+
+
+    /* incremental re-crawl */
+    public long getRecrawlMinAgeMillis() {
+        return getLong("crawler.recrawl.minAgeMillis", 24 * 60 * 60 * 1000L);
+    }
+
+    public int getRecrawlMaxPages() {
+        return getInt("crawler.recrawl.maxPages", 100000);
+    }
+
+
+    /* partitioned crawl */
+    public int getClusterWorkers() {
+        return getInt("crawler.cluster.workers", 4);
+    }
+
+    public String getClusterPartitionKey() {
+        return get("crawler.cluster.partitionKey", "url");
+    }
+
+    public int getClusterBatchSize() {
+        return getInt("crawler.cluster.batchSize", 256);
+    }
+
+    public long getClusterBatchMillis() {
+        return getLong("crawler.cluster.batchMillis", 100);
+    }
+
+    public long getClusterStatusMillis() {
+        return getLong("crawler.cluster.statusMillis", 500);
+    }
+
+    public long getClusterMaxPages() {
+        return getLong("crawler.cluster.maxPages", 0);
+    }
+
+    public long getClusterStartTimeoutMillis() {
+        return getLong("crawler.cluster.startTimeoutMillis", 60000);
+    }
+
+    public String getClusterJvmArgs() {
+        return get("crawler.cluster.jvmArgs", "");
+    }
+
+    public int getClusterIndex() {
+        return getInt("crawler.cluster.index", 0);
+    }
+
+    public int getClusterCoordinatorPort() {
+        return getInt("crawler.cluster.coordinatorPort", 0);
+    }
+}
@@ -1,53 +1,330 @@
 package com.java;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Map;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
-public class Database {
+public class Database implements PageStore {
+    private static final Site END_OF_QUEUE = new Site("");
+
     private Connection conn;
+    private CrawlerConfig config;
+    private KeywordDictionary dictionary;
+    private DocFrequencyCounter docFreqs;
+    private PreparedStatement docFreqStmt;
+    private PreparedStatement urlKeywordsStmt;
+    private PreparedStatement keywordsStmt;
+    private PreparedStatement urlStmt;
+    private PreparedStatement updateUrlStmt;
+    private PreparedStatement touchUrlStmt;
+    private PreparedStatement oldKeywordsStmt;
+    private PreparedStatement updateUrlKeywordStmt;
+    private PreparedStatement deleteUrlKeywordStmt;
+    private BlockingQueue<Site> pending;
+    private Thread writer;
+    private volatile Consumer<Site> stored = site -> { };
+    private NearDuplicateIndex duplicates;
+    private boolean bulkLoad;
 
     public Database() {
+        this(CrawlerConfig.load());
+    }
+
+    /**
+     * Opens the database at crawler.db.path. In crawler.db.mode "bulk" keyword rows are appended
+     * to url_keywords_staging and merged into url_keywords by closeConnection; in "online" they go
+     * straight into url_keywords, whose indexes are kept up to date on every write.
+     * @param config the crawler settings.
+     * @throws IllegalStateException if the database cannot be opened.
+     */
+    public Database(CrawlerConfig config) {
+        this(config, null);
+    }
+
+
+    /**
+     * Opens the database at crawler.db.path as one shard of a crawl, adding its stored signatures
+     * to an index shared with the other shards.
+     * @param config the crawler settings.
+     * @param duplicates the shared index, or null to load one for this database alone if
+     *                   crawler.dedup.enabled is on.
+     * @throws IllegalStateException if the database cannot be opened.
+     */
+    public Database(CrawlerConfig config, NearDuplicateIndex duplicates) {
+        this.config = config;
+        this.bulkLoad = config.getDatabaseMode().equals("bulk");
         try {
 
-            // Init all of our database tables
-            conn = DriverManager.getConnection("jdbc:sqlite:data_with_map.db");
+            // Journal settings can only change outside a transaction
+            conn = DriverManager.getConnection("jdbc:sqlite:" + config.getDatabasePath());
+            applyPragmas();
             conn.setAutoCommit(false);
+
+            // Init all of our database tables
             Statement stmt = conn.createStatement();
             stmt.execute(Statements.CREATE_URL_KEYWORDS_TABLE);
             stmt.execute(Statements.CREATE_KEYWORDS_TABLE);
             stmt.execute(Statements.CREATE_URL_TABLE);
+            stmt.execute(Statements.CREATE_INDEX_STATS_TABLE);
+            addDocFreqColumns();
+            addFetchColumns();
+            stmt.execute(Statements.CREATE_URLS_FETCHED_AT_INDEX);
+            createIndexes();
+            addSimHashColumn();
             conn.commit();
+            if (!this.bulkLoad) {
+                mergeStaged();
+            }
+
+            // Every keyword id is resolved in memory from here on
+            dictionary = new KeywordDictionary();
+            dictionary.load(conn);
+            docFreqs = new DocFrequencyCounter();
+            if (duplicates != null) {
+                duplicates.load(conn);
+                this.duplicates = duplicates;
+            } else if (config.isDedupEnabled()) {
+                this.duplicates = NearDuplicateIndex.load(conn, config);
+            }
         } catch (SQLException e) {
-            System.out.println("Failed to connect to database: " + e.getMessage());
+            closeQuietly();
+            throw new IllegalStateException("Failed to connect to database at " + config.getDatabasePath(), e);
         }
     }
 
 
     /**
-     * Sends a list of keywords to the keywords table in the database.
-     * @param keywords the list of keywords to send.
+     * Closes a connection that failed partway through opening.
      */
-    private int sendKeyword(Keyword keyword, PreparedStatement keywordsStmt) throws SQLException {
-        keywordsStmt.setString(1, keyword.toString());
-        keywordsStmt.executeUpdate();
+    private void closeQuietly() {
+        try {
+            if (this.conn != null) {
+                this.conn.close();
+            }
+        } catch (SQLException e) {
+            System.out.println("Failed to close database connection: " + e.getMessage());
+        }
+    }
 
-        try (ResultSet keys = keywordsStmt.getGeneratedKeys()) {
-            if (keys.next()) {
-                return keys.getInt(1);
-            } else {
-                throw new SQLException("Creating URL failed");
+
+    /**
+     * Prepares the insert statements once so every page and every group reuses them.
+     */
+    private void prepareStatements() throws SQLException {
+        if (this.urlStmt != null) return;
+        if (this.bulkLoad) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(Statements.CREATE_URL_KEYWORDS_STAGING_TABLE);
             }
+        }
+        this.urlKeywordsStmt = conn.prepareStatement(this.bulkLoad ? Statements.INSERT_VALUES_URL_KEYWORDS_STAGING : Statements.INSERT_VALUES_URL_KEYWORDS);
+        this.keywordsStmt = conn.prepareStatement(Statements.INSERT_KEYWORD_WITH_ID);
+        this.urlStmt = conn.prepareStatement(Statements.INSERT_URL, Statement.RETURN_GENERATED_KEYS);
+        this.docFreqStmt = conn.prepareStatement(Statements.ADD_DOC_FREQ);
+        this.updateUrlStmt = conn.prepareStatement(Statements.UPDATE_URL);
+        this.touchUrlStmt = conn.prepareStatement(Statements.TOUCH_URL);
+        this.oldKeywordsStmt = conn.prepareStatement(Statements.GET_URL_KEYWORD_IDS);
+        this.updateUrlKeywordStmt = conn.prepareStatement(Statements.UPDATE_URL_KEYWORD);
+        this.deleteUrlKeywordStmt = conn.prepareStatement(Statements.DELETE_URL_KEYWORD);
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+
+    /**
+     * Uses a write-ahead log so readers never block the writer. Bulk mode also stops syncing to
+     * disk, leaving durability to the OS; online mode syncs at WAL checkpoints.
+     */
+    private void applyPragmas() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(Statements.SET_WAL_JOURNAL);
+            stmt.execute(Statements.SET_SYNCHRONOUS + (this.bulkLoad ? "OFF" : "NORMAL"));
+            stmt.execute(Statements.SET_CACHE_KIB + (this.config.getDatabaseCacheMB() * 1024L));
+            stmt.execute(Statements.SET_TEMP_STORE_MEMORY);
+        }
+    }
+
+
+    /**
+     * Creates the secondary indexes on url_keywords: by url_id, and by keyword_id when the table is
+     * from before it was clustered on keyword_id.
+     */
+    private void createIndexes() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(Statements.CREATE_URL_KEYWORDS_URL_INDEX);
+            if (!isClustered()) {
+                stmt.execute(Statements.CREATE_URL_KEYWORDS_KEYWORD_INDEX);
+            }
+        }
+    }
+
+
+    /**
+     * Moves the rows a bulk load staged into url_keywords. They are inserted in key order, so the
+     * clustered table is appended to page by page instead of being split all over, and the url_id
+     * index is dropped first and built again in one pass at the end. Does nothing if there is no
+     * staging table, including one left behind by a bulk load that was killed.
+     */
+    private void mergeStaged() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(Statements.HAS_URL_KEYWORDS_STAGING_TABLE)) {
+                if (!rs.next()) return;
+            }
+
+            long start = System.nanoTime();
+            stmt.execute(Statements.DROP_URL_KEYWORDS_URL_INDEX);
+            int rows = stmt.executeUpdate(Statements.MERGE_URL_KEYWORDS_STAGING);
+            stmt.execute(Statements.DROP_URL_KEYWORDS_STAGING_TABLE);
+            createIndexes();
+            stmt.execute(Statements.ANALYZE);
+            conn.commit();
+            System.out.printf("Merged %d staged url_keywords rows in %.1f s%n", rows, (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+
+    /**
+     * @return true if url_keywords is the WITHOUT ROWID table keyed on (keyword_id, url_id).
+     */
+    private boolean isClustered() throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(Statements.GET_URL_KEYWORDS_SCHEMA)) {
+            return rs.next() && rs.getString(1).toUpperCase().contains("WITHOUT ROWID");
         }
-        return -1;
+    }
+
+
+    /**
+     * Adds the document frequency and idf columns to a keywords table from before they existed,
+     * and counts each keyword's documents once so incremental updates start from the right value.
+     */
+    private void addDocFreqColumns() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(Statements.GET_KEYWORDS_COLUMNS)) {
+                while (rs.next()) {
+                    if (rs.getString("name").equals("doc_freq")) return;
+                }
+            }
+
+            System.out.println("Upgrading keywords table with document frequencies...");
+            stmt.execute(Statements.ADD_KEYWORDS_DOC_FREQ_COLUMN);
+            stmt.execute(Statements.ADD_KEYWORDS_IDF_COLUMN);
+            stmt.execute(Statements.ADD_KEYWORDS_IDF_DOC_FREQ_COLUMN);
+            stmt.execute(Statements.CREATE_URL_KEYWORDS_KEYWORD_INDEX);
+            stmt.execute(Statements.BACKFILL_DOC_FREQ);
+        }
+    }
+
+
+    /**
+     * Adds the fetch validator and content hash columns to a urls table from before they existed.
+     * Pages crawled before then have no fetch time, so a re-crawl visits them first.
+     */
+    private void addFetchColumns() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(Statements.GET_URLS_COLUMNS)) {
+                while (rs.next()) {
+                    if (rs.getString("name").equals("content_hash")) return;
+                }
+            }
+
+            System.out.println("Upgrading urls table with fetch validators...");
+            stmt.execute(Statements.ADD_URLS_ETAG_COLUMN);
+            stmt.execute(Statements.ADD_URLS_LAST_MODIFIED_COLUMN);
+            stmt.execute(Statements.ADD_URLS_FETCHED_AT_COLUMN);
+            stmt.execute(Statements.ADD_URLS_CONTENT_HASH_COLUMN);
+        }
+    }
+
+
+    /**
+     * Adds the near-duplicate signature column to a urls table from before it existed, and
+     * computes every stored page's signature from its url_keywords rows, so the index rebuilt
+     * on startup covers pages crawled before the upgrade. Keyword counts are recovered as
+     * term_frequency times num_terms.
+     */
+    private void addSimHashColumn() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(Statements.GET_URLS_COLUMNS)) {
+                while (rs.next()) {
+                    if (rs.getString("name").equals("simhash")) return;
+                }
+            }
+
+            System.out.println("Upgrading urls table with near-duplicate signatures...");
+            stmt.execute(Statements.ADD_URLS_SIMHASH_COLUMN);
+        }
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(Statements.GET_URL_KEYWORD_COUNTS);
+             PreparedStatement update = conn.prepareStatement(Statements.SET_SIMHASH)) {
+            double[] votes = new double[65];
+            int urlId = -1;
+            while (rs.next()) {
+                if (rs.getInt(1) != urlId) {
+                    if (urlId != -1) addSimHash(update, urlId, votes);
+                    urlId = rs.getInt(1);
+                }
+                NearDuplicateIndex.addVotes(votes, SeenSet.fingerprint(rs.getString(2)), rs.getDouble(3));
+            }
+            if (urlId != -1) addSimHash(update, urlId, votes);
+            update.executeBatch();
+        }
+    }
+
+
+    private static void addSimHash(PreparedStatement update, int urlId, double[] votes) throws SQLException {
+        update.setLong(1, NearDuplicateIndex.signature(votes));
+        update.setInt(2, urlId);
+        update.addBatch();
+        Arrays.fill(votes, 0);
+    }
+
+
+    /**
+     * @return the index of stored pages' near-duplicate signatures, or null if crawler.dedup.enabled is off.
+     */
+    @Override
+    public NearDuplicateIndex getDuplicates() {
+        return this.duplicates;
+    }
+
+
+    @Override
+    public void onStored(Consumer<Site> listener) {
+        this.stored = listener;
+    }
+
+
+    /**
+     * Gets the id of a keyword, assigning a new one and queueing its insert if it is new.
+     * @param word the keyword to look up.
+     * @param keywordsStmt the batched keywords insert.
+     * @return the keyword_id.
+     */
+    private int sendKeyword(String word, PreparedStatement keywordsStmt) throws SQLException {
+        int keywordId = dictionary.getId(word);
+
+        if (keywordId == -1) {
+            keywordId = dictionary.assign(word);
+            keywordsStmt.setInt(1, keywordId);
+            keywordsStmt.setString(2, word);
+            keywordsStmt.addBatch();
+        }
+        return keywordId;
     }
 
 
@@ -57,14 +334,20 @@ public class Database {
      * @param numKeywords the number of keywords for that site
      * @param description the metadata description for that site
      * @param title the title of that site
-     * @return the url_id where the url was stored in the table.
+     * @param version the fetch the data came from, or null if unknown
+     * @param simHash the near-duplicate signature of the site's keywords
+     * @return the url_id where the url was stored in the table, or -1 if the url was already stored.
      */
-    private int sendUrl(String url, int numKeywords, String description, String title, PreparedStatement pstm) throws SQLException {
+    private int sendUrl(String url, int numKeywords, String description, String title, PageVersion version, long simHash, PreparedStatement pstm) throws SQLException {
         pstm.setString(1, url);
         pstm.setInt(2, numKeywords);
         pstm.setString(3, description);
         pstm.setString(4, title);
-        pstm.executeUpdate();
+        setVersion(pstm, 5, version);
+        pstm.setLong(9, simHash);
+        if (pstm.executeUpdate() == 0) {
+            return -1;
+        }
 
         try (ResultSet keys = pstm.getGeneratedKeys()) {
             if (keys.next()) {
@@ -80,58 +363,393 @@ public class Database {
     }
 
 
+    /**
+     * Binds a version's etag, last_modified, fetched_at and content_hash, or nulls without one.
+     */
+    private static void setVersion(PreparedStatement pstm, int first, PageVersion version) throws SQLException {
+        if (version == null) {
+            pstm.setNull(first, Types.VARCHAR);
+            pstm.setNull(first + 1, Types.VARCHAR);
+            pstm.setNull(first + 2, Types.INTEGER);
+            pstm.setNull(first + 3, Types.INTEGER);
+            return;
+        }
+        pstm.setString(first, version.getEtag());
+        pstm.setString(first + 1, version.getLastModified());
+        pstm.setLong(first + 2, version.getFetchedAt());
+        pstm.setLong(first + 3, version.getContentHash());
+    }
+
+
     /**
      * Add the URL, keywords, and their associated tables to the database.
      * This is the main driver for the functionality behind adding to the database.
-     * 
+     * The site is committed in its own transaction before this returns.
+     *
      * @param site the site being added to the database.
      */
     public void sendToDatabase(Site site) {
+        long start = System.nanoTime();
+        try {
+            writeSite(site);
+            commit();
+            CrawlMetrics.get().record(CrawlMetrics.Stage.DB_TRANSACTION, start);
+        } catch (SQLException | RuntimeException e) {
+            rollback();
+            CrawlMetrics.get().error("write " + site.getUrl() + " to database", e);
+        }
+    }
+
 
-        try (PreparedStatement urlKeywordsStmt = conn.prepareStatement(Statements.INSERT_VALUES_URL_KEYWORDS);
-            PreparedStatement keywordsStmt = conn.prepareStatement(Statements.INSERT_KEYWORDS, Statement.RETURN_GENERATED_KEYS);
-            PreparedStatement urlStmt = conn.prepareStatement(Statements.INSERT_URL, Statement.RETURN_GENERATED_KEYS)) {
+    /**
+     * Writes the rows for one site into the current transaction without committing.
+     *
+     * @param site the site being added to the database.
+     * @return the number of rows written.
+     */
+    private int writeSite(Site site) throws SQLException {
+        prepareStatements();
+
+        // A re-fetched page updates its existing rows
+        PageVersion version = site.getVersion();
+        if (version != null && version.getUrlId() > 0) {
+            return version.isUnchanged() ? touchUrl(version) : replaceSite(site, version);
+        }
+
+        TermCounts terms = site.getTerms();
+        int urlId = sendUrl(site.getUrl(), terms.size(), site.getDescription(), site.getTitle(), version, site.getSimHash(), urlStmt);
+        if (urlId == -1) {
+            return 1;
+        }
 
-            int urlId = sendUrl(site.getUrl(), site.getKeywords().size(), site.getDescription(), site.getTitle(), urlStmt);
+        for (int i = 0; i < terms.size(); i++) {
 
-            for (Map.Entry<Keyword, Double> entry : site.getKeywords().entrySet()) {
+            // Send keyword if new one, get the keyword id
+            int keywordId = sendKeyword(terms.getTerm(i), keywordsStmt);
+            docFreqs.increment(keywordId);
 
-                // Send keyword if new one, get the keyword id
-                Keyword keyword = entry.getKey();
-                sendKeyword(keyword, keywordsStmt);
-                int keywordId = getKeywordId(keyword.toString());
+            // Calulate the term frequency for the keyword
+            double termFrequency = (double) terms.getCount(i) / terms.size();
 
-                // Calulate the term frequency for the keyword
-                Double termFrequency = entry.getValue() / site.getKeywords().size();
+            // Send all the keyword data to the url_keywords table
+            urlKeywordsStmt.setInt(1, keywordId);
+            urlKeywordsStmt.setInt(2, urlId);
+            urlKeywordsStmt.setDouble(3, termFrequency);
+            urlKeywordsStmt.addBatch();
 
-                // Send all the keyword data to the url_keywords table
+        }
+
+        keywordsStmt.executeBatch();
+        urlKeywordsStmt.executeBatch();
+        return terms.size() + 1;
+    }
+
+
+    /**
+     * Records a re-fetch that found the page unchanged: only its validators and fetch time move.
+     * @return the number of rows written.
+     */
+    private int touchUrl(PageVersion version) throws SQLException {
+        touchUrlStmt.setString(1, version.getEtag());
+        touchUrlStmt.setString(2, version.getLastModified());
+        touchUrlStmt.setLong(3, version.getFetchedAt());
+        touchUrlStmt.setInt(4, version.getUrlId());
+        touchUrlStmt.executeUpdate();
+        return 1;
+    }
+
+
+    /**
+     * Rewrites a page that changed since it was last fetched. Only the url_keywords rows that
+     * differ are touched: keywords still on the page get their new term frequency, and tfidf
+     * from the keyword's current idf; new keywords are inserted and dropped ones deleted, and both
+     * move the keyword's document frequency so the next finalize rescores it.
+     * Needs url_keywords to hold the page's rows, so the database must be open in online mode.
+     * @return the number of rows written.
+     */
+    private int replaceSite(Site site, PageVersion version) throws SQLException {
+        int urlId = version.getUrlId();
+        TermCounts terms = site.getTerms();
+        updateUrlStmt.setInt(1, terms.size());
+        updateUrlStmt.setString(2, site.getDescription());
+        updateUrlStmt.setString(3, site.getTitle());
+        setVersion(updateUrlStmt, 4, version);
+        updateUrlStmt.setLong(8, site.getSimHash());
+        updateUrlStmt.setInt(9, urlId);
+        updateUrlStmt.executeUpdate();
+
+        Set<Integer> oldKeywords = new HashSet<>();
+        oldKeywordsStmt.setInt(1, urlId);
+        try (ResultSet rs = oldKeywordsStmt.executeQuery()) {
+            while (rs.next()) {
+                oldKeywords.add(rs.getInt(1));
+            }
+        }
+
+        for (int i = 0; i < terms.size(); i++) {
+            int keywordId = sendKeyword(terms.getTerm(i), keywordsStmt);
+            double termFrequency = (double) terms.getCount(i) / terms.size();
+
+            if (oldKeywords.remove(keywordId)) {
+                updateUrlKeywordStmt.setDouble(1, termFrequency);
+                updateUrlKeywordStmt.setDouble(2, termFrequency);
+                updateUrlKeywordStmt.setInt(3, keywordId);
+                updateUrlKeywordStmt.setInt(4, keywordId);
+                updateUrlKeywordStmt.setInt(5, urlId);
+                updateUrlKeywordStmt.addBatch();
+            } else {
+                docFreqs.increment(keywordId);
                 urlKeywordsStmt.setInt(1, keywordId);
                 urlKeywordsStmt.setInt(2, urlId);
                 urlKeywordsStmt.setDouble(3, termFrequency);
                 urlKeywordsStmt.addBatch();
-               
             }
+        }
 
-            urlKeywordsStmt.executeBatch();
-            conn.commit();
+        for (int keywordId : oldKeywords) {
+            docFreqs.add(keywordId, -1);
+            deleteUrlKeywordStmt.setInt(1, keywordId);
+            deleteUrlKeywordStmt.setInt(2, urlId);
+            deleteUrlKeywordStmt.addBatch();
+        }
+
+        keywordsStmt.executeBatch();
+        urlKeywordsStmt.executeBatch();
+        updateUrlKeywordStmt.executeBatch();
+        deleteUrlKeywordStmt.executeBatch();
+        return terms.size() + oldKeywords.size() + 1;
+    }
+
+
+    /**
+     * Reads the pages that were fetched longest ago, for a re-crawl. Pages with no fetch time,
+     * crawled before fetch times were stored, come first. Must not run while sites are being written.
+     * @param fetchedBefore only pages fetched before this time, in epoch milliseconds.
+     * @param limit the most pages to return.
+     * @return the pages' last versions, stalest first.
+     */
+    public List<PageVersion> getStalePages(long fetchedBefore, int limit) {
+        List<PageVersion> pages = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(Statements.GET_STALE_URLS)) {
+            stmt.setLong(1, fetchedBefore);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pages.add(new PageVersion(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                            rs.getLong(5), rs.getLong(6)));
+                }
+            }
         } catch (SQLException e) {
+            System.out.println("Failed to read stale pages: " + e.getMessage());
+        }
+        return pages;
+    }
+
+
+    /**
+     * Queues a site for the background writer, which commits sites in groups.
+     * Only blocks when the writer has fallen crawler.db.queueCapacity sites behind.
+     *
+     * @param site the site being added to the database.
+     * @throws IllegalStateException if the writer thread has died.
+     */
+    @Override
+    public void submit(Site site) throws InterruptedException {
+        startWriter();
+        enqueue(site);
+    }
+
+
+    /**
+     * Puts a site on the writer's queue, checking while the queue is full that the writer is
+     * still there to drain it.
+     */
+    private void enqueue(Site site) throws InterruptedException {
+        while (!this.pending.offer(site, 1, TimeUnit.SECONDS)) {
+            if (!this.writer.isAlive()) {
+                throw new IllegalStateException("Database writer has stopped");
+            }
+        }
+    }
+
+
+    /**
+     * Starts the background writer thread the first time a site is submitted.
+     */
+    private synchronized void startWriter() {
+        if (this.writer != null) return;
+        this.pending = new ArrayBlockingQueue<>(this.config.getWriterQueueCapacity());
+        this.writer = new Thread(this::writeGroups, "database-writer");
+        this.writer.start();
+    }
+
+
+    /**
+     * Writer loop. Takes sites off the queue and commits them once crawler.db.groupRows rows
+     * have been written or crawler.db.groupMillis has passed since the group's first site.
+     */
+    private void writeGroups() {
+        int groupRows = this.config.getGroupCommitRows();
+        long groupNanos = TimeUnit.MILLISECONDS.toNanos(this.config.getGroupCommitMillis());
+        List<Site> group = new ArrayList<>();
+        int rows = 0;
+        long groupStart = 0;
+        long groupWriteNanos = 0;
+
+        while (true) {
+            Site site;
             try {
-                if (conn != null) {
-                    conn.rollback();
+                long wait = group.isEmpty() ? groupNanos : groupNanos - (System.nanoTime() - groupStart);
+                site = this.pending.poll(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                site = END_OF_QUEUE;
+            }
+
+            if (site != null && site != END_OF_QUEUE) {
+                if (group.isEmpty()) groupStart = System.nanoTime();
+                group.add(site);
+                long writeStart = System.nanoTime();
+                try {
+                    rows += writeSite(site);
+                    groupWriteNanos += System.nanoTime() - writeStart;
+                } catch (SQLException e) {
+                    rows = retryIndividually(group);
+                } catch (RuntimeException e) {
+                    CrawlMetrics.get().error("write " + site.getUrl(), e);
+                    rows = retryIndividually(group);
                 }
-            } catch (SQLException ex) {
-                System.out.println("Failed to rollback transaction: " + ex.getStackTrace());
             }
-            System.out.println("Failed to write to database: " + e.getMessage());
+
+            boolean full = rows >= groupRows;
+            boolean expired = !group.isEmpty() && System.nanoTime() - groupStart >= groupNanos;
+            if (full || expired || site == END_OF_QUEUE) {
+                commitGroup(group, groupWriteNanos);
+                group.clear();
+                rows = 0;
+                groupWriteNanos = 0;
+            }
+            if (site == END_OF_QUEUE) return;
+        }
+    }
+
+
+    /**
+     * Commits the current group. If the commit fails, falls back to one transaction per site
+     * so a single bad page does not lose the rest of the group.
+     * @param writeNanos time already spent writing the group's rows, counted into the transaction time.
+     */
+    private void commitGroup(List<Site> group, long writeNanos) {
+        if (group.isEmpty()) return;
+        try {
+            long start = System.nanoTime();
+            commit();
+            CrawlMetrics.get().histogram(CrawlMetrics.Stage.DB_TRANSACTION).record(writeNanos + System.nanoTime() - start);
+        } catch (SQLException | RuntimeException e) {
+            retryIndividually(group);
+            return;
+        }
+        for (Site site : group) {
+            this.stored.accept(site);
+        }
+    }
+
+
+    /**
+     * Rolls back the open group and writes each of its sites in its own transaction, so only
+     * the site that failed is lost.
+     * @return zero, since nothing is left uncommitted afterwards.
+     */
+    private int retryIndividually(List<Site> group) {
+        rollback();
+        for (Site site : group) {
+            sendToDatabase(site);
+            this.stored.accept(site);
+        }
+        group.clear();
+        return 0;
+    }
+
+
+    private void commit() throws SQLException {
+        flushDocFreqs();
+        conn.commit();
+        dictionary.commit();
+    }
+
+
+    /**
+     * Adds the document counts gathered since the last commit to the keywords table,
+     * inside the transaction that is about to commit.
+     */
+    private void flushDocFreqs() throws SQLException {
+        if (docFreqs.size() == 0) return;
+
+        int[] keys = docFreqs.keys();
+        int[] counts = docFreqs.counts();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0 || counts[i] == 0) continue;
+            docFreqStmt.setInt(1, counts[i]);
+            docFreqStmt.setInt(2, keys[i]);
+            docFreqStmt.addBatch();
+        }
+        docFreqStmt.executeBatch();
+        docFreqs.clear();
+    }
+
+
+    private void rollback() {
+        try {
+            if (conn != null) {
+                conn.rollback();
+                dictionary.rollback();
+                docFreqs.clear();
+            }
+            if (urlStmt != null) {
+                urlKeywordsStmt.clearBatch();
+                keywordsStmt.clearBatch();
+                docFreqStmt.clearBatch();
+                updateUrlKeywordStmt.clearBatch();
+                deleteUrlKeywordStmt.clearBatch();
+            }
+        } catch (SQLException ex) {
+            System.out.println("Failed to rollback transaction: " + ex.getMessage());
         }
     }
 
 
     /**
      * Closes the database connection.
+     * Any sites still queued for the background writer are committed first, and after a bulk
+     * load the staged rows are merged into url_keywords.
      */
+    @Override
     public void closeConnection() {
         try {
+            if (this.writer != null && this.writer.isAlive()) {
+                enqueue(END_OF_QUEUE);
+                this.writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            System.out.println("Failed to write queued sites: " + e.getMessage());
+        }
+
+        try {
+            if (this.bulkLoad && this.conn != null) {
+                mergeStaged();
+            }
+            if (this.urlStmt != null) {
+                this.urlKeywordsStmt.close();
+                this.keywordsStmt.close();
+                this.urlStmt.close();
+                this.docFreqStmt.close();
+                this.updateUrlStmt.close();
+                this.touchUrlStmt.close();
+                this.oldKeywordsStmt.close();
+                this.updateUrlKeywordStmt.close();
+                this.deleteUrlKeywordStmt.close();
+            }
             if (this.conn != null) {
                 this.conn.close();
             }
@@ -141,9 +759,71 @@ public class Database {
     }
 
 
+    /**
+     * Brings the idf and tfidf columns up to date for every keyword whose document frequency
+     * changed since the last finalize, after merging any rows a bulk load left staged.
+     * Must not run while sites are being written.
+     */
+    public void finalizeTfidf() {
+        try {
+            mergeStaged();
+            createIndexes();
+            conn.commit();
+            int rescored = new TfidfFinalizer(conn, config).run();
+            System.out.println("Finalized TF-IDF for " + rescored + " keywords.");
+        } catch (SQLException e) {
+            System.out.println("Failed to finalize TF-IDF: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Copies the pages of other databases into this one, as one transaction: the shards of a
+     * sharded crawl, or the databases of a cluster's workers. Each file is opened on its own
+     * first, which brings its tables up to date and merges any rows a bulk load left staged.
+     * Pages this database already has keep their rows. Run finalizeTfidf afterwards to score
+     * the new pages. Must not run while sites are being written.
+     * @param paths the files to merge in.
+     */
+    public void mergeShards(List<String> paths) {
+        long start = System.nanoTime();
+        try {
+            for (String path : paths) {
+                if (!new File(path).isFile()) {
+                    System.out.println("Failed to merge shards: no database at " + path);
+                    return;
+                }
+                new Database(new CrawlerConfig(this.config.toProperties())
+                        .set("crawler.db.path", path)
+                        .set("crawler.db.mode", "online")
+                        .set("crawler.dedup.enabled", false)).closeConnection();
+            }
+            mergeStaged();
+
+            // the url_id index is built once at the end, as after a bulk load
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(Statements.DROP_URL_KEYWORDS_URL_INDEX);
+            }
+            int pages = new ShardMerger(conn, dictionary, config).merge(paths);
+            createIndexes();
+            conn.commit();
+            dictionary.commit();
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(Statements.ANALYZE);
+            }
+            conn.commit();
+            System.out.printf("Merged %d pages from %d databases in %.1f s%n", pages, paths.size(), (System.nanoTime() - start) / 1e9);
+        } catch (SQLException e) {
+            rollback();
+            System.out.println("Failed to merge shards: " + e.getMessage());
+        }
+    }
+
+
     /**
      * Get the total number of documents in the database.
-     * 
+     *
      * @return the total number of documents
      */
     public int getNumDocs() {
@@ -156,22 +836,4 @@ public class Database {
         }
         return 0;
     }
-
-    
-    /**
-     * Get the keyword id for a given keyword.
-     * 
-     * @param urlId the id of the document
-     * @return the total number of keywords in the document
-     */
-    private int getKeywordId(String keyword) {
-        try (PreparedStatement pstm = conn.prepareStatement(Statements.GET_KEYWORD_ID)) {
-            pstm.setString(1, keyword);
-            ResultSet rs = pstm.executeQuery();
-            return rs.getInt(1);
-        } catch (SQLException e) {
-            System.out.println("Failed to get keyword id: " + e.getMessage());
-            return -1;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+/**
+ * Counts how many new documents each keyword appeared in since the last commit.
+ * Keyword ids are always positive, so 0 marks an empty slot in the open-addressing table.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.Arrays;
+
+
+public class DocFrequencyCounter {
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+
+    public DocFrequencyCounter() {
+        this.keys = new int[1024];
+        this.counts = new int[1024];
+    }
+
+
+    /**
+     * Adds one document to a keyword's count.
+     * @param keywordId the keyword that appeared in a new document.
+     */
+    public void increment(int keywordId) {
+        add(keywordId, 1);
+    }
+
+
+    /**
+     * Adds to a keyword's count, which may go negative when pages lose the keyword.
+     * @param keywordId the keyword.
+     * @param delta the number of documents gained, or lost if negative.
+     */
+    public void add(int keywordId, int delta) {
+        int mask = this.keys.length - 1;
+        int i = mix(keywordId) & mask;
+
+        while (this.keys[i] != 0) {
+            if (this.keys[i] == keywordId) {
+                this.counts[i] += delta;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        this.keys[i] = keywordId;
+        this.counts[i] = delta;
+        if (++this.size * 2 > this.keys.length) {
+            grow();
+        }
+    }
+
+
+    /**
+     * @return the number of distinct keywords counted.
+     */
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * Raw slot arrays for iteration; slots with a key of 0 are empty.
+     */
+    public int[] keys() {
+        return this.keys;
+    }
+
+    public int[] counts() {
+        return this.counts;
+    }
+
+
+    /**
+     * Forgets every count.
+     */
+    public void clear() {
+        if (this.size == 0) return;
+        Arrays.fill(this.keys, 0);
+        this.size = 0;
+    }
+
+
+    private void grow() {
+        int[] oldKeys = this.keys;
+        int[] oldCounts = this.counts;
+        this.keys = new int[oldKeys.length * 2];
+        this.counts = new int[oldKeys.length * 2];
+        int mask = this.keys.length - 1;
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == 0) continue;
+            int i = mix(oldKeys[j]) & mask;
+            while (this.keys[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            this.keys[i] = oldKeys[j];
+            this.counts[i] = oldCounts[j];
+        }
+    }
+
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * A fetched response whose body has not been read yet.
+ * The body is already decompressed and is cut off at crawler.fetch.maxBodyBytes.
+ * Closing the response releases its connection back to the client's pool.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+
+public class FetchResponse implements Closeable {
+    private String url;
+    private int status;
+    private Map<String, String> headers;
+    private InputStream body;
+
+
+    /**
+     * Creates a new FetchResponse.
+     * @param url the url that was requested.
+     * @param status the HTTP status code.
+     * @param headers the response headers, one value per name.
+     * @param body the decoded body.
+     */
+    public FetchResponse(String url, int status, Map<String, String> headers, InputStream body) {
+        this.url = url;
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public String getUrl() {
+        return this.url;
+    }
+
+    public int getStatus() {
+        return this.status;
+    }
+
+    public Map<String, String> getHeaders() {
+        return this.headers;
+    }
+
+    public InputStream getBody() {
+        return this.body;
+    }
+
+
+    /**
+     * @param name a header name, in any case.
+     * @return the header's value, or null if the response does not have it.
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : this.headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) return header.getValue();
+        }
+        return null;
+    }
+
+
+    /**
+     * @return the charset named in the Content-Type header, or null if there is none.
+     */
+    public String getCharset() {
+        return charsetOf(getHeader("Content-Type"));
+    }
+
+
+    /**
+     * Reads the Retry-After header, given either as seconds or as an HTTP date.
+     * @return how long the server asked us to wait, or -1 if it did not say or could not be read.
+     */
+    public long getRetryAfterMillis() {
+        String value = getHeader("Retry-After");
+        if (value == null) return -1;
+        value = value.strip();
+        try {
+            if (!value.isEmpty() && Character.isDigit(value.charAt(0))) {
+                return Long.parseLong(value) * 1000;
+            }
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Fails the same way Jsoup.connect().execute() does for a response that is not a page:
+     * an error status, or a content type that is not text or XML.
+     * A status that says the server is busy fails with a TransientHttpException instead.
+     */
+    public void requirePage() throws IOException {
+        if (TransientHttpException.isTransient(this.status)) {
+            throw new TransientHttpException(this.status, this.url, getRetryAfterMillis());
+        }
+        if (this.status < 200 || this.status >= 300) {
+            throw new HttpStatusException("HTTP error fetching URL", this.status, this.url);
+        }
+        String type = getHeader("Content-Type");
+        if (type != null && !type.startsWith("text/") && !type.startsWith("application/xml") && !type.contains("+xml")) {
+            throw new UnsupportedMimeTypeException("Unhandled content type", type, this.url);
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        this.body.close();
+    }
+
+
+    /**
+     * @param contentType a Content-Type header value, or null.
+     * @return the charset parameter of the value, or null if it has none.
+     */
+    public static String charsetOf(String contentType) {
+        if (contentType == null) return null;
+        for (String param : contentType.split(";")) {
+            param = param.strip();
+            if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                return param.substring(8).replace("\"", "").strip();
+            }
+        }
+        return null;
+    }
+}
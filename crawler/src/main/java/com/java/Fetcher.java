@@ -0,0 +1,33 @@
+/**
+ * Downloads pages for the crawler. One fetcher is shared by every fetch thread and by the
+ * robots.txt cache, so connections to a host are reused across pages.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.IOException;
+
+
+public interface Fetcher {
+
+    /**
+     * Sends a GET request and returns as soon as the response headers arrive.
+     * The body is read from the returned response, which must be closed.
+     * Error statuses are returned like any other response rather than thrown.
+     * @param url the url to fetch.
+     * @return the response.
+     */
+    default FetchResponse fetch(String url) throws IOException {
+        return fetch(url, null, null);
+    }
+
+
+    /**
+     * Sends a conditional GET, which a server may answer with 304 Not Modified and no body.
+     * @param url the url to fetch.
+     * @param etag sent as If-None-Match, or null.
+     * @param lastModified sent as If-Modified-Since, or null.
+     * @return the response.
+     */
+    FetchResponse fetch(String url, String etag, String lastModified) throws IOException;
+}
@@ -0,0 +1,129 @@
+/**
+ * An exact seen set that keeps 64-bit url fingerprints in open-addressing long[] tables,
+ * about 8-16 bytes per url. Two different urls only collide with odds around 1 in 2^64 / n.
+ * The set is split into segments, each with its own lock, so threads rarely contend.
+ * Braden Zingler
+ */
+package com.java;
+
+
+public class FingerprintSeenSet implements SeenSet {
+    private static final int SEGMENT_BITS = 6;
+
+    private Segment[] segments;
+
+
+    /**
+     * Creates a new FingerprintSeenSet.
+     * @param expectedUrls the number of urls to size the tables for up front.
+     */
+    public FingerprintSeenSet(long expectedUrls) {
+        int perSegment = (int) Math.min(1 << 30, Math.max(16, expectedUrls / 0.7 / (1 << SEGMENT_BITS)));
+        int capacity = Integer.highestOneBit(perSegment - 1) << 1;
+
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment(capacity);
+        }
+    }
+
+
+    @Override
+    public boolean add(String url) {
+        return addFingerprint(SeenSet.fingerprint(url));
+    }
+
+
+    @Override
+    public boolean addFingerprint(long fp) {
+        return segmentFor(fp).add(fp == 0 ? 1 : fp);
+    }
+
+
+    @Override
+    public boolean contains(String url) {
+        long fp = SeenSet.fingerprint(url);
+        return segmentFor(fp).contains(fp == 0 ? 1 : fp);
+    }
+
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : this.segments) {
+            synchronized (segment) {
+                bytes += 8L * segment.table.length;
+            }
+        }
+        return bytes;
+    }
+
+
+    private Segment segmentFor(long fp) {
+        return this.segments[(int) (fp >>> (64 - SEGMENT_BITS))];
+    }
+
+
+    /**
+     * One linear-probing table of fingerprints. 0 marks an empty slot.
+     */
+    private static class Segment {
+        long[] table;
+        int size;
+
+        Segment(int capacity) {
+            this.table = new long[capacity];
+        }
+
+        synchronized boolean add(long fp) {
+            int mask = this.table.length - 1;
+            int i = (int) fp & mask;
+
+            while (this.table[i] != 0) {
+                if (this.table[i] == fp) return false;
+                i = (i + 1) & mask;
+            }
+            this.table[i] = fp;
+
+            if (++this.size > this.table.length * 0.7) {
+                grow();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fp) {
+            int mask = this.table.length - 1;
+            for (int i = (int) fp & mask; this.table[i] != 0; i = (i + 1) & mask) {
+                if (this.table[i] == fp) return true;
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] old = this.table;
+            this.table = new long[old.length * 2];
+            int mask = this.table.length - 1;
+
+            for (long fp : old) {
+                if (fp == 0) continue;
+                int i = (int) fp & mask;
+                while (this.table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                this.table[i] = fp;
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * The queue of urls waiting to be crawled, bounded in memory no matter how large the crawl gets.
+ * Every queued url is appended to memory-mapped segment files on disk, and only a small window
+ * of the oldest urls is held on the heap, refilled from the segments in order as it drains.
+ * A cursor file records how far the crawl has consumed the log, so a killed crawl can reopen the
+ * same directory and carry on where it stopped. Segments that have been fully consumed are deleted.
+ *
+ * A url taken from the frontier stays in flight until the crawler calls done, once its page is in
+ * the database or it needs no more work. The cursor only moves past the oldest url still in
+ * flight, so a killed crawl takes those urls again. done also appends the url's fingerprint to a
+ * seen log next to the segments, which restoreSeen loads into the next run's seen set. Urls taken
+ * again whose pages were finished are then skipped instead of crawled twice. A frontier reopened
+ * with nothing left to read starts a new crawl, and its seen log is emptied.
+ *
+ * Each entry is a 2-byte length followed by the url's UTF-8 bytes. Segment files are zero filled,
+ * so a length of 0 marks the end of the written data.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+
+public class Frontier {
+    private static final int MAX_URL_BYTES = 0xFFFF;
+
+    private File dir;
+    private int segmentBytes;
+
+    // hot window: a ring of the oldest queued urls and the log position of each one
+    private String[] hotUrls;
+    private long[] hotStarts;
+    private int hotHead;
+    private int hotCount;
+
+    private int writeSegment;
+    private int writeOffset;
+    private MappedByteBuffer writeBuffer;
+    private int readSegment;
+    private int readOffset;
+    private MappedByteBuffer readBuffer;
+    private MappedByteBuffer cursor;
+    private int oldestSegment;
+    private long onDisk;
+
+    // urls handed out and not yet done, with their log positions in order
+    private Map<Site, Long> inFlight;
+    private TreeSet<Long> inFlightStarts;
+    private FileChannel seenLog;
+    private ByteBuffer seenEntry;
+
+
+    /**
+     * Opens the frontier in crawler.frontier.dir, resuming from whatever was left there.
+     * @param config the crawler settings.
+     * @throws IllegalArgumentException if crawler.frontier.segmentBytes cannot hold the longest url.
+     */
+    public Frontier(CrawlerConfig config) {
+        this.dir = new File(config.getFrontierDir());
+        this.segmentBytes = config.getFrontierSegmentBytes();
+        if (this.segmentBytes < MAX_URL_BYTES + 4) {
+            throw new IllegalArgumentException("crawler.frontier.segmentBytes must be at least " + (MAX_URL_BYTES + 4) + ": " + this.segmentBytes);
+        }
+        this.hotUrls = new String[config.getFrontierHotSize()];
+        this.hotStarts = new long[this.hotUrls.length];
+        this.inFlight = new IdentityHashMap<>();
+        this.inFlightStarts = new TreeSet<>();
+        this.seenEntry = ByteBuffer.allocate(8);
+
+        try {
+            this.dir.mkdirs();
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open frontier in " + this.dir, e);
+        }
+    }
+
+
+    /**
+     * Queues a url. Urls too long to store are dropped.
+     * @param site the site to crawl later.
+     */
+    public synchronized void add(Site site) {
+        byte[] bytes = site.getUrl().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_URL_BYTES) return;
+
+        try {
+            if (this.writeOffset + 2 + bytes.length + 2 > this.segmentBytes) {
+                this.writeSegment++;
+                this.writeOffset = 0;
+                this.writeBuffer = map(this.writeSegment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to grow frontier", e);
+        }
+
+        // Write the bytes before the length so a crash never exposes a half-written entry
+        this.writeBuffer.put(this.writeOffset + 2, bytes);
+        this.writeBuffer.putShort(this.writeOffset, (short) bytes.length);
+        this.writeOffset += 2 + bytes.length;
+        this.onDisk++;
+        notifyAll();
+    }
+
+
+    /**
+     * Takes the oldest queued url. It stays in flight until done is called with the same site.
+     * @return the site, or null if the frontier is empty.
+     */
+    public synchronized Site poll() {
+        if (this.hotCount == 0 && !refill()) {
+            return null;
+        }
+
+        String url = this.hotUrls[this.hotHead];
+        long start = this.hotStarts[this.hotHead];
+        this.hotUrls[this.hotHead] = null;
+        this.hotHead = (this.hotHead + 1) % this.hotUrls.length;
+        this.hotCount--;
+
+        Site site = new Site(url);
+        this.inFlight.put(site, start);
+        this.inFlightStarts.add(start);
+        return site;
+    }
+
+
+    /**
+     * Marks a url taken from the frontier as finished: its page is stored, or it needs no more
+     * work. The url is added to the seen log, and the cursor moves up to the oldest url still in
+     * flight. Sites that are not in flight are ignored.
+     * @param site a site returned by poll.
+     */
+    public synchronized void done(Site site) {
+        Long start = this.inFlight.remove(site);
+        if (start == null || !this.seenLog.isOpen()) return;
+        this.inFlightStarts.remove(start);
+
+        // Log the url before moving the cursor past it, so a crash in between only skips it
+        try {
+            this.seenEntry.clear();
+            this.seenEntry.putLong(0, SeenSet.fingerprint(site.getNormalizedUrl()));
+            while (this.seenEntry.hasRemaining()) {
+                this.seenLog.write(this.seenEntry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the seen log", e);
+        }
+
+        long oldest = this.inFlightStarts.isEmpty() ? nextPosition() : this.inFlightStarts.first();
+        this.cursor.putLong(0, oldest);
+        while (this.oldestSegment < (int) (oldest >>> 32)) {
+            segmentFile(this.oldestSegment++).delete();
+        }
+    }
+
+
+    /**
+     * Adds every url a previous run logged as done to a seen set.
+     * @param seen the new crawl's seen set.
+     * @return the number of urls loaded.
+     */
+    public synchronized long restoreSeen(SeenSet seen) {
+        long count = 0;
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            int read;
+            while ((read = this.seenLog.read(buffer, position)) > 0) {
+                position += read;
+                buffer.flip();
+                while (buffer.remaining() >= 8) {
+                    seen.addFingerprint(buffer.getLong());
+                    count++;
+                }
+                buffer.compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the seen log", e);
+        }
+        if (count > 0) {
+            System.out.println("Resuming with " + count + " finished urls.");
+        }
+        return count;
+    }
+
+
+    /**
+     * Takes the oldest queued url, waiting up to the given time for one to arrive.
+     * @return the site, or null if none arrived in time.
+     */
+    public synchronized Site poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Site site = poll();
+
+        while (site == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            site = poll();
+        }
+        return site;
+    }
+
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+
+    /**
+     * @return the number of urls queued, in memory and on disk.
+     */
+    public synchronized long size() {
+        return this.hotCount + this.onDisk;
+    }
+
+
+    /**
+     * Flushes the segments, seen log and cursor to disk. Urls still in flight are taken again by
+     * the next run.
+     */
+    public synchronized void close() {
+        this.writeBuffer.force();
+        try {
+            this.seenLog.force(false);
+            this.seenLog.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close the seen log: " + e);
+        }
+        this.cursor.force();
+    }
+
+
+    /**
+     * @return the log position of the next url poll will hand out, or of where the next one will be read.
+     */
+    private long nextPosition() {
+        return this.hotCount > 0 ? this.hotStarts[this.hotHead] : position(this.readSegment, this.readOffset);
+    }
+
+
+    /**
+     * Moves up to a window's worth of urls from the segments into memory.
+     * @return true if anything was read.
+     */
+    private boolean refill() {
+        try {
+            while (this.hotCount < this.hotUrls.length) {
+                int length = this.readOffset + 2 <= this.segmentBytes ? this.readBuffer.getShort(this.readOffset) & 0xFFFF : 0;
+
+                if (length == 0) {
+                    // The end of a segment the writer has moved past means the next segment
+                    if (this.readSegment == this.writeSegment) break;
+                    this.readSegment++;
+                    this.readOffset = 0;
+                    this.readBuffer = this.readSegment == this.writeSegment ? this.writeBuffer : map(this.readSegment);
+                    continue;
+                }
+
+                byte[] bytes = new byte[length];
+                this.readBuffer.get(this.readOffset + 2, bytes);
+                int slot = (this.hotHead + this.hotCount) % this.hotUrls.length;
+                this.hotUrls[slot] = new String(bytes, StandardCharsets.UTF_8);
+                this.hotStarts[slot] = position(this.readSegment, this.readOffset);
+                this.hotCount++;
+                this.readOffset += 2 + length;
+                this.onDisk--;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read frontier", e);
+        }
+        return this.hotCount > 0;
+    }
+
+
+    /**
+     * Finds the segments left by a previous run, positions the reader at the saved cursor
+     * and the writer at the end of the data, and counts what is still queued.
+     * The seen log is opened for appending, dropping a half-written last entry, or emptied if
+     * nothing is left to read.
+     */
+    private void open() throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(this.dir, "cursor").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        }
+        this.seenLog = FileChannel.open(new File(this.dir, "seen.dat").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.seenLog.truncate(this.seenLog.size() / 8 * 8);
+        this.seenLog.position(this.seenLog.size());
+
+        int[] segments = existingSegments();
+        long saved = this.cursor.getLong(0);
+        this.readSegment = segments.length == 0 ? 0 : Math.max(segments[0], (int) (saved >>> 32));
+        this.readOffset = segments.length > 0 && this.readSegment == (int) (saved >>> 32) ? (int) saved : 0;
+        this.oldestSegment = this.readSegment;
+
+        for (int segment : segments) {
+            if (segment < this.readSegment) {
+                segmentFile(segment).delete();
+            }
+        }
+
+        // Walk the unread entries to find where writing left off
+        this.writeSegment = this.readSegment;
+        this.writeOffset = this.readOffset;
+        int last = segments.length == 0 ? this.readSegment : Math.max(this.readSegment, segments[segments.length - 1]);
+
+        while (true) {
+            MappedByteBuffer buffer = map(this.writeSegment);
+            int length;
+            while (this.writeOffset + 2 <= this.segmentBytes && (length = buffer.getShort(this.writeOffset) & 0xFFFF) != 0) {
+                this.writeOffset += 2 + length;
+                this.onDisk++;
+            }
+            if (this.writeSegment == last) {
+                this.writeBuffer = buffer;
+                break;
+            }
+            this.writeSegment++;
+            this.writeOffset = 0;
+        }
+
+        this.readBuffer = this.readSegment == this.writeSegment ? this.writeBuffer : map(this.readSegment);
+        if (this.onDisk > 0) {
+            System.out.println("Resuming frontier with " + this.onDisk + " queued urls.");
+        } else {
+            // A finished crawl leaves nothing to resume, so the next one starts with nothing seen
+            this.seenLog.truncate(0);
+        }
+    }
+
+
+    private int[] existingSegments() {
+        String[] names = this.dir.list((d, name) -> name.startsWith("segment-"));
+        if (names == null) return new int[0];
+
+        int[] segments = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            segments[i] = Integer.parseInt(names[i].substring("segment-".length(), names[i].length() - ".dat".length()));
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        Path path = segmentFile(segment).toPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+        }
+    }
+
+
+    private File segmentFile(int segment) {
+        return new File(this.dir, String.format("segment-%06d.dat", segment));
+    }
+
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+}
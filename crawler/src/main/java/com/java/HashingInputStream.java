@@ -0,0 +1,78 @@
+/**
+ * Hashes the bytes read through a stream, to tell whether a page changed between crawls.
+ * The hash is a CRC-32 and a CRC-32C of the bytes side by side in one long. Both are hardware
+ * accelerated, so hashing costs far less than parsing, and together they make a 64-bit check.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+
+public class HashingInputStream extends FilterInputStream {
+    private CRC32 crc;
+    private CRC32C crcC;
+
+
+    public HashingInputStream(InputStream in) {
+        super(in);
+        this.crc = new CRC32();
+        this.crcC = new CRC32C();
+    }
+
+
+    /**
+     * @return the hash of the bytes read so far.
+     */
+    public long getHash() {
+        return this.crc.getValue() << 32 | this.crcC.getValue();
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            this.crc.update(b);
+            this.crcC.update(b);
+        }
+        return b;
+    }
+
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            this.crc.update(b, off, n);
+            this.crcC.update(b, off, n);
+        }
+        return n;
+    }
+
+
+    @Override
+    public long skip(long n) throws IOException {
+        // skipped bytes would be missing from the hash, so read them instead
+        if (n <= 0) return 0;
+        return Math.max(read(new byte[(int) Math.min(n, 8192)]), 0);
+    }
+
+
+    /**
+     * Hashes a whole body the same way reading it through a HashingInputStream would.
+     * @param bytes the body.
+     * @return its hash.
+     */
+    public static long hash(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        CRC32C crcC = new CRC32C();
+        crc.update(bytes);
+        crcC.update(bytes);
+        return crc.getValue() << 32 | crcC.getValue();
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Caps the number of requests that may be in flight to any single host at once.
+ * Each host gets its own limit the first time it is seen.
+ *
+ * With crawler.fetch.adaptive on, each host's limit moves with how the host is coping, additive
+ * increase, multiplicative decrease:
+ *   - A response that comes back within crawler.fetch.latencyTolerance times the host's best
+ *     recent latency, while the host's slots are all in use, raises the limit by about one per
+ *     limit's worth of responses, up to crawler.fetch.perHostMax.
+ *   - A slower average cuts the limit by 10%, and a busy status or a timeout cuts it in half,
+ *     at most once per round trip so one burst of errors is only punished once.
+ * The limit never drops below one. A Retry-After from the host holds back every request to it
+ * until the time is up, adaptive or not.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+
+public class HostLimiter {
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final double BASELINE_DRIFT = 0.01;
+    private static final double SLOW_DECREASE = 0.9;
+    private static final double OVERLOAD_DECREASE = 0.5;
+
+    private ConcurrentMap<String, Host> hosts;
+    private int perHost;
+    private int maxPerHost;
+    private boolean adaptive;
+    private double latencyTolerance;
+
+
+    /**
+     * Creates a HostLimiter with a fixed limit.
+     * @param perHost the maximum number of concurrent requests to one host.
+     */
+    public HostLimiter(int perHost) {
+        this.hosts = new ConcurrentHashMap<>();
+        this.perHost = perHost;
+        this.maxPerHost = perHost;
+        this.adaptive = false;
+    }
+
+
+    /**
+     * Creates a HostLimiter that starts every host at crawler.fetch.perHost and, with
+     * crawler.fetch.adaptive on, adjusts it between 1 and crawler.fetch.perHostMax.
+     * @param config the crawler settings.
+     */
+    public HostLimiter(CrawlerConfig config) {
+        this(config.getPerHostConcurrency());
+        this.adaptive = config.isAdaptiveConcurrency();
+        this.maxPerHost = Math.max(this.perHost, config.getMaxPerHostConcurrency());
+        this.latencyTolerance = config.getLatencyTolerance();
+    }
+
+
+    /**
+     * Blocks until a request slot is free for the host of the given url, and the host has
+     * not asked us to wait.
+     * @param url the url about to be fetched.
+     * @return the host that was acquired, to be passed back to release.
+     */
+    public String acquire(String url) throws InterruptedException {
+        String host = hostOf(url);
+        this.hosts.computeIfAbsent(host, h -> new Host(this.perHost)).acquire();
+        return host;
+    }
+
+
+    /**
+     * Blocks until a request slot is free for the host, then until at least delayMillis
+     * has passed since the previous request to that host started.
+     * @param url the url about to be fetched.
+     * @param delayMillis the host's Crawl-delay, or 0 for none.
+     * @return the host that was acquired, to be passed back to release.
+     */
+    public String acquire(String url, long delayMillis) throws InterruptedException {
+        String host = acquire(url);
+        if (delayMillis <= 0) return host;
+
+        // Reserve the next start time for this host, then sleep until it arrives
+        long start = this.hosts.get(host).reserveStart(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+        try {
+            TimeUnit.NANOSECONDS.sleep(start - System.nanoTime());
+        } catch (InterruptedException e) {
+            release(host);
+            throw e;
+        }
+        return host;
+    }
+
+
+    /**
+     * Frees a request slot previously taken with acquire.
+     * @param host the host returned by acquire.
+     */
+    public void release(String host) {
+        this.hosts.get(host).release();
+    }
+
+
+    /**
+     * Reports a response from a host, busy statuses aside, before its slot is released.
+     * @param host the host returned by acquire.
+     * @param latencyNanos how long the response took to start.
+     */
+    public void succeeded(String host, long latencyNanos) {
+        if (this.adaptive) {
+            this.hosts.get(host).succeeded(latencyNanos, this.latencyTolerance, this.maxPerHost);
+        }
+    }
+
+
+    /**
+     * Reports that a host answered with a busy status or did not answer in time, before the
+     * slot is released.
+     * @param host the host returned by acquire.
+     * @param retryAfterMillis how long the host asked us to wait, or -1 if it did not say.
+     */
+    public void overloaded(String host, long retryAfterMillis) {
+        this.hosts.get(host).overloaded(retryAfterMillis, this.adaptive);
+    }
+
+
+    /**
+     * @return the host's current limit, or the starting limit if the host has not been seen.
+     */
+    public int getLimit(String host) {
+        Host state = this.hosts.get(host);
+        return state == null ? this.perHost : state.limit();
+    }
+
+
+    /**
+     * Gets the lowercase host of a url, or an empty string if it has none.
+     * @param url the url to parse.
+     * @return the host.
+     */
+    public static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+
+    /**
+     * One host's limit, requests in flight and latency estimates. Guarded by its own monitor.
+     */
+    private static class Host {
+        private double limit;
+        private int inFlight;
+        private long pausedUntil;
+        private long nextStart;
+        private double baseline;
+        private double average;
+        private long lastDecrease;
+
+        Host(int limit) {
+            this.limit = limit;
+            this.nextStart = System.nanoTime();
+            this.lastDecrease = System.nanoTime();
+        }
+
+        synchronized int limit() {
+            return (int) this.limit;
+        }
+
+        synchronized void acquire() throws InterruptedException {
+            while (true) {
+                long wait = this.pausedUntil - System.nanoTime();
+                if (wait <= 0 && this.inFlight < (int) this.limit) break;
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, wait);
+                } else {
+                    wait();
+                }
+            }
+            this.inFlight++;
+        }
+
+        synchronized void release() {
+            this.inFlight--;
+            notifyAll();
+        }
+
+        synchronized long reserveStart(long delayNanos) {
+            long start = Math.max(this.nextStart, System.nanoTime());
+            this.nextStart = start + delayNanos;
+            return start;
+        }
+
+        /**
+         * Tracks the best recent latency, which creeps up slowly so a host that has become slower
+         * for good gets a new baseline, and an average of the latest ones.
+         */
+        synchronized void succeeded(long latencyNanos, double tolerance, int max) {
+            if (this.average == 0) {
+                this.baseline = latencyNanos;
+                this.average = latencyNanos;
+            } else {
+                this.baseline = Math.min(latencyNanos, this.baseline + BASELINE_DRIFT * (latencyNanos - this.baseline));
+                this.average += LATENCY_WEIGHT * (latencyNanos - this.average);
+            }
+
+            if (this.average > tolerance * this.baseline) {
+                decrease(SLOW_DECREASE);
+            } else if (this.inFlight >= (int) this.limit) {
+                // only grow while the limit is what holds requests back
+                this.limit = Math.min(max, this.limit + 1 / this.limit);
+                notifyAll();
+            }
+        }
+
+        synchronized void overloaded(long retryAfterMillis, boolean adaptive) {
+            if (adaptive) {
+                decrease(OVERLOAD_DECREASE);
+            }
+            if (retryAfterMillis > 0) {
+                this.pausedUntil = Math.max(this.pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+            }
+        }
+
+        private void decrease(double factor) {
+            long now = System.nanoTime();
+            if (now - this.lastDecrease < this.average) return;
+            this.limit = Math.max(1, this.limit * factor);
+            this.lastDecrease = now;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * A Fetcher backed by one shared java.net.http.HttpClient.
+ * The client keeps connections alive and negotiates HTTP/2 where the server supports it, so
+ * pages from one host share a few multiplexed connections instead of a connection each.
+ * Requests ask for gzip or deflate and the body is decompressed as it is read, so the parser
+ * consumes the download as it arrives. Bytes received before decompression are counted as
+ * wire bytes in the crawl metrics. A response must start within crawler.fetch.timeoutMillis and
+ * its body must be read within crawler.fetch.readTimeoutMillis after that; a body still being
+ * read at its deadline is closed under the reader, which gets an HttpTimeoutException.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+
+public class HttpFetcher implements Fetcher {
+    private static final ScheduledThreadPoolExecutor DEADLINES = deadlineTimer();
+
+    private HttpClient client;
+    private Duration timeout;
+    private long readTimeoutMillis;
+    private long maxBodyBytes;
+    private String userAgent;
+    private CrawlMetrics metrics;
+
+
+    /**
+     * Creates the client. Connections time out after crawler.fetch.connectTimeoutMillis, a
+     * response must start within crawler.fetch.timeoutMillis, and its body must be read within
+     * crawler.fetch.readTimeoutMillis of that.
+     * @param config the crawler settings.
+     */
+    public HttpFetcher(CrawlerConfig config) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMillis()))
+                .build();
+        this.timeout = Duration.ofMillis(config.getFetchTimeoutMillis());
+        this.readTimeoutMillis = config.getReadTimeoutMillis();
+        this.maxBodyBytes = config.getMaxBodyBytes();
+        this.userAgent = config.getRobotsUserAgent();
+        this.metrics = CrawlMetrics.get();
+    }
+
+
+    @Override
+    public FetchResponse fetch(String url, String etag, String lastModified) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(this.timeout)
+                .header("User-Agent", this.userAgent)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+        HttpRequest request = builder.build();
+
+        HttpResponse<InputStream> res;
+        try {
+            res = this.client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching " + url);
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : res.headers().map().entrySet()) {
+            if (!header.getValue().isEmpty() && !header.getKey().startsWith(":")) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+
+        Body body = new Body(url, new CountingInputStream(res.body()), this.maxBodyBytes, this.metrics);
+        if (this.readTimeoutMillis > 0) {
+            body.deadline = DEADLINES.schedule(body::expire, this.readTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        // a gzip header is read as soon as the decoder is made, so the deadline must already be set
+        body.decode(res.headers().firstValue("Content-Encoding").orElse(""));
+        return new FetchResponse(url, res.statusCode(), headers, body);
+    }
+
+
+    /**
+     * One daemon thread that closes bodies whose deadline has passed. Cancelled deadlines are
+     * removed at once, since almost every body is read in time.
+     */
+    private static ScheduledThreadPoolExecutor deadlineTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "http-body-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+
+    /**
+     * The decoded body, cut off after the size limit. Reports the wire bytes when closed.
+     * When its deadline passes first, the raw stream is closed, which wakes a read blocked on
+     * the network; that read, and every one after it, fails with an HttpTimeoutException.
+     */
+    private static class Body extends FilterInputStream {
+        private String url;
+        private CountingInputStream wire;
+        private long remaining;
+        private CrawlMetrics metrics;
+        private boolean closed;
+        private volatile boolean expired;
+        ScheduledFuture<?> deadline;
+
+        Body(String url, CountingInputStream wire, long maxBytes, CrawlMetrics metrics) {
+            super(wire);
+            this.url = url;
+            this.wire = wire;
+            this.remaining = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Starts decompressing the body if the response was compressed.
+         * @param contentEncoding the Content-Encoding header, or "" if there was none.
+         */
+        void decode(String contentEncoding) throws IOException {
+            String encoding = contentEncoding.strip().toLowerCase();
+            try {
+                if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+                    this.in = new GZIPInputStream(this.wire, 16 * 1024);
+                } else if (encoding.equals("deflate")) {
+                    this.in = new InflaterInputStream(this.wire);
+                }
+            } catch (IOException e) {
+                close();
+                throw timedOut(e);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) return -1;
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException e) {
+                throw timedOut(e);
+            }
+            if (b == -1) return finished();
+            this.remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining <= 0) return -1;
+            int n;
+            try {
+                n = super.read(b, off, (int) Math.min(len, this.remaining));
+            } catch (IOException e) {
+                throw timedOut(e);
+            }
+            if (n == -1) return finished();
+            this.remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) return;
+            this.closed = true;
+            cancelDeadline();
+            this.metrics.addWireBytes(this.wire.getCount());
+            super.close();
+        }
+
+        /**
+         * Closes the raw stream from the timer thread. The decoder is left alone, since it is
+         * not safe to close while the reader is using it.
+         */
+        void expire() {
+            this.expired = true;
+            try {
+                this.wire.close();
+            } catch (IOException e) {
+                // the reader sees the timeout either way
+            }
+        }
+
+        /**
+         * The stream ended: either the whole body arrived, or expire closed it early.
+         */
+        private int finished() throws IOException {
+            if (this.expired) throw timedOut(null);
+            cancelDeadline();
+            return -1;
+        }
+
+        private IOException timedOut(IOException cause) {
+            if (!this.expired) return cause;
+            HttpTimeoutException e = new HttpTimeoutException("Timed out reading body of " + this.url);
+            if (cause != null) e.initCause(cause);
+            return e;
+        }
+
+        private void cancelDeadline() {
+            if (this.deadline != null) this.deadline.cancel(false);
+        }
+    }
+}
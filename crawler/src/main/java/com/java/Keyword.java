@@ -1,8 +1,13 @@
 package com.java;
 
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 
 public class Keyword {
+    /** Lowercase stopwords, built once instead of on every check. */
+    static final Set<String> STOPWORDS = buildStopwords(new String[] {"a", "afterwords", "about","above","according","across","actually","after","again","against","all","almost","also","although","always","am","among","amongst","an","and","any","anything","anyway","are","as","at","be","became","become","because","been","before","being","below","between","both","but","by","can","could","did","do","does","doing","down","during","each","either","else","few","for","from","further","had","has","have","having","he","he'd","he'll","hence","he's","her","here","here's","hers","herself","him","himself","his","how","how's","I","I'd","I'll","I'm","I've","if","in","into","is","it","it's","its","itself","just","let's","may","maybe","me","might","mine","more","most","must","my","myself","neither","nor","not","of","oh","on","once","only","ok","or","other","ought","our","ours","ourselves","out","over","own","same","she","she'd","she'll","she's","should","so","some","such","than","that","that's","the","their","theirs","them","themselves","then","there","there's","these","they","they'd","they'll","they're","they've","this","those","through","to","too","under","until","up","very","was","we","we'd","we'll","we're","we've","were","what","what's","when","whenever","when's","where","whereas","wherever","where's","whether","which","while","who","whoever","who's","whose","whom","why","why's","will","with","within","would","yes","yet","you","you'd","you'll","you're","you've","your","yours","yourself","yourselves", "wikipedia", "use"});
+
     private String word;
 
     public Keyword(String word) { 
@@ -21,12 +26,12 @@ public class Keyword {
     * @return true if doesn't contain the ignored characters, false otherwise.
     */
     public boolean isWord() {
-        try {
-            return this.word.matches("\\b[a-zA-Z]+\\b");
-        } catch (Exception e) {
-            System.out.println("An error occurred while checking if " + word + " is a word: " + e);
+        if (this.word.isEmpty()) return false;
+        for (int i = 0; i < this.word.length(); i++) {
+            char c = this.word.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) return false;
         }
-        return false;
+        return true;
     }
 
 
@@ -36,16 +41,16 @@ public class Keyword {
     * @return True if the word is a stopword, false otherwise
     */
     public boolean isStopword() {
-        try {
-            String[] stopWords = new String[] {"a", "afterwords", "about","above","according","across","actually","after","again","against","all","almost","also","although","always","am","among","amongst","an","and","any","anything","anyway","are","as","at","be","became","become","because","been","before","being","below","between","both","but","by","can","could","did","do","does","doing","down","during","each","either","else","few","for","from","further","had","has","have","having","he","he'd","he'll","hence","he's","her","here","here's","hers","herself","him","himself","his","how","how's","I","I'd","I'll","I'm","I've","if","in","into","is","it","it's","its","itself","just","let's","may","maybe","me","might","mine","more","most","must","my","myself","neither","nor","not","of","oh","on","once","only","ok","or","other","ought","our","ours","ourselves","out","over","own","same","she","she'd","she'll","she's","should","so","some","such","than","that","that's","the","their","theirs","them","themselves","then","there","there's","these","they","they'd","they'll","they're","they've","this","those","through","to","too","under","until","up","very","was","we","we'd","we'll","we're","we've","were","what","what's","when","whenever","when's","where","whereas","wherever","where's","whether","which","while","who","whoever","who's","whose","whom","why","why's","will","with","within","would","yes","yet","you","you'd","you'll","you're","you've","your","yours","yourself","yourselves", "wikipedia", "use"};
-            for (String stopWord : stopWords) {
-                if (this.word.equalsIgnoreCase(stopWord)) return true;
-            }
-            return false;
-        } catch (Exception e) {
-            System.out.println("An error occurred while checking if is stopword: " + e);
+        return STOPWORDS.contains(this.word.toLowerCase());
+    }
+
+
+    private static Set<String> buildStopwords(String[] words) {
+        Set<String> stopwords = new HashSet<>();
+        for (String word : words) {
+            stopwords.add(word.toLowerCase());
         }
-        return true;
+        return stopwords;
     }
 
 
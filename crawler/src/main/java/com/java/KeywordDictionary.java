@@ -0,0 +1,227 @@
+/**
+ * An in-memory map from keyword to keyword_id, so the database writer never has to ask SQLite
+ * whether a keyword exists. Terms are interned as UTF-8 bytes in one shared pool and found through
+ * an open-addressing table of int slots. FootprintBenchmark measures about 31 bytes of heap per
+ * term at a million terms, the term's own bytes and the arrays' spare room included, where a
+ * HashMap<String, Integer> keeps about 104.
+ * Not thread safe; it is owned by the database writer.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+
+public class KeywordDictionary {
+    private byte[] pool;
+    private int poolSize;
+    private int[] offsets;
+    private int[] ids;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+    private int nextId;
+    private int committedSize;
+    private byte[] scratch;
+
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public KeywordDictionary() {
+        this.pool = new byte[1 << 16];
+        this.offsets = new int[1025];
+        this.ids = new int[1024];
+        this.hashes = new int[1024];
+        this.slots = new int[2048];
+        this.scratch = new byte[64];
+        this.nextId = 1;
+    }
+
+
+    /**
+     * Reads every existing keyword and its id from the keywords table.
+     * @param conn the open database connection.
+     */
+    public void load(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(Statements.GET_ALL_KEYWORDS)) {
+            while (rs.next()) {
+                put(rs.getString(2), rs.getInt(1));
+            }
+        }
+        this.committedSize = this.size;
+    }
+
+
+    /**
+     * Gets the id for a keyword.
+     * @param term the keyword.
+     * @return the keyword_id, or -1 if the keyword is not in the dictionary.
+     */
+    public int getId(String term) {
+        int len = encode(term);
+        int hash = hash(this.scratch, len);
+        int mask = this.slots.length - 1;
+
+        for (int i = hash & mask; this.slots[i] != 0; i = (i + 1) & mask) {
+            int entry = this.slots[i] - 1;
+            if (this.hashes[entry] == hash && matches(entry, len)) {
+                return this.ids[entry];
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Assigns the next unused id to a keyword that is not yet in the dictionary.
+     * The new entry stays uncommitted until commit is called.
+     * @param term the keyword.
+     * @return the new keyword_id.
+     */
+    public int assign(String term) {
+        int id = this.nextId;
+        put(term, id);
+        return id;
+    }
+
+
+    /**
+     * Marks every assigned keyword as stored in the database.
+     */
+    public void commit() {
+        this.committedSize = this.size;
+    }
+
+
+    /**
+     * Forgets the keywords assigned since the last commit, after their transaction was rolled back.
+     */
+    public void rollback() {
+        if (this.size == this.committedSize) return;
+
+        this.size = this.committedSize;
+        this.poolSize = this.offsets[this.size];
+        this.nextId = 1;
+        for (int i = 0; i < this.size; i++) {
+            this.nextId = Math.max(this.nextId, this.ids[i] + 1);
+        }
+        rehash(this.slots.length);
+    }
+
+
+    /**
+     * @return the number of keywords in the dictionary.
+     */
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * @return the approximate heap used by the dictionary in bytes.
+     */
+    public long memoryBytes() {
+        return this.pool.length + 4L * (this.offsets.length + this.ids.length + this.hashes.length + this.slots.length);
+    }
+
+
+    private void put(String term, int id) {
+        int len = encode(term);
+
+        if (this.size == this.ids.length) {
+            int cap = this.ids.length * 2;
+            this.ids = Arrays.copyOf(this.ids, cap);
+            this.hashes = Arrays.copyOf(this.hashes, cap);
+            this.offsets = Arrays.copyOf(this.offsets, cap + 1);
+        }
+        if (this.poolSize + len > this.pool.length) {
+            this.pool = Arrays.copyOf(this.pool, Math.max(this.pool.length * 2, this.poolSize + len));
+        }
+
+        int entry = this.size++;
+        System.arraycopy(this.scratch, 0, this.pool, this.poolSize, len);
+        this.offsets[entry] = this.poolSize;
+        this.poolSize += len;
+        this.offsets[entry + 1] = this.poolSize;
+        this.ids[entry] = id;
+        this.hashes[entry] = hash(this.scratch, len);
+        this.nextId = Math.max(this.nextId, id + 1);
+
+        // Keep the table at most half full so probe chains stay short
+        if (this.size * 2 > this.slots.length) {
+            rehash(this.slots.length * 2);
+        } else {
+            insertSlot(entry);
+        }
+    }
+
+
+    private void rehash(int capacity) {
+        this.slots = new int[capacity];
+        for (int i = 0; i < this.size; i++) {
+            insertSlot(i);
+        }
+    }
+
+
+    private void insertSlot(int entry) {
+        int mask = this.slots.length - 1;
+        int i = this.hashes[entry] & mask;
+        while (this.slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        this.slots[i] = entry + 1;
+    }
+
+
+    private boolean matches(int entry, int len) {
+        int start = this.offsets[entry];
+        if (this.offsets[entry + 1] - start != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (this.pool[start + i] != this.scratch[i]) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Writes the UTF-8 bytes of a term into the scratch buffer. Keywords are almost always ASCII,
+     * so that case is copied directly without allocating.
+     * @return the number of bytes written.
+     */
+    private int encode(String term) {
+        int len = term.length();
+        if (this.scratch.length < len) {
+            this.scratch = new byte[Math.max(len, this.scratch.length * 2)];
+        }
+        for (int i = 0; i < len; i++) {
+            char c = term.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+                if (this.scratch.length < bytes.length) {
+                    this.scratch = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, this.scratch, 0, bytes.length);
+                return bytes.length;
+            }
+            this.scratch[i] = (byte) c;
+        }
+        return len;
+    }
+
+
+    private static int hash(byte[] bytes, int len) {
+        int h = 0x9747b28c;
+        for (int i = 0; i < len; i++) {
+            h = (h ^ bytes[i]) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * A read-only word to lemma table laid out as flat arrays so it can be saved as a binary snapshot
+ * and memory-mapped at startup instead of re-parsing the CSV every run.
+ * Lookups only do absolute reads from the buffers, so one table can be shared by any number of threads.
+ *
+ * Snapshot layout (big endian):
+ *   int magic, int entryCount, int slotCount, int charCount
+ *   int[slotCount]       open-addressing slots holding entry index + 1, or 0 if empty
+ *   int[entryCount * 4]  keyStart, keyLength, lemmaStart, lemmaLength per entry
+ *   char[charCount]      all keys and lemmas, with repeated lemmas stored once
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+
+public class LemmaTable {
+    private static final int MAGIC = 0x4C454D31; // "LEM1"
+    private static final int HEADER_BYTES = 16;
+
+    private IntBuffer slots;
+    private IntBuffer entries;
+    private CharBuffer chars;
+    private int size;
+
+
+    private LemmaTable(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a lemma snapshot");
+            }
+            this.size = buffer.getInt(4);
+            int slotCount = buffer.getInt(8);
+            int charCount = buffer.getInt(12);
+
+            int pos = HEADER_BYTES;
+            this.slots = buffer.slice(pos, slotCount * 4).asIntBuffer();
+            pos += slotCount * 4;
+            this.entries = buffer.slice(pos, this.size * 16).asIntBuffer();
+            pos += this.size * 16;
+            this.chars = buffer.slice(pos, charCount * 2).asCharBuffer();
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("Truncated lemma snapshot", e);
+        }
+    }
+
+
+    /**
+     * Memory-maps a snapshot file.
+     * @param path the snapshot written by writeSnapshot.
+     * @return the table.
+     */
+    public static LemmaTable open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new LemmaTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+
+    /**
+     * Reads a snapshot from a stream, for snapshots packaged inside a jar.
+     * @param in the snapshot bytes.
+     * @return the table.
+     */
+    public static LemmaTable read(InputStream in) throws IOException {
+        return new LemmaTable(ByteBuffer.wrap(in.readAllBytes()));
+    }
+
+
+    /**
+     * Builds a table from a word to lemma map.
+     * @param lemmas each word and its lemma.
+     * @return the table.
+     */
+    public static LemmaTable build(Map<String, String> lemmas) {
+        try {
+            return new LemmaTable(ByteBuffer.wrap(encode(lemmas)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * An empty table, used when no lemma list is available.
+     */
+    public static LemmaTable empty() {
+        return build(new HashMap<>());
+    }
+
+
+    /**
+     * Gets the lemma for a word.
+     * @param word the word to look up.
+     * @return the lemma, or null if the word has none.
+     */
+    public String get(String word) {
+        int mask = this.slots.capacity() - 1;
+
+        for (int i = mix(word.hashCode()) & mask; ; i = (i + 1) & mask) {
+            int slot = this.slots.get(i);
+            if (slot == 0) return null;
+
+            int e = (slot - 1) * 4;
+            if (matches(word, this.entries.get(e), this.entries.get(e + 1))) {
+                int start = this.entries.get(e + 2);
+                return this.chars.subSequence(start, start + this.entries.get(e + 3)).toString();
+            }
+        }
+    }
+
+
+    /**
+     * @return the number of words in the table.
+     */
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * Writes this table as a snapshot.
+     * @param out where to write it.
+     */
+    public void writeSnapshot(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(this.size);
+        data.writeInt(this.slots.capacity());
+        data.writeInt(this.chars.capacity());
+        for (int i = 0; i < this.slots.capacity(); i++) data.writeInt(this.slots.get(i));
+        for (int i = 0; i < this.entries.capacity(); i++) data.writeInt(this.entries.get(i));
+        for (int i = 0; i < this.chars.capacity(); i++) data.writeChar(this.chars.get(i));
+        data.flush();
+    }
+
+
+    private boolean matches(String word, int start, int length) {
+        if (word.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (this.chars.get(start + i) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Lays out a map in the snapshot format.
+     */
+    private static byte[] encode(Map<String, String> lemmas) {
+        int count = lemmas.size();
+        int slotCount = Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1;
+        int[] slots = new int[slotCount];
+        int[] entries = new int[count * 4];
+        StringBuilder pool = new StringBuilder();
+        Map<String, Integer> lemmaStarts = new HashMap<>();
+
+        int e = 0;
+        for (Map.Entry<String, String> entry : lemmas.entrySet()) {
+            String word = entry.getKey();
+            String lemma = entry.getValue();
+
+            entries[e * 4] = pool.length();
+            entries[e * 4 + 1] = word.length();
+            pool.append(word);
+            entries[e * 4 + 2] = lemmaStarts.computeIfAbsent(lemma, l -> {
+                int start = pool.length();
+                pool.append(l);
+                return start;
+            });
+            entries[e * 4 + 3] = lemma.length();
+
+            int i = mix(word.hashCode()) & (slotCount - 1);
+            while (slots[i] != 0) {
+                i = (i + 1) & (slotCount - 1);
+            }
+            slots[i] = ++e;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * (slotCount + entries.length) + 2 * pool.length());
+        buffer.putInt(MAGIC).putInt(count).putInt(slotCount).putInt(pool.length());
+        buffer.asIntBuffer().put(slots).put(entries);
+        buffer.position(HEADER_BYTES + 4 * (slotCount + entries.length));
+        buffer.asCharBuffer().put(pool.toString());
+        return buffer.array();
+    }
+
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,27 +1,69 @@
 /**
  * A class that lemmatizes keywords using a pre-defined list of lemmatizations.
- * The lemmatizations are read from a CSV file and stored in a HashMap for constant time lookups.
+ * The lemmatizations are loaded into a LemmaTable for constant time lookups, preferably by
+ * memory-mapping a prebuilt binary snapshot, otherwise by parsing the CSV list.
  * The lemmatizer is used in the web scraping process to ensure that the keywords are in their base form.
  * Braden Zingler
  * 5/18/1014
  */
 package com.java;
 
-import java.io.*;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
-import java.util.Scanner;
+import java.util.Map;
 
 
 public class Lemmatizer {
-    public HashMap<String, String> lemmas;
+    private LemmaTable lemmas;
+
 
     /**
      * Constructor for the Lemmatizer class.
-     * Initializes the lemmas HashMap and reads the lemmatization list from a CSV file.
+     * Loads the lemma table using the default crawler settings.
      */
     public Lemmatizer() {
-        this.lemmas = new HashMap<>();
-        readLemmaList();
+        this(CrawlerConfig.load());
+    }
+
+
+    /**
+     * Loads the lemma table from, in order: the crawler.lemmas.snapshot file, a lemmas.bin
+     * snapshot on the classpath, or the CSV list. A snapshot older than the CSV file is skipped,
+     * so an edited list takes effect. When the CSV is parsed and a snapshot path is configured,
+     * the snapshot is written, or rebuilt, so the next startup can map it instead.
+     * @param config the crawler settings.
+     */
+    public Lemmatizer(CrawlerConfig config) {
+        try {
+            this.lemmas = loadTable(config);
+            System.out.println("Loaded " + this.lemmas.size() + " lemmas.");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the lemma list", e);
+        }
+    }
+
+
+    /**
+     * Creates a lemmatizer over an already built table.
+     * @param lemmas the table to use.
+     */
+    public Lemmatizer(LemmaTable lemmas) {
+        this.lemmas = lemmas;
     }
 
 
@@ -31,30 +73,105 @@ public class Lemmatizer {
      * @return the lemmatized version of the word
      */
     public String lemmatizeWord(String word) {
-        if (this.lemmas.containsKey(word)) {
-            return this.lemmas.get(word);
+        String lemma = this.lemmas.get(word);
+        return lemma == null ? word : lemma;
+    }
+
+
+    private static LemmaTable loadTable(CrawlerConfig config) throws IOException {
+        String snapshot = config.getLemmaSnapshot();
+        File csv = new File(config.getLemmaCsv());
+        if (!snapshot.isEmpty() && new File(snapshot).isFile()) {
+            if (!isNewer(csv, new File(snapshot).lastModified())) {
+                return LemmaTable.open(Paths.get(snapshot));
+            }
+            System.out.println("Lemma list " + csv + " is newer than " + snapshot + ", rebuilding the snapshot.");
+        }
+
+        URL resource = Lemmatizer.class.getResource("/lemmas.bin");
+        if (resource != null && !isNewer(csv, resource.openConnection().getLastModified())) {
+            if (resource.getProtocol().equals("file")) {
+                try {
+                    return LemmaTable.open(Paths.get(resource.toURI()));
+                } catch (URISyntaxException e) {
+                    throw new IOException(e);
+                }
+            }
+            try (InputStream in = resource.openStream()) {
+                return LemmaTable.read(in);
+            }
+        }
+
+        LemmaTable table = readLemmaList(config.getLemmaCsv());
+        if (table != null && !snapshot.isEmpty()) {
+            writeSnapshot(table, snapshot);
+            System.out.println("Wrote lemma snapshot to " + snapshot);
+        }
+        if (table == null) {
+            System.out.println("No lemma list found, keywords will not be lemmatized.");
+            return LemmaTable.empty();
         }
-        return word;
+        return table;
     }
 
-    
+
     /**
-     * Reads the lemmatizations_list.csv file into a HashMap before starting the web scraping.
-     * This allows for constant time lookups and lemmatization on each keyword.
+     * @return true if the CSV list is a file changed after the given time.
      */
-    public void readLemmaList() {
-        try {
-            File f = new File("crawler/src/main/resources/lemmatization_list.csv");
-            Scanner scnr = new Scanner(f);
-            while (scnr.hasNextLine()) { 
-                String line = scnr.nextLine();
+    private static boolean isNewer(File csv, long modified) {
+        return csv.isFile() && csv.lastModified() > modified;
+    }
+
+
+    /**
+     * Writes a snapshot to a temporary file and moves it into place, so a process that has the
+     * old snapshot mapped never sees it rewritten under it.
+     */
+    private static void writeSnapshot(LemmaTable table, String snapshotPath) throws IOException {
+        Path path = Paths.get(snapshotPath);
+        Path temp = Paths.get(snapshotPath + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp.toFile())) {
+            table.writeSnapshot(out);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    /**
+     * Reads the lemmatization_list.csv file, from the given path or else the classpath.
+     * Each line is "lemma,word".
+     * @param csvPath the path of the CSV file.
+     * @return the table, or null if the list could not be found.
+     */
+    public static LemmaTable readLemmaList(String csvPath) throws IOException {
+        File f = new File(csvPath);
+        InputStream in = f.isFile() ? new FileInputStream(f) : Lemmatizer.class.getResourceAsStream("/lemmatization_list.csv");
+        if (in == null) return null;
+
+        Map<String, String> lemmas = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(",");
-                this.lemmas.put(parts[1].strip(), parts[0].strip());
+                if (parts.length < 2) continue;
+                lemmas.put(parts[1].strip(), parts[0].strip());
             }
-            scnr.close();
-            System.out.println("Lemmas read into hashmap successfully.");
-        } catch (Exception e) { 
-            e.printStackTrace();
         }
+        return LemmaTable.build(lemmas);
+    }
+
+
+    /**
+     * Builds a binary lemma snapshot from the CSV list.
+     * @param csvPath the lemmatization_list.csv to read.
+     * @param snapshotPath where to write the snapshot.
+     */
+    public static void buildSnapshot(String csvPath, String snapshotPath) throws IOException {
+        LemmaTable table = readLemmaList(csvPath);
+        if (table == null) {
+            throw new IOException("Lemma list not found: " + csvPath);
+        }
+        writeSnapshot(table, snapshotPath);
+        System.out.println("Wrote " + table.size() + " lemmas to " + snapshotPath);
     }
 }
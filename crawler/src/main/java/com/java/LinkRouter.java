@@ -0,0 +1,320 @@
+/**
+ * Moves links between the workers of a partitioned crawl. Every url has one owning worker, picked
+ * by a hash of its normalized url, or of its host when crawler.cluster.partitionKey is "host". Links a
+ * worker finds for another worker are buffered per owner and sent over a local socket once
+ * crawler.cluster.batchSize have built up, or every crawler.cluster.batchMillis.
+ * Incoming batches are read on one thread per peer and handed to the receiver.
+ * Links are counted when they are queued to send and when they have been received, so the
+ * coordinator can tell when none are left in flight.
+ * A batch that fails to send is sent again on a new connection, up to SEND_ATTEMPTS times. If it
+ * still fails, its links can never be received, so the router stops sending and calls onFailure.
+ * Connection failures are counted and printed through CrawlMetrics, at its rate limit.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+
+public class LinkRouter implements Closeable {
+    private static final int SEND_ATTEMPTS = 3;
+    private static final long RESEND_DELAY_MILLIS = 100;
+
+    private int self;
+    private int batchSize;
+    private boolean byHost;
+    private ServerSocket server;
+    private Peer[] peers;
+    private Consumer<String> receiver;
+    private Runnable onFailure;
+    private AtomicLong sent;
+    private AtomicLong received;
+    private ScheduledExecutorService flusher;
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+
+    /**
+     * Opens the socket this worker takes links on. Nothing is sent or received until start.
+     * @param config the crawler settings; crawler.cluster.index is this worker.
+     */
+    public LinkRouter(CrawlerConfig config) throws IOException {
+        this.self = config.getClusterIndex();
+        this.batchSize = config.getClusterBatchSize();
+        this.byHost = config.getClusterPartitionKey().equals("host");
+        this.server = new ServerSocket(0, 64, InetAddress.getLoopbackAddress());
+        this.sent = new AtomicLong();
+        this.received = new AtomicLong();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "link-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        long batchMillis = config.getClusterBatchMillis();
+        this.flusher.scheduleWithFixedDelay(this::flushAll, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * @return the port other workers send this worker's links to.
+     */
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+
+    /**
+     * Starts taking links from the other workers.
+     * @param ports every worker's link port, by index.
+     * @param receiver takes each url this worker is sent.
+     * @param onFailure called once if a batch cannot be sent, since the crawl can no longer finish.
+     */
+    public void start(int[] ports, Consumer<String> receiver, Runnable onFailure) {
+        this.receiver = receiver;
+        this.onFailure = onFailure;
+        this.peers = new Peer[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            this.peers[i] = new Peer(ports[i]);
+        }
+
+        Thread acceptor = new Thread(this::accept, "link-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+
+    /**
+     * @return true if this worker owns the site's url.
+     */
+    public boolean isLocal(Site site) {
+        return ownerOf(site.getNormalizedUrl(), this.peers.length, this.byHost) == this.self;
+    }
+
+
+    /**
+     * Queues a link for the worker that owns it.
+     * @param site a valid link owned by another worker.
+     */
+    public void send(Site site) {
+        Peer peer = this.peers[ownerOf(site.getNormalizedUrl(), this.peers.length, this.byHost)];
+        this.sent.incrementAndGet();
+        List<String> batch = peer.add(site.getNormalizedUrl(), this.batchSize);
+        if (batch != null) {
+            send(peer, batch);
+        }
+    }
+
+
+    /**
+     * Hands urls this worker owns to the receiver and counts them, for links that arrive by
+     * some other way than a peer, such as seeds from the coordinator.
+     */
+    public void deliver(String[] urls) {
+        for (String url : urls) {
+            this.receiver.accept(url);
+        }
+        this.received.addAndGet(urls.length);
+    }
+
+
+    public long getSent() {
+        return this.sent.get();
+    }
+
+    public long getReceived() {
+        return this.received.get();
+    }
+
+
+    /**
+     * Picks the worker that owns a url.
+     * @param normalizedUrl the url, normalized.
+     * @param workers the number of workers.
+     * @param byHost whether to partition by host instead of by url.
+     * @return the owner's index.
+     */
+    public static int ownerOf(String normalizedUrl, int workers, boolean byHost) {
+        String key = byHost ? HostLimiter.hostOf(normalizedUrl) : normalizedUrl;
+        return (int) Long.remainderUnsigned(SeenSet.fingerprint(key), workers);
+    }
+
+
+    /**
+     * Sends every partly filled batch.
+     */
+    private void flushAll() {
+        if (this.peers == null) return;
+        for (Peer peer : this.peers) {
+            List<String> batch = peer.drain();
+            if (batch != null) {
+                send(peer, batch);
+            }
+        }
+    }
+
+
+    /**
+     * Sends a batch to a peer. The first batch that cannot be sent fails the router, and later
+     * ones are dropped.
+     */
+    private void send(Peer peer, List<String> batch) {
+        if (this.failed) return;
+        try {
+            peer.send(batch);
+        } catch (IOException e) {
+            CrawlMetrics.get().error("send " + batch.size() + " links to port " + peer.port + ", stopping", e);
+            synchronized (this) {
+                if (this.failed) return;
+                this.failed = true;
+            }
+            this.onFailure.run();
+        }
+    }
+
+
+    private void accept() {
+        while (!this.closed) {
+            try {
+                Socket socket = this.server.accept();
+                Thread reader = new Thread(() -> read(socket), "link-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!this.closed) CrawlMetrics.get().error("accept a link connection", e);
+            }
+        }
+    }
+
+
+    /**
+     * Reads batches of links from one peer until it disconnects.
+     */
+    private void read(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024))) {
+            while (true) {
+                byte type = in.readByte();
+                if (type != ClusterProtocol.LINKS) {
+                    throw new IOException("Unexpected message type " + type);
+                }
+                deliver(ClusterProtocol.readLinks(in));
+            }
+        } catch (EOFException e) {
+            // peer closed its connection
+        } catch (IOException e) {
+            if (!this.closed) CrawlMetrics.get().error("read links from a peer", e);
+        }
+    }
+
+
+    /**
+     * Sends every buffered link and closes the connections.
+     */
+    @Override
+    public void close() {
+        this.flusher.shutdownNow();
+        flushAll();
+        this.closed = true;
+        try {
+            this.server.close();
+        } catch (IOException e) {
+            CrawlMetrics.get().error("close link socket", e);
+        }
+        if (this.peers != null) {
+            for (Peer peer : this.peers) {
+                peer.close();
+            }
+        }
+    }
+
+
+    /**
+     * The outgoing batch and connection for one other worker. The connection is opened on the
+     * first send.
+     */
+    private static class Peer {
+        private final int port;
+        private List<String> batch;
+        private Socket socket;
+        private DataOutputStream out;
+
+        Peer(int port) {
+            this.port = port;
+            this.batch = new ArrayList<>();
+        }
+
+        /**
+         * Buffers a url, returning the batch if that filled it.
+         */
+        synchronized List<String> add(String url, int batchSize) {
+            this.batch.add(url);
+            if (this.batch.size() < batchSize) return null;
+            return drain();
+        }
+
+        synchronized List<String> drain() {
+            if (this.batch.isEmpty()) return null;
+            List<String> full = this.batch;
+            this.batch = new ArrayList<>();
+            return full;
+        }
+
+        /**
+         * Writes a batch. Batches from different threads go out one at a time.
+         * A failed write drops the connection and the batch is written again on a new one. The
+         * peer reads a batch cut short by the old connection closing as the end of it, so no
+         * link is received twice.
+         * @throws IOException if the last of SEND_ATTEMPTS fails.
+         */
+        synchronized void send(List<String> urls) throws IOException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    if (this.out == null) {
+                        this.socket = new Socket(InetAddress.getLoopbackAddress(), this.port);
+                        this.socket.setTcpNoDelay(true);
+                        this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), 64 * 1024));
+                    }
+                    ClusterProtocol.writeLinks(this.out, urls);
+                    this.out.flush();
+                    return;
+                } catch (IOException e) {
+                    close();
+                    if (attempt >= SEND_ATTEMPTS) throw e;
+                    CrawlMetrics.get().error("send " + urls.size() + " links to port " + this.port + ", reconnecting", e);
+                }
+                try {
+                    Thread.sleep(RESEND_DELAY_MILLIS * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted resending links to port " + this.port);
+                }
+            }
+        }
+
+        synchronized void close() {
+            try {
+                if (this.socket != null) this.socket.close();
+            } catch (IOException e) {
+                CrawlMetrics.get().error("close link connection", e);
+            }
+            this.socket = null;
+            this.out = null;
+        }
+    }
+}
@@ -1,8 +1,113 @@
 package com.java;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+
 public class Main {
+    private static final String START_URL = "https://en.wikipedia.org/wiki/2024_Varzaqan_helicopter_crash";
+
     public static void main(String[] args) {
-        Crawler crawler = new Crawler("https://en.wikipedia.org/wiki/2024_Varzaqan_helicopter_crash");
-        crawler.crawl();
+        CrawlerConfig config = CrawlerConfig.load();
+
+        // "lemmas <csv> <snapshot>" prebuilds the binary lemma table
+        if (args.length == 3 && args[0].equals("lemmas")) {
+            try {
+                Lemmatizer.buildSnapshot(args[1], args[2]);
+            } catch (IOException e) {
+                System.out.println("Failed to build lemma snapshot: " + e.getMessage());
+            }
+            return;
+        }
+
+        // "finalize" scores the crawled keywords instead of crawling
+        if (args.length > 0 && args[0].equals("finalize")) {
+            Database db = new Database(config);
+            db.finalizeTfidf();
+            db.closeConnection();
+            return;
+        }
+
+        // "merge [file ...]" combines the shards of crawler.db.path, or the given databases, into crawler.db.path
+        if (args.length > 0 && args[0].equals("merge")) {
+            List<String> shards = args.length > 1
+                    ? Arrays.asList(args).subList(1, args.length)
+                    : ShardedDatabase.shardPaths(config);
+            Database db = new Database(config);
+            db.mergeShards(shards);
+            db.closeConnection();
+            return;
+        }
+
+        // "search" loads the crawled index and answers queries read from standard input
+        if (args.length > 0 && args[0].equals("search")) {
+            search(config);
+            return;
+        }
+
+        // "replay" rebuilds the database from the page archive instead of crawling
+        if (args.length > 0 && args[0].equals("replay")) {
+            new Replayer(config).replay();
+            return;
+        }
+
+        // "recrawl" refreshes the stalest pages already in the database with conditional GETs
+        if (args.length > 0 && args[0].equals("recrawl")) {
+            new Recrawler(config).recrawl();
+            return;
+        }
+
+        // "worker" is one process of a partitioned crawl, started by "cluster"
+        if (args.length > 0 && args[0].equals("worker")) {
+            new ClusterWorker(config).run();
+            return;
+        }
+
+        // "cluster" splits the crawl across crawler.cluster.workers processes on this machine
+        if (args.length > 0 && args[0].equals("cluster")) {
+            List<String> seeds = new ArrayList<>();
+            seeds.add(START_URL);
+            Collections.addAll(seeds, Crawler.DEFAULT_SEEDS);
+            new Coordinator(config).crawl(seeds);
+            return;
+        }
+
+        Crawler crawler = new Crawler(START_URL, config);
+
+        if (config.isConcurrent()) {
+            crawler.crawlConcurrently();
+        } else {
+            crawler.crawl();
+        }
+    }
+
+
+    private static void search(CrawlerConfig config) {
+        SearchIndex index;
+        try {
+            long start = System.nanoTime();
+            index = SearchIndex.load(config);
+            System.out.printf("Loaded %d pages and %d postings in %d ms%n", index.getNumDocs(), index.getNumPostings(),
+                    (System.nanoTime() - start) / 1000000);
+        } catch (SQLException e) {
+            System.out.println("Failed to load search index: " + e.getMessage());
+            return;
+        }
+
+        Lemmatizer lem = new Lemmatizer(config);
+        Scanner in = new Scanner(System.in);
+        while (in.hasNextLine()) {
+            long start = System.nanoTime();
+            List<SearchIndex.Result> results = index.search(in.nextLine(), config.getSearchTopK(), lem);
+            for (SearchIndex.Result result : results) {
+                System.out.println(result);
+            }
+            System.out.printf("%d results in %.2f ms%n", results.size(), (System.nanoTime() - start) / 1e6);
+        }
     }
 }
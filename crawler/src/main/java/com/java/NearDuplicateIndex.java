@@ -0,0 +1,233 @@
+/**
+ * Finds pages whose keywords are nearly the same as a page already stored, such as redirect
+ * targets, mirrors and different spellings of one url, so they are not indexed twice.
+ * Each page gets a 64-bit SimHash of its keyword counts; pages with similar keyword vectors get
+ * signatures a few bits apart. Two signatures are near-duplicates when they differ in at most
+ * crawler.dedup.maxDistance bits.
+ * Lookups use the pigeonhole principle: the signature is cut into maxDistance + 1 bands, and two
+ * signatures within maxDistance bits must agree exactly on at least one band. Each band keeps a
+ * bucket of full signatures per band value, so a lookup scans one short contiguous array per band
+ * instead of following pointers. With the default 3 bits, bands are 16 bits wide and a million
+ * stored pages leave about 15 signatures per bucket. Larger distances make bands narrower and
+ * buckets fuller, so lookups slow down quickly past 4 bits.
+ * Pages with fewer than crawler.dedup.minKeywords keywords are neither checked nor stored, since
+ * nearly empty pages all look alike.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+
+public class NearDuplicateIndex {
+    private static final int MAX_BUCKET_BITS = 20;
+
+    private int maxDistance;
+    private int minKeywords;
+    private int bands;
+    private int[] bandShift;
+    private long[] bandMask;
+    private int bucketBits;
+    private long[][][] buckets;
+    private int[][] bucketSizes;
+    private long size;
+
+
+    /**
+     * Creates an empty index.
+     * @param maxDistance the most bits two near-duplicate signatures may differ in, from 0 to 63.
+     * @param minKeywords the fewest keywords a page needs to be checked.
+     */
+    public NearDuplicateIndex(int maxDistance, int minKeywords) {
+        if (maxDistance < 0 || maxDistance > 63) {
+            throw new IllegalArgumentException("crawler.dedup.maxDistance must be between 0 and 63: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.minKeywords = minKeywords;
+        this.bands = maxDistance + 1;
+        this.bandShift = new int[this.bands];
+        this.bandMask = new long[this.bands];
+
+        int widest = 0;
+        for (int band = 0; band < this.bands; band++) {
+            int start = band * 64 / this.bands;
+            int width = (band + 1) * 64 / this.bands - start;
+            this.bandShift[band] = start;
+            this.bandMask[band] = width == 64 ? -1L : (1L << width) - 1;
+            widest = Math.max(widest, width);
+        }
+        this.bucketBits = Math.min(widest, MAX_BUCKET_BITS);
+        this.buckets = new long[this.bands][1 << this.bucketBits][];
+        this.bucketSizes = new int[this.bands][1 << this.bucketBits];
+    }
+
+
+    /**
+     * Creates the index crawler.dedup.* describes and fills it with the signatures already
+     * stored in the urls table.
+     * @param conn the open database connection.
+     * @param config the crawler settings.
+     * @return the index.
+     */
+    public static NearDuplicateIndex load(Connection conn, CrawlerConfig config) throws SQLException {
+        NearDuplicateIndex index = new NearDuplicateIndex(config.getDedupMaxDistance(), config.getDedupMinKeywords());
+        index.load(conn);
+        return index;
+    }
+
+
+    /**
+     * Adds the signatures stored in another database's urls table, for an index shared by the
+     * shards of a crawl.
+     * @param conn the open database connection.
+     */
+    public void load(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(Statements.GET_ALL_SIMHASHES)) {
+            stmt.setInt(1, this.minKeywords);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    insert(rs.getLong(1));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Stores a page's signature unless a near-duplicate of it is already stored.
+     * Pages with too few keywords are always let through and not stored.
+     * @param site a page whose data has been extracted.
+     * @return false if the page is a near-duplicate of a stored page.
+     */
+    public boolean add(Site site) {
+        if (site.getTerms().size() < this.minKeywords) return true;
+        return add(site.getSimHash());
+    }
+
+
+    /**
+     * Stores a signature unless one within maxDistance bits is already stored.
+     * @param signature the signature.
+     * @return false if a near-duplicate was found, in which case nothing is stored.
+     */
+    public synchronized boolean add(long signature) {
+        if (contains(signature)) return false;
+        insert(signature);
+        return true;
+    }
+
+
+    /**
+     * @return true if a signature within maxDistance bits of this one is stored.
+     */
+    public synchronized boolean contains(long signature) {
+        for (int band = 0; band < this.bands; band++) {
+            int bucket = bucket(band, signature);
+            long[] candidates = this.buckets[band][bucket];
+            int count = this.bucketSizes[band][bucket];
+            for (int i = 0; i < count; i++) {
+                if (Long.bitCount(candidates[i] ^ signature) <= this.maxDistance) return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * @return the number of stored signatures.
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+
+    /**
+     * @return the approximate memory used by the index in bytes.
+     */
+    public synchronized long memoryBytes() {
+        long bytes = 0;
+        for (int band = 0; band < this.bands; band++) {
+            bytes += 16L * this.buckets[band].length + 4L * this.bucketSizes[band].length;
+            for (long[] bucket : this.buckets[band]) {
+                if (bucket != null) bytes += 16 + 8L * bucket.length;
+            }
+        }
+        return bytes;
+    }
+
+
+    private synchronized void insert(long signature) {
+        for (int band = 0; band < this.bands; band++) {
+            int bucket = bucket(band, signature);
+            long[] entries = this.buckets[band][bucket];
+            int count = this.bucketSizes[band][bucket];
+            if (entries == null) {
+                entries = new long[4];
+                this.buckets[band][bucket] = entries;
+            } else if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+                this.buckets[band][bucket] = entries;
+            }
+            entries[count] = signature;
+            this.bucketSizes[band][bucket] = count + 1;
+        }
+        this.size++;
+    }
+
+
+    /**
+     * Picks a signature's bucket in one band: the band's bits themselves when they fit,
+     * otherwise the top bits of a hash of them.
+     */
+    private int bucket(int band, long signature) {
+        long key = (signature >>> this.bandShift[band]) & this.bandMask[band];
+        if (this.bandMask[band] >>> this.bucketBits == 0) return (int) key;
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key >>> (64 - this.bucketBits));
+    }
+
+
+    /**
+     * Computes the SimHash of a page's keyword counts. Every keyword votes for the bits set in its
+     * hash, weighted by 1 + ln(count) so that the few words repeated all over a page do not
+     * outvote the rest, and the signature keeps the bits that got more than half the total weight.
+     * @param terms the keyword counts.
+     * @return the signature.
+     */
+    public static long simHash(TermCounts terms) {
+        double[] votes = new double[65];
+        for (int i = 0; i < terms.size(); i++) {
+            addVotes(votes, SeenSet.fingerprint(terms.getTerm(i)), terms.getCount(i));
+        }
+        return signature(votes);
+    }
+
+
+    /**
+     * Adds one keyword's votes to the running totals, for building a signature a keyword at a time.
+     * Only set bits are visited, which avoids a mispredicted branch per bit.
+     * @param votes the weight voting for each bit, with the total weight in the 65th entry.
+     * @param hash the keyword's hash.
+     * @param count how many times the keyword appears on the page.
+     */
+    static void addVotes(double[] votes, long hash, double count) {
+        double weight = 1 + Math.log(Math.max(count, 1));
+        votes[64] += weight;
+        for (long bits = hash; bits != 0; bits &= bits - 1) {
+            votes[Long.numberOfTrailingZeros(bits)] += weight;
+        }
+    }
+
+
+    static long signature(double[] votes) {
+        long signature = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (2 * votes[bit] > votes[64]) signature |= 1L << bit;
+        }
+        return signature;
+    }
+}
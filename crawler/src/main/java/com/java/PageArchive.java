@@ -0,0 +1,172 @@
+/**
+ * An append-only archive of raw page responses, so pages can be re-extracted later without
+ * fetching them again.
+ * Pages are written to numbered segment files in crawler.archive.dir. Each page is a WARC/1.0
+ * response record (the WARC headers, then the HTTP status line, headers and body) compressed as
+ * its own gzip member, the same layout as a .warc.gz file. Because every record is compressed
+ * separately, any record can be read on its own given its offset.
+ * Every segment has a text index alongside it, one "offset length url" line per record.
+ * Each run starts a new segment, so a crash can only leave a partial record at the end of the
+ * last segment, past anything in its index.
+ * Safe to share between fetch threads; the compression happens outside the lock.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+
+public class PageArchive {
+    private File dir;
+    private long segmentBytes;
+    private int segment;
+    private FileOutputStream data;
+    private BufferedWriter index;
+    private long offset;
+
+
+    /**
+     * Opens the archive in crawler.archive.dir and starts a new segment after any existing ones.
+     * @param config the crawler settings.
+     */
+    public PageArchive(CrawlerConfig config) {
+        this.dir = new File(config.getArchiveDir());
+        this.segmentBytes = config.getArchiveSegmentBytes();
+
+        try {
+            this.dir.mkdirs();
+            int[] existing = segments(this.dir);
+            this.segment = existing.length == 0 ? 0 : existing[existing.length - 1];
+            openNextSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open page archive in " + this.dir, e);
+        }
+    }
+
+
+    /**
+     * Appends one fetched page.
+     * @param url the url the page was fetched from.
+     * @param status the HTTP status code.
+     * @param statusMessage the HTTP status message.
+     * @param headers the response headers.
+     * @param body the decoded response body.
+     */
+    public void append(String url, int status, String statusMessage, Map<String, String> headers, byte[] body) throws IOException {
+        byte[] record = compress(url, status, statusMessage, headers, body);
+
+        synchronized (this) {
+            if (this.offset > 0 && this.offset + record.length > this.segmentBytes) {
+                closeSegment();
+                openNextSegment();
+            }
+            // The index line goes out only after its record, and at once, so a killed crawl
+            // never leaves a stored record out of the index
+            this.data.write(record);
+            this.index.write(this.offset + " " + record.length + " " + url + "\n");
+            this.index.flush();
+            this.offset += record.length;
+        }
+    }
+
+
+    /**
+     * Flushes and closes the current segment.
+     */
+    public synchronized void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            System.out.println("Failed to close page archive: " + e);
+        }
+    }
+
+
+    /**
+     * Builds the gzip-compressed WARC record for a page.
+     */
+    private static byte[] compress(String url, int status, String statusMessage, Map<String, String> headers, byte[] body) throws IOException {
+        StringBuilder http = new StringBuilder();
+        http.append("HTTP/1.1 ").append(status).append(' ').append(statusMessage == null ? "" : statusMessage).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            // The body is stored decoded, so its original encoding and length no longer apply
+            String name = header.getKey();
+            if (name.equalsIgnoreCase("Content-Encoding") || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding")) continue;
+            http.append(name).append(": ").append(header.getValue()).append("\r\n");
+        }
+        http.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+        byte[] httpHeaders = http.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        String warcHeaders = "WARC/1.0\r\n"
+                + "WARC-Type: response\r\n"
+                + "WARC-Record-ID: <urn:uuid:" + UUID.randomUUID() + ">\r\n"
+                + "WARC-Date: " + Instant.now().truncatedTo(ChronoUnit.SECONDS) + "\r\n"
+                + "WARC-Target-URI: " + url + "\r\n"
+                + "Content-Type: application/http; msgtype=response\r\n"
+                + "Content-Length: " + (httpHeaders.length + body.length) + "\r\n\r\n";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 512);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024)) {
+            gzip.write(warcHeaders.getBytes(StandardCharsets.UTF_8));
+            gzip.write(httpHeaders);
+            gzip.write(body);
+            gzip.write("\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        return out.toByteArray();
+    }
+
+
+    private void openNextSegment() throws IOException {
+        this.segment++;
+        this.data = new FileOutputStream(segmentFile(this.dir, this.segment));
+        this.index = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile(this.dir, this.segment)), StandardCharsets.UTF_8));
+        this.offset = 0;
+    }
+
+
+    private void closeSegment() throws IOException {
+        this.data.getFD().sync();
+        this.data.close();
+        this.index.close();
+    }
+
+
+    /**
+     * @return the numbers of the segments in an archive directory, in order.
+     */
+    static int[] segments(File dir) {
+        String[] names = dir.list((d, name) -> name.startsWith("archive-") && name.endsWith(".warc.gz"));
+        if (names == null) return new int[0];
+
+        int[] segments = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            segments[i] = Integer.parseInt(names[i].substring("archive-".length(), names[i].length() - ".warc.gz".length()));
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+
+    static File segmentFile(File dir, int segment) {
+        return new File(dir, String.format("archive-%06d.warc.gz", segment));
+    }
+
+
+    static File indexFile(File dir, int segment) {
+        return new File(dir, String.format("archive-%06d.idx", segment));
+    }
+}
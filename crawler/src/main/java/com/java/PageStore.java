@@ -0,0 +1,51 @@
+/**
+ * Where a crawl writes its pages: one SQLite file, or several shard files written in parallel
+ * and merged into one afterwards.
+ * Implementations must be safe to submit to from many threads at once.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.function.Consumer;
+
+
+public interface PageStore {
+
+    /**
+     * Queues a site to be written in the background. Blocks only when the writer has fallen behind.
+     * @param site a site whose data has been extracted.
+     */
+    void submit(Site site) throws InterruptedException;
+
+
+    /**
+     * @return the index of stored pages' near-duplicate signatures, or null if crawler.dedup.enabled is off.
+     */
+    NearDuplicateIndex getDuplicates();
+
+
+    /**
+     * Sets what is told about each submitted site once it is committed, or has failed to write.
+     * @param listener called on a writer thread with each site.
+     */
+    void onStored(Consumer<Site> listener);
+
+
+    /**
+     * Writes out every queued site and closes the files.
+     */
+    void closeConnection();
+
+
+    /**
+     * Opens crawler.db.path, split into crawler.db.shards files if that is more than one.
+     * @param config the crawler settings.
+     * @return the open store.
+     */
+    static PageStore open(CrawlerConfig config) {
+        if (config.getDatabaseShards() > 1) {
+            return new ShardedDatabase(config);
+        }
+        return new Database(config);
+    }
+}
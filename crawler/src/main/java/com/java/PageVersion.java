@@ -0,0 +1,100 @@
+/**
+ * What the database knows about the last fetch of a page: its HTTP validators, when it was
+ * fetched and a hash of its body. A re-crawl sends the validators back as a conditional GET
+ * and compares the hash, so a page that has not changed is never extracted or rewritten.
+ * Braden Zingler
+ */
+package com.java;
+
+
+public class PageVersion {
+    private int urlId;
+    private String url;
+    private String etag;
+    private String lastModified;
+    private long fetchedAt;
+    private long contentHash;
+    private boolean unchanged;
+
+
+    /**
+     * Creates a new PageVersion.
+     * @param urlId the page's url_id, or 0 if it is not in the database yet.
+     * @param url the page url.
+     * @param etag the ETag header of the last response, or null.
+     * @param lastModified the Last-Modified header of the last response, or null.
+     * @param fetchedAt when the page was last fetched, in epoch milliseconds, or 0 if never.
+     * @param contentHash the HashingInputStream hash of the last body, or 0 if unknown.
+     */
+    public PageVersion(int urlId, String url, String etag, String lastModified, long fetchedAt, long contentHash) {
+        this.urlId = urlId;
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.fetchedAt = fetchedAt;
+        this.contentHash = contentHash;
+    }
+
+
+    /**
+     * Records a first fetch of a page.
+     * @param res the response.
+     * @param contentHash the hash of its body.
+     * @return the version, with no url_id.
+     */
+    public static PageVersion fetched(FetchResponse res, long contentHash) {
+        return new PageVersion(0, res.getUrl(), res.getHeader("ETag"), res.getHeader("Last-Modified"),
+                System.currentTimeMillis(), contentHash);
+    }
+
+
+    /**
+     * Records a re-fetch of this version's page. The page is unchanged if the server answered
+     * 304 Not Modified or the body hashes the same as last time. Validators the response leaves
+     * out are carried over, since a 304 need not repeat them.
+     * @param res the response to the conditional GET.
+     * @param contentHash the hash of its body; ignored for a 304.
+     * @return the new version, with this version's url_id.
+     */
+    public PageVersion refetched(FetchResponse res, long contentHash) {
+        boolean notModified = res.getStatus() == 304;
+        String etag = res.getHeader("ETag");
+        String lastModified = res.getHeader("Last-Modified");
+        PageVersion next = new PageVersion(this.urlId, this.url, etag != null ? etag : this.etag,
+                lastModified != null ? lastModified : this.lastModified, System.currentTimeMillis(),
+                notModified ? this.contentHash : contentHash);
+        next.unchanged = notModified || (this.contentHash != 0 && contentHash == this.contentHash);
+        return next;
+    }
+
+    public int getUrlId() {
+        return this.urlId;
+    }
+
+    public String getUrl() {
+        return this.url;
+    }
+
+    public String getEtag() {
+        return this.etag;
+    }
+
+    public String getLastModified() {
+        return this.lastModified;
+    }
+
+    public long getFetchedAt() {
+        return this.fetchedAt;
+    }
+
+    public long getContentHash() {
+        return this.contentHash;
+    }
+
+    /**
+     * @return true if a re-fetch found the same page as before.
+     */
+    public boolean isUnchanged() {
+        return this.unchanged;
+    }
+}
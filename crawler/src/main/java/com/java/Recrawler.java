@@ -0,0 +1,179 @@
+/**
+ * Refreshes an existing database instead of crawling it again from scratch.
+ * Up to crawler.recrawl.maxPages pages last fetched more than crawler.recrawl.minAgeMillis ago are
+ * re-fetched, stalest first, on crawler.fetch.threads workers, under the same per-host limits and
+ * retries as a crawl. Each request is a conditional GET
+ * carrying the page's stored ETag and Last-Modified. A 304, or a body that hashes the same as last
+ * time, only moves the page's fetch time: nothing is parsed and no keyword rows are written.
+ * Changed pages are extracted and their url_keywords rows rewritten in place. Links are not
+ * followed, so no new pages are added.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+
+public class Recrawler {
+    private CrawlerConfig config;
+    private Database db;
+    private Lemmatizer lem;
+    private Fetcher fetcher;
+    private RobotsCache robots;
+    private CrawlMetrics metrics;
+    private LongAdder notModified;
+    private LongAdder sameContent;
+    private LongAdder changed;
+
+
+    /**
+     * Creates a new Recrawler for crawler.db.path. The database is always opened in online mode,
+     * since changed pages are rewritten in place rather than appended.
+     * @param config the crawler settings.
+     */
+    public Recrawler(CrawlerConfig config) {
+        this.config = config;
+        this.db = new Database(config.set("crawler.db.mode", "online"));
+        this.lem = new Lemmatizer(config);
+        this.fetcher = new HttpFetcher(config);
+        this.robots = config.isRobotsEnabled() ? new RobotsCache(config, this.fetcher) : null;
+        this.metrics = CrawlMetrics.get();
+        this.notModified = new LongAdder();
+        this.sameContent = new LongAdder();
+        this.changed = new LongAdder();
+    }
+
+
+    /**
+     * Re-fetches the stale pages. Returns once every changed page has been committed.
+     */
+    public void recrawl() {
+        long cutoff = System.currentTimeMillis() - this.config.getRecrawlMinAgeMillis();
+        List<PageVersion> pages = this.db.getStalePages(cutoff, this.config.getRecrawlMaxPages());
+        AtomicLong remaining = new AtomicLong(pages.size());
+        this.metrics.start(this.config, remaining::get, () -> pages.size() - remaining.get());
+
+        HostLimiter hosts = new HostLimiter(this.config);
+        ScheduledExecutorService pool = Executors.newScheduledThreadPool(this.config.getFetchThreads());
+        CountDownLatch done = new CountDownLatch(pages.size());
+        Runnable finished = () -> {
+            remaining.decrementAndGet();
+            done.countDown();
+        };
+        for (PageVersion page : pages) {
+            pool.execute(() -> attempt(page, 0, hosts, pool, finished));
+        }
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+            this.db.closeConnection();
+            this.metrics.stop();
+            System.out.printf("Re-crawled %d pages: %d not modified, %d with the same content, %d changed%n",
+                    pages.size(), this.notModified.sum(), this.sameContent.sum(), this.changed.sum());
+        }
+    }
+
+
+    /**
+     * Refreshes one page. A failure Crawler.retryDelayMillis deems temporary is tried again after
+     * its backoff, on the same pool; the page only counts as finished once it succeeds or is
+     * given up on.
+     */
+    private void attempt(PageVersion page, int attempt, HostLimiter hosts, ScheduledExecutorService pool, Runnable finished) {
+        try {
+            refresh(page, hosts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            long delay = Crawler.retryDelayMillis(this.config, attempt, e);
+            if (delay >= 0) {
+                this.metrics.retried(page.getUrl(), e);
+                pool.schedule(() -> attempt(page, attempt + 1, hosts, pool, finished), delay, TimeUnit.MILLISECONDS);
+                return;
+            }
+            this.metrics.failure(page.getUrl(), e);
+        }
+        finished.run();
+    }
+
+
+    /**
+     * Re-fetches one page and submits whatever changed to the database. The host's limit adapts
+     * to the response as it does in a crawl.
+     */
+    private void refresh(PageVersion old, HostLimiter hosts) throws IOException, InterruptedException {
+        Site site = new Site(old.getUrl());
+        if (this.robots != null && !this.robots.isAllowed(site.getUrl())) {
+            this.metrics.skipped("robots");
+            return;
+        }
+
+        PageVersion version;
+        byte[] body;
+        String charset;
+        String host = hosts.acquire(site.getUrl(), this.robots == null ? 0 : this.robots.getCrawlDelayMillis(site.getUrl()));
+        long start = System.nanoTime();
+        try (FetchResponse res = this.fetcher.fetch(site.getUrl(), old.getEtag(), old.getLastModified())) {
+            long latency = System.nanoTime() - start;
+            if (res.getStatus() == 304) {
+                version = old.refetched(res, 0);
+                body = null;
+            } else {
+                res.requirePage();
+                body = res.getBody().readAllBytes();
+                version = old.refetched(res, HashingInputStream.hash(body));
+            }
+            charset = res.getCharset();
+            hosts.succeeded(host, latency);
+        } catch (TransientHttpException e) {
+            hosts.overloaded(host, e.getRetryAfterMillis());
+            throw e;
+        } catch (HttpTimeoutException e) {
+            hosts.overloaded(host, -1);
+            throw e;
+        } finally {
+            hosts.release(host);
+        }
+        this.metrics.record(CrawlMetrics.Stage.FETCH, start);
+        site.setVersion(version);
+
+        if (version.isUnchanged()) {
+            (body == null ? this.notModified : this.sameContent).increment();
+            this.metrics.skipped(body == null ? "not-modified" : "unchanged");
+            this.db.submit(site);
+            return;
+        }
+
+        start = System.nanoTime();
+        if (this.config.isStreamingExtraction()) {
+            site.extractStreaming(new ByteArrayInputStream(body), charset, this.lem, null);
+            this.metrics.record(CrawlMetrics.Stage.PARSE, start);
+        } else {
+            Document doc = Jsoup.parse(new ByteArrayInputStream(body), charset, site.getUrl());
+            this.metrics.record(CrawlMetrics.Stage.PARSE, start);
+
+            start = System.nanoTime();
+            site.extractData(doc, this.lem);
+            this.metrics.record(CrawlMetrics.Stage.EXTRACT_DATA, start);
+        }
+
+        this.changed.increment();
+        this.db.submit(site);
+        this.metrics.pageDone(site.getUrl(), body.length);
+    }
+}
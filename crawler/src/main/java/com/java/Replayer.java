@@ -0,0 +1,139 @@
+/**
+ * Rebuilds the database from a page archive instead of the network.
+ * One thread reads records out of crawler.archive.dir while crawler.replay.threads workers
+ * decompress them, extract their data the same way a crawl would, and submit them to the
+ * database's background writer. Links are not followed, so the frontier and robots.txt are
+ * never touched. The archive is read newest first, so a url archived by several crawls is
+ * indexed from its latest fetch and its older copies are skipped.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+
+public class Replayer {
+    private static final ArchiveReader.Record END_OF_ARCHIVE = new ArchiveReader.Record("", new byte[0]);
+
+    private CrawlerConfig config;
+    private PageStore db;
+    private Lemmatizer lem;
+    private SeenSet seen;
+    private CrawlMetrics metrics;
+    private NearDuplicateIndex duplicates;
+
+
+    /**
+     * Creates a new Replayer writing to crawler.db.path, or to its shards if crawler.db.shards is above 1.
+     * @param config the crawler settings.
+     */
+    public Replayer(CrawlerConfig config) {
+        this.config = config;
+        this.db = PageStore.open(config);
+        this.duplicates = this.db.getDuplicates();
+        this.lem = new Lemmatizer(config);
+        this.seen = SeenSet.create(config);
+        this.metrics = CrawlMetrics.get();
+    }
+
+
+    /**
+     * Indexes every page in the archive. Returns once the last page has been committed.
+     */
+    public void replay() {
+        int threads = this.config.getReplayThreads();
+        BlockingQueue<ArchiveReader.Record> queue = new ArrayBlockingQueue<>(this.config.getQueueCapacity());
+        this.metrics.start(this.config, queue::size, this.seen::size);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> extract(queue));
+        }
+
+        try (ArchiveReader reader = new ArchiveReader(new File(this.config.getArchiveDir()), true)) {
+            ArchiveReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (this.seen.add(new Site(record.getUrl()).getNormalizedUrl())) {
+                    queue.put(record);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read page archive: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                for (int i = 0; i < threads; i++) {
+                    queue.put(END_OF_ARCHIVE);
+                }
+                pool.shutdown();
+                pool.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            this.db.closeConnection();
+            this.metrics.stop();
+        }
+    }
+
+
+    /**
+     * Worker loop: decodes and extracts records until it takes the end marker.
+     */
+    private void extract(BlockingQueue<ArchiveReader.Record> queue) {
+        try {
+            while (true) {
+                ArchiveReader.Record record = queue.take();
+                if (record == END_OF_ARCHIVE) return;
+                try {
+                    handle(ArchiveReader.decode(record));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    this.metrics.failure(record.getUrl(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // pool shut down
+        }
+    }
+
+
+    /**
+     * Extracts one archived page, streaming or through a Document as crawler.extract.streaming
+     * says, and submits it to the database unless it is a near-duplicate of a stored page.
+     */
+    private void handle(ArchiveReader.Page page) throws IOException, InterruptedException {
+        Site site = new Site(page.getUrl());
+        long start = System.nanoTime();
+
+        if (this.config.isStreamingExtraction()) {
+            site.extractStreaming(new ByteArrayInputStream(page.getBody()), page.getCharset(), this.lem, null);
+            this.metrics.record(CrawlMetrics.Stage.PARSE, start);
+        } else {
+            Document doc = Jsoup.parse(new ByteArrayInputStream(page.getBody()), page.getCharset(), page.getUrl());
+            this.metrics.record(CrawlMetrics.Stage.PARSE, start);
+
+            start = System.nanoTime();
+            site.extractData(doc, this.lem);
+            this.metrics.record(CrawlMetrics.Stage.EXTRACT_DATA, start);
+        }
+
+        if (this.duplicates != null && !this.duplicates.add(site)) {
+            this.metrics.skipped("duplicate");
+            return;
+        }
+        this.db.submit(site);
+        this.metrics.pageDone(site.getUrl(), page.getBody().length);
+    }
+}
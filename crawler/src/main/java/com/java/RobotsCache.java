@@ -0,0 +1,149 @@
+/**
+ * Caches each host's robots.txt rules so a url can be checked without another request.
+ * A host's rules are fetched the first time one of its urls is checked and kept for
+ * crawler.robots.ttlMillis. Threads that ask for a host while its robots.txt is being fetched wait
+ * for that one fetch instead of starting their own. Following RFC 9309, a 4xx response means
+ * everything is allowed and a 5xx or network failure means nothing is; failures are cached for the
+ * shorter crawler.robots.errorTtlMillis so the host is retried sooner.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+
+public class RobotsCache {
+    private static final int MAX_ROBOTS_BYTES = 500 * 1024;
+
+    private ConcurrentMap<String, Entry> hosts;
+    private Fetcher fetcher;
+    private String userAgent;
+    private long ttlNanos;
+    private long errorTtlNanos;
+
+
+    /**
+     * Creates a new RobotsCache with its own fetcher.
+     * @param config the crawler settings.
+     */
+    public RobotsCache(CrawlerConfig config) {
+        this(config, new HttpFetcher(config));
+    }
+
+
+    /**
+     * Creates a new RobotsCache that fetches robots.txt through the crawler's fetcher.
+     * @param config the crawler settings.
+     * @param fetcher the shared fetcher.
+     */
+    public RobotsCache(CrawlerConfig config, Fetcher fetcher) {
+        this.hosts = new ConcurrentHashMap<>();
+        this.fetcher = fetcher;
+        this.userAgent = config.getRobotsUserAgent();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(config.getRobotsTtlMillis());
+        this.errorTtlNanos = TimeUnit.MILLISECONDS.toNanos(config.getRobotsErrorTtlMillis());
+    }
+
+
+    /**
+     * Checks a url against its host's robots.txt, fetching the file if it is not cached.
+     * @param url the url about to be crawled.
+     * @return true if robots.txt allows it.
+     */
+    public boolean isAllowed(String url) {
+        int pathStart = pathStart(url);
+        if (pathStart < 0) return false;
+        return rulesFor(url.substring(0, pathStart)).isAllowed(url, pathStart);
+    }
+
+
+    /**
+     * @param url a url on the host.
+     * @return the host's Crawl-delay in milliseconds, or 0 if it has none.
+     */
+    public long getCrawlDelayMillis(String url) {
+        int pathStart = pathStart(url);
+        if (pathStart < 0) return 0;
+        return rulesFor(url.substring(0, pathStart)).getCrawlDelayMillis();
+    }
+
+
+    /**
+     * Gets the rules for a host, fetching them if they are missing or expired.
+     * @param origin the scheme and authority, e.g. "https://en.wikipedia.org".
+     * @return the host's rules.
+     */
+    public RobotsRules rulesFor(String origin) {
+        long now = System.nanoTime();
+        Entry entry = this.hosts.get(origin);
+        if (entry != null && !entry.isExpired(now)) {
+            return entry.rules.join();
+        }
+
+        Entry fresh = new Entry();
+        Entry current = this.hosts.compute(origin, (key, old) -> old != null && !old.isExpired(now) ? old : fresh);
+        if (current == fresh) {
+            load(origin, fresh);
+        }
+        return current.rules.join();
+    }
+
+
+    private void load(String origin, Entry entry) {
+        RobotsRules rules;
+        long ttl = this.ttlNanos;
+        try (FetchResponse res = this.fetcher.fetch(origin + "/robots.txt")) {
+            int status = res.getStatus();
+            if (status >= 200 && status < 300) {
+                String charset = res.getCharset();
+                byte[] body = res.getBody().readNBytes(MAX_ROBOTS_BYTES);
+                rules = RobotsRules.parse(new String(body, charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset)), this.userAgent);
+            } else if (status >= 400 && status < 500) {
+                rules = RobotsRules.ALLOW_ALL;
+            } else {
+                rules = RobotsRules.DISALLOW_ALL;
+                ttl = this.errorTtlNanos;
+            }
+        } catch (Exception e) {
+            System.out.println("Failed to fetch robots.txt for " + origin + ": " + e);
+            rules = RobotsRules.DISALLOW_ALL;
+            ttl = this.errorTtlNanos;
+        }
+        entry.expiresAt = System.nanoTime() + ttl;
+        entry.rules.complete(rules);
+    }
+
+
+    /**
+     * Finds where the path starts in an http(s) url, just after the authority.
+     * @return the index, or -1 if the url is not http(s).
+     */
+    private static int pathStart(String url) {
+        int scheme = url.startsWith("https://") ? 8 : url.startsWith("http://") ? 7 : -1;
+        if (scheme < 0) return -1;
+
+        for (int i = scheme; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') return i;
+        }
+        return url.length();
+    }
+
+
+    /**
+     * One host's rules, or the fetch that will produce them.
+     */
+    private static class Entry {
+        final CompletableFuture<RobotsRules> rules = new CompletableFuture<>();
+        volatile long expiresAt;
+
+        boolean isExpired(long now) {
+            return this.rules.isDone() && now - this.expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * The robots.txt rules that apply to this crawler on one host, compiled for fast matching.
+ * Parsing follows RFC 9309: the group naming our user agent is used if there is one, otherwise the
+ * "*" group, and the longest matching Allow or Disallow pattern decides, with Allow winning ties.
+ * Plain patterns are stored in a character trie so a check walks the path once; patterns using
+ * "*" or "$" are few and are matched one by one.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+
+public class RobotsRules {
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new ArrayList<>(), 0);
+    public static final RobotsRules DISALLOW_ALL = disallowAll();
+
+    private Node root;
+    private String[] wildcards;
+    private boolean[] wildcardAllows;
+    private long crawlDelayMillis;
+
+
+    private RobotsRules(List<String[]> rules, long crawlDelayMillis) {
+        this.root = new Node();
+        this.crawlDelayMillis = crawlDelayMillis;
+
+        List<String> wildcards = new ArrayList<>();
+        List<Boolean> allows = new ArrayList<>();
+        for (String[] rule : rules) {
+            boolean allow = rule[0].equals("allow");
+            String pattern = rule[1];
+            if (pattern.indexOf('*') >= 0 || pattern.endsWith("$")) {
+                wildcards.add(pattern);
+                allows.add(allow);
+            } else {
+                this.root.insert(pattern, allow);
+            }
+        }
+        this.wildcards = wildcards.toArray(new String[0]);
+        this.wildcardAllows = new boolean[allows.size()];
+        for (int i = 0; i < this.wildcardAllows.length; i++) {
+            this.wildcardAllows[i] = allows.get(i);
+        }
+    }
+
+
+    /**
+     * Parses a robots.txt file.
+     * @param text the file contents.
+     * @param userAgent our product token, e.g. "web_crawler".
+     * @return the rules for that user agent.
+     */
+    public static RobotsRules parse(String text, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        List<String[]> ours = new ArrayList<>();
+        List<String[]> any = new ArrayList<>();
+        double oursDelay = -1;
+        double anyDelay = -1;
+        boolean foundOurs = false;
+
+        boolean inAgents = false;
+        boolean groupIsOurs = false;
+        boolean groupIsAny = false;
+
+        for (String rawLine : text.split("\r\n|\r|\n")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).strip();
+            int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+
+            String key = line.substring(0, colon).strip().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).strip();
+
+            if (key.equals("user-agent")) {
+                if (!inAgents) {
+                    groupIsOurs = false;
+                    groupIsAny = false;
+                    inAgents = true;
+                }
+                String token = value.toLowerCase(Locale.ROOT);
+                int version = token.indexOf('/');
+                if (version >= 0) token = token.substring(0, version).strip();
+                if (token.equals("*")) {
+                    groupIsAny = true;
+                } else if (token.equals(agent)) {
+                    groupIsOurs = true;
+                    foundOurs = true;
+                }
+                continue;
+            }
+            inAgents = false;
+
+            if (key.equals("allow") || key.equals("disallow")) {
+                // An empty Disallow allows everything, so it adds nothing
+                if (value.isEmpty()) continue;
+                String[] rule = {key, value};
+                if (groupIsOurs) ours.add(rule);
+                if (groupIsAny) any.add(rule);
+            } else if (key.equals("crawl-delay")) {
+                try {
+                    double seconds = Double.parseDouble(value);
+                    if (groupIsOurs) oursDelay = seconds;
+                    if (groupIsAny) anyDelay = seconds;
+                } catch (NumberFormatException e) {
+                    // ignore a malformed delay
+                }
+            }
+        }
+
+        List<String[]> rules = foundOurs ? ours : any;
+        double delay = foundOurs ? oursDelay : anyDelay;
+        return new RobotsRules(rules, delay > 0 ? (long) (delay * 1000) : 0);
+    }
+
+
+    /**
+     * Checks whether a url may be crawled.
+     * @param url the full url.
+     * @param pathStart where the path begins in the url.
+     * @return true if the rules allow it.
+     */
+    public boolean isAllowed(String url, int pathStart) {
+        if (pathStart >= url.length() || url.charAt(pathStart) != '/') {
+            return isAllowed("/" + url.substring(pathStart), 0);
+        }
+
+        // Walk the trie along the path, remembering the deepest rule passed
+        int bestLength = -1;
+        boolean bestAllow = true;
+        Node node = this.root;
+        for (int i = pathStart; i < url.length() && node != null; i++) {
+            node = node.child(url.charAt(i));
+            if (node != null && node.rule != 0) {
+                bestLength = i - pathStart + 1;
+                bestAllow = node.rule > 0;
+            }
+        }
+
+        for (int w = 0; w < this.wildcards.length; w++) {
+            String pattern = this.wildcards[w];
+            int length = pattern.length();
+            if (length < bestLength || (length == bestLength && bestAllow)) continue;
+            if (matches(pattern, url, pathStart)) {
+                bestLength = length;
+                bestAllow = this.wildcardAllows[w];
+            }
+        }
+        return bestAllow;
+    }
+
+
+    /**
+     * @return the Crawl-delay in milliseconds, or 0 if none was given.
+     */
+    public long getCrawlDelayMillis() {
+        return this.crawlDelayMillis;
+    }
+
+
+    /**
+     * Matches a pattern where "*" is any run of characters and a trailing "$" anchors the end.
+     */
+    private static boolean matches(String pattern, String url, int pathStart) {
+        boolean anchored = pattern.endsWith("$");
+        int patternEnd = anchored ? pattern.length() - 1 : pattern.length();
+        int p = 0;
+        int u = pathStart;
+        int starP = -1;
+        int starU = -1;
+
+        while (u < url.length()) {
+            if (p < patternEnd && pattern.charAt(p) == '*') {
+                starP = p++;
+                starU = u;
+            } else if (p < patternEnd && pattern.charAt(p) == url.charAt(u)) {
+                p++;
+                u++;
+            } else if (p == patternEnd && !anchored) {
+                return true;
+            } else if (starP >= 0) {
+                p = starP + 1;
+                u = ++starU;
+            } else {
+                return false;
+            }
+        }
+        while (p < patternEnd && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == patternEnd;
+    }
+
+
+    private static RobotsRules disallowAll() {
+        List<String[]> rules = new ArrayList<>();
+        rules.add(new String[]{"disallow", "/"});
+        return new RobotsRules(rules, 0);
+    }
+
+
+    /**
+     * A trie node. rule is 1 for Allow, -1 for Disallow and 0 if no pattern ends here.
+     */
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int rule;
+
+        Node child(char c) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] == c) return this.children[i];
+            }
+            return null;
+        }
+
+        void insert(String pattern, boolean allow) {
+            Node node = this;
+            for (int i = 0; i < pattern.length(); i++) {
+                Node next = node.child(pattern.charAt(i));
+                if (next == null) {
+                    next = new Node();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = pattern.charAt(i);
+                    node.children[node.children.length - 1] = next;
+                }
+                node = next;
+            }
+            if (allow || node.rule == 0) {
+                node.rule = allow ? 1 : -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/**
+ * An in-memory inverted index over the crawled pages, for answering search queries without SQL.
+ * Each keyword's posting list is stored as varint-encoded gaps between url ids in one shared byte
+ * array, with the TF-IDF score of each posting in a parallel float array and a skip entry every
+ * SKIP postings so a list can jump ahead without decoding everything in between.
+ * Queries go through the same Tokenizer and Lemmatizer as page text, so they match the stored
+ * keywords. Results are ranked by summed TF-IDF with a k-entry heap, and lists are visited in
+ * url id order with MaxScore pruning: once the heap is full, lists whose best possible score
+ * cannot lift a page into the top k are only probed for pages the other lists already found,
+ * and the query stops when no remaining page can qualify.
+ * Immutable once built, so one index can serve queries from any number of threads.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class SearchIndex {
+    private static final int SKIP = 64;
+    private static final ThreadLocal<Tokenizer> TOKENIZER = ThreadLocal.withInitial(Tokenizer::new);
+
+    // term lookup: keywords in sorted order and their keyword ids
+    private String[] words;
+    private int[] wordIds;
+
+    // posting lists, indexed by keyword id
+    private int[] listLengths;
+    private int[] listBytes;
+    private int[] listScores;
+    private int[] listSkips;
+    private float[] maxScores;
+    private byte[] docGaps;
+    private float[] scores;
+    private int[] skipDocs;
+    private int[] skipBytes;
+
+    // pages, indexed by url id
+    private String[] urls;
+    private String[] titles;
+    private int numDocs;
+
+
+    private SearchIndex() {
+    }
+
+
+    /**
+     * Loads every keyword, url and posting from the crawl database at crawler.db.path.
+     * Scores are computed here from the postings, so the database does not have to be finalized.
+     * @param config the crawler settings.
+     * @return the index.
+     */
+    public static SearchIndex load(CrawlerConfig config) throws SQLException {
+        Builder builder = new Builder();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + config.getDatabasePath());
+             Statement stmt = conn.createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery(Statements.GET_ALL_KEYWORDS)) {
+                while (rs.next()) {
+                    builder.addKeyword(rs.getInt(1), rs.getString(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(Statements.GET_ALL_URLS)) {
+                while (rs.next()) {
+                    builder.addDocument(rs.getInt(1), rs.getString(2), rs.getString(3));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(Statements.GET_ALL_POSTINGS)) {
+                while (rs.next()) {
+                    builder.addPosting(rs.getInt(1), rs.getInt(2), rs.getFloat(3));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * Finds the pages that best match a query.
+     * @param query the query text.
+     * @param k the maximum number of results.
+     * @param lem the lemmatizer the crawl used.
+     * @return up to k results, best first.
+     */
+    public List<Result> search(String query, int k, Lemmatizer lem) {
+        TermCounts terms = TOKENIZER.get().countKeywords(query, lem);
+        int[] ids = new int[terms.size()];
+        float[] weights = new float[terms.size()];
+        int n = 0;
+        for (int i = 0; i < terms.size(); i++) {
+            int id = keywordId(terms.getTerm(i));
+            if (id > 0 && id < this.listLengths.length && this.listLengths[id] > 0) {
+                ids[n] = id;
+                weights[n++] = terms.getCount(i);
+            }
+        }
+        return search(Arrays.copyOf(ids, n), Arrays.copyOf(weights, n), k);
+    }
+
+
+    /**
+     * Finds the pages that best match a set of already resolved keywords.
+     * @param keywordIds the keyword ids, each with a posting list in the index.
+     * @param weights how many times each keyword appeared in the query.
+     * @param k the maximum number of results.
+     * @return up to k results, best first.
+     */
+    public List<Result> search(int[] keywordIds, float[] weights, int k) {
+        int m = keywordIds.length;
+        if (m == 0 || k <= 0) return new ArrayList<>();
+
+        // Order the lists by their best possible contribution, smallest first
+        Cursor[] cursors = new Cursor[m];
+        for (int i = 0; i < m; i++) {
+            cursors[i] = new Cursor(keywordIds[i], weights[i]);
+        }
+        Arrays.sort(cursors, (a, b) -> Float.compare(a.upperBound, b.upperBound));
+        float[] boundSums = new float[m];
+        for (int i = 0; i < m; i++) {
+            boundSums[i] = (i == 0 ? 0 : boundSums[i - 1]) + cursors[i].upperBound;
+        }
+
+        TopK top = new TopK(k);
+        float threshold = -1;
+        int firstEssential = 0;
+
+        while (firstEssential < m) {
+            // The next candidate is the smallest url id on any list that could still reach the top k alone
+            int doc = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < m; i++) {
+                doc = Math.min(doc, cursors[i].doc);
+            }
+            if (doc == Integer.MAX_VALUE) break;
+
+            float score = 0;
+            for (int i = firstEssential; i < m; i++) {
+                if (cursors[i].doc == doc) {
+                    score += cursors[i].score();
+                    cursors[i].next();
+                }
+            }
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (score + boundSums[i] <= threshold) break;
+                cursors[i].advance(doc);
+                if (cursors[i].doc == doc) {
+                    score += cursors[i].score();
+                }
+            }
+
+            if (top.offer(doc, score)) {
+                threshold = top.minScore();
+                while (firstEssential < m && boundSums[firstEssential] <= threshold) {
+                    firstEssential++;
+                }
+            }
+        }
+        return top.results(this);
+    }
+
+
+    /**
+     * @return the number of pages in the index.
+     */
+    public int getNumDocs() {
+        return this.numDocs;
+    }
+
+
+    /**
+     * @return the number of postings in the index.
+     */
+    public long getNumPostings() {
+        return this.scores.length;
+    }
+
+
+    /**
+     * @return the approximate heap used by the posting lists in bytes.
+     */
+    public long postingBytes() {
+        return this.docGaps.length + 4L * this.scores.length + 8L * this.skipDocs.length
+                + 20L * this.listLengths.length;
+    }
+
+
+    private int keywordId(String word) {
+        int i = Arrays.binarySearch(this.words, word);
+        return i < 0 ? -1 : this.wordIds[i];
+    }
+
+
+    /**
+     * A position in one posting list. doc is Integer.MAX_VALUE once the list is exhausted.
+     */
+    private class Cursor {
+        final int list;
+        final float weight;
+        final float upperBound;
+        final int length;
+        int pos;
+        int offset;
+        int doc;
+
+        Cursor(int list, float weight) {
+            this.list = list;
+            this.weight = weight;
+            this.upperBound = weight * maxScores[list];
+            this.length = listLengths[list];
+            this.pos = -1;
+            this.offset = listBytes[list];
+            next();
+        }
+
+        float score() {
+            return this.weight * scores[listScores[this.list] + this.pos];
+        }
+
+        void next() {
+            if (++this.pos >= this.length) {
+                this.doc = Integer.MAX_VALUE;
+                return;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = docGaps[this.offset++];
+                gap |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            this.doc = this.pos == 0 ? gap : this.doc + gap;
+        }
+
+        /**
+         * Moves to the first posting at or after target, using the skip entries to pass whole blocks.
+         */
+        void advance(int target) {
+            if (this.doc >= target) return;
+
+            int skips = listSkips[this.list];
+            int block = this.pos / SKIP;
+            int lastBlock = (this.length - 1) / SKIP;
+            while (block < lastBlock && skipDocs[skips + block + 1] <= target) {
+                block++;
+            }
+            if (block * SKIP > this.pos) {
+                this.pos = block * SKIP;
+                this.doc = skipDocs[skips + block];
+                this.offset = skipBytes[skips + block];
+            }
+            while (this.doc < target) {
+                next();
+            }
+        }
+    }
+
+
+    /**
+     * A min-heap of the best k (url id, score) pairs seen so far.
+     */
+    private static class TopK {
+        final int[] docs;
+        final float[] scores;
+        int size;
+
+        TopK(int k) {
+            this.docs = new int[k];
+            this.scores = new float[k];
+        }
+
+        float minScore() {
+            return this.scores[0];
+        }
+
+        /**
+         * @return true if the heap is full and its minimum may have changed.
+         */
+        boolean offer(int doc, float score) {
+            if (this.size < this.docs.length) {
+                int i = this.size++;
+                while (i > 0 && this.scores[(i - 1) / 2] > score) {
+                    this.docs[i] = this.docs[(i - 1) / 2];
+                    this.scores[i] = this.scores[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                this.docs[i] = doc;
+                this.scores[i] = score;
+                return this.size == this.docs.length;
+            }
+            if (score <= this.scores[0]) return false;
+
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= this.size) break;
+                if (child + 1 < this.size && this.scores[child + 1] < this.scores[child]) child++;
+                if (this.scores[child] >= score) break;
+                this.docs[i] = this.docs[child];
+                this.scores[i] = this.scores[child];
+                i = child;
+            }
+            this.docs[i] = doc;
+            this.scores[i] = score;
+            return true;
+        }
+
+        List<Result> results(SearchIndex index) {
+            Integer[] order = new Integer[this.size];
+            for (int i = 0; i < this.size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Float.compare(this.scores[b], this.scores[a]));
+
+            List<Result> results = new ArrayList<>(this.size);
+            for (int i : order) {
+                int doc = this.docs[i];
+                boolean known = doc < index.urls.length;
+                results.add(new Result(doc, known ? index.urls[doc] : null, known ? index.titles[doc] : null, this.scores[i]));
+            }
+            return results;
+        }
+    }
+
+
+    /**
+     * One matching page.
+     */
+    public static class Result {
+        final int urlId;
+        final String url;
+        final String title;
+        final float score;
+
+        Result(int urlId, String url, String title, float score) {
+            this.urlId = urlId;
+            this.url = url;
+            this.title = title;
+            this.score = score;
+        }
+
+        public int getUrlId() {
+            return this.urlId;
+        }
+
+        public String getUrl() {
+            return this.url;
+        }
+
+        public String getTitle() {
+            return this.title;
+        }
+
+        public float getScore() {
+            return this.score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.4f %s %s", this.score, this.url, this.title == null ? "" : this.title);
+        }
+    }
+
+
+    /**
+     * Collects keywords, pages and postings in growable primitive arrays, then sorts them into
+     * posting lists. Not thread safe.
+     */
+    public static class Builder {
+        private List<String> words = new ArrayList<>();
+        private int[] wordIds = new int[1024];
+        private String[] urls = new String[1024];
+        private String[] titles = new String[1024];
+        private int numDocs;
+        private int[] postingWords = new int[1 << 16];
+        private int[] postingDocs = new int[1 << 16];
+        private float[] postingTfs = new float[1 << 16];
+        private int numPostings;
+        private int maxWordId;
+
+
+        /**
+         * @param keywordId the keyword's id.
+         * @param word the lemmatized keyword.
+         */
+        public void addKeyword(int keywordId, String word) {
+            if (this.words.size() == this.wordIds.length) {
+                this.wordIds = Arrays.copyOf(this.wordIds, this.wordIds.length * 2);
+            }
+            this.wordIds[this.words.size()] = keywordId;
+            this.words.add(word);
+            this.maxWordId = Math.max(this.maxWordId, keywordId);
+        }
+
+
+        /**
+         * @param urlId the page's url id.
+         * @param url the page url.
+         * @param title the page title, or null.
+         */
+        public void addDocument(int urlId, String url, String title) {
+            if (urlId >= this.urls.length) {
+                int cap = Math.max(this.urls.length * 2, urlId + 1);
+                this.urls = Arrays.copyOf(this.urls, cap);
+                this.titles = Arrays.copyOf(this.titles, cap);
+            }
+            this.urls[urlId] = url;
+            this.titles[urlId] = title;
+            this.numDocs++;
+        }
+
+
+        /**
+         * @param keywordId the keyword's id.
+         * @param urlId the id of a page containing the keyword.
+         * @param termFrequency the keyword's share of the page's keywords.
+         */
+        public void addPosting(int keywordId, int urlId, float termFrequency) {
+            if (this.numPostings == this.postingDocs.length) {
+                int cap = this.postingDocs.length * 2;
+                this.postingWords = Arrays.copyOf(this.postingWords, cap);
+                this.postingDocs = Arrays.copyOf(this.postingDocs, cap);
+                this.postingTfs = Arrays.copyOf(this.postingTfs, cap);
+            }
+            this.postingWords[this.numPostings] = keywordId;
+            this.postingDocs[this.numPostings] = urlId;
+            this.postingTfs[this.numPostings] = termFrequency;
+            this.numPostings++;
+            this.maxWordId = Math.max(this.maxWordId, keywordId);
+        }
+
+
+        /**
+         * Sorts the postings into lists and scores them. idf = log10(pages / pages with the keyword).
+         * @return the index.
+         */
+        public SearchIndex build() {
+            SearchIndex index = new SearchIndex();
+            int lists = this.maxWordId + 1;
+
+            // Bucket the postings by keyword, packing (url id, tf) into one long per posting
+            int[] starts = new int[lists + 1];
+            for (int i = 0; i < this.numPostings; i++) {
+                starts[this.postingWords[i] + 1]++;
+            }
+            for (int i = 0; i < lists; i++) {
+                starts[i + 1] += starts[i];
+            }
+            long[] packed = new long[this.numPostings];
+            int[] fill = Arrays.copyOf(starts, lists);
+            for (int i = 0; i < this.numPostings; i++) {
+                packed[fill[this.postingWords[i]]++] = ((long) this.postingDocs[i] << 32)
+                        | (Float.floatToRawIntBits(this.postingTfs[i]) & 0xffffffffL);
+            }
+            this.postingWords = null;
+            this.postingDocs = null;
+            this.postingTfs = null;
+
+            int numDocs = Math.max(this.numDocs, 1);
+            index.listLengths = new int[lists];
+            index.listBytes = new int[lists];
+            index.listScores = new int[lists];
+            index.listSkips = new int[lists];
+            index.maxScores = new float[lists];
+            float[] scores = new float[this.numPostings];
+            int[] skipDocs = new int[this.numPostings / SKIP + lists];
+            int[] skipBytes = new int[skipDocs.length];
+            byte[] gaps = new byte[Math.max(16, this.numPostings * 2)];
+            int gapBytes = 0;
+            int numScores = 0;
+            int numSkips = 0;
+
+            for (int list = 0; list < lists; list++) {
+                Arrays.sort(packed, starts[list], starts[list + 1]);
+                index.listBytes[list] = gapBytes;
+                index.listScores[list] = numScores;
+                index.listSkips[list] = numSkips;
+
+                // Count distinct pages first, since the idf depends on it
+                int df = 0;
+                for (int i = starts[list]; i < starts[list + 1]; i++) {
+                    if (i == starts[list] || packed[i] >>> 32 != packed[i - 1] >>> 32) df++;
+                }
+                float idf = (float) Math.log10((double) numDocs / Math.max(df, 1));
+
+                int prev = 0;
+                int pos = 0;
+                float max = 0;
+                for (int i = starts[list]; i < starts[list + 1]; i++) {
+                    int doc = (int) (packed[i] >>> 32);
+                    if (pos > 0 && doc == prev) continue;
+
+                    if (gapBytes + 5 > gaps.length) {
+                        gaps = Arrays.copyOf(gaps, gaps.length * 2);
+                    }
+                    int gap = pos == 0 ? doc : doc - prev;
+                    while ((gap & ~0x7f) != 0) {
+                        gaps[gapBytes++] = (byte) ((gap & 0x7f) | 0x80);
+                        gap >>>= 7;
+                    }
+                    gaps[gapBytes++] = (byte) gap;
+
+                    // A skip entry points just past the first posting of each block
+                    if (pos % SKIP == 0) {
+                        skipDocs[numSkips] = doc;
+                        skipBytes[numSkips] = gapBytes;
+                        numSkips++;
+                    }
+
+                    float score = Float.intBitsToFloat((int) packed[i]) * idf;
+                    scores[numScores++] = score;
+                    max = Math.max(max, score);
+                    prev = doc;
+                    pos++;
+                }
+                index.listLengths[list] = pos;
+                index.maxScores[list] = max;
+            }
+
+            index.docGaps = Arrays.copyOf(gaps, gapBytes);
+            index.scores = Arrays.copyOf(scores, numScores);
+            index.skipDocs = Arrays.copyOf(skipDocs, numSkips);
+            index.skipBytes = Arrays.copyOf(skipBytes, numSkips);
+
+            // Sort the keywords so a query term is found by binary search
+            Integer[] order = new Integer[this.words.size()];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> this.words.get(a).compareTo(this.words.get(b)));
+            index.words = new String[order.length];
+            index.wordIds = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                index.words[i] = this.words.get(order[i]);
+                index.wordIds[i] = this.wordIds[order[i]];
+            }
+
+            index.urls = this.urls;
+            index.titles = this.titles;
+            index.numDocs = this.numDocs;
+            return index;
+        }
+    }
+}
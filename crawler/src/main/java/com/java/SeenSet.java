@@ -0,0 +1,83 @@
+/**
+ * The set of urls the crawler has already queued or visited.
+ * Implementations store a 64-bit fingerprint of each url rather than the url itself,
+ * and must be safe to call from many threads at once.
+ * Braden Zingler
+ */
+package com.java;
+
+
+public interface SeenSet {
+
+    /**
+     * Adds a url to the set.
+     * @param url the normalized url.
+     * @return true if the url was not already in the set.
+     */
+    boolean add(String url);
+
+
+    /**
+     * Adds a url by its fingerprint, as saved by an earlier run.
+     * @param fingerprint the url's fingerprint.
+     * @return true if the url was not already in the set.
+     */
+    boolean addFingerprint(long fingerprint);
+
+
+    /**
+     * Checks whether a url is in the set.
+     * @param url the normalized url.
+     * @return true if the url has been added before.
+     */
+    boolean contains(String url);
+
+
+    /**
+     * @return the number of urls added.
+     */
+    long size();
+
+
+    /**
+     * @return the approximate memory used by the set in bytes.
+     */
+    long memoryBytes();
+
+
+    /**
+     * Creates the seen set named by crawler.seen.type, either "exact" or "bloom".
+     * @param config the crawler settings.
+     * @return the new set.
+     */
+    static SeenSet create(CrawlerConfig config) {
+        long expected = config.getSeenExpectedUrls();
+        switch (config.getSeenType()) {
+            case "exact":
+                return new FingerprintSeenSet(expected);
+            case "bloom":
+                return new BloomSeenSet(expected, config.getSeenFalsePositiveRate());
+            default:
+                throw new IllegalArgumentException("Unknown crawler.seen.type: " + config.getSeenType());
+        }
+    }
+
+
+    /**
+     * Computes a 64-bit hash of a url (FNV-1a over its chars, then a murmur finalizer).
+     * @param url the url to hash.
+     * @return the fingerprint.
+     */
+    static long fingerprint(String url) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            h = (h ^ url.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
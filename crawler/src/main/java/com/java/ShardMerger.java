@@ -0,0 +1,250 @@
+/**
+ * Copies the pages of several databases into one, for Database.mergeShards. Every shard numbers
+ * its urls and keywords on its own, so both are renumbered on the way in:
+ *   - urls are copied a shard at a time, each shard's url_ids shifted past the highest id before
+ *     it, so a url's new id is its old one plus its shard's offset and no mapping is kept.
+ *   - keywords are read from every shard at once in term order and merged like sorted runs. Each
+ *     term gets one id, the target's id if the target already has it, and its url_keywords rows
+ *     are copied from each shard holding it in shard order, which is also url_id order.
+ * Only one keyword per shard and one bit per url are held in memory, and each keyword's rows are
+ * streamed straight from the shard's clustered table. On an empty target the terms are numbered
+ * in the order they are merged, so url_keywords is written in key order and only appended to.
+ * Document frequencies are counted while copying; idf and tfidf are left for finalize.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+public class ShardMerger {
+    private Connection conn;
+    private KeywordDictionary dictionary;
+    private int batchRows;
+
+
+    /**
+     * Creates a merger writing into an open database.
+     * @param conn the target connection, with auto commit off.
+     * @param dictionary the target's keyword ids, which new terms are assigned from.
+     * @param config crawler.db.groupRows sets how many rows are batched between executes.
+     */
+    public ShardMerger(Connection conn, KeywordDictionary dictionary, CrawlerConfig config) {
+        this.conn = conn;
+        this.dictionary = dictionary;
+        this.batchRows = config.getGroupCommitRows();
+    }
+
+
+    /**
+     * Copies every shard's urls, keywords and url_keywords rows into the target without committing.
+     * A url the target already has is skipped along with its rows.
+     * @param paths the shard files, which must exist.
+     * @return the number of pages copied.
+     */
+    public int merge(List<String> paths) throws SQLException {
+        List<Connection> shards = new ArrayList<>();
+        try {
+            for (String path : paths) {
+                shards.add(DriverManager.getConnection("jdbc:sqlite:" + path));
+            }
+            int[] offsets = new int[shards.size()];
+            BitSet[] skipped = new BitSet[shards.size()];
+            int pages = copyUrls(shards, offsets, skipped);
+            copyKeywords(shards, offsets, skipped);
+            return pages;
+        } finally {
+            for (Connection shard : shards) {
+                shard.close();
+            }
+        }
+    }
+
+
+    /**
+     * Copies the urls table of each shard in turn, recording the offset added to its url_ids and
+     * which of its urls the target already had.
+     */
+    private int copyUrls(List<Connection> shards, int[] offsets, BitSet[] skipped) throws SQLException {
+        int offset;
+        try (Statement stmt = this.conn.createStatement();
+             ResultSet rs = stmt.executeQuery(Statements.GET_MAX_URL_ID)) {
+            offset = rs.next() ? rs.getInt(1) : 0;
+        }
+
+        int pages = 0;
+        try (PreparedStatement insert = this.conn.prepareStatement(Statements.INSERT_URL_WITH_ID)) {
+            for (int s = 0; s < shards.size(); s++) {
+                offsets[s] = offset;
+                skipped[s] = new BitSet();
+                int lastId = 0;
+
+                try (Statement stmt = shards.get(s).createStatement();
+                     ResultSet rs = stmt.executeQuery(Statements.GET_ALL_URL_ROWS)) {
+                    int columns = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        lastId = rs.getInt(1);
+                        insert.setInt(1, offset + lastId);
+                        for (int c = 2; c <= columns; c++) {
+                            insert.setObject(c, rs.getObject(c));
+                        }
+                        if (insert.executeUpdate() == 0) {
+                            skipped[s].set(lastId);
+                        } else {
+                            pages++;
+                        }
+                    }
+                }
+                offset += lastId;
+            }
+        }
+        return pages;
+    }
+
+
+    /**
+     * Merges the shards' keyword lists in term order, assigning each term its target id and
+     * copying its rows as it goes.
+     */
+    private void copyKeywords(List<Connection> shards, int[] offsets, BitSet[] skipped) throws SQLException {
+        // ties go to the lower shard, so one term's rows come out in url_id order
+        PriorityQueue<Run> runs = new PriorityQueue<>((a, b) -> {
+            int c = compareTerms(a.term, b.term);
+            return c != 0 ? c : Integer.compare(a.shard, b.shard);
+        });
+        List<Run> open = new ArrayList<>();
+
+        try (PreparedStatement keywordsStmt = this.conn.prepareStatement(Statements.INSERT_KEYWORD_WITH_ID);
+             PreparedStatement docFreqStmt = this.conn.prepareStatement(Statements.ADD_DOC_FREQ);
+             PreparedStatement urlKeywordsStmt = this.conn.prepareStatement(Statements.INSERT_VALUES_URL_KEYWORDS)) {
+            for (int s = 0; s < shards.size(); s++) {
+                Run run = new Run(s, shards.get(s));
+                open.add(run);
+                if (run.next()) runs.add(run);
+            }
+
+            int rows = 0;
+            while (!runs.isEmpty()) {
+                String term = runs.peek().term;
+                int keywordId = this.dictionary.getId(term);
+                if (keywordId == -1) {
+                    keywordId = this.dictionary.assign(term);
+                    keywordsStmt.setInt(1, keywordId);
+                    keywordsStmt.setString(2, term);
+                    keywordsStmt.addBatch();
+                }
+
+                int docFreq = 0;
+                while (!runs.isEmpty() && runs.peek().term.equals(term)) {
+                    Run run = runs.poll();
+                    docFreq += run.copyRows(keywordId, offsets[run.shard], skipped[run.shard], urlKeywordsStmt);
+                    if (run.next()) runs.add(run);
+                }
+                if (docFreq > 0) {
+                    docFreqStmt.setInt(1, docFreq);
+                    docFreqStmt.setInt(2, keywordId);
+                    docFreqStmt.addBatch();
+                }
+
+                rows += docFreq + 1;
+                if (rows >= this.batchRows) {
+                    executeBatches(keywordsStmt, docFreqStmt, urlKeywordsStmt);
+                    rows = 0;
+                }
+            }
+            executeBatches(keywordsStmt, docFreqStmt, urlKeywordsStmt);
+        } finally {
+            for (Run run : open) {
+                run.close();
+            }
+        }
+    }
+
+
+    private static void executeBatches(PreparedStatement keywordsStmt, PreparedStatement docFreqStmt,
+                                       PreparedStatement urlKeywordsStmt) throws SQLException {
+        keywordsStmt.executeBatch();
+        docFreqStmt.executeBatch();
+        urlKeywordsStmt.executeBatch();
+    }
+
+
+    /**
+     * Orders terms by code point, which is the order SQLite's default collation gives UTF-8 text.
+     */
+    static int compareTerms(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+
+    /**
+     * One shard's keywords in term order, positioned on the current one.
+     */
+    private static class Run {
+        final int shard;
+        private Statement stmt;
+        private ResultSet keywords;
+        private PreparedStatement rowsStmt;
+        private int keywordId;
+        String term;
+
+        Run(int shard, Connection conn) throws SQLException {
+            this.shard = shard;
+            this.stmt = conn.createStatement();
+            this.keywords = this.stmt.executeQuery(Statements.GET_KEYWORDS_IN_ORDER);
+            this.rowsStmt = conn.prepareStatement(Statements.GET_KEYWORD_POSTINGS);
+        }
+
+        boolean next() throws SQLException {
+            if (!this.keywords.next()) return false;
+            this.keywordId = this.keywords.getInt(1);
+            this.term = this.keywords.getString(2);
+            return true;
+        }
+
+        /**
+         * Queues the current keyword's rows under the target's ids.
+         * @return the number of rows queued, which is the keyword's document count in this shard.
+         */
+        int copyRows(int targetId, int offset, BitSet skipped, PreparedStatement insert) throws SQLException {
+            int copied = 0;
+            this.rowsStmt.setInt(1, this.keywordId);
+            try (ResultSet rs = this.rowsStmt.executeQuery()) {
+                while (rs.next()) {
+                    int urlId = rs.getInt(1);
+                    if (skipped.get(urlId)) continue;
+                    insert.setInt(1, targetId);
+                    insert.setInt(2, offset + urlId);
+                    insert.setDouble(3, rs.getDouble(2));
+                    insert.addBatch();
+                    copied++;
+                }
+            }
+            return copied;
+        }
+
+        void close() throws SQLException {
+            this.keywords.close();
+            this.stmt.close();
+            this.rowsStmt.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Writes a crawl to crawler.db.shards SQLite files instead of one, so that no single writer
+ * thread caps how fast pages can be stored. Each shard is a Database of its own, with its own
+ * connection, writer thread and keyword ids, and holds the pages whose url hashes to it.
+ * A url always lands in the same shard, so the shards never store the same page twice.
+ * Near-duplicate signatures are shared by every shard, so a page is checked against all of them.
+ * The shards are combined into crawler.db.path with Main's "merge" argument; search, finalize
+ * and re-crawls work on the merged file.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+public class ShardedDatabase implements PageStore {
+    private Database[] shards;
+    private NearDuplicateIndex duplicates;
+
+
+    /**
+     * Opens or creates every shard of crawler.db.path.
+     * @param config the crawler settings.
+     */
+    public ShardedDatabase(CrawlerConfig config) {
+        if (config.isDedupEnabled()) {
+            this.duplicates = new NearDuplicateIndex(config.getDedupMaxDistance(), config.getDedupMinKeywords());
+        }
+        this.shards = new Database[config.getDatabaseShards()];
+        for (int i = 0; i < this.shards.length; i++) {
+            CrawlerConfig shardConfig = new CrawlerConfig(config.toProperties())
+                    .set("crawler.db.path", shardPath(config.getDatabasePath(), i));
+            this.shards[i] = new Database(shardConfig, this.duplicates);
+        }
+    }
+
+
+    /**
+     * Queues a site for the writer of the shard its url hashes to.
+     * @param site a site whose data has been extracted.
+     */
+    @Override
+    public void submit(Site site) throws InterruptedException {
+        this.shards[shardOf(site.getUrl(), this.shards.length)].submit(site);
+    }
+
+
+    @Override
+    public NearDuplicateIndex getDuplicates() {
+        return this.duplicates;
+    }
+
+
+    @Override
+    public void onStored(Consumer<Site> listener) {
+        for (Database shard : this.shards) {
+            shard.onStored(listener);
+        }
+    }
+
+
+    /**
+     * Closes every shard at once, since each one finishes its own writes and, after a bulk load,
+     * merges its own staged rows.
+     */
+    @Override
+    public void closeConnection() {
+        List<Thread> closers = new ArrayList<>();
+        for (int i = 0; i < this.shards.length; i++) {
+            Thread closer = new Thread(this.shards[i]::closeConnection, "database-shard-" + i + "-close");
+            closer.start();
+            closers.add(closer);
+        }
+        try {
+            for (Thread closer : closers) {
+                closer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Picks a url's shard from the top bits of its fingerprint. A cluster worker owns urls by the
+     * remainder of the same fingerprint, so its pages still spread over all of its shards.
+     * @param url the url as stored.
+     * @param shards the number of shards.
+     * @return the shard, from 0 to shards - 1.
+     */
+    public static int shardOf(String url, int shards) {
+        return (int) (((SeenSet.fingerprint(url) >>> 32) * shards) >>> 32);
+    }
+
+
+    /**
+     * Names a shard file after the database, before its extension: data.db becomes data.shard-2.db.
+     * @param path crawler.db.path.
+     * @param shard the shard's index.
+     * @return the shard's file.
+     */
+    public static String shardPath(String path, int shard) {
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf(File.separatorChar)) return path + ".shard-" + shard;
+        return path.substring(0, dot) + ".shard-" + shard + path.substring(dot);
+    }
+
+
+    /**
+     * @param config the crawler settings.
+     * @return the files of crawler.db.path's crawler.db.shards shards.
+     */
+    public static List<String> shardPaths(CrawlerConfig config) {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < config.getDatabaseShards(); i++) {
+            paths.add(shardPath(config.getDatabasePath(), i));
+        }
+        return paths;
+    }
+}
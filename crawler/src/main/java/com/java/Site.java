@@ -1,5 +1,10 @@
 package com.java;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import org.jsoup.nodes.Document;
 import org.jsoup.select.Elements;
@@ -7,23 +12,54 @@ import org.jsoup.nodes.Element;
 
 
 public class Site implements Comparable<Site> {
-    private Map<Keyword, Double> keywords;
+    private static final ThreadLocal<Tokenizer> TOKENIZER = ThreadLocal.withInitial(Tokenizer::new);
+
+    private static final TermCounts NO_TERMS = new TermCounts(0);
+
+    private TermCounts terms;
     private String url;
+    private String normalizedUrl;
+    private Boolean valid;
     private String title;
     private String description;
-    
-    
+    private PageVersion version;
+    private Long simHash;
+
+
+    /**
+     * Creates a site that has not been fetched. Nothing but the url is held until its data is
+     * extracted, since a link may wait a long time in a queue before that happens.
+     * @param url the page url.
+     */
     public Site(String url) {
         this.url = url;
-        this.keywords = new HashMap<>();
+    }
+
+
+    /**
+     * Creates a site whose data has already been extracted.
+     * @param url the page url.
+     * @param terms the keyword counts.
+     * @param title the page title.
+     * @param description the page description.
+     */
+    public Site(String url, TermCounts terms, String title, String description) {
+        this.url = url;
+        this.terms = terms;
+        this.title = title;
+        this.description = description;
     }
 
     public String getUrl() {
         return this.url;
     }
 
-    public Map<Keyword, Double> getKeywords() {
-        return this.keywords;
+    /**
+     * @return the lemmatized keywords and how often each appears, empty until the data is extracted.
+     */
+    public TermCounts getTerms() {
+        TermCounts terms = this.terms;
+        return terms == null ? NO_TERMS : terms;
     }
 
     public String getDescription() {
@@ -34,86 +70,157 @@ public class Site implements Comparable<Site> {
         return this.title;
     }
 
+    /**
+     * @return the fetch this site's data came from, or null if it has not been fetched.
+     */
+    public PageVersion getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(PageVersion version) {
+        this.version = version;
+    }
+
+
+    /**
+     * The SimHash of the extracted keywords, computed once and cached on the site.
+     * @return the signature.
+     */
+    public long getSimHash() {
+        Long simHash = this.simHash;
+        if (simHash == null) {
+            simHash = NearDuplicateIndex.simHash(getTerms());
+            this.simHash = simHash;
+        }
+        return simHash;
+    }
+
 
-    public Set<Site> extractLinks(Document doc) {
+    /**
+     * Finds the page's links that the url rules admit.
+     * @param doc the parsed page.
+     * @param filter the crawl's url rules.
+     * @return up to 10 valid links found on the page.
+     */
+    public Set<Site> extractLinks(Document doc, UrlFilter filter) {
         Set<Site> sites = new HashSet<>();
         Elements els = doc.select("a[href]");
 
         for (Element element : els) {
-            String href = element.attr("abs:href");
-            Site newSite = new Site(href);
-            
-            if (newSite.isValid() && sites.size() < 10) {
-                sites.add(newSite);
-            }
+            if (sites.size() == 10) break;
+            addLink(sites, element.attr("abs:href"), filter);
         }
         return sites;
     }
 
 
-    public boolean isValid() {
-        return this.url.startsWith("https://en.wikipedia.org/wiki")
-        && !this.url.contains("Main_Page") && !this.url.contains("Special:")
-        && !this.url.contains("Help:") && !this.url.contains("File:")
-        && !this.url.contains("Template:") && !this.url.contains("Category:")
-        && !this.url.contains("Portal:") && !this.url.contains("Wikipedia:")
-        && !this.url.contains("Talk:") && !this.url.contains("User:") && !this.url.contains("User_talk:")
-        && !this.url.contains("#cite_note") && !this.url.contains("Template talk:") 
-        && !this.url.contains("#") && !this.url.startsWith("https://en.wikipedia.org/wiki/1")
-        && !this.url.startsWith("https://en.wikipedia.org/wiki/2");
+    /**
+     * Checks the url against the crawl's url rules. The answer is cached on the site, so a site
+     * is only ever checked against the rules of the crawl that created it.
+     * @param filter the crawl's url rules.
+     * @return true if the url may be crawled.
+     */
+    public boolean isValid(UrlFilter filter) {
+        Boolean valid = this.valid;
+        if (valid == null) {
+            valid = filter.admit(this.url) != null;
+            this.valid = valid;
+        }
+        return valid;
+    }
+
+
+    /**
+     * Adds a link if the url rules admit it, without its fragment if fragments are stripped.
+     */
+    private static void addLink(Set<Site> sites, String href, UrlFilter filter) {
+        String url = filter.admit(href);
+        if (url != null) {
+            Site site = new Site(url);
+            site.valid = true;
+            sites.add(site);
+        }
     }
 
 
     public void extractData(Document doc, Lemmatizer lem) {
         String text = doc.select("p, h1, h2, h3, h4, h5, h6, title").text();
-        String[] words = text.split("\\s+");
-        extractLinks(doc);
 
-        this.keywords = filterKeywords(lem, words);
+        this.terms = filterKeywords(lem, text);
         this.title = doc.title();
         this.description = doc.select("#mw-content-text > div.mw-content-ltr.mw-parser-output > div.shortdescription.nomobile.noexcerpt.noprint.searchaux").text();
     }
 
 
     /**
-     * Filters out the stopwords from the list of keywords for a site.
-    * @param words The list of words
-    * @return The list of words without the stopwords
-    */
-    private Map<Keyword, Double> filterKeywords(Lemmatizer lem, String[] words) {
-        Map<Keyword, Double> filteredKeywords = new HashMap<>();
+     * Extracts the links, keywords, title and description in one pass over the response body,
+     * without building a Document. Gives the same results as extractLinks plus extractData.
+     * @param body the raw response body.
+     * @param charset the response charset, or null for UTF-8.
+     * @param lem the lemmatizer.
+     * @param filter the crawl's url rules, or null if the links are not wanted.
+     * @return up to 10 valid links found on the page, or none if filter is null.
+     */
+    public Set<Site> extractStreaming(InputStream body, String charset, Lemmatizer lem, UrlFilter filter) throws IOException {
+        StreamingExtractor extractor = new StreamingExtractor(TOKENIZER.get());
+        Charset cs = charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset);
+        extractor.extract(new InputStreamReader(body, cs), this.url);
 
-        try {
-            for (String word : words) {
-                Keyword currKeyword = new Keyword(word.toLowerCase().strip());
-                
-                if (!currKeyword.isStopword() && currKeyword.isWord() && !word.matches("\\d+") && word.length() > 1){
-                    String newWord = lem.lemmatizeWord(currKeyword.toString());
-                    Keyword newKeyword = new Keyword(newWord);
-                    filteredKeywords.put(newKeyword, filteredKeywords.getOrDefault(newKeyword, 0.0) + 1.0);
-                }
-            }
+        this.terms = extractor.getKeywords(lem);
+        this.title = extractor.getTitle();
+        this.description = extractor.getDescription();
 
+        Set<Site> sites = new HashSet<>();
+        if (filter == null) return sites;
+        for (String href : extractor.getLinks()) {
+            if (sites.size() == 10) break;
+            addLink(sites, href, filter);
+        }
+        return sites;
+    }
+
+
+    /**
+     * Filters out the stopwords from the page text and counts the remaining keywords.
+    * @param text The page text
+    * @return The lemmatized keywords and how often each appears
+    */
+    private TermCounts filterKeywords(Lemmatizer lem, String text) {
+        try {
+            return TOKENIZER.get().countKeywords(text, lem);
         } catch (Exception e) {
-            System.out.println("Error while filtering keywords: " + e.getStackTrace());
+            System.out.println("Error while filtering keywords: " + e);
+            return new TermCounts(0);
         }
-        return filteredKeywords;
     }
 
 
      /**
-     * Normalizes a URL to ensure consistent representation.
-     * @param url the url to be normalized
-     * @return the normalized url
+     * Normalizes a URL to ensure consistent representation. Computed once and cached on the site.
+     * @return the normalized url, or the url unchanged if it cannot be parsed
      */
     public String getNormalizedUrl() {
+        String normalized = this.normalizedUrl;
+        if (normalized == null) {
+            normalized = normalize(this.url);
+            this.normalizedUrl = normalized;
+        }
+        return normalized;
+    }
+
+
+    private static String normalize(String url) {
+        // URI.normalize only removes "." and ".." segments, so a url without them is already normal
+        if (!url.contains("/.")) {
+            return url;
+        }
         try {
-            URI uri = new URI(this.url);
+            URI uri = new URI(url);
             String normalizedUrl = uri.normalize().toString();
             return normalizedUrl;
         } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+            // Not a parseable uri, so the raw url is the only consistent key
+            return url;
         }
     }
 
@@ -127,6 +234,12 @@ public class Site implements Comparable<Site> {
     }
 
 
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(this.url);
+    }
+
+
     @Override
     public String toString() {
         return this.title;
@@ -0,0 +1,54 @@
+/**
+ * A point-in-time summary of one stage's latency histogram.
+ * Braden Zingler
+ */
+package com.java;
+
+
+public class StageStats {
+    private long count;
+    private double meanMillis;
+    private double p50Millis;
+    private double p99Millis;
+    private double maxMillis;
+
+
+    /**
+     * Summarizes a histogram as it is right now.
+     * @param histogram the stage's histogram.
+     */
+    public StageStats(LatencyHistogram histogram) {
+        this.count = histogram.getCount();
+        this.meanMillis = histogram.getMeanMillis();
+        this.p50Millis = histogram.getPercentileMillis(50);
+        this.p99Millis = histogram.getPercentileMillis(99);
+        this.maxMillis = histogram.getMaxMillis();
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public double getMeanMillis() {
+        return this.meanMillis;
+    }
+
+    public double getP50Millis() {
+        return this.p50Millis;
+    }
+
+    public double getP99Millis() {
+        return this.p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return this.maxMillis;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                this.count, this.meanMillis, this.p50Millis, this.p99Millis, this.maxMillis);
+    }
+}
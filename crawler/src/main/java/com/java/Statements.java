@@ -2,29 +2,107 @@ package com.java;
 
 public class Statements {
 
-    /* url_keywords table operations */
+    /* url_keywords table operations: clustered on (keyword_id, url_id), so a keyword's rows are stored together */
     public static final String CREATE_URL_KEYWORDS_TABLE = "CREATE TABLE IF NOT EXISTS url_keywords("
-    + "keyword_id INTEGER, "
-    + "url_id INTEGER, "
+    + "keyword_id INTEGER NOT NULL, "
+    + "url_id INTEGER NOT NULL, "
     + "term_frequency REAL, "
-    + "tfidf REAL)";                    
+    + "tfidf REAL, "
+    + "PRIMARY KEY(keyword_id, url_id)) WITHOUT ROWID";
     public static final String INSERT_VALUES_URL_KEYWORDS = "INSERT OR IGNORE INTO url_keywords(keyword_id, url_id, term_frequency) VALUES (?, ?, ?)";
     public static final String GET_NUM_KEYWORD_OCCURRENCE = "SELECT num_occurrences FROM url_keywords WHERE keyword_id = ? AND url_id = ?";
     public static final String GET_TOTAL_NUM_URLS_WITH_KEYWORD = "SELECT COUNT(url_id) FROM url_keywords WHERE keyword_id = ?";
     public static final String SET_TFIDF = "UPDATE url_keywords SET tfidf = ? WHERE keyword_id = ? AND url_id = ?";
-    public static final String SET_IDF = "UPDATE keywords SET idf = ? WHERE keyword_id = ?";
+    public static final String SET_TFIDF_FOR_KEYWORD = "UPDATE url_keywords SET tfidf = term_frequency * ? WHERE keyword_id = ?";
+    public static final String GET_ALL_POSTINGS = "SELECT keyword_id, url_id, term_frequency FROM url_keywords";
+    public static final String CREATE_URL_KEYWORDS_KEYWORD_INDEX = "CREATE INDEX IF NOT EXISTS url_keywords_keyword_id ON url_keywords(keyword_id)";
+    public static final String CREATE_URL_KEYWORDS_URL_INDEX = "CREATE INDEX IF NOT EXISTS url_keywords_url_id ON url_keywords(url_id)";
+    public static final String DROP_URL_KEYWORDS_URL_INDEX = "DROP INDEX IF EXISTS url_keywords_url_id";
+    public static final String GET_URL_KEYWORD_IDS = "SELECT keyword_id FROM url_keywords WHERE url_id = ?";
+    public static final String UPDATE_URL_KEYWORD = "UPDATE url_keywords SET term_frequency = ?, tfidf = ? * (SELECT idf FROM keywords WHERE keyword_id = ?) "
+                                                   + "WHERE keyword_id = ? AND url_id = ?";
+    public static final String DELETE_URL_KEYWORD = "DELETE FROM url_keywords WHERE keyword_id = ? AND url_id = ?";
+    public static final String GET_URL_KEYWORDS_SCHEMA = "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = 'url_keywords'";
+
+    /* url_keywords_staging: an unindexed heap a bulk load appends to, merged into url_keywords in key order when it ends */
+    public static final String CREATE_URL_KEYWORDS_STAGING_TABLE = "CREATE TABLE IF NOT EXISTS url_keywords_staging(keyword_id INTEGER, url_id INTEGER, term_frequency REAL)";
+    public static final String INSERT_VALUES_URL_KEYWORDS_STAGING = "INSERT INTO url_keywords_staging(keyword_id, url_id, term_frequency) VALUES (?, ?, ?)";
+    public static final String MERGE_URL_KEYWORDS_STAGING = "INSERT OR IGNORE INTO url_keywords(keyword_id, url_id, term_frequency) "
+                                                   + "SELECT keyword_id, url_id, term_frequency FROM url_keywords_staging ORDER BY keyword_id, url_id";
+    public static final String DROP_URL_KEYWORDS_STAGING_TABLE = "DROP TABLE IF EXISTS url_keywords_staging";
+    public static final String HAS_URL_KEYWORDS_STAGING_TABLE = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'url_keywords_staging'";
 
     /* url table operations */
-    public static final String CREATE_URL_TABLE = "CREATE TABLE IF NOT EXISTS urls(url_id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT UNIQUE, "
-                                                   + "num_terms INTEGER, description TEXT, title TEXT)";
+    public static final String CREATE_URL_TABLE = "CREATE TABLE IF NOT EXISTS urls(url_id INTEGER PRIMARY KEY, url TEXT UNIQUE, "
+                                                   + "num_terms INTEGER, description TEXT, title TEXT, "
+                                                   + "etag TEXT, last_modified TEXT, fetched_at INTEGER, content_hash INTEGER, simhash INTEGER)";
     public static final String TOTAL_NUM_URLS = "SELECT COUNT(url_id) FROM urls";
     public static final String GET_TOTAL_NUM_KEYWORDS_IN_URL = "SELECT num_words FROM urls WHERE url_id = ?";
-    public static final String INSERT_URL = "INSERT OR IGNORE INTO urls(url, num_terms, description, title) VALUES (?, ?, ?, ?)";
+    public static final String GET_ALL_URLS = "SELECT url_id, url, title FROM urls";
+    public static final String INSERT_URL = "INSERT OR IGNORE INTO urls(url, num_terms, description, title, etag, last_modified, fetched_at, content_hash, simhash) "
+                                                   + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String UPDATE_URL = "UPDATE urls SET num_terms = ?, description = ?, title = ?, "
+                                                   + "etag = ?, last_modified = ?, fetched_at = ?, content_hash = ?, simhash = ? WHERE url_id = ?";
+    public static final String GET_ALL_SIMHASHES = "SELECT simhash FROM urls WHERE simhash IS NOT NULL AND num_terms >= ?";
+    public static final String TOUCH_URL = "UPDATE urls SET etag = ?, last_modified = ?, fetched_at = ? WHERE url_id = ?";
+    public static final String CREATE_URLS_FETCHED_AT_INDEX = "CREATE INDEX IF NOT EXISTS urls_fetched_at ON urls(fetched_at)";
+    public static final String GET_STALE_URLS = "SELECT url_id, url, etag, last_modified, fetched_at, content_hash FROM urls "
+                                                   + "WHERE fetched_at IS NULL OR fetched_at < ? ORDER BY fetched_at LIMIT ?";
 
     /* keywords table operations */                                                 
-    public static final String CREATE_KEYWORDS_TABLE = "CREATE TABLE IF NOT EXISTS keywords(keyword_id INTEGER PRIMARY KEY AUTOINCREMENT, keyword TEXT UNIQUE)";
+    public static final String CREATE_KEYWORDS_TABLE = "CREATE TABLE IF NOT EXISTS keywords(keyword_id INTEGER PRIMARY KEY, keyword TEXT UNIQUE, "
+                                                   + "doc_freq INTEGER DEFAULT 0, idf REAL, idf_doc_freq INTEGER DEFAULT 0)";
     public static final String GET_KEYWORD_ID = "SELECT keyword_id FROM keywords WHERE keyword = ?";
     public static final String INSERT_KEYWORDS = "INSERT OR IGNORE INTO keywords(keyword) VALUES (?)";
     public static final String GET_KEYWORD = "SELECT keyword FROM keywords WHERE keyword_id = ?";
+    public static final String GET_ALL_KEYWORDS = "SELECT keyword_id, keyword FROM keywords";
+    public static final String INSERT_KEYWORD_WITH_ID = "INSERT INTO keywords(keyword_id, keyword) VALUES (?, ?)";
+    public static final String ADD_DOC_FREQ = "UPDATE keywords SET doc_freq = doc_freq + ? WHERE keyword_id = ?";
+    public static final String SET_IDF = "UPDATE keywords SET idf = ?, idf_doc_freq = ? WHERE keyword_id = ?";
+    public static final String GET_STALE_KEYWORD_DOC_FREQS = "SELECT keyword_id, doc_freq FROM keywords WHERE doc_freq > 0 AND doc_freq != idf_doc_freq";
+    public static final String GET_ALL_KEYWORD_DOC_FREQS = "SELECT keyword_id, doc_freq FROM keywords WHERE doc_freq > 0";
+
+    /* upgrades a keywords table created before document frequencies were tracked */
+    public static final String GET_KEYWORDS_COLUMNS = "PRAGMA table_info(keywords)";
+    public static final String ADD_KEYWORDS_DOC_FREQ_COLUMN = "ALTER TABLE keywords ADD COLUMN doc_freq INTEGER DEFAULT 0";
+    public static final String ADD_KEYWORDS_IDF_COLUMN = "ALTER TABLE keywords ADD COLUMN idf REAL";
+    public static final String ADD_KEYWORDS_IDF_DOC_FREQ_COLUMN = "ALTER TABLE keywords ADD COLUMN idf_doc_freq INTEGER DEFAULT 0";
+    public static final String BACKFILL_DOC_FREQ = "UPDATE keywords SET doc_freq = "
+                                                   + "(SELECT COUNT(*) FROM url_keywords WHERE url_keywords.keyword_id = keywords.keyword_id)";
+
+    /* upgrades a urls table created before fetch validators were stored */
+    public static final String GET_URLS_COLUMNS = "PRAGMA table_info(urls)";
+    public static final String ADD_URLS_ETAG_COLUMN = "ALTER TABLE urls ADD COLUMN etag TEXT";
+    public static final String ADD_URLS_LAST_MODIFIED_COLUMN = "ALTER TABLE urls ADD COLUMN last_modified TEXT";
+    public static final String ADD_URLS_FETCHED_AT_COLUMN = "ALTER TABLE urls ADD COLUMN fetched_at INTEGER";
+    public static final String ADD_URLS_CONTENT_HASH_COLUMN = "ALTER TABLE urls ADD COLUMN content_hash INTEGER";
+
+    /* upgrades a urls table created before near-duplicate signatures were stored */
+    public static final String ADD_URLS_SIMHASH_COLUMN = "ALTER TABLE urls ADD COLUMN simhash INTEGER";
+    public static final String GET_URL_KEYWORD_COUNTS = "SELECT url_keywords.url_id, keywords.keyword, url_keywords.term_frequency * urls.num_terms "
+                                                   + "FROM url_keywords JOIN keywords ON keywords.keyword_id = url_keywords.keyword_id "
+                                                   + "JOIN urls ON urls.url_id = url_keywords.url_id ORDER BY url_keywords.url_id";
+    public static final String SET_SIMHASH = "UPDATE urls SET simhash = ? WHERE url_id = ?";
+
+    /* merging shards: urls are copied with their ids shifted, keywords are read in term order */
+    public static final String GET_MAX_URL_ID = "SELECT COALESCE(MAX(url_id), 0) FROM urls";
+    public static final String GET_ALL_URL_ROWS = "SELECT url_id, url, num_terms, description, title, etag, last_modified, fetched_at, content_hash, simhash "
+                                                   + "FROM urls ORDER BY url_id";
+    public static final String INSERT_URL_WITH_ID = "INSERT OR IGNORE INTO urls(url_id, url, num_terms, description, title, etag, last_modified, fetched_at, content_hash, simhash) "
+                                                   + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String GET_KEYWORDS_IN_ORDER = "SELECT keyword_id, keyword FROM keywords ORDER BY keyword";
+    public static final String GET_KEYWORD_POSTINGS = "SELECT url_id, term_frequency FROM url_keywords WHERE keyword_id = ? ORDER BY url_id";
+
+    /* index_stats table operations */
+    public static final String CREATE_INDEX_STATS_TABLE = "CREATE TABLE IF NOT EXISTS index_stats(name TEXT PRIMARY KEY, value INTEGER)";
+    public static final String GET_TFIDF_NUM_DOCS = "SELECT value FROM index_stats WHERE name = 'tfidf_num_docs'";
+    public static final String SET_TFIDF_NUM_DOCS = "INSERT OR REPLACE INTO index_stats(name, value) VALUES ('tfidf_num_docs', ?)";
+
+    /* connection settings */
+    public static final String SET_WAL_JOURNAL = "PRAGMA journal_mode = WAL";
+    public static final String SET_SYNCHRONOUS = "PRAGMA synchronous = ";
+    public static final String SET_CACHE_KIB = "PRAGMA cache_size = -";
+    public static final String SET_TEMP_STORE_MEMORY = "PRAGMA temp_store = MEMORY";
+    public static final String ANALYZE = "ANALYZE";
 
 }
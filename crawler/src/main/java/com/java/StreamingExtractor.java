@@ -0,0 +1,737 @@
+/**
+ * Extracts links, title, description and keyword counts from an HTML response in one pass,
+ * reading the body a buffer at a time without building a DOM or holding the page as a String.
+ * It follows the same rules as Site.extractLinks and Site.extractData:
+ *   - keyword text is the text inside p, h1-h6 and title elements
+ *   - links are the href of every a tag, resolved against the page url (or a base tag)
+ *   - the description is the text of every Wikipedia short description div that is a child of
+ *     the parser output div directly inside #mw-content-text
+ * Script, style and comment contents are skipped, and entities are decoded. Like an HTML parser,
+ * a paragraph is closed by a block that starts inside it or by the end of an element around it,
+ * and textarea, xmp, iframe, noembed and noframes hold text rather than tags. Open elements are
+ * kept on a stack, closed by their end tags or by the start of a sibling li, dd, dt, tr, td or th,
+ * so the description div is only taken where it sits in the page's content.
+ * Not thread safe; create one per page or per thread.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.jsoup.internal.StringUtil;
+import org.jsoup.nodes.Entities;
+
+
+public class StreamingExtractor {
+    private static final int MAX_TAG_CHARS = 8192;
+    private static final Set<String> KEYWORD_TAGS = Set.of("p", "h1", "h2", "h3", "h4", "h5", "h6", "title");
+    private static final Set<String> BLOCK_TAGS = Set.of("address", "article", "aside", "blockquote", "dd", "div", "dl", "dt",
+            "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li",
+            "main", "nav", "ol", "p", "pre", "section", "table", "tbody", "td", "th", "thead", "tr", "ul", "br");
+    private static final Set<String> RAW_TEXT_TAGS = Set.of("script", "style");
+    private static final Set<String> TEXT_ONLY_TAGS = Set.of("textarea", "xmp", "iframe", "noembed", "noframes");
+    private static final Set<String> VOID_TAGS = Set.of("area", "base", "basefont", "bgsound", "br", "col", "embed",
+            "frame", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr");
+
+    private static final String[] PARSER_OUTPUT_CLASSES = {"mw-content-ltr", "mw-parser-output"};
+    private static final String[] DESCRIPTION_CLASSES = {"shortdescription", "nomobile", "noexcerpt", "noprint", "searchaux"};
+
+    // what an open element is on the way to the description:
+    // #mw-content-text > div.mw-content-ltr.mw-parser-output > div.shortdescription...
+    private static final byte OTHER = 0;
+    private static final byte CONTENT = 1;
+    private static final byte PARSER_OUTPUT = 2;
+    private static final byte DESCRIPTION = 3;
+
+    // end tags of elements a paragraph can sit inside, which close it along with themselves
+    private static final Set<String> P_SCOPE_TAGS = Set.of("address", "applet", "article", "aside", "blockquote", "body",
+            "button", "caption", "center", "dd", "details", "dialog", "dir", "div", "dl", "dt", "fieldset", "figcaption",
+            "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "html", "li", "main",
+            "marquee", "menu", "nav", "object", "ol", "pre", "section", "summary", "table", "tbody", "td", "template",
+            "tfoot", "th", "thead", "tr", "ul");
+
+    private Reader in;
+    private char[] buffer;
+    private int pos;
+    private int limit;
+
+    private Tokenizer tokenizer;
+    private StringBuilder tag;
+    private StringBuilder entity;
+    private StringBuilder title;
+    private StringBuilder description;
+    private List<String> links;
+    private String baseUrl;
+    private String baseOrigin;
+
+    private int keywordDepth;
+    private boolean pOpen;
+    private boolean inTitle;
+    private boolean titleDone;
+    private String[] openTags;
+    private byte[] openRoles;
+    private int openCount;
+    private int descriptionsOpen;
+
+
+    /**
+     * Creates a new StreamingExtractor.
+     * @param tokenizer counts the keyword text as it streams past.
+     */
+    public StreamingExtractor(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+        this.buffer = new char[8192];
+        this.tag = new StringBuilder();
+        this.entity = new StringBuilder();
+        this.openTags = new String[64];
+        this.openRoles = new byte[64];
+    }
+
+
+    /**
+     * Reads a whole page.
+     * @param in the decoded response body.
+     * @param pageUrl the url the page was fetched from, used to resolve relative links.
+     */
+    public void extract(Reader in, String pageUrl) throws IOException {
+        this.in = in;
+        this.pos = 0;
+        this.limit = 0;
+        this.baseUrl = pageUrl;
+        this.baseOrigin = null;
+        this.title = new StringBuilder();
+        this.description = new StringBuilder();
+        this.links = new ArrayList<>();
+        this.keywordDepth = 0;
+        this.pOpen = false;
+        this.inTitle = false;
+        this.titleDone = false;
+        this.openCount = 0;
+        this.descriptionsOpen = 0;
+        this.tokenizer.begin();
+
+        int c;
+        while ((c = next()) != -1) {
+            if (c == '<') {
+                readMarkup();
+            } else if (c == '&') {
+                text(readEntity());
+            } else {
+                text((char) c);
+            }
+        }
+    }
+
+
+    /**
+     * @param lem the lemmatizer applied to each distinct term.
+     * @return the keyword counts for the page, as Site.extractData would produce.
+     */
+    public TermCounts getKeywords(Lemmatizer lem) {
+        return this.tokenizer.finish(lem);
+    }
+
+    public List<String> getLinks() {
+        return this.links;
+    }
+
+    public String getTitle() {
+        return normalize(this.title);
+    }
+
+    public String getDescription() {
+        return normalize(this.description);
+    }
+
+
+    private void text(char c) {
+        if (this.keywordDepth > 0) {
+            // Element.text() turns non-breaking spaces into plain ones
+            this.tokenizer.feed(c == '\u00a0' ? ' ' : c);
+        }
+        if (this.inTitle) {
+            this.title.append(c);
+        }
+        if (this.descriptionsOpen > 0) {
+            this.description.append(c);
+        }
+    }
+
+
+    private void text(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            text(s.charAt(i));
+        }
+    }
+
+
+    /**
+     * Reads whatever follows a '<': a start tag, end tag, comment or declaration.
+     */
+    private void readMarkup() throws IOException {
+        int c = next();
+        if (c == '!') {
+            if (peek() == '-') {
+                skipPast("-->");
+            } else {
+                skipPast(">");
+            }
+        } else if (c == '?') {
+            skipPast(">");
+        } else if (c == '/') {
+            String name = readTagName(next());
+            skipPast(">");
+            if (name != null) {
+                endTag(name);
+            }
+        } else if (isLetter(c)) {
+            readTag(c);
+        } else {
+            // A lone '<' is just text
+            text('<');
+            if (c != -1) {
+                this.pos--;
+            }
+        }
+    }
+
+
+    /**
+     * Reads a start tag into the tag buffer, honoring quoted attribute values.
+     */
+    private void readTag(int first) throws IOException {
+        this.tag.setLength(0);
+        this.tag.append((char) first);
+        char quote = 0;
+        int c;
+
+        while ((c = next()) != -1) {
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+            if (this.tag.length() < MAX_TAG_CHARS) {
+                this.tag.append((char) c);
+            }
+        }
+
+        int nameEnd = 0;
+        while (nameEnd < this.tag.length() && !Character.isWhitespace(this.tag.charAt(nameEnd)) && this.tag.charAt(nameEnd) != '/') {
+            nameEnd++;
+        }
+        String name = this.tag.substring(0, nameEnd).toLowerCase();
+        startTag(name);
+        if (!VOID_TAGS.contains(name) && !RAW_TEXT_TAGS.contains(name) && !TEXT_ONLY_TAGS.contains(name)
+                && !name.equals("title") && !selfClosing(nameEnd)) {
+            open(name);
+        }
+
+        if (RAW_TEXT_TAGS.contains(name)) {
+            skipPast("</" + name);
+            skipPast(">");
+        } else if (TEXT_ONLY_TAGS.contains(name)) {
+            readTextOnly(name);
+        } else if (name.equals("title")) {
+            readTitle();
+        }
+    }
+
+
+    /**
+     * @return true if the tag in the tag buffer ends with "/>" outside an unquoted attribute value.
+     */
+    private boolean selfClosing(int nameEnd) {
+        int last = this.tag.length() - 1;
+        if (last < nameEnd || this.tag.charAt(last) != '/') return false;
+        if (last == nameEnd) return true;
+        char before = this.tag.charAt(last - 1);
+        return Character.isWhitespace(before) || before == '"' || before == '\'';
+    }
+
+
+    private void startTag(String name) {
+        if (BLOCK_TAGS.contains(name)) {
+            // A new block closes an open paragraph, as an HTML parser would
+            if (this.pOpen && !name.equals("br")) {
+                endTag("p");
+            }
+            text(' ');
+        }
+
+        if (KEYWORD_TAGS.contains(name) && !name.equals("title")) {
+            this.keywordDepth++;
+            if (name.equals("p")) this.pOpen = true;
+            this.tokenizer.feed(' ');
+        } else if (name.equals("a")) {
+            String href = attribute("href");
+            if (href != null) {
+                this.links.add(resolve(href));
+            }
+        } else if (name.equals("base")) {
+            String href = attribute("href");
+            if (href != null) {
+                this.baseUrl = StringUtil.resolve(this.baseUrl, href);
+                this.baseOrigin = null;
+            }
+        } else if (name.equals("li")) {
+            closeWithin(Set.of("li"), Set.of("ul", "ol"));
+        } else if (name.equals("dd") || name.equals("dt")) {
+            closeWithin(Set.of("dd", "dt"), Set.of("dl"));
+        } else if (name.equals("tr")) {
+            closeWithin(Set.of("tr"), Set.of("table"));
+        } else if (name.equals("td") || name.equals("th")) {
+            closeWithin(Set.of("td", "th"), Set.of("tr", "table"));
+        }
+    }
+
+
+    /**
+     * Pushes a start tag onto the open elements, noting whether it is on the way to the description.
+     */
+    private void open(String name) {
+        byte parent = this.openCount == 0 ? OTHER : this.openRoles[this.openCount - 1];
+        byte role = OTHER;
+        if (this.tag.indexOf("mw-content-text") != -1 && "mw-content-text".equals(attribute("id"))) {
+            role = CONTENT;
+        } else if (name.equals("div") && parent == CONTENT && hasClasses(attribute("class"), PARSER_OUTPUT_CLASSES)) {
+            role = PARSER_OUTPUT;
+        } else if (name.equals("div") && parent == PARSER_OUTPUT && hasClasses(attribute("class"), DESCRIPTION_CLASSES)) {
+            role = DESCRIPTION;
+            // Elements.text() joins the text of every match with a space
+            this.description.append(' ');
+            this.descriptionsOpen++;
+        }
+
+        if (this.openCount == this.openTags.length) {
+            this.openTags = Arrays.copyOf(this.openTags, this.openCount * 2);
+            this.openRoles = Arrays.copyOf(this.openRoles, this.openCount * 2);
+        }
+        this.openTags[this.openCount] = name;
+        this.openRoles[this.openCount] = role;
+        this.openCount++;
+    }
+
+
+    /**
+     * Pops the open elements down to and including the innermost one named, if any is open.
+     */
+    private void close(String name) {
+        for (int i = this.openCount - 1; i >= 0; i--) {
+            if (this.openTags[i].equals(name)) {
+                popTo(i);
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Pops the innermost open element with one of the names, unless a boundary element is
+     * opened after it, as the start of a sibling list item or table cell does.
+     */
+    private void closeWithin(Set<String> names, Set<String> boundary) {
+        for (int i = this.openCount - 1; i >= 0; i--) {
+            if (names.contains(this.openTags[i])) {
+                popTo(i);
+                return;
+            }
+            if (boundary.contains(this.openTags[i])) return;
+        }
+    }
+
+
+    private void popTo(int index) {
+        while (this.openCount > index) {
+            this.openCount--;
+            if (this.openRoles[this.openCount] == DESCRIPTION) {
+                this.descriptionsOpen--;
+            }
+            this.openTags[this.openCount] = null;
+        }
+    }
+
+
+    /**
+     * @return true if a class attribute holds every one of the classes, split on any whitespace
+     * and compared ignoring case, as a selector matches them.
+     */
+    private static boolean hasClasses(String cls, String[] required) {
+        if (cls == null) return false;
+        List<String> classes = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= cls.length(); i++) {
+            boolean space = i == cls.length() || StringUtil.isWhitespace(cls.charAt(i));
+            if (space && start != -1) {
+                classes.add(cls.substring(start, i));
+                start = -1;
+            } else if (!space && start == -1) {
+                start = i;
+            }
+        }
+
+        for (String name : required) {
+            boolean found = false;
+            for (String c : classes) {
+                if (c.equalsIgnoreCase(name)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Resolves an href against the base url. Root-relative links like /wiki/Foo, which are
+     * nearly every link on a wiki page, are joined to the base's scheme and host directly;
+     * anything else goes through jsoup's resolver.
+     */
+    private String resolve(String href) {
+        if (this.baseOrigin == null) {
+            this.baseOrigin = origin(this.baseUrl);
+        }
+        if (!this.baseOrigin.isEmpty() && isPlainRootPath(href)) {
+            return this.baseOrigin + href;
+        }
+        return StringUtil.resolve(this.baseUrl, href);
+    }
+
+
+    /**
+     * @return the scheme and authority of an http(s) url, or "" if it has none.
+     */
+    private static String origin(String url) {
+        int scheme = url.startsWith("https://") ? 8 : url.startsWith("http://") ? 7 : -1;
+        if (scheme == -1) return "";
+
+        int end = scheme;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) == -1) {
+            end++;
+        }
+        return end > scheme ? url.substring(0, end) : "";
+    }
+
+
+    /**
+     * @return true if the href is a path from the root that needs no cleanup: no dot segments,
+     * no backslashes and no whitespace, control or non-ASCII characters.
+     */
+    private static boolean isPlainRootPath(String href) {
+        if (href.length() < 2 || href.charAt(0) != '/' || href.charAt(1) == '/') return false;
+        for (int i = 0; i < href.length(); i++) {
+            char c = href.charAt(i);
+            if (c <= ' ' || c >= 0x7F || c == '\\' || (c == '.' && href.charAt(i - 1) == '/')) return false;
+        }
+        return true;
+    }
+
+
+    private void endTag(String name) {
+        if (this.pOpen && P_SCOPE_TAGS.contains(name)) {
+            endTag("p");
+        }
+        if (KEYWORD_TAGS.contains(name) && !name.equals("title")) {
+            if (!name.equals("p") || this.pOpen) {
+                this.keywordDepth = Math.max(0, this.keywordDepth - 1);
+            }
+            if (name.equals("p")) this.pOpen = false;
+            this.tokenizer.feed(' ');
+        }
+        close(name);
+        if (BLOCK_TAGS.contains(name)) {
+            text(' ');
+        }
+    }
+
+
+    /**
+     * Title contents are plain text up to </title>. Only the first title is the page title,
+     * but every title's words count as keywords.
+     */
+    private void readTitle() throws IOException {
+        boolean first = !this.titleDone;
+        this.inTitle = first;
+        this.keywordDepth++;
+        this.tokenizer.feed(' ');
+
+        int c;
+        while ((c = next()) != -1) {
+            if (c == '<' && peek() == '/') {
+                this.pos--;
+                if (startsWithIgnoreCase("</title")) {
+                    skipPast(">");
+                    break;
+                }
+                this.pos++;
+            }
+            if (c == '&') {
+                text(readEntity());
+            } else {
+                text((char) c);
+            }
+        }
+
+        this.keywordDepth--;
+        this.tokenizer.feed(' ');
+        this.inTitle = false;
+        this.titleDone = true;
+    }
+
+
+    /**
+     * Reads the contents of an element that holds only text up to its end tag. Entities are
+     * decoded in a textarea but kept as written in the others.
+     */
+    private void readTextOnly(String name) throws IOException {
+        boolean entities = name.equals("textarea");
+        String end = "</" + name;
+
+        int c;
+        while ((c = next()) != -1) {
+            if (c == '<' && peek() == '/') {
+                this.pos--;
+                if (startsWithIgnoreCase(end)) {
+                    skipPast(">");
+                    return;
+                }
+                this.pos++;
+            }
+            if (c == '&' && entities) {
+                text(readEntity());
+            } else {
+                text((char) c);
+            }
+        }
+    }
+
+
+    /**
+     * Gets an attribute value from the tag buffer.
+     */
+    private String attribute(String attr) {
+        int len = this.tag.length();
+        int i = 0;
+        while (i < len && !Character.isWhitespace(this.tag.charAt(i))) i++;
+
+        while (i < len) {
+            while (i < len && (Character.isWhitespace(this.tag.charAt(i)) || this.tag.charAt(i) == '/')) i++;
+            int nameStart = i;
+            while (i < len && this.tag.charAt(i) != '=' && !Character.isWhitespace(this.tag.charAt(i)) && this.tag.charAt(i) != '/') i++;
+            String name = this.tag.substring(nameStart, i);
+            while (i < len && Character.isWhitespace(this.tag.charAt(i))) i++;
+
+            String value = "";
+            if (i < len && this.tag.charAt(i) == '=') {
+                i++;
+                while (i < len && Character.isWhitespace(this.tag.charAt(i))) i++;
+                if (i < len && (this.tag.charAt(i) == '"' || this.tag.charAt(i) == '\'')) {
+                    char quote = this.tag.charAt(i++);
+                    int valueStart = i;
+                    while (i < len && this.tag.charAt(i) != quote) i++;
+                    value = this.tag.substring(valueStart, i);
+                    i++;
+                } else {
+                    int valueStart = i;
+                    while (i < len && !Character.isWhitespace(this.tag.charAt(i))) i++;
+                    value = this.tag.substring(valueStart, i);
+                }
+            }
+            if (name.equalsIgnoreCase(attr)) {
+                return decodeAttribute(value).strip();
+            }
+            if (name.isEmpty()) i++;
+        }
+        return null;
+    }
+
+
+    /**
+     * Reads an entity after '&' and decodes it, or returns the raw text if it is not one.
+     */
+    private String readEntity() throws IOException {
+        this.entity.setLength(0);
+        int c;
+        while (this.entity.length() < 32 && (c = next()) != -1) {
+            if (c == ';') {
+                return decodeEntity(this.entity, true);
+            }
+            if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '#' && c != 'x' && c != 'X') {
+                this.pos--;
+                break;
+            }
+            this.entity.append((char) c);
+        }
+        return decodeEntity(this.entity, false);
+    }
+
+
+    /**
+     * Decodes the text between '&' and ';'. Without a semicolon only numeric references and
+     * the base entities like &amp are recognized, as in the HTML spec.
+     */
+    private static String decodeEntity(CharSequence name, boolean terminated) {
+        String raw = "&" + name + (terminated ? ";" : "");
+        if (name.length() > 1 && name.charAt(0) == '#') {
+            try {
+                boolean hex = name.charAt(1) == 'x' || name.charAt(1) == 'X';
+                int codePoint = Integer.parseInt(name, hex ? 2 : 1, name.length(), hex ? 16 : 10);
+                return Character.isValidCodePoint(codePoint) && codePoint != 0 ? new String(Character.toChars(codePoint)) : "\ufffd";
+            } catch (NumberFormatException e) {
+                return raw;
+            }
+        }
+
+        String key = name.toString();
+        if (terminated ? Entities.isNamedEntity(key) : Entities.isBaseNamedEntity(key)) {
+            return Entities.getByName(key);
+        }
+        return raw;
+    }
+
+
+    /**
+     * Decodes every entity in an attribute value.
+     */
+    private static String decodeAttribute(String value) {
+        if (value.indexOf('&') == -1) return value;
+
+        StringBuilder out = new StringBuilder(value.length());
+        StringBuilder name = new StringBuilder();
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i++);
+            if (c != '&') {
+                out.append(c);
+                continue;
+            }
+            name.setLength(0);
+            while (i < value.length() && name.length() < 32 && (isLetter(value.charAt(i)) || Character.isDigit(value.charAt(i)) || value.charAt(i) == '#')) {
+                name.append(value.charAt(i++));
+            }
+            boolean terminated = i < value.length() && value.charAt(i) == ';';
+            if (terminated) i++;
+            out.append(decodeEntity(name, terminated));
+        }
+        return out.toString();
+    }
+
+
+    private String readTagName(int first) throws IOException {
+        if (!isLetter(first)) return null;
+        StringBuilder name = new StringBuilder();
+        name.append((char) Character.toLowerCase(first));
+        int c;
+        while ((c = next()) != -1 && (isLetter(c) || (c >= '0' && c <= '9'))) {
+            name.append((char) Character.toLowerCase(c));
+        }
+        if (c != -1) this.pos--;
+        return name.toString();
+    }
+
+
+    /**
+     * Skips forward until just after the given text, matched case-insensitively.
+     */
+    private void skipPast(String end) throws IOException {
+        int matched = 0;
+        int c;
+        while (matched < end.length() && (c = next()) != -1) {
+            char lower = (char) Character.toLowerCase(c);
+            if (lower == end.charAt(matched)) {
+                matched++;
+                continue;
+            }
+
+            // Fall back to the longest prefix of end that still ends with what was just read,
+            // so overlapping input like "--->" still finds "-->"
+            int k = matched;
+            while (k > 0 && !(end.charAt(k - 1) == lower && end.regionMatches(0, end, matched - k + 1, k - 1))) {
+                k--;
+            }
+            matched = k;
+        }
+    }
+
+
+    private boolean startsWithIgnoreCase(String s) throws IOException {
+        fill(s.length());
+        if (this.limit - this.pos < s.length()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.toLowerCase(this.buffer[this.pos + i]) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+
+    private int next() throws IOException {
+        if (this.pos == this.limit && !fill(1)) {
+            return -1;
+        }
+        return this.buffer[this.pos++];
+    }
+
+
+    private int peek() throws IOException {
+        if (this.pos == this.limit && !fill(1)) {
+            return -1;
+        }
+        return this.buffer[this.pos];
+    }
+
+
+    /**
+     * Makes sure at least n chars are buffered past pos, keeping one char behind pos
+     * so the reader can always step back once.
+     * @return false if the stream ended first.
+     */
+    private boolean fill(int n) throws IOException {
+        if (this.limit - this.pos >= n) return true;
+
+        int keep = Math.min(this.pos, 1);
+        int remaining = this.limit - this.pos + keep;
+        System.arraycopy(this.buffer, this.pos - keep, this.buffer, 0, remaining);
+        this.pos = keep;
+        this.limit = remaining;
+
+        while (this.limit - this.pos < n) {
+            int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (read == -1) return false;
+            this.limit += read;
+        }
+        return true;
+    }
+
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+
+    /**
+     * Collapses whitespace runs and trims, like Element.text().
+     */
+    private static String normalize(StringBuilder text) {
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (StringUtil.isActuallyWhitespace(c)) {
+                space = out.length() > 0;
+            } else {
+                if (space) out.append(' ');
+                out.append(c);
+                space = false;
+            }
+        }
+        return out.toString();
+    }
+}
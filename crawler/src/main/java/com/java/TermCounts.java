@@ -0,0 +1,124 @@
+/**
+ * The terms of one page and how many times each appears, in an open-addressing table from
+ * String to int. The terms are kept in parallel arrays in the order they were first added, so
+ * they can be walked by index without an iterator or an entry object per term, and the counts
+ * stay plain ints rather than one boxed number per term. Term frequencies are left to whoever
+ * writes the counts out, as count over size.
+ * Not thread safe.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.Arrays;
+
+
+public class TermCounts {
+    private String[] terms;
+    private int[] counts;
+    private int[] slots;
+    private int size;
+
+
+    /**
+     * Creates an empty table sized for the given number of distinct terms.
+     * @param expected the number of terms expected, which may be exceeded.
+     */
+    public TermCounts(int expected) {
+        int capacity = Math.max(expected, 4);
+        this.terms = new String[capacity];
+        this.counts = new int[capacity];
+        this.slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+    }
+
+
+    /**
+     * Adds to a term's count, adding the term if it is new.
+     * @param term the term.
+     * @param count how many more times the term appears.
+     */
+    public void add(String term, int count) {
+        int mask = this.slots.length - 1;
+        int i = hash(term) & mask;
+
+        while (this.slots[i] != 0) {
+            int e = this.slots[i] - 1;
+            if (this.terms[e].equals(term)) {
+                this.counts[e] += count;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        if (this.size == this.terms.length) {
+            this.terms = Arrays.copyOf(this.terms, this.size * 2);
+            this.counts = Arrays.copyOf(this.counts, this.size * 2);
+        }
+        int e = this.size++;
+        this.terms[e] = term;
+        this.counts[e] = count;
+        this.slots[i] = e + 1;
+
+        if (this.size * 2 > this.slots.length) {
+            rehash();
+        }
+    }
+
+
+    /**
+     * @param term the term to look up.
+     * @return how many times the term appears, or 0 if it does not.
+     */
+    public int get(String term) {
+        int mask = this.slots.length - 1;
+        for (int i = hash(term) & mask; this.slots[i] != 0; i = (i + 1) & mask) {
+            int e = this.slots[i] - 1;
+            if (this.terms[e].equals(term)) return this.counts[e];
+        }
+        return 0;
+    }
+
+
+    /**
+     * @return the number of distinct terms.
+     */
+    public int size() {
+        return this.size;
+    }
+
+
+    /**
+     * @param index a position from 0 to size - 1.
+     * @return the term added index-th.
+     */
+    public String getTerm(int index) {
+        return this.terms[index];
+    }
+
+
+    /**
+     * @param index a position from 0 to size - 1.
+     * @return how many times the term at that position appears.
+     */
+    public int getCount(int index) {
+        return this.counts[index];
+    }
+
+
+    private void rehash() {
+        this.slots = new int[this.slots.length * 2];
+        int mask = this.slots.length - 1;
+        for (int e = 0; e < this.size; e++) {
+            int i = hash(this.terms[e]) & mask;
+            while (this.slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            this.slots[i] = e + 1;
+        }
+    }
+
+
+    private static int hash(String term) {
+        int h = term.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
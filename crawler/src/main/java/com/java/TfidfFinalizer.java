@@ -0,0 +1,124 @@
+/**
+ * Computes IDF and TF-IDF scores from the document frequencies the crawler keeps as it writes.
+ * Only keywords whose doc_freq changed since they were last scored are recomputed, unless the
+ * total number of documents has drifted far enough that every score needs refreshing.
+ * idf = log10(total documents / documents containing the keyword), tfidf = term_frequency * idf.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+
+public class TfidfFinalizer {
+    private Connection conn;
+    private int batchSize;
+    private double maxDocDrift;
+
+
+    /**
+     * Creates a new TfidfFinalizer.
+     * @param conn the open database connection, with auto commit off.
+     * @param config crawler.tfidf.batchSize and crawler.tfidf.maxDocDrift are read from here.
+     */
+    public TfidfFinalizer(Connection conn, CrawlerConfig config) {
+        this.conn = conn;
+        this.batchSize = config.getTfidfBatchSize();
+        this.maxDocDrift = config.getTfidfMaxDocDrift();
+    }
+
+
+    /**
+     * Rescores every keyword that needs it, committing after each batch of keywords.
+     * url_keywords must be indexed by keyword_id, which Database.finalizeTfidf ensures.
+     * @return the number of keywords rescored.
+     */
+    public int run() throws SQLException {
+        int numDocs = queryInt(Statements.TOTAL_NUM_URLS);
+        if (numDocs == 0) return 0;
+
+        // Every idf depends on the document count, so a large change in it rescores everything
+        int scoredDocs = queryInt(Statements.GET_TFIDF_NUM_DOCS);
+        boolean rescoreAll = scoredDocs == 0 || Math.abs(numDocs - scoredDocs) > scoredDocs * this.maxDocDrift;
+
+        int[][] stale = findStaleKeywords(rescoreAll);
+        int[] ids = stale[0];
+        int[] docFreqs = stale[1];
+
+        try (PreparedStatement idfStmt = conn.prepareStatement(Statements.SET_IDF);
+             PreparedStatement tfidfStmt = conn.prepareStatement(Statements.SET_TFIDF_FOR_KEYWORD)) {
+
+            for (int start = 0; start < ids.length; start += this.batchSize) {
+                int end = Math.min(start + this.batchSize, ids.length);
+
+                for (int i = start; i < end; i++) {
+                    double idf = Math.log10((double) numDocs / docFreqs[i]);
+
+                    idfStmt.setDouble(1, idf);
+                    idfStmt.setInt(2, docFreqs[i]);
+                    idfStmt.setInt(3, ids[i]);
+                    idfStmt.addBatch();
+
+                    tfidfStmt.setDouble(1, idf);
+                    tfidfStmt.setInt(2, ids[i]);
+                    tfidfStmt.addBatch();
+                }
+                idfStmt.executeBatch();
+                tfidfStmt.executeBatch();
+                conn.commit();
+                System.out.println("Rescored " + end + "/" + ids.length + " keywords");
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+
+        // Only remember the new document count once a full pass has used it
+        if (rescoreAll) {
+            try (PreparedStatement stmt = conn.prepareStatement(Statements.SET_TFIDF_NUM_DOCS)) {
+                stmt.setInt(1, numDocs);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        }
+        return ids.length;
+    }
+
+
+    /**
+     * Reads the ids and document frequencies of the keywords to rescore into primitive arrays,
+     * so the keywords table is not being updated while it is still being read.
+     */
+    private int[][] findStaleKeywords(boolean all) throws SQLException {
+        int[] ids = new int[1024];
+        int[] docFreqs = new int[1024];
+        int count = 0;
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(all ? Statements.GET_ALL_KEYWORD_DOC_FREQS : Statements.GET_STALE_KEYWORD_DOC_FREQS)) {
+            while (rs.next()) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    docFreqs = Arrays.copyOf(docFreqs, count * 2);
+                }
+                ids[count] = rs.getInt(1);
+                docFreqs[count] = rs.getInt(2);
+                count++;
+            }
+        }
+        return new int[][] { Arrays.copyOf(ids, count), Arrays.copyOf(docFreqs, count) };
+    }
+
+
+    private int queryInt(String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
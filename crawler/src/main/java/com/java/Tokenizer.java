@@ -0,0 +1,242 @@
+/**
+ * Splits page text into keywords and counts them in a single pass over the characters.
+ * Tokens are split on the same whitespace as "\\s+", lowercased into a reusable buffer, checked
+ * against the stopwords without allocating, and counted in a table keyed on the buffered chars.
+ * A String is only created once per distinct surviving term, when the counts are handed back
+ * as TermCounts.
+ * Tokens containing non-ASCII characters take the original Keyword path so that Unicode
+ * lowercasing and stripping behave exactly as before.
+ * Not thread safe; Site keeps one per thread.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.util.Arrays;
+
+
+public class Tokenizer {
+    private static final char[][] STOPWORD_TABLE = buildStopwordTable();
+
+    private char[] token;
+    private int tokenLength;
+    private char[] pool;
+    private int poolSize;
+    private int[] starts;
+    private int[] lengths;
+    private int[] counts;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+
+
+    public Tokenizer() {
+        this.token = new char[64];
+        this.pool = new char[1 << 14];
+        this.starts = new int[1024];
+        this.lengths = new int[1024];
+        this.counts = new int[1024];
+        this.hashes = new int[1024];
+        this.slots = new int[2048];
+    }
+
+
+    /**
+     * Counts the keywords in a block of text.
+     * @param text the page text.
+     * @param lem the lemmatizer applied to each distinct term.
+     * @return the number of times each lemmatized keyword appears.
+     */
+    public TermCounts countKeywords(CharSequence text, Lemmatizer lem) {
+        begin();
+        for (int i = 0; i < text.length(); i++) {
+            feed(text.charAt(i));
+        }
+        return finish(lem);
+    }
+
+
+    /**
+     * Starts counting a new page, for text that arrives a piece at a time through feed.
+     */
+    public void begin() {
+        if (this.size > 0) {
+            Arrays.fill(this.slots, 0);
+        }
+        this.size = 0;
+        this.poolSize = 0;
+        this.tokenLength = 0;
+    }
+
+
+    /**
+     * Adds the next character of the page text.
+     * @param c the character.
+     */
+    public void feed(char c) {
+        if (isSeparator(c)) {
+            if (this.tokenLength > 0) {
+                addToken();
+            }
+            return;
+        }
+        if (this.tokenLength == this.token.length) {
+            this.token = Arrays.copyOf(this.token, this.token.length * 2);
+        }
+        this.token[this.tokenLength++] = c;
+    }
+
+
+    /**
+     * Finishes the page started with begin.
+     * @param lem the lemmatizer applied to each distinct term.
+     * @return the number of times each lemmatized keyword appears.
+     */
+    public TermCounts finish(Lemmatizer lem) {
+        if (this.tokenLength > 0) {
+            addToken();
+        }
+
+        long start = System.nanoTime();
+        TermCounts keywords = new TermCounts(this.size);
+        for (int e = 0; e < this.size; e++) {
+            String term = new String(this.pool, this.starts[e], this.lengths[e]);
+            // lemmas come from the lemma list as written, so they are cleaned up like any Keyword
+            keywords.add(lem.lemmatizeWord(term).toLowerCase().strip(), this.counts[e]);
+        }
+        CrawlMetrics.get().record(CrawlMetrics.Stage.LEMMATIZE, start);
+        return keywords;
+    }
+
+
+    private void addToken() {
+        int len = this.tokenLength;
+        this.tokenLength = 0;
+
+        // ASCII letters are lowercased in place; anything else decides the token on its own
+        for (int j = 0; j < len; j++) {
+            char c = this.token[j];
+            if (c >= 'A' && c <= 'Z') {
+                this.token[j] = (char) (c + ('a' - 'A'));
+            } else if (c >= 'a' && c <= 'z') {
+                continue;
+            } else if (c >= 0x80 || (c >= 0x1C && c <= 0x1F)) {
+                addUnicodeToken(new String(this.token, 0, len));
+                return;
+            } else {
+                return;
+            }
+        }
+
+        if (len > 1 && !isStopword(this.token, len)) {
+            count(this.token, len);
+        }
+    }
+
+
+    /**
+     * The original per-word filter, for tokens that Unicode case mapping or stripping could change.
+     */
+    private void addUnicodeToken(String word) {
+        Keyword keyword = new Keyword(word.toLowerCase().strip());
+        if (!keyword.isStopword() && keyword.isWord() && word.length() > 1) {
+            char[] chars = keyword.getWord().toCharArray();
+            count(chars, chars.length);
+        }
+    }
+
+
+    private void count(char[] chars, int len) {
+        int hash = hash(chars, len);
+        int mask = this.slots.length - 1;
+        int i = hash & mask;
+
+        while (this.slots[i] != 0) {
+            int e = this.slots[i] - 1;
+            if (this.hashes[e] == hash && this.lengths[e] == len
+                    && Arrays.equals(this.pool, this.starts[e], this.starts[e] + len, chars, 0, len)) {
+                this.counts[e]++;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        if (this.size == this.starts.length) {
+            int cap = this.size * 2;
+            this.starts = Arrays.copyOf(this.starts, cap);
+            this.lengths = Arrays.copyOf(this.lengths, cap);
+            this.counts = Arrays.copyOf(this.counts, cap);
+            this.hashes = Arrays.copyOf(this.hashes, cap);
+        }
+        if (this.poolSize + len > this.pool.length) {
+            this.pool = Arrays.copyOf(this.pool, Math.max(this.pool.length * 2, this.poolSize + len));
+        }
+
+        int e = this.size++;
+        System.arraycopy(chars, 0, this.pool, this.poolSize, len);
+        this.starts[e] = this.poolSize;
+        this.lengths[e] = len;
+        this.counts[e] = 1;
+        this.hashes[e] = hash;
+        this.poolSize += len;
+        this.slots[i] = e + 1;
+
+        if (this.size * 2 > this.slots.length) {
+            rehash();
+        }
+    }
+
+
+    private void rehash() {
+        this.slots = new int[this.slots.length * 2];
+        int mask = this.slots.length - 1;
+        for (int e = 0; e < this.size; e++) {
+            int i = this.hashes[e] & mask;
+            while (this.slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            this.slots[i] = e + 1;
+        }
+    }
+
+
+    /**
+     * The characters matched by "\\s" in a Java regex.
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+
+    private static boolean isStopword(char[] chars, int len) {
+        int mask = STOPWORD_TABLE.length - 1;
+        for (int i = hash(chars, len) & mask; STOPWORD_TABLE[i] != null; i = (i + 1) & mask) {
+            if (Arrays.equals(STOPWORD_TABLE[i], 0, STOPWORD_TABLE[i].length, chars, 0, len)) return true;
+        }
+        return false;
+    }
+
+
+    private static char[][] buildStopwordTable() {
+        char[][] table = new char[1024][];
+        int mask = table.length - 1;
+
+        for (String stopword : Keyword.STOPWORDS) {
+            char[] chars = stopword.toCharArray();
+            int i = hash(chars, chars.length) & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = chars;
+        }
+        return table;
+    }
+
+
+    private static int hash(char[] chars, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + chars[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
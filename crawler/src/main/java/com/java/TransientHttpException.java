@@ -0,0 +1,42 @@
+/**
+ * An error status that says the server is overloaded or briefly unavailable rather than that the
+ * page is gone: 429, 502, 503 or 504. The page is worth asking for again later, no sooner than
+ * the response's Retry-After if it sent one.
+ * Braden Zingler
+ */
+package com.java;
+
+import org.jsoup.HttpStatusException;
+
+
+public class TransientHttpException extends HttpStatusException {
+    private static final long serialVersionUID = 1L;
+    private long retryAfterMillis;
+
+
+    /**
+     * @param status the HTTP status code.
+     * @param url the url that was requested.
+     * @param retryAfterMillis how long the server asked us to wait, or -1 if it did not say.
+     */
+    public TransientHttpException(int status, String url, long retryAfterMillis) {
+        super("Server busy fetching URL", status, url);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+
+    /**
+     * @return how long the server asked us to wait, or -1 if it did not say.
+     */
+    public long getRetryAfterMillis() {
+        return this.retryAfterMillis;
+    }
+
+
+    /**
+     * @return true if the status means the server is overloaded or briefly unavailable.
+     */
+    public static boolean isTransient(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Decides which urls the crawler may queue, using the rules in crawler.urls.*:
+ *   - schemes and hosts: where a url may point
+ *   - pathPrefixes: the paths allowed on those hosts
+ *   - excluded: prefixes under an allowed path that are not crawled, such as "Special:"
+ *   - stripFragments: drop "#..." from urls instead of rejecting them
+ * An admitted url has any character a URI may not hold past its host percent-encoded, such as
+ * a space or '|' written raw in an href, so it can be fetched and has one seen key.
+ * Every combination is compiled into one radix trie over "scheme://host/path", so a check
+ * walks the url once and the deepest rule it passes decides. The scheme and host are matched
+ * without regard to case. Immutable and safe to share between threads.
+ * Braden Zingler
+ */
+package com.java;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class UrlFilter {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private Node root;
+    private boolean stripFragments;
+
+
+    /**
+     * Compiles the rules in the given settings.
+     * @param config the crawler settings.
+     */
+    public UrlFilter(CrawlerConfig config) {
+        this(config.getUrlSchemes(), config.getUrlHosts(), config.getUrlPathPrefixes(),
+                config.getUrlExclusions(), config.isStripFragments());
+    }
+
+
+    /**
+     * Compiles a set of rules.
+     * @param schemes the allowed schemes, e.g. "https".
+     * @param hosts the allowed hosts, e.g. "en.wikipedia.org".
+     * @param pathPrefixes the allowed paths on every host, e.g. "/wiki/".
+     * @param excluded prefixes under each allowed path that are rejected, e.g. "Special:".
+     * @param stripFragments whether a url with a fragment is admitted without it, rather than rejected.
+     */
+    public UrlFilter(List<String> schemes, List<String> hosts, List<String> pathPrefixes, List<String> excluded, boolean stripFragments) {
+        this.root = new Node();
+        this.stripFragments = stripFragments;
+
+        for (String scheme : schemes) {
+            for (String host : hosts) {
+                String origin = scheme.toLowerCase() + "://" + host.toLowerCase();
+                for (String prefix : pathPrefixes) {
+                    this.root.insert(origin + prefix, true);
+                    for (String exclusion : excluded) {
+                        this.root.insert(origin + prefix + exclusion, false);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Checks a url against the rules.
+     * @param url an absolute url.
+     * @return the url to crawl, percent-encoded and without its fragment if fragments are
+     * stripped, or null if the url is rejected.
+     */
+    public String admit(String url) {
+        int hash = url.indexOf('#');
+        if (hash >= 0) {
+            if (!this.stripFragments) return null;
+            url = url.substring(0, hash);
+        }
+        url = encode(url);
+        String key = lowercaseOrigin(url);
+
+        // Follow the edges the url spells out, keeping the deepest rule passed
+        int rule = 0;
+        Node node = this.root;
+        int i = 0;
+        while (i < key.length()) {
+            int edge = node.edge(key.charAt(i));
+            if (edge < 0 || !key.startsWith(node.labels[edge], i)) break;
+            i += node.labels[edge].length();
+            node = node.children[edge];
+            if (node.rule != 0) {
+                rule = node.rule;
+            }
+        }
+        return rule > 0 ? url : null;
+    }
+
+
+    /**
+     * Percent-encodes the characters past the host that java.net.URI rejects: controls, spaces,
+     * non-ASCII, the characters URIs exclude like '|', '^' and '"', and a '%' that does not start
+     * an escape. Nearly every url has none, and is returned as it is.
+     * @param url an absolute url.
+     * @return the url with those characters encoded as UTF-8 bytes.
+     */
+    static String encode(String url) {
+        int authority = url.indexOf("//");
+        int start = authority < 0 ? 0 : url.indexOf('/', authority + 2);
+        if (start < 0) return url;
+
+        int first = start;
+        while (first < url.length() && !needsEncoding(url, first)) {
+            first++;
+        }
+        if (first == url.length()) return url;
+
+        StringBuilder out = new StringBuilder(url.length() + 16).append(url, 0, first);
+        for (int i = first; i < url.length(); i++) {
+            if (!needsEncoding(url, i)) {
+                out.append(url.charAt(i));
+                continue;
+            }
+            int end = Character.isHighSurrogate(url.charAt(i)) && i + 1 < url.length() ? i + 2 : i + 1;
+            for (byte b : url.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            i = end - 1;
+        }
+        return out.toString();
+    }
+
+
+    private static boolean needsEncoding(String url, int i) {
+        char c = url.charAt(i);
+        if (c <= ' ' || c >= 0x7F) return true;
+        if (c == '%') {
+            return !(i + 2 < url.length() && isHex(url.charAt(i + 1)) && isHex(url.charAt(i + 2)));
+        }
+        return "\"<>\\^`{|}[]".indexOf(c) >= 0;
+    }
+
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+
+    /**
+     * @return the url with its scheme and host lowercased, or the url itself if they already are.
+     */
+    private static String lowercaseOrigin(String url) {
+        int slashes = 0;
+        for (int i = 0; i < url.length() && slashes < 3; i++) {
+            char c = url.charAt(i);
+            if (c == '/') {
+                slashes++;
+            } else if (c >= 'A' && c <= 'Z') {
+                int authority = url.indexOf("//");
+                int end = authority < 0 ? -1 : url.indexOf('/', authority + 2);
+                if (end < 0) end = url.length();
+                return url.substring(0, end).toLowerCase() + url.substring(end);
+            }
+        }
+        return url;
+    }
+
+
+    /**
+     * A node in a radix trie: each edge is labeled with a string rather than a single char, so a
+     * run of prefixes with one continuation is matched with a single startsWith.
+     * rule is 1 for an allowed prefix, -1 for an excluded one and 0 if no rule ends here.
+     */
+    private static class Node {
+        char[] keys = new char[0];
+        String[] labels = new String[0];
+        Node[] children = new Node[0];
+        int rule;
+
+        /**
+         * @return the edge whose label starts with c, or -1 if there is none.
+         */
+        int edge(char c) {
+            for (int i = 0; i < this.keys.length; i++) {
+                if (this.keys[i] == c) return i;
+            }
+            return -1;
+        }
+
+        void insert(String prefix, boolean allow) {
+            Node node = this;
+            int pos = 0;
+            while (pos < prefix.length()) {
+                int edge = node.edge(prefix.charAt(pos));
+                if (edge < 0) {
+                    Node leaf = new Node();
+                    node.add(prefix.substring(pos), leaf);
+                    node = leaf;
+                    break;
+                }
+
+                String label = node.labels[edge];
+                int common = 0;
+                while (common < label.length() && pos + common < prefix.length() && label.charAt(common) == prefix.charAt(pos + common)) {
+                    common++;
+                }
+                if (common < label.length()) {
+                    // Split the edge where the prefix leaves it
+                    Node middle = new Node();
+                    middle.add(label.substring(common), node.children[edge]);
+                    node.labels[edge] = label.substring(0, common);
+                    node.children[edge] = middle;
+                }
+                node = node.children[edge];
+                pos += common;
+            }
+            if (!allow || node.rule == 0) {
+                node.rule = allow ? 1 : -1;
+            }
+        }
+
+        private void add(String label, Node child) {
+            this.keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+            this.labels = Arrays.copyOf(this.labels, this.labels.length + 1);
+            this.children = Arrays.copyOf(this.children, this.children.length + 1);
+            this.keys[this.keys.length - 1] = label.charAt(0);
+            this.labels[this.labels.length - 1] = label;
+            this.children[this.children.length - 1] = child;
+        }
+    }
+}
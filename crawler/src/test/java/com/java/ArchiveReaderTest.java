@@ -0,0 +1,91 @@
+/**
+ * Checks that an archive written over several runs reads back in write order by default, and
+ * newest first when asked, so the first record read for a url is its latest fetch.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class ArchiveReaderTest {
+    private static final String WIKI = "https://en.wikipedia.org/wiki/";
+
+    private Path dir;
+    private CrawlerConfig config;
+
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("archive-test");
+        this.config = CrawlerConfig.load().set("crawler.archive.dir", this.dir);
+    }
+
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+
+    /**
+     * Writes one run of the crawl to the archive, as its own segment.
+     */
+    private void crawl(String... pages) throws IOException {
+        PageArchive archive = new PageArchive(this.config);
+        for (String page : pages) {
+            String[] parts = page.split("=");
+            archive.append(WIKI + parts[0], 200, "OK", Map.of("Content-Type", "text/html; charset=UTF-8"),
+                    parts[1].getBytes(StandardCharsets.UTF_8));
+        }
+        archive.close();
+    }
+
+
+    private List<String> read(boolean newestFirst) throws IOException {
+        List<String> pages = new ArrayList<>();
+        try (ArchiveReader reader = new ArchiveReader(this.dir.toFile(), newestFirst)) {
+            ArchiveReader.Record record;
+            while ((record = reader.next()) != null) {
+                ArchiveReader.Page page = ArchiveReader.decode(record);
+                pages.add(page.getUrl().substring(WIKI.length()) + "=" + new String(page.getBody(), StandardCharsets.UTF_8));
+            }
+            assertNull(reader.next());
+        }
+        return pages;
+    }
+
+
+    @Test
+    public void recordsReadInWriteOrder() throws IOException {
+        crawl("A=old a", "B=old b");
+        crawl("A=new a", "C=new c");
+        assertEquals(List.of("A=old a", "B=old b", "A=new a", "C=new c"), read(false));
+    }
+
+
+    @Test
+    public void newestFirstReadsTheLatestFetchOfAUrlFirst() throws IOException {
+        crawl("A=old a", "B=old b");
+        crawl("A=new a", "C=new c");
+        crawl("B=newest b");
+        assertEquals(List.of("B=newest b", "C=new c", "A=new a", "B=old b", "A=old a"), read(true));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Checks that a frontier reopened after its crawl was killed takes back every url whose page
+ * was not finished, that urls marked done come back as seen instead, that a finished crawl
+ * leaves nothing seen for the next one, and that consumed segments are deleted only once every
+ * url in them is done.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class FrontierTest {
+    private static final String WIKI = "https://en.wikipedia.org/wiki/";
+
+    private Path dir;
+    private CrawlerConfig config;
+
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("frontier-test");
+        this.config = CrawlerConfig.load()
+                .set("crawler.frontier.dir", this.dir.resolve("frontier"))
+                .set("crawler.frontier.hotSize", 4)
+                .set("crawler.frontier.segmentBytes", 0xFFFF + 4)
+                .set("crawler.seen.type", "exact")
+                .set("crawler.seen.expected", 1000);
+    }
+
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+
+    private static String name(Site site) {
+        return site.getUrl().substring(WIKI.length());
+    }
+
+
+    @Test
+    public void urlsInFlightAreTakenAgainAfterACrash() {
+        Frontier frontier = new Frontier(this.config);
+        for (String name : new String[]{"A", "B", "C", "D"}) {
+            frontier.add(new Site(WIKI + name));
+        }
+        Site a = frontier.poll();
+        Site b = frontier.poll();
+        Site c = frontier.poll();
+        frontier.done(a);
+        frontier.done(c);
+
+        // killed without close: b and c are after the oldest url in flight, d was never taken
+        Frontier resumed = new Frontier(this.config);
+        SeenSet seen = SeenSet.create(this.config);
+        assertEquals(2, resumed.restoreSeen(seen));
+        assertTrue(seen.contains(a.getNormalizedUrl()));
+        assertTrue(seen.contains(c.getNormalizedUrl()));
+        assertFalse(seen.contains(b.getNormalizedUrl()));
+
+        assertEquals("B", name(resumed.poll()));
+        assertEquals("C", name(resumed.poll()));
+        assertEquals("D", name(resumed.poll()));
+        assertNull(resumed.poll());
+    }
+
+
+    @Test
+    public void finishedFrontierResumesEmpty() {
+        Frontier frontier = new Frontier(this.config);
+        for (int i = 0; i < 10; i++) {
+            frontier.add(new Site(WIKI + "Page_" + i));
+        }
+        Site site;
+        while ((site = frontier.poll()) != null) {
+            frontier.done(site);
+        }
+        frontier.close();
+
+        // the next crawl starts over, so it can crawl the same seeds again
+        Frontier resumed = new Frontier(this.config);
+        assertEquals(0, resumed.restoreSeen(SeenSet.create(this.config)));
+        assertTrue(resumed.isEmpty());
+        assertNull(resumed.poll());
+    }
+
+
+    @Test
+    public void segmentsAreDeletedOnceEveryUrlInThemIsDone() {
+        // 1,638 entries of 40 bytes fit in one 64 KB segment, so this fills 8 segments
+        Frontier frontier = new Frontier(this.config);
+        for (int i = 0; i < 12000; i++) {
+            frontier.add(new Site(WIKI + String.format("P%07d", i)));
+        }
+        File segments = this.dir.resolve("frontier").toFile();
+        assertEquals(8, segments.list((d, name) -> name.startsWith("segment-")).length);
+
+        Site first = frontier.poll();
+        Site site;
+        while ((site = frontier.poll()) != null) {
+            frontier.done(site);
+        }
+        assertEquals(8, segments.list((d, name) -> name.startsWith("segment-")).length);
+
+        frontier.done(first);
+        assertEquals(1, segments.list((d, name) -> name.startsWith("segment-")).length);
+    }
+
+
+    @Test
+    public void segmentsTooSmallForTheLongestUrlAreRejected() {
+        this.config.set("crawler.frontier.segmentBytes", 1024);
+        assertThrows(IllegalArgumentException.class, () -> new Frontier(this.config));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Checks HttpFetcher's limits against a local HTTP server: a body that stops arriving after the
+ * headers fails with an HttpTimeoutException at crawler.fetch.readTimeoutMillis, compressed or
+ * not, while bodies that arrive in time are read whole or cut off at crawler.fetch.maxBodyBytes.
+ * Links written with characters a URI may not hold are fetched as UrlFilter admits them.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class HttpFetcherTest {
+    private static final byte[] PAGE = "<html><body><p>ray gun</p></body></html>".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService pool;
+    private CountDownLatch release;
+    private String origin;
+
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        this.release = new CountDownLatch(1);
+        this.pool = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(this.pool);
+
+        this.server.createContext("/page", exchange -> {
+            exchange.sendResponseHeaders(200, PAGE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(PAGE);
+            }
+        });
+        // sends the headers and part of the body, then stalls until the test ends
+        this.server.createContext("/stall", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(PAGE, 0, 10);
+            out.flush();
+            await();
+            out.close();
+        });
+        // sends gzip headers and nothing else, so the decoder stalls reading its own header
+        this.server.createContext("/stall-gzip", exchange -> {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().flush();
+            await();
+            exchange.close();
+        });
+        this.server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(PAGE);
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                compressed.writeTo(out);
+            }
+        });
+        this.server.start();
+        this.origin = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+
+    @AfterEach
+    public void stopServer() {
+        this.release.countDown();
+        this.server.stop(0);
+        this.pool.shutdownNow();
+    }
+
+
+    private void await() {
+        try {
+            this.release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static HttpFetcher fetcher(long readTimeoutMillis, long maxBodyBytes) {
+        return new HttpFetcher(CrawlerConfig.load()
+                .set("crawler.fetch.timeoutMillis", 2000)
+                .set("crawler.fetch.readTimeoutMillis", readTimeoutMillis)
+                .set("crawler.fetch.maxBodyBytes", maxBodyBytes));
+    }
+
+
+    @Test
+    public void stalledBodyTimesOut() throws IOException {
+        HttpFetcher fetcher = fetcher(500, 0);
+        long start = System.nanoTime();
+        try (FetchResponse res = fetcher.fetch(this.origin + "/stall")) {
+            assertEquals(200, res.getStatus());
+            assertThrows(HttpTimeoutException.class, () -> res.getBody().readAllBytes());
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(millis >= 500 && millis < 3000, "took " + millis + " ms");
+    }
+
+
+    @Test
+    public void stalledGzipHeaderTimesOut() {
+        HttpFetcher fetcher = fetcher(500, 0);
+        long start = System.nanoTime();
+        assertThrows(HttpTimeoutException.class, () -> fetcher.fetch(this.origin + "/stall-gzip").close());
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(millis >= 500 && millis < 3000, "took " + millis + " ms");
+    }
+
+
+    @Test
+    public void bodiesReadInTimeAreWhole() throws Exception {
+        HttpFetcher fetcher = fetcher(500, 0);
+        try (FetchResponse res = fetcher.fetch(this.origin + "/page")) {
+            assertArrayEquals(PAGE, res.getBody().readAllBytes());
+        }
+        try (FetchResponse res = fetcher.fetch(this.origin + "/gzip")) {
+            assertArrayEquals(PAGE, res.getBody().readAllBytes());
+        }
+
+        // a body that was read in time is not failed by its deadline passing later
+        try (FetchResponse res = fetcher.fetch(this.origin + "/page")) {
+            assertArrayEquals(PAGE, res.getBody().readAllBytes());
+            Thread.sleep(700);
+            assertEquals(-1, res.getBody().read());
+        }
+    }
+
+
+    @Test
+    public void bodiesAreCutOffAtTheLimit() throws IOException {
+        try (FetchResponse res = fetcher(500, 10).fetch(this.origin + "/gzip")) {
+            assertEquals(10, res.getBody().readAllBytes().length);
+        }
+    }
+
+
+    @Test
+    public void linksWithIllegalCharactersAreEncodedOnceAndFetched() throws Exception {
+        UrlFilter filter = new UrlFilter(List.of("http"), List.of(this.origin.substring("http://".length())),
+                List.of("/page/"), List.of(), true);
+        String url = filter.admit(this.origin + "/page/Ray gun|\"x\"^2 50%_é?q=a b#Top");
+        assertEquals(this.origin + "/page/Ray%20gun%7C%22x%22%5E2%2050%25_%C3%A9?q=a%20b", url);
+        assertEquals(url, filter.admit(url));
+        assertEquals(this.origin + "/page/Ray_gun", filter.admit(this.origin + "/page/Ray_gun"));
+
+        try (FetchResponse res = fetcher(500, 0).fetch(url)) {
+            assertEquals(200, res.getStatus());
+            assertArrayEquals(PAGE, res.getBody().readAllBytes());
+        }
+    }
+}
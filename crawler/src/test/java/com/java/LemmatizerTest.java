@@ -0,0 +1,85 @@
+/**
+ * Checks that the lemma snapshot is used only while it is at least as new as the CSV list:
+ * the first load writes it, an untouched list keeps it, and an edited list rebuilds it.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class LemmatizerTest {
+    private Path dir;
+    private Path csv;
+    private Path snapshot;
+    private CrawlerConfig config;
+
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("lemmatizer-test");
+        this.csv = this.dir.resolve("lemmas.csv");
+        this.snapshot = this.dir.resolve("lemmas.bin");
+        this.config = CrawlerConfig.load()
+                .set("crawler.lemmas.csv", this.csv)
+                .set("crawler.lemmas.snapshot", this.snapshot);
+    }
+
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+
+    private void writeCsv(String lines, long modified) throws IOException {
+        Files.write(this.csv, lines.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(this.csv, FileTime.fromMillis(modified));
+    }
+
+
+    @Test
+    public void snapshotIsWrittenAndKeptWhileTheListIsUnchanged() throws IOException {
+        long now = System.currentTimeMillis();
+        writeCsv("run,running\nrun,ran\n", now - 60000);
+        assertEquals("run", new Lemmatizer(this.config).lemmatizeWord("running"));
+        assertTrue(Files.isRegularFile(this.snapshot));
+
+        // an older list than the snapshot is not read again
+        writeCsv("sprint,running\n", now - 120000);
+        assertEquals("run", new Lemmatizer(this.config).lemmatizeWord("running"));
+    }
+
+
+    @Test
+    public void editedListRebuildsTheSnapshot() throws IOException {
+        long now = System.currentTimeMillis();
+        writeCsv("run,running\n", now - 60000);
+        assertEquals("run", new Lemmatizer(this.config).lemmatizeWord("running"));
+        Files.setLastModifiedTime(this.snapshot, FileTime.fromMillis(now - 30000));
+
+        writeCsv("sprint,running\nsprint,sprinted\n", now);
+        Lemmatizer lem = new Lemmatizer(this.config);
+        assertEquals("sprint", lem.lemmatizeWord("running"));
+        assertEquals("sprint", lem.lemmatizeWord("sprinted"));
+
+        // the rebuilt snapshot is used from then on
+        Files.delete(this.csv);
+        assertEquals("sprint", new Lemmatizer(this.config).lemmatizeWord("sprinted"));
+    }
+}
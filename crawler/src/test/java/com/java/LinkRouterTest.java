@@ -0,0 +1,105 @@
+/**
+ * Checks how LinkRouter handles a peer it cannot write to: a connection the peer dropped is
+ * opened again and later batches arrive, while a peer that cannot be reached at all fails the
+ * router once, so the worker stops instead of waiting on links that will never be received.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+
+public class LinkRouterTest {
+
+
+    private static LinkRouter router() throws IOException {
+        return new LinkRouter(CrawlerConfig.load()
+                .set("crawler.cluster.index", 0)
+                .set("crawler.cluster.batchSize", 1)
+                .set("crawler.cluster.batchMillis", 60000));
+    }
+
+
+    /**
+     * @return a page owned by worker 1 of 2.
+     */
+    private static Site remote(int n) {
+        for (int i = 0; ; i++) {
+            Site site = new Site("https://en.wikipedia.org/wiki/Page_" + n + "_" + i);
+            if (LinkRouter.ownerOf(site.getNormalizedUrl(), 2, false) == 1) return site;
+        }
+    }
+
+
+    private static String[] readBatch(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        assertEquals(ClusterProtocol.LINKS, in.readByte());
+        return ClusterProtocol.readLinks(in);
+    }
+
+
+    @Test
+    public void droppedConnectionIsReopened() throws IOException {
+        AtomicInteger failures = new AtomicInteger();
+        try (ServerSocket peer = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+             LinkRouter router = router()) {
+            peer.setSoTimeout(5000);
+            router.start(new int[]{router.getPort(), peer.getLocalPort()}, url -> { }, failures::incrementAndGet);
+
+            Site first = remote(0);
+            router.send(first);
+            try (Socket socket = peer.accept()) {
+                assertArrayEquals(new String[]{first.getNormalizedUrl()}, readBatch(socket));
+            }
+
+            // the first writes after the peer closed may still be taken by the old connection,
+            // so keep sending until one arrives on a new one
+            peer.setSoTimeout(50);
+            Socket reopened = null;
+            for (int n = 1; reopened == null && n < 100; n++) {
+                router.send(remote(n));
+                try {
+                    reopened = peer.accept();
+                } catch (SocketTimeoutException e) {
+                    // not yet
+                }
+            }
+            assertTrue(reopened != null, "the router never reconnected");
+            try (Socket socket = reopened) {
+                assertEquals(1, readBatch(socket).length);
+            }
+            assertEquals(0, failures.get());
+        }
+    }
+
+
+    @Test
+    public void unreachablePeerFailsTheRouterOnce() throws IOException {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 8, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        AtomicInteger failures = new AtomicInteger();
+        try (LinkRouter router = router()) {
+            router.start(new int[]{router.getPort(), port}, url -> { }, failures::incrementAndGet);
+
+            router.send(remote(0));
+            assertEquals(1, failures.get());
+            router.send(remote(1));
+            assertEquals(1, failures.get());
+            assertEquals(2, router.getSent());
+        }
+    }
+}
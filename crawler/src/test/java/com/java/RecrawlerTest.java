@@ -0,0 +1,170 @@
+/**
+ * Runs the Recrawler against a local HTTP server and a scratch database: a page whose ETag comes
+ * back gets a 304 and keeps its rows, a page served again unchanged is downloaded but not
+ * rewritten, a changed page has its keyword rows replaced, and a page that answers 503 once is
+ * retried.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class RecrawlerTest {
+    private HttpServer server;
+    private ExecutorService pool;
+    private Path dir;
+    private CrawlerConfig config;
+    private String base;
+    private volatile String changingWord;
+    private AtomicInteger notModified;
+    private AtomicInteger busy;
+    private AtomicInteger requests;
+
+
+    @BeforeEach
+    public void setUp() throws IOException, InterruptedException {
+        this.changingWord = "asteroid";
+        this.notModified = new AtomicInteger();
+        this.busy = new AtomicInteger();
+        this.requests = new AtomicInteger();
+        this.pool = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(this.pool);
+
+        this.server.createContext("/wiki/Tagged", exchange -> {
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                this.notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            send(exchange, "rocket");
+        });
+        this.server.createContext("/wiki/Plain", exchange -> send(exchange, "laser"));
+        this.server.createContext("/wiki/Changing", exchange -> send(exchange, this.changingWord));
+        this.server.createContext("/wiki/Busy", exchange -> {
+            if (this.busy.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+            send(exchange, "comet");
+        });
+        this.server.start();
+        this.base = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/wiki/";
+
+        this.dir = Files.createTempDirectory("recrawler-test");
+        this.config = CrawlerConfig.load()
+                .set("crawler.db.path", this.dir.resolve("test.db"))
+                .set("crawler.lemmas.csv", this.dir.resolve("none.csv"))
+                .set("crawler.lemmas.snapshot", "")
+                .set("crawler.robots.enabled", false)
+                .set("crawler.log.summaryMillis", 0)
+                .set("crawler.fetch.retryBaseMillis", 10)
+                .set("crawler.recrawl.minAgeMillis", -60000);
+
+        Database db = new Database(this.config);
+        for (String name : new String[]{"Tagged", "Plain", "Changing", "Busy"}) {
+            db.submit(new Site(this.base + name, new TermCounts(0), name, ""));
+        }
+        db.closeConnection();
+    }
+
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        this.server.stop(0);
+        this.pool.shutdownNow();
+        try (Stream<Path> paths = Files.walk(this.dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+
+    private void send(HttpExchange exchange, String word) throws IOException {
+        this.requests.incrementAndGet();
+        byte[] body = ("<html><head><title>Page</title></head><body><p>" + word + " orbit</p></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+
+    private Set<String> keywords(String name) throws SQLException {
+        Set<String> keywords = new HashSet<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + this.config.getDatabasePath());
+             PreparedStatement stmt = conn.prepareStatement("SELECT k.keyword FROM url_keywords uk "
+                     + "JOIN keywords k ON k.keyword_id = uk.keyword_id JOIN urls u ON u.url_id = uk.url_id WHERE u.url = ?")) {
+            stmt.setString(1, this.base + name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    keywords.add(rs.getString(1));
+                }
+            }
+        }
+        return keywords;
+    }
+
+
+    @Test
+    public void refreshesOnlyWhatChanged() throws SQLException {
+        new Recrawler(this.config).recrawl();
+
+        assertEquals(Set.of("rocket", "orbit", "page"), keywords("Tagged"));
+        assertEquals(Set.of("laser", "orbit", "page"), keywords("Plain"));
+        assertEquals(Set.of("asteroid", "orbit", "page"), keywords("Changing"));
+        assertEquals(0, this.notModified.get());
+
+        this.changingWord = "nebula";
+        this.requests.set(0);
+        new Recrawler(this.config).recrawl();
+
+        // the tagged page is answered with a 304 and sends no body
+        assertEquals(1, this.notModified.get());
+        assertEquals(3, this.requests.get());
+        assertEquals(Set.of("rocket", "orbit", "page"), keywords("Tagged"));
+        assertEquals(Set.of("laser", "orbit", "page"), keywords("Plain"));
+        assertEquals(Set.of("nebula", "orbit", "page"), keywords("Changing"));
+    }
+
+
+    @Test
+    public void busyPageIsRetried() throws SQLException {
+        new Recrawler(this.config).recrawl();
+
+        assertTrue(this.busy.get() >= 2, "requests to the busy page: " + this.busy.get());
+        assertEquals(Set.of("comet", "orbit", "page"), keywords("Busy"));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Checks RobotsCache against a local HTTP server standing in for a site's robots.txt: which rules
+ * each kind of response produces, how long they are kept, and that threads asking for the same
+ * host at once share a single fetch.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class RobotsCacheTest {
+    private HttpServer server;
+    private ExecutorService pool;
+    private AtomicInteger requests;
+    private volatile int status;
+    private volatile String body;
+    private volatile long delayMillis;
+    private String origin;
+
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        this.requests = new AtomicInteger();
+        this.status = 200;
+        this.body = "";
+        this.pool = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(this.pool);
+        this.server.createContext("/robots.txt", exchange -> {
+            this.requests.incrementAndGet();
+            try {
+                Thread.sleep(this.delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = this.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(this.status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        this.server.start();
+        this.origin = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+
+    @AfterEach
+    public void stopServer() {
+        this.server.stop(0);
+        this.pool.shutdownNow();
+    }
+
+
+    private RobotsCache cache(long ttlMillis, long errorTtlMillis) {
+        CrawlerConfig config = CrawlerConfig.load()
+                .set("crawler.robots.userAgent", "web_crawler")
+                .set("crawler.robots.ttlMillis", ttlMillis)
+                .set("crawler.robots.errorTtlMillis", errorTtlMillis);
+        return new RobotsCache(config);
+    }
+
+
+    @Test
+    public void parsedRulesApplyToTheHost() {
+        this.body = "User-agent: *\nDisallow: /private\n";
+        RobotsCache robots = cache(60000, 60000);
+
+        assertFalse(robots.isAllowed(this.origin + "/private/page"));
+        assertTrue(robots.isAllowed(this.origin + "/public/page"));
+        assertEquals(1, this.requests.get());
+    }
+
+
+    @Test
+    public void clientErrorAllowsEverythingForTheFullTtl() throws InterruptedException {
+        this.status = 404;
+        RobotsCache robots = cache(60000, 100);
+
+        assertTrue(robots.isAllowed(this.origin + "/anything"));
+        Thread.sleep(200);
+        assertTrue(robots.isAllowed(this.origin + "/anything/else"));
+        assertEquals(1, this.requests.get());
+    }
+
+
+    @Test
+    public void serverErrorDisallowsEverythingUntilTheErrorTtl() throws InterruptedException {
+        this.status = 503;
+        RobotsCache robots = cache(60000, 300);
+
+        assertFalse(robots.isAllowed(this.origin + "/page"));
+
+        this.status = 200;
+        this.body = "User-agent: *\nDisallow: /private\n";
+        assertFalse(robots.isAllowed(this.origin + "/page"));
+        assertEquals(1, this.requests.get());
+
+        Thread.sleep(400);
+        assertTrue(robots.isAllowed(this.origin + "/page"));
+        assertFalse(robots.isAllowed(this.origin + "/private"));
+        assertEquals(2, this.requests.get());
+    }
+
+
+    @Test
+    public void unreachableHostDisallowsEverything() {
+        this.server.stop(0);
+        RobotsCache robots = cache(60000, 300);
+
+        assertFalse(robots.isAllowed(this.origin + "/page"));
+        assertFalse(robots.isAllowed(this.origin + "/other"));
+        assertEquals(0, this.requests.get());
+    }
+
+
+    @Test
+    public void concurrentChecksShareOneFetch() throws Exception {
+        this.body = "User-agent: *\nDisallow: /private\n";
+        this.delayMillis = 300;
+        RobotsCache robots = cache(60000, 60000);
+
+        int threads = 16;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String url = this.origin + (i % 2 == 0 ? "/private/" : "/public/") + i;
+            results.add(callers.submit(() -> {
+                start.await();
+                return robots.isAllowed(url);
+            }));
+        }
+        start.countDown();
+
+        for (int i = 0; i < threads; i++) {
+            assertEquals(i % 2 != 0, results.get(i).get());
+        }
+        callers.shutdown();
+        assertEquals(1, this.requests.get());
+    }
+
+
+    @Test
+    public void crawlDelayIsReadForOurAgent() {
+        this.body = "User-agent: *\nCrawl-delay: 10\n\nUser-agent: web_crawler\nCrawl-delay: 1.5\nDisallow: /x\n";
+        RobotsCache robots = cache(60000, 60000);
+
+        assertEquals(1500, robots.getCrawlDelayMillis(this.origin + "/page"));
+        assertFalse(robots.isAllowed(this.origin + "/x"));
+        assertEquals(1, this.requests.get());
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Checks robots.txt parsing and matching: group selection, longest match, Allow winning ties,
+ * wildcards and Crawl-delay.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+public class RobotsRulesTest {
+    private static final String HOST = "https://example.com";
+
+
+    private static boolean allowed(RobotsRules rules, String path) {
+        return rules.isAllowed(HOST + path, HOST.length());
+    }
+
+
+    @Test
+    public void longestMatchDecides() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /a\nAllow: /a/b\nDisallow: /a/b/c\n", "web_crawler");
+
+        assertFalse(allowed(rules, "/a"));
+        assertFalse(allowed(rules, "/a/x"));
+        assertTrue(allowed(rules, "/a/b"));
+        assertTrue(allowed(rules, "/a/b/x"));
+        assertFalse(allowed(rules, "/a/b/c/d"));
+        assertTrue(allowed(rules, "/other"));
+    }
+
+
+    @Test
+    public void allowWinsTies() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /page\nAllow: /page\n", "web_crawler");
+        assertTrue(allowed(rules, "/page"));
+
+        rules = RobotsRules.parse("User-agent: *\nAllow: /page\nDisallow: /page\n", "web_crawler");
+        assertTrue(allowed(rules, "/page"));
+
+        rules = RobotsRules.parse("User-agent: *\nDisallow: /*.php\nAllow: /a.php\n", "web_crawler");
+        assertTrue(allowed(rules, "/a.php"));
+        assertFalse(allowed(rules, "/b.php"));
+    }
+
+
+    @Test
+    public void wildcardsAndAnchorsMatch() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow: /*?action=\nDisallow: /*.pdf$\n", "web_crawler");
+
+        assertFalse(allowed(rules, "/w/index.php?action=edit"));
+        assertTrue(allowed(rules, "/w/index.php?title=x"));
+        assertFalse(allowed(rules, "/files/report.pdf"));
+        assertTrue(allowed(rules, "/files/report.pdf.html"));
+    }
+
+
+    @Test
+    public void ourGroupReplacesTheWildcardGroup() {
+        String text = "User-agent: *\nDisallow: /\n\nUser-agent: Web_Crawler/2.0\nDisallow: /private\n";
+        RobotsRules rules = RobotsRules.parse(text, "web_crawler");
+
+        assertTrue(allowed(rules, "/page"));
+        assertFalse(allowed(rules, "/private"));
+        assertFalse(allowed(RobotsRules.parse(text, "other_bot"), "/page"));
+    }
+
+
+    @Test
+    public void emptyDisallowAllowsEverything() {
+        RobotsRules rules = RobotsRules.parse("User-agent: *\nDisallow:\n", "web_crawler");
+        assertTrue(allowed(rules, "/anything"));
+    }
+
+
+    @Test
+    public void crawlDelayIsInMillis() {
+        assertEquals(2500, RobotsRules.parse("User-agent: *\nCrawl-delay: 2.5\n", "web_crawler").getCrawlDelayMillis());
+        assertEquals(0, RobotsRules.parse("User-agent: *\nCrawl-delay: soon\n", "web_crawler").getCrawlDelayMillis());
+        assertEquals(0, RobotsRules.parse("User-agent: *\nDisallow: /x\n", "web_crawler").getCrawlDelayMillis());
+    }
+}
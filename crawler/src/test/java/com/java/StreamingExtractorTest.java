@@ -0,0 +1,186 @@
+/**
+ * Checks that Site.extractStreaming gives the same links, keyword counts, title and description
+ * as extractLinks plus extractData over a parsed Document, on the corpus pages, on markup where
+ * a paragraph is closed implicitly or holds elements whose contents are only text, and on short
+ * description divs in and out of the page content.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+public class StreamingExtractorTest {
+    private static final String WIKI = "https://en.wikipedia.org/wiki/";
+
+    private static Lemmatizer lem;
+    private static UrlFilter filter;
+
+
+    @BeforeAll
+    public static void loadLemmas() throws IOException {
+        Map<String, String> lemmas = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open("lemmas.csv"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length < 2) continue;
+                lemmas.put(parts[1].strip(), parts[0].strip());
+            }
+        }
+        lem = new Lemmatizer(LemmaTable.build(lemmas));
+        filter = new UrlFilter(CrawlerConfig.load());
+    }
+
+
+    private static InputStream open(String name) {
+        return StreamingExtractorTest.class.getResourceAsStream("/corpus/" + name);
+    }
+
+
+    private static Map<String, Integer> counts(TermCounts terms) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            counts.put(terms.getTerm(i), terms.getCount(i));
+        }
+        return counts;
+    }
+
+
+    /**
+     * Extracts a page both ways and checks that every result matches.
+     * @return the keyword counts both ways found.
+     */
+    private static Map<String, Integer> assertSameExtraction(byte[] html, String url) throws IOException {
+        Site dom = new Site(url);
+        Document doc = Jsoup.parse(new ByteArrayInputStream(html), "UTF-8", url);
+        Set<Site> domLinks = dom.extractLinks(doc, filter);
+        dom.extractData(doc, lem);
+
+        Site streamed = new Site(url);
+        Set<Site> streamedLinks = streamed.extractStreaming(new ByteArrayInputStream(html), "UTF-8", lem, filter);
+
+        String page = url + ": " + new String(html, 0, Math.min(html.length, 200), StandardCharsets.UTF_8);
+        Map<String, Integer> expected = counts(dom.getTerms());
+        assertEquals(expected, counts(streamed.getTerms()), page);
+        assertEquals(domLinks, streamedLinks, page);
+        assertEquals(dom.getTitle(), streamed.getTitle(), page);
+        assertEquals(dom.getDescription(), streamed.getDescription(), page);
+        return expected;
+    }
+
+
+    private static Map<String, Integer> assertSameExtraction(String body) throws IOException {
+        String html = "<!DOCTYPE html><html><head><title>Edge case</title></head><body>" + body + "</body></html>";
+        return assertSameExtraction(html.getBytes(StandardCharsets.UTF_8), WIKI + "Edge_case");
+    }
+
+
+    /**
+     * Extracts a page body both ways and returns the description both found.
+     */
+    private static String assertSameDescription(String body) throws IOException {
+        assertSameExtraction(body);
+        String html = "<!DOCTYPE html><html><head><title>Edge case</title></head><body>" + body + "</body></html>";
+        Site streamed = new Site(WIKI + "Edge_case");
+        streamed.extractStreaming(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "UTF-8", lem, filter);
+        return streamed.getDescription();
+    }
+
+
+    private static String content(String inside) {
+        return "<div id=\"mw-content-text\" class=\"mw-body-content\"><div class=\"mw-content-ltr mw-parser-output\" lang=\"en\">"
+                + inside + "<p>Article text.</p></div></div>";
+    }
+
+
+    @Test
+    public void corpusPagesMatch() throws IOException {
+        String names;
+        try (InputStream in = open("pages.txt")) {
+            names = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        for (String name : names.split("\n")) {
+            if (name.isBlank()) continue;
+            byte[] html;
+            try (InputStream in = open(name.strip() + ".html")) {
+                html = in.readAllBytes();
+            }
+            Map<String, Integer> terms = assertSameExtraction(html, WIKI + name.strip());
+            assertTrue(terms.size() > 100, name);
+        }
+    }
+
+
+    @Test
+    public void endOfAnEnclosingElementClosesTheParagraph() throws IOException {
+        Map<String, Integer> terms = assertSameExtraction("<table><tr><td><p>cell</td></tr></table> after table");
+        assertEquals(null, terms.get("table"));
+
+        assertSameExtraction("<ul><li><p>item</li><li>bare</li></ul> after list");
+        assertSameExtraction("<dl><dt><p>term</dt><dd><p>definition</dd></dl> after definitions");
+        assertSameExtraction("<div><p>inside</div> after div");
+        assertSameExtraction("<p>unclosed body text");
+        assertSameExtraction("<table><tr><th><p>header</th><td>plain data</td></tr></table><p>closed</p> trailing");
+    }
+
+
+    @Test
+    public void inlineEndTagsLeaveTheParagraphOpen() throws IOException {
+        assertSameExtraction("<p>one <b>bold</b> <span>span</span> <a href=\"/wiki/Link\">link</a> two</p> outside");
+    }
+
+
+    @Test
+    public void noscriptContentsAreText() throws IOException {
+        assertSameExtraction("<noscript><p>enable scripts please</p></noscript><p>after</p>");
+        assertSameExtraction("<p>before <noscript>hidden words</noscript> after</p>");
+    }
+
+
+    @Test
+    public void textOnlyElementsKeepTheirContentsAsText() throws IOException {
+        assertSameExtraction("<p>form <textarea>typed words &amp; more <b>words</b></textarea> after</p>");
+        assertSameExtraction("<p>frame <iframe>fallback words</iframe> after</p>");
+        assertSameExtraction("<p>scripted <script>var hidden = 'words';</script> visible <style>p { color: red }</style> words</p>");
+    }
+
+
+    @Test
+    public void onlyShortDescriptionsInTheContentCount() throws IOException {
+        String description = "<div class=\"shortdescription nomobile noexcerpt noprint searchaux\" style=\"display:none\">%s</div>";
+
+        assertEquals("", assertSameDescription(String.format(description, "sidebar blurb") + content("")));
+        assertEquals("", assertSameDescription("<div class=\"shortdescription\">sidebar blurb</div>" + content("")));
+        assertEquals("", assertSameDescription(content("<div>" + String.format(description, "nested") + "</div>")));
+        assertEquals("", assertSameDescription(content("<div class=\"shortdescription noprint\">partial</div>")));
+        assertEquals("Article", assertSameDescription(content(String.format(description, "Article"))));
+        assertEquals("Tab sep", assertSameDescription(content(
+                "<div class=\"shortdescription\tnomobile\nnoexcerpt noprint\tsearchaux\">Tab sep</div>")));
+    }
+
+
+    @Test
+    public void everyShortDescriptionInTheContentIsJoined() throws IOException {
+        String description = "<div class=\"shortdescription nomobile noexcerpt noprint searchaux\">%s</div>";
+        assertEquals("First Second", assertSameDescription(content(
+                String.format(description, "First") + "<ul><li>item<li>" + "another</ul>" + String.format(description, "Second"))));
+        assertEquals("Unclosed", assertSameDescription(content(
+                "<table><tr><td>cell<td>cell</table>" + String.format(description, "<p>Unclosed"))));
+    }
+}
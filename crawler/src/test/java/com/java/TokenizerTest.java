@@ -0,0 +1,162 @@
+/**
+ * Checks that Tokenizer.countKeywords gives exactly the counts of the filterKeywords loop it
+ * replaced: split on "\\s+", a Keyword per word, the regex word check, the digit check and the
+ * stopword list. The old loop is kept below as the reference and run over the synthetic corpus pages,
+ * hand-picked edge cases and random text.
+ * Braden Zingler
+ */
+package com.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+public class TokenizerTest {
+    private static Lemmatizer lem;
+
+
+    @BeforeAll
+    public static void loadLemmas() throws IOException {
+        Map<String, String> lemmas = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open("lemmas.csv"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length < 2) continue;
+                lemmas.put(parts[1].strip(), parts[0].strip());
+            }
+        }
+        lem = new Lemmatizer(LemmaTable.build(lemmas));
+    }
+
+
+    private static InputStream open(String name) {
+        return TokenizerTest.class.getResourceAsStream("/corpus/" + name);
+    }
+
+
+    /**
+     * The keyword filter as it was before the Tokenizer, word for word.
+     */
+    private static Map<String, Integer> filterKeywords(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : text.split("\\s+")) {
+            Keyword keyword = new Keyword(word.toLowerCase().strip());
+            if (!isStopword(keyword.getWord()) && keyword.getWord().matches("\\b[a-zA-Z]+\\b")
+                    && !word.matches("\\d+") && word.length() > 1) {
+                Keyword lemma = new Keyword(lem.lemmatizeWord(keyword.toString()));
+                counts.merge(lemma.getWord(), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+
+    private static boolean isStopword(String word) {
+        for (String stopword : Keyword.STOPWORDS) {
+            if (word.equalsIgnoreCase(stopword)) return true;
+        }
+        return false;
+    }
+
+
+    private static Map<String, Integer> countKeywords(String text) {
+        TermCounts terms = new Tokenizer().countKeywords(text, lem);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            counts.put(terms.getTerm(i), terms.getCount(i));
+        }
+        return counts;
+    }
+
+
+    private static void assertSameCounts(String text) {
+        assertEquals(filterKeywords(text), countKeywords(text), () -> "text: " + text);
+    }
+
+
+    @Test
+    public void corpusPagesMatch() throws IOException {
+        String names;
+        try (InputStream in = open("pages.txt")) {
+            names = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        for (String name : names.split("\n")) {
+            if (name.isBlank()) continue;
+            Document doc;
+            try (InputStream in = open(name.strip() + ".html")) {
+                doc = Jsoup.parse(in, "UTF-8", "https://en.wikipedia.org/wiki/" + name.strip());
+            }
+            String text = doc.select("p, h1, h2, h3, h4, h5, h6, title").text();
+            Map<String, Integer> expected = filterKeywords(text);
+            assertEquals(expected, countKeywords(text), name);
+            assertEquals(true, expected.size() > 100, name);
+        }
+    }
+
+
+    @Test
+    public void stopwordsAreDroppedInAnyCase() {
+        assertSameCounts("The the THE Wikipedia WIKIPEDIA wikipedia I'm i'm YOU'RE you're Use use rocket");
+        assertSameCounts("a an I afterwords Afterwords hence whoever");
+    }
+
+
+    @Test
+    public void digitsAndMixedTokensAreDropped() {
+        assertSameCounts("2024 1 99 0x1F abc123 123abc 3rd 1st ray gun 42 laser");
+    }
+
+
+    @Test
+    public void punctuationRejectsTheWholeToken() {
+        assertSameCounts("word, end. (paren) don't rock-n-roll \"quoted\" e.g. semi; colon: ray gun ray gun");
+        assertSameCounts("- -- ... ! ? , . x y z ab AB aB");
+    }
+
+
+    @Test
+    public void whitespaceOfEveryKindSplits() {
+        assertSameCounts("  leading\ttab\nnewline\rreturn\u000Bvertical\u000Cfeed trailing   ");
+        assertSameCounts("");
+        assertSameCounts(" \t\n ");
+    }
+
+
+    @Test
+    public void unicodeTokensMatchTheOldCaseMappingAndStripping() {
+        // NBSP does not split under "\\s", the Kelvin sign lowercases to "k", U+001C to U+001F are stripped
+        assertSameCounts("no\u00A0break \u212Aelvin \u212A \u001Crocket\u001F caf\u00E9 \u0130stanbul na\u00EFve STRASSE stra\u00DFe");
+        assertSameCounts("\u001C\u001D\u001E\u001F \u001Cab \uD83D\uDE80rocket \u0131d");
+    }
+
+
+    @Test
+    public void randomTextMatches() {
+        String[] pieces = {"ray", "Gun", "THE", "use", "laser", "lasers", "2024", "7", "a", "I'm", "x",
+                "\u212A", "\u00A0", "\u001C", "\u0130", "\u00E9", ",", ".", "-", "'", "\uD83D\uDE80",
+                " ", " ", " ", "\t", "\n", "\r", "\u000B", "\u000C"};
+        Random random = new Random(7);
+        StringBuilder text = new StringBuilder();
+        for (int t = 0; t < 2000; t++) {
+            text.setLength(0);
+            int length = random.nextInt(60);
+            for (int i = 0; i < length; i++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertSameCounts(text.toString());
+        }
+    }
+}